@@ -0,0 +1,201 @@
+package org.myrobotlab.arduino;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+import org.myrobotlab.framework.TimedTask;
+import org.myrobotlab.framework.TimingWheel;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Outstanding i2c reads of an Arduino. Each I2C_READ / I2C_WRITE_READ gets a
+ * request id and a future completed with the bytes read, so several reads -
+ * on different buses and devices - can be in flight at once.
+ *
+ * MRLComm answers with a PUBLISH_SENSOR_DATA of the bus device which carries
+ * the requested size but no request id or device address, and it processes
+ * commands in order - so a reply completes the oldest outstanding request on
+ * its bus with the same size. Older requests on that bus it skips over were
+ * lost on the way and fail. A reply which matches no request on its bus is
+ * rejected - it never completes a request of another bus. A request which
+ * gets no reply within timeoutMs fails with a TimeoutException.
+ */
+public class I2cTransactions {
+
+	public final static Logger log = LoggerFactory.getLogger(I2cTransactions.class);
+
+	public static class Request {
+		public final int id;
+		public final int busAddress;
+		public final int deviceAddress;
+		public final int size;
+		public final CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+		final long ts = System.nanoTime();
+
+		Request(int id, int busAddress, int deviceAddress, int size) {
+			this.id = id;
+			this.busAddress = busAddress;
+			this.deviceAddress = deviceAddress;
+			this.size = size;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("i2c request %d %d.%d size %d", id, busAddress, deviceAddress, size);
+		}
+	}
+
+	final String name;
+	final ArrayDeque<Request> pending = new ArrayDeque<Request>();
+	int nextId = 0;
+	long timeoutMs = 1000;
+	TimedTask timeoutTask = null;
+
+	// stats
+	long requests = 0;
+	long completed = 0;
+	long failed = 0;
+	long unmatched = 0;
+	long latencyTotal = 0;
+	int maxPending = 0;
+
+	public I2cTransactions(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * register a read before its command is sent - the reply can come back
+	 * before the send returns
+	 */
+	public synchronized Request add(int busAddress, int deviceAddress, int size) {
+		Request r = new Request(nextId++, busAddress, deviceAddress, size);
+		pending.add(r);
+		++requests;
+		if (pending.size() > maxPending) {
+			maxPending = pending.size();
+		}
+		if (timeoutTask == null) {
+			timeoutTask = TimingWheel.getInstance().scheduleAtFixedRate(String.format("%s.i2cTimeout", name), new Runnable() {
+				@Override
+				public void run() {
+					synchronized (I2cTransactions.this) {
+						expire();
+					}
+				}
+			}, timeoutMs, Math.max(10, timeoutMs / 4));
+		}
+		return r;
+	}
+
+	/**
+	 * data returned by MRLComm from bus busAddress - only the low byte of each
+	 * int is used
+	 *
+	 * @return false if the data matches no outstanding request of the bus
+	 */
+	public synchronized boolean complete(int busAddress, int[] data, int size) {
+		Request match = null;
+		for (Request r : pending) {
+			if (r.busAddress == busAddress && r.size == size) {
+				match = r;
+				break;
+			}
+		}
+		if (match == null) {
+			++unmatched;
+			log.info("{} unmatched i2c data - bus {} {} bytes", name, busAddress, size);
+			return false;
+		}
+
+		// requests on other buses are not affected
+		Iterator<Request> it = pending.iterator();
+		while (it.hasNext()) {
+			Request r = it.next();
+			if (r == match) {
+				it.remove();
+				break;
+			}
+			if (r.busAddress == busAddress) {
+				it.remove();
+				++failed;
+				r.future.completeExceptionally(new IOException(String.format("%s %s lost", name, r)));
+			}
+		}
+
+		byte[] bytes = new byte[size];
+		for (int i = 0; i < size; ++i) {
+			bytes[i] = (byte) data[i];
+		}
+		++completed;
+		latencyTotal += System.nanoTime() - match.ts;
+		match.future.complete(bytes);
+		return true;
+	}
+
+	/**
+	 * the command of a request could not be sent
+	 */
+	public synchronized void fail(Request r, Throwable t) {
+		if (pending.remove(r)) {
+			++failed;
+		}
+		r.future.completeExceptionally(t);
+	}
+
+	/**
+	 * fail everything outstanding - e.g. on disconnect
+	 */
+	public synchronized void clear() {
+		Request r;
+		while ((r = pending.poll()) != null) {
+			++failed;
+			r.future.completeExceptionally(new IOException(String.format("%s cleared", name)));
+		}
+		if (timeoutTask != null) {
+			timeoutTask.cancel();
+			timeoutTask = null;
+		}
+	}
+
+	void expire() {
+		long now = System.nanoTime();
+		Iterator<Request> it = pending.iterator();
+		while (it.hasNext()) {
+			Request r = it.next();
+			if (now - r.ts <= timeoutMs * 1000000) {
+				break;
+			}
+			it.remove();
+			++failed;
+			log.info("{} no reply for {}", name, r);
+			r.future.completeExceptionally(new TimeoutException(String.format("no reply for %s after %d ms", r, timeoutMs)));
+		}
+		if (pending.isEmpty() && timeoutTask != null) {
+			timeoutTask.cancel();
+			timeoutTask = null;
+		}
+	}
+
+	public synchronized int getPending() {
+		return pending.size();
+	}
+
+	public synchronized void setTimeout(long ms) {
+		timeoutMs = ms;
+	}
+
+	public synchronized long getTimeout() {
+		return timeoutMs;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%s i2c requests %d completed %d failed %d unmatched %d pending %d max %d latency avg %.2f ms", name, requests, completed, failed, unmatched,
+				pending.size(), maxPending, (completed == 0) ? 0 : latencyTotal / (completed * 1000000.0));
+	}
+
+}
@@ -0,0 +1,120 @@
+package org.myrobotlab.arduino;
+
+import static org.myrobotlab.codec.serial.ArduinoMsgCodec.FUNCTION_COUNT;
+import static org.myrobotlab.codec.serial.ArduinoMsgCodec.MAGIC_NUMBER;
+import static org.myrobotlab.codec.serial.ArduinoMsgCodec.MAX_MSG_SIZE;
+
+import org.myrobotlab.codec.serial.ArduinoMsgCodec;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Streaming decoder of MRLComm frames
+ *
+ * MAGIC_NUMBER|LENGTH|FUNCTION|DATA0|DATA1 ... |DATA(N)
+ *
+ * Bytes are fed in as they arrive - single or in chunks - and each complete
+ * frame is dispatched through a table indexed by function code, sized by the
+ * generated ArduinoMsgCodec.FUNCTION_COUNT. The frame buffer is reused, so a
+ * handler must copy whatever it keeps after it returns.
+ */
+public class MrlCommDecoder {
+
+	public final static Logger log = LoggerFactory.getLogger(MrlCommDecoder.class);
+
+	/**
+	 * called with msg[0] the function and msg[1..size-1] its data - like the
+	 * Arduino side the data bytes are stored signed
+	 */
+	public interface Handler {
+		void onMsg(int[] msg, int size) throws Exception;
+	}
+
+	final String name;
+	final Handler[] handlers = new Handler[FUNCTION_COUNT];
+	Handler unknownHandler = null;
+
+	final int[] msg = new int[MAX_MSG_SIZE];
+	int byteCount = 0;
+	int msgSize = 0;
+
+	// stats
+	public long rxCount = 0;
+	public long rxErrors = 0;
+
+	public MrlCommDecoder(String name) {
+		this.name = name;
+	}
+
+	public void setHandler(int function, Handler handler) {
+		handlers[function] = handler;
+	}
+
+	/**
+	 * for functions without a handler
+	 */
+	public void setUnknownHandler(Handler handler) {
+		unknownHandler = handler;
+	}
+
+	public void decode(byte[] data, int offset, int length) {
+		for (int i = offset; i < offset + length; ++i) {
+			decode(data[i] & 0xff);
+		}
+	}
+
+	public void decode(int newByte) {
+		++byteCount;
+		if (byteCount == 1) {
+			if (newByte != MAGIC_NUMBER) {
+				error("bad magic number %d", newByte);
+			}
+			return;
+		}
+		if (byteCount == 2) {
+			if (newByte == 0 || newByte > MAX_MSG_SIZE) {
+				error("bad size %d", newByte);
+				return;
+			}
+			msgSize = newByte;
+			return;
+		}
+		msg[byteCount - 3] = (byte) newByte;
+		if (byteCount == 2 + msgSize) {
+			int size = msgSize;
+			byteCount = 0;
+			msgSize = 0;
+			dispatch(msg, size);
+		}
+	}
+
+	/**
+	 * dispatch a complete message - e.g. one routed from another board
+	 */
+	public void dispatch(int[] msg, int size) {
+		++rxCount;
+		int function = msg[0] & 0xff;
+		Handler handler = (function < handlers.length) ? handlers[function] : null;
+		if (handler == null) {
+			handler = unknownHandler;
+		}
+		if (handler == null) {
+			log.error("{} unknown serial event {}", name, function);
+			return;
+		}
+		try {
+			handler.onMsg(msg, size);
+		} catch (Exception e) {
+			++rxErrors;
+			log.warn(String.format("%s could not process %s", name, ArduinoMsgCodec.functionToString(function)), e);
+		}
+	}
+
+	void error(String format, Object... args) {
+		++rxErrors;
+		byteCount = 0;
+		msgSize = 0;
+		log.warn("{} Arduino->MRL error - {} - {} rx errors", name, String.format(format, args), rxErrors);
+	}
+
+}
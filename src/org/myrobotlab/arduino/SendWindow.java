@@ -0,0 +1,386 @@
+package org.myrobotlab.arduino;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeoutException;
+
+import org.myrobotlab.codec.serial.ArduinoMsgCodec;
+import org.myrobotlab.framework.SerialExecutor;
+import org.myrobotlab.framework.TimedTask;
+import org.myrobotlab.framework.TimingWheel;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * Windowed send pipeline for MRLComm messages. Instead of writing one message
+ * and waiting for its ack, up to windowSize messages - and no more bytes than
+ * fit in the board's serial rx buffer - are in flight at once. Each message
+ * gets a future completed by its PUBLISH_MESSAGE_ACK.
+ *
+ * MRLComm processes commands in order and acks each one with its function
+ * number (there is no sequence number on the wire), so an ack completes the
+ * oldest in-flight message with that function. Older in-flight messages it
+ * skips over were dropped by the board (a corrupted frame is discarded without
+ * an ack) or only their ack was - they fail with an IOException and are not
+ * sent again, as that would run them after the newer command or run them
+ * twice.
+ *
+ * If the oldest message gets no ack within ackTimeoutMs and nothing newer has
+ * been acked the board lost the frame - or everything from it on, while its
+ * parser got back in sync. Everything in flight is sent again in the original
+ * order (go-back-N) up to maxRetries times, then the message fails with a
+ * TimeoutException. The board can not tell a retransmitted frame from a new
+ * one, so a command whose ack alone was lost runs twice - with no newer
+ * message acked in ackTimeoutMs that is unlikely.
+ *
+ * A message gets its slot in the window under the monitor but is written
+ * outside of it, so the serial reader thread delivering acks never waits for
+ * a write. Frames go out in the order their slots were taken - one thread at a
+ * time drains toWrite, a sender or, for retransmits, the shared pool as the
+ * timer thread must not block.
+ */
+public class SendWindow {
+
+	public final static Logger log = LoggerFactory.getLogger(SendWindow.class);
+
+	/**
+	 * writes a complete frame to the board
+	 */
+	public interface Transport {
+		void write(int[] frame) throws Exception;
+	}
+
+	static class Pending {
+		final int function;
+		final int[] frame;
+		final CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+		// set by the writing thread - read by expire
+		volatile long sentTs;
+		int retries;
+		boolean queued;
+
+		Pending(int function, int[] frame) {
+			this.function = function;
+			this.frame = frame;
+		}
+	}
+
+	/**
+	 * rtt histogram bucket i counts acks received in less than 2^i ms - the
+	 * last bucket everything slower
+	 */
+	public final static int RTT_BUCKETS = 12;
+
+	final String name;
+	final Transport transport;
+	final ArrayDeque<Pending> inFlight = new ArrayDeque<Pending>();
+	/**
+	 * in flight but not (again) written yet - in window order
+	 */
+	final ArrayDeque<Pending> toWrite = new ArrayDeque<Pending>();
+	/**
+	 * a thread is draining toWrite
+	 */
+	boolean writing = false;
+	int bytesInFlight = 0;
+	TimedTask timeoutTask = null;
+	Executor executor = SerialExecutor.getSharedPool();
+	final Runnable writer = new Runnable() {
+		@Override
+		public void run() {
+			if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+				// the transport may block - let the pool compensate
+				try {
+					ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+						boolean done = false;
+
+						@Override
+						public boolean isReleasable() {
+							return done;
+						}
+
+						@Override
+						public boolean block() {
+							drain();
+							done = true;
+							return true;
+						}
+					});
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			} else {
+				drain();
+			}
+		}
+	};
+
+	/**
+	 * max number of messages in flight - 1 is stop and wait
+	 */
+	int windowSize = 16;
+	/**
+	 * the board's serial rx buffer - bytes in flight are kept below it so
+	 * nothing is overrun while MRLComm is busy
+	 */
+	int rxBufferSize = 64;
+	long ackTimeoutMs = 2000;
+	int maxRetries = 1;
+
+	// stats
+	long sent = 0;
+	long acked = 0;
+	long retries = 0;
+	long failed = 0;
+	long unmatchedAcks = 0;
+	long occupancyTotal = 0;
+	int maxOccupancy = 0;
+	final long[] rttHistogram = new long[RTT_BUCKETS];
+
+	public SendWindow(String name, Transport transport) {
+		this.name = name;
+		this.transport = transport;
+	}
+
+	/**
+	 * queue frame - waits while the window is full
+	 *
+	 * @return completed with the function when the board acks it
+	 */
+	public CompletableFuture<Integer> send(int function, int[] frame) throws InterruptedException {
+		Pending p = new Pending(function, frame);
+		synchronized (this) {
+			while (!inFlight.isEmpty() && (inFlight.size() >= windowSize || bytesInFlight + frame.length > rxBufferSize)) {
+				wait(Math.max(1, ackTimeoutMs / 4));
+				expire();
+			}
+			++sent;
+			occupancyTotal += inFlight.size();
+			p.sentTs = System.nanoTime();
+			inFlight.add(p);
+			bytesInFlight += frame.length;
+			if (inFlight.size() > maxOccupancy) {
+				maxOccupancy = inFlight.size();
+			}
+			if (timeoutTask == null) {
+				timeoutTask = TimingWheel.getInstance().scheduleAtFixedRate(String.format("%s.ackTimeout", name), new Runnable() {
+					@Override
+					public void run() {
+						synchronized (SendWindow.this) {
+							expire();
+						}
+					}
+				}, ackTimeoutMs, Math.max(10, ackTimeoutMs / 4));
+			}
+			p.queued = true;
+			toWrite.add(p);
+			if (writing) {
+				// the thread already writing sends it after the frames before it
+				return p.future;
+			}
+			writing = true;
+		}
+		drain();
+		return p.future;
+	}
+
+	/**
+	 * a PUBLISH_MESSAGE_ACK from the board
+	 */
+	public synchronized void ack(int function) {
+		Pending match = null;
+		for (Pending p : inFlight) {
+			if (p.function == function) {
+				match = p;
+				break;
+			}
+		}
+		if (match == null) {
+			++unmatchedAcks;
+			log.info("{} unmatched ack {}", name, ArduinoMsgCodec.functionToString(function));
+			return;
+		}
+
+		// acks come back in order - what was sent before the match was lost, or
+		// its ack was - sending it again would run it out of order or twice
+		List<Pending> lost = null;
+		Pending p;
+		while ((p = inFlight.poll()) != match) {
+			bytesInFlight -= p.frame.length;
+			if (lost == null) {
+				lost = new ArrayList<Pending>();
+			}
+			lost.add(p);
+		}
+		bytesInFlight -= match.frame.length;
+
+		long rtt = (System.nanoTime() - match.sentTs) / 1000000;
+		int bucket = 0;
+		while (bucket < RTT_BUCKETS - 1 && rtt >= (1L << bucket)) {
+			++bucket;
+		}
+		++rttHistogram[bucket];
+		++acked;
+		match.future.complete(function);
+
+		if (lost != null) {
+			for (int i = 0; i < lost.size(); ++i) {
+				p = lost.get(i);
+				++failed;
+				log.info("{} no ack for {} - a later message was acked", name, ArduinoMsgCodec.functionToString(p.function));
+				p.future.completeExceptionally(new IOException(String.format("%s %s lost - a later message was acked", name, ArduinoMsgCodec.functionToString(p.function))));
+			}
+		}
+		notifyAll();
+	}
+
+	/**
+	 * fail everything in flight - e.g. on disconnect
+	 */
+	public synchronized void clear() {
+		Pending p;
+		while ((p = inFlight.poll()) != null) {
+			++failed;
+			p.future.completeExceptionally(new IOException(String.format("%s cleared", name)));
+		}
+		toWrite.clear();
+		bytesInFlight = 0;
+		if (timeoutTask != null) {
+			timeoutTask.cancel();
+			timeoutTask = null;
+		}
+		notifyAll();
+	}
+
+	void expire() {
+		long now = System.nanoTime();
+		Pending head = inFlight.peek();
+		while (head != null && now - head.sentTs > ackTimeoutMs * 1000000) {
+			if (head.retries < maxRetries) {
+				goBack();
+				break;
+			}
+			inFlight.poll();
+			bytesInFlight -= head.frame.length;
+			++failed;
+			log.info("{} ack not received : {}", name, ArduinoMsgCodec.functionToString(head.function));
+			head.future.completeExceptionally(new TimeoutException(String.format("no ack for %s after %d ms", ArduinoMsgCodec.functionToString(head.function), ackTimeoutMs)));
+			head = inFlight.peek();
+		}
+		if (inFlight.isEmpty() && timeoutTask != null) {
+			timeoutTask.cancel();
+			timeoutTask = null;
+		}
+		notifyAll();
+	}
+
+	/**
+	 * queues everything in flight to be sent again - oldest first, so the board
+	 * runs the commands in the order they were sent. Called by the timer thread,
+	 * so the writing is left to the shared pool.
+	 */
+	void goBack() {
+		log.info("{} no ack for {} - sending {} messages in flight again", name, ArduinoMsgCodec.functionToString(inFlight.peek().function), inFlight.size());
+		// frames not written yet keep their place - after the ones sent before
+		toWrite.clear();
+		long now = System.nanoTime();
+		for (Pending p : inFlight) {
+			if (p.queued) {
+				toWrite.add(p);
+				continue;
+			}
+			p.queued = true;
+			p.sentTs = now;
+			++p.retries;
+			++retries;
+			toWrite.add(p);
+		}
+		if (!writing) {
+			writing = true;
+			executor.execute(writer);
+		}
+	}
+
+	/**
+	 * writes toWrite until it is empty - only the thread which set writing
+	 */
+	void drain() {
+		while (true) {
+			Pending p;
+			synchronized (this) {
+				p = toWrite.poll();
+				if (p == null) {
+					writing = false;
+					return;
+				}
+				p.queued = false;
+			}
+			try {
+				transport.write(p.frame);
+				p.sentTs = System.nanoTime();
+			} catch (Exception e) {
+				synchronized (this) {
+					if (inFlight.remove(p)) {
+						bytesInFlight -= p.frame.length;
+						++failed;
+					}
+					notifyAll();
+				}
+				p.future.completeExceptionally(e);
+			}
+		}
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight.size();
+	}
+
+	public synchronized void setWindowSize(int windowSize) {
+		this.windowSize = Math.max(1, windowSize);
+		notifyAll();
+	}
+
+	public synchronized void setRxBufferSize(int rxBufferSize) {
+		this.rxBufferSize = rxBufferSize;
+		notifyAll();
+	}
+
+	public synchronized void setAckTimeout(long ms) {
+		ackTimeoutMs = ms;
+	}
+
+	public synchronized void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	public synchronized long[] getRttHistogram() {
+		return rttHistogram.clone();
+	}
+
+	/**
+	 * average number of messages already in flight when one was sent
+	 */
+	public synchronized double getAverageOccupancy() {
+		return (sent == 0) ? 0 : occupancyTotal / (double) sent;
+	}
+
+	@Override
+	public synchronized String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%s sent %d acked %d retries %d failed %d unmatched acks %d in flight %d/%d (%d bytes) occupancy avg %.1f max %d rtt", name, sent, acked,
+				retries, failed, unmatchedAcks, inFlight.size(), windowSize, bytesInFlight, getAverageOccupancy(), maxOccupancy));
+		for (int i = 0; i < RTT_BUCKETS; ++i) {
+			if (rttHistogram[i] > 0) {
+				sb.append(String.format(" %s%dms:%d", (i == RTT_BUCKETS - 1) ? ">=" : "<", (i == RTT_BUCKETS - 1) ? (1 << (i - 1)) : (1 << i), rttHistogram[i]));
+			}
+		}
+		return sb.toString();
+	}
+
+}
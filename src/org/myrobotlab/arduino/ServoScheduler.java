@@ -0,0 +1,235 @@
+package org.myrobotlab.arduino;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import org.myrobotlab.framework.SerialExecutor;
+import org.myrobotlab.framework.TimedTask;
+import org.myrobotlab.framework.TimingWheel;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.interfaces.ServoControl;
+import org.slf4j.Logger;
+
+/**
+ * Coalescing servo command scheduler of a ServoController. servoWrite only
+ * records the servo's new output - last writer wins - and the dirty servos
+ * are written together at most once every periodMs. A gesture or tracking
+ * loop which overwrites the same servo many times in a few ms then costs one
+ * frame per servo and control period instead of one per call.
+ *
+ * A period of 0 writes through on the calling thread.
+ *
+ * Any other command for a servo has to go out after its pending write - call
+ * flush(servo) before sending it. The scheduled flush runs on the shared pool,
+ * not on the TimingWheel worker, as a full send window makes it wait.
+ */
+public class ServoScheduler {
+
+	public final static Logger log = LoggerFactory.getLogger(ServoScheduler.class);
+
+	/**
+	 * sends the command for one servo
+	 */
+	public interface Writer {
+		void write(ServoControl servo, int output) throws Exception;
+	}
+
+	static class Command {
+		final ServoControl servo;
+		int output;
+
+		Command(ServoControl servo, int output) {
+			this.servo = servo;
+			this.output = output;
+		}
+	}
+
+	final String name;
+	final Writer writer;
+	/**
+	 * dirty servos by name in the order they were first written
+	 */
+	LinkedHashMap<String, Command> dirty = new LinkedHashMap<String, Command>();
+	TimedTask flushTask = null;
+	Executor executor = SerialExecutor.getSharedPool();
+	final Runnable flusher = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+	/**
+	 * keeps the commands of consecutive flushes in order
+	 */
+	final Object sendLock = new Object();
+	long lastFlushTs = 0;
+	long periodMs = 20;
+
+	// stats
+	final long startTs = System.currentTimeMillis();
+	long requested = 0;
+	long written = 0;
+	long coalesced = 0;
+	long flushes = 0;
+	long errors = 0;
+
+	public ServoScheduler(String name, Writer writer) {
+		this.name = name;
+		this.writer = writer;
+	}
+
+	public void write(ServoControl servo, int output) {
+		synchronized (this) {
+			++requested;
+			if (periodMs > 0) {
+				Command c = dirty.get(servo.getName());
+				if (c != null) {
+					// an intermediate position nobody will see
+					++coalesced;
+					c.output = output;
+				} else {
+					dirty.put(servo.getName(), new Command(servo, output));
+				}
+				if (flushTask == null) {
+					long delay = Math.max(0, lastFlushTs + periodMs - System.currentTimeMillis());
+					flushTask = TimingWheel.getInstance().schedule(String.format("%s.servoFlush", name), new Runnable() {
+						@Override
+						public void run() {
+							executor.execute(flusher);
+						}
+					}, delay);
+				}
+				return;
+			}
+		}
+		synchronized (sendLock) {
+			send(new Command(servo, output));
+		}
+	}
+
+	/**
+	 * write all dirty servos now
+	 */
+	public void flush() {
+		if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+			// a full send window waits - let the pool compensate
+			try {
+				ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+					boolean done = false;
+
+					@Override
+					public boolean isReleasable() {
+						return done;
+					}
+
+					@Override
+					public boolean block() {
+						sendDirty();
+						done = true;
+						return true;
+					}
+				});
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		} else {
+			sendDirty();
+		}
+	}
+
+	void sendDirty() {
+		// taken under the send lock - a flush(servo) which comes later sends
+		// after these
+		synchronized (sendLock) {
+			Command[] commands;
+			synchronized (this) {
+				flushTask = null;
+				lastFlushTs = System.currentTimeMillis();
+				if (dirty.isEmpty()) {
+					return;
+				}
+				commands = dirty.values().toArray(new Command[dirty.size()]);
+				dirty = new LinkedHashMap<String, Command>();
+				++flushes;
+			}
+			for (int i = 0; i < commands.length; ++i) {
+				send(commands[i]);
+			}
+		}
+	}
+
+	/**
+	 * write the servo's pending position now - before a detach, sweep or any
+	 * other command for it, so the commands reach the servo in the order they
+	 * were issued
+	 */
+	public void flush(ServoControl servo) {
+		synchronized (sendLock) {
+			Command c;
+			synchronized (this) {
+				c = dirty.remove(servo.getName());
+			}
+			if (c != null) {
+				send(c);
+			}
+		}
+	}
+
+	void send(Command c) {
+		try {
+			writer.write(c.servo, c.output);
+			synchronized (this) {
+				++written;
+			}
+		} catch (Exception e) {
+			synchronized (this) {
+				++errors;
+			}
+			log.warn(String.format("%s could not write %s", name, c.servo.getName()), e);
+		}
+	}
+
+	public synchronized void clear() {
+		dirty.clear();
+		if (flushTask != null) {
+			flushTask.cancel();
+			flushTask = null;
+		}
+	}
+
+	/**
+	 * control rate in Hz - 0 writes every command through immediately
+	 */
+	public void setRate(int hz) {
+		synchronized (this) {
+			periodMs = (hz <= 0) ? 0 : Math.max(1, 1000 / hz);
+		}
+		if (hz <= 0) {
+			flush();
+		}
+	}
+
+	/**
+	 * servo commands actually sent per second
+	 */
+	public synchronized double getCommandRate() {
+		long elapsed = System.currentTimeMillis() - startTs;
+		return (elapsed == 0) ? 0 : written * 1000.0 / elapsed;
+	}
+
+	/**
+	 * intermediate positions which were overwritten before being sent
+	 */
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%s servo period %d ms requested %d written %d coalesced %d flushes %d errors %d pending %d rate %.1f/s", name, periodMs, requested, written,
+				coalesced, flushes, errors, dirty.size(), getCommandRate());
+	}
+
+}
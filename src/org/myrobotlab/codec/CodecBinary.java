@@ -0,0 +1,738 @@
+package org.myrobotlab.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.myrobotlab.framework.History;
+import org.myrobotlab.framework.Message;
+import org.myrobotlab.image.SerializableImage;
+
+/**
+ * Compact binary encoding of Messages for the RemoteAdapter transports.
+ *
+ * A frame is a varint length followed by the message. Numbers are varints
+ * (zigzag for signed values), data parameters carry a one byte type tag and
+ * only payloads without a tag fall back to Java serialization - read back
+ * through a SafeObjectInputStream, so only allowed classes are resolved.
+ *
+ * A stream starts with HEADER. A peer which predates this codec starts with
+ * JAVA_HEADER instead - detectHeader tells them apart so a connection can fall
+ * back to CodecSerialized.
+ *
+ * Service names and methods are sent through a per-connection dictionary - the
+ * first time a string is sent it goes as a literal and both ends assign it the
+ * next index, after that only the index is sent. Both dictionaries are built
+ * from the frames themselves so nothing extra is exchanged - the registration
+ * traffic at the start of a connection fills them. An instance is therefore
+ * stateful and must encode (or decode) the frames of one connection in order.
+ * Connection-less transports (udp) use a codec without a dictionary.
+ *
+ * Encoding and decoding are independent - one thread may write while another
+ * reads, but neither side is thread-safe on its own.
+ */
+public class CodecBinary {
+
+  /**
+   * sent once at the start of a stream - "MRLB" and the version
+   */
+  public final static byte[] HEADER = new byte[] { 'M', 'R', 'L', 'B', 1 };
+
+  /**
+   * the start of a Java serialization stream - magic and version
+   */
+  public final static byte[] JAVA_HEADER = new byte[] { (byte) 0xAC, (byte) 0xED, 0, 5 };
+
+  // results of detectHeader
+  public final static int STREAM_UNKNOWN = 0;
+  public final static int STREAM_BINARY = 1;
+  public final static int STREAM_JAVA = 2;
+
+  public final static int MAX_DICTIONARY_SIZE = 4096;
+  public final static int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+  // string references
+  final static int STRING_NULL = 0;
+  final static int STRING_LITERAL = 1;
+  final static int STRING_NEW = 2;
+  final static int STRING_INDEX = 3;
+
+  // data type tags
+  final static int TAG_NULL = 0;
+  final static int TAG_TRUE = 1;
+  final static int TAG_FALSE = 2;
+  final static int TAG_INT = 3;
+  final static int TAG_LONG = 4;
+  final static int TAG_FLOAT = 5;
+  final static int TAG_DOUBLE = 6;
+  final static int TAG_STRING = 7;
+  final static int TAG_BYTES = 8;
+  final static int TAG_INTS = 9;
+  final static int TAG_DOUBLES = 10;
+  final static int TAG_ARRAY = 11;
+  final static int TAG_IMAGE = 12;
+  final static int TAG_BYTE = 13;
+  final static int TAG_SHORT = 14;
+  final static int TAG_SERIALIZED = 15;
+
+  final boolean useDictionary;
+
+  // encoder state
+  final HashMap<String, Integer> txDictionary = new HashMap<String, Integer>();
+  byte[] wbuf = new byte[512];
+  int wpos;
+  final byte[] prefix = new byte[5];
+
+  // decoder state
+  final ArrayList<String> rxDictionary = new ArrayList<String>();
+  byte[] frame = new byte[512];
+  byte[] rbuf;
+  int rpos;
+  int rlimit;
+
+  // statistics
+  public long rxBytes = 0;
+  public long txBytes = 0;
+  public long rxCount = 0;
+  public long txCount = 0;
+
+  public CodecBinary() {
+    this(true);
+  }
+
+  /**
+   * @param useDictionary
+   *          false for connection-less transports where every frame must be
+   *          decodable on its own
+   */
+  public CodecBinary(boolean useDictionary) {
+    this.useDictionary = useDictionary;
+  }
+
+  static public void writeHeader(OutputStream out) throws IOException {
+    out.write(HEADER);
+    out.flush();
+  }
+
+  static public void readHeader(InputStream in) throws IOException {
+    for (int i = 0; i < HEADER.length; ++i) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      if (b != HEADER[i]) {
+        throw new IOException("not a binary mrl stream or wrong version");
+      }
+    }
+  }
+
+  /**
+   * looks at the start of a stream in a buffer in read mode - consumes the
+   * header if it is complete
+   *
+   * @return STREAM_BINARY, STREAM_JAVA or STREAM_UNKNOWN if not enough has
+   *         arrived to tell
+   * @throws IOException
+   *           if it is neither
+   */
+  static public int detectHeader(ByteBuffer buf) throws IOException {
+    int type;
+    byte[] header;
+    if (startsWith(buf, HEADER)) {
+      type = STREAM_BINARY;
+      header = HEADER;
+    } else if (startsWith(buf, JAVA_HEADER)) {
+      type = STREAM_JAVA;
+      header = JAVA_HEADER;
+    } else {
+      throw new IOException("not a binary mrl stream, a java serialization stream or wrong version");
+    }
+    if (buf.remaining() < header.length) {
+      return STREAM_UNKNOWN;
+    }
+    buf.position(buf.position() + header.length);
+    return type;
+  }
+
+  /**
+   * @return true if what has arrived so far matches the start of header
+   */
+  static boolean startsWith(ByteBuffer buf, byte[] header) {
+    int n = Math.min(buf.remaining(), header.length);
+    for (int i = 0; i < n; ++i) {
+      if (buf.get(buf.position() + i) != header[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * encode msg and write it as a length prefixed frame - does not flush
+   */
+  public void writeMessage(OutputStream out, Message msg) throws IOException {
+    encodeMessage(msg);
+    int length = wpos;
+    int n = 0;
+    int v = length;
+    while ((v & ~0x7F) != 0) {
+      prefix[n++] = (byte) ((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    prefix[n++] = (byte) v;
+    out.write(prefix, 0, n);
+    out.write(wbuf, 0, length);
+    txBytes += n + length;
+    ++txCount;
+  }
+
+  /**
+   * read one length prefixed frame - blocks until it is complete
+   */
+  public Message readMessage(InputStream in) throws IOException, ClassNotFoundException {
+    int length = 0;
+    int shift = 0;
+    int prefixLength = 0;
+    while (true) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      ++prefixLength;
+      length |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        break;
+      }
+      shift += 7;
+      if (shift > 28) {
+        throw new IOException("bad frame length");
+      }
+    }
+    if (length < 0 || length > MAX_FRAME_SIZE) {
+      throw new IOException(String.format("bad frame length %d", length));
+    }
+    if (frame.length < length) {
+      frame = new byte[Math.max(length, frame.length * 2)];
+    }
+    int read = 0;
+    while (read < length) {
+      int n = in.read(frame, read, length - read);
+      if (n < 0) {
+        throw new EOFException();
+      }
+      read += n;
+    }
+    rxBytes += prefixLength + length;
+    return decodeMessage(frame, 0, length);
+  }
+
+  /**
+   * encode msg as a length prefixed frame ready to be queued on a channel
+   */
+  public ByteBuffer encodeFrame(Message msg) throws IOException {
+    encodeMessage(msg);
+    int length = wpos;
+    ByteBuffer frame = ByteBuffer.allocate(5 + length);
+    int v = length;
+    while ((v & ~0x7F) != 0) {
+      frame.put((byte) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    frame.put((byte) v);
+    frame.put(wbuf, 0, length);
+    frame.flip();
+    txBytes += frame.remaining();
+    ++txCount;
+    return frame;
+  }
+
+  /**
+   * decode the next frame from a (heap) buffer in read mode - non blocking
+   * counterpart of readMessage
+   *
+   * @return the message or null if the frame is not complete yet - in which
+   *         case the position is left unchanged
+   */
+  public Message decodeFrame(ByteBuffer buf) throws IOException, ClassNotFoundException {
+    int start = buf.position();
+    int pos = start;
+    int length = 0;
+    int shift = 0;
+    while (true) {
+      if (pos == buf.limit()) {
+        return null;
+      }
+      int b = buf.get(pos++);
+      length |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        break;
+      }
+      shift += 7;
+      if (shift > 28) {
+        throw new IOException("bad frame length");
+      }
+    }
+    if (length < 0 || length > MAX_FRAME_SIZE) {
+      throw new IOException(String.format("bad frame length %d", length));
+    }
+    if (buf.limit() - pos < length) {
+      return null;
+    }
+    buf.position(pos + length);
+    rxBytes += pos - start + length;
+    return decodeMessage(buf.array(), buf.arrayOffset() + pos, length);
+  }
+
+  /**
+   * encode a single message without framing - e.g. one datagram
+   */
+  public byte[] encode(Message msg) throws IOException {
+    encodeMessage(msg);
+    txBytes += wpos;
+    ++txCount;
+    return Arrays.copyOf(wbuf, wpos);
+  }
+
+  public Message decode(byte[] b, int offset, int length) throws IOException, ClassNotFoundException {
+    rxBytes += length;
+    return decodeMessage(b, offset, length);
+  }
+
+  /**
+   * @return average encoded size of the messages sent
+   */
+  public double getTxBytesPerMessage() {
+    return (txCount == 0) ? 0 : txBytes / (double) txCount;
+  }
+
+  public double getRxBytesPerMessage() {
+    return (rxCount == 0) ? 0 : rxBytes / (double) rxCount;
+  }
+
+  void encodeMessage(Message msg) throws IOException {
+    wpos = 0;
+    writeVarLong(msg.msgId);
+    writeName(msg.name);
+    writeName(msg.sender);
+    writeName(msg.sendingMethod);
+    writeName(msg.method);
+    writeName(msg.status);
+    writeName(msg.msgType);
+
+    History history = msg.historyList;
+    int size = (history == null) ? 0 : history.size();
+    writeVarInt(size);
+    for (int i = 0; i < size; ++i) {
+      writeName(history.get(i));
+    }
+
+    if (msg.security == null) {
+      writeVarInt(0);
+    } else {
+      writeVarInt(msg.security.size() + 1);
+      for (Map.Entry<String, String> entry : msg.security.entrySet()) {
+        writeName(entry.getKey());
+        writeString(entry.getValue());
+      }
+    }
+
+    if (msg.data == null) {
+      writeVarInt(0);
+    } else {
+      writeVarInt(msg.data.length + 1);
+      for (int i = 0; i < msg.data.length; ++i) {
+        writeObject(msg.data[i]);
+      }
+    }
+  }
+
+  Message decodeMessage(byte[] b, int offset, int length) throws IOException, ClassNotFoundException {
+    rbuf = b;
+    rpos = offset;
+    rlimit = offset + length;
+
+    Message msg = new Message();
+    msg.msgId = readVarLong();
+    msg.name = readName();
+    msg.sender = readName();
+    msg.sendingMethod = readName();
+    msg.method = readName();
+    msg.status = readName();
+    msg.msgType = readName();
+
+    int size = readVarInt();
+    for (int i = 0; i < size; ++i) {
+      msg.addHistory(readName());
+    }
+
+    int count = readVarInt() - 1;
+    if (count >= 0) {
+      msg.security = new HashMap<String, String>();
+      for (int i = 0; i < count; ++i) {
+        String key = readName();
+        msg.security.put(key, readString());
+      }
+    }
+
+    count = readVarInt() - 1;
+    if (count >= 0) {
+      msg.data = new Object[count];
+      for (int i = 0; i < count; ++i) {
+        msg.data[i] = readObject();
+      }
+    } else {
+      msg.data = null;
+    }
+    ++rxCount;
+    return msg;
+  }
+
+  // ---------------- values ----------------
+
+  void writeObject(Object o) throws IOException {
+    if (o == null) {
+      writeByte(TAG_NULL);
+    } else if (o instanceof Integer) {
+      writeByte(TAG_INT);
+      writeVarLong((Integer) o);
+    } else if (o instanceof String) {
+      writeByte(TAG_STRING);
+      writeString((String) o);
+    } else if (o instanceof Boolean) {
+      writeByte(((Boolean) o) ? TAG_TRUE : TAG_FALSE);
+    } else if (o instanceof Double) {
+      writeByte(TAG_DOUBLE);
+      writeFixed64(Double.doubleToLongBits((Double) o));
+    } else if (o instanceof Long) {
+      writeByte(TAG_LONG);
+      writeVarLong((Long) o);
+    } else if (o instanceof Float) {
+      writeByte(TAG_FLOAT);
+      writeFixed32(Float.floatToIntBits((Float) o));
+    } else if (o instanceof Byte) {
+      writeByte(TAG_BYTE);
+      writeByte((Byte) o);
+    } else if (o instanceof Short) {
+      writeByte(TAG_SHORT);
+      writeVarLong((Short) o);
+    } else if (o instanceof byte[]) {
+      byte[] a = (byte[]) o;
+      writeByte(TAG_BYTES);
+      writeVarInt(a.length);
+      writeBytes(a, 0, a.length);
+    } else if (o instanceof int[]) {
+      int[] a = (int[]) o;
+      writeByte(TAG_INTS);
+      writeVarInt(a.length);
+      for (int i = 0; i < a.length; ++i) {
+        writeVarLong(a[i]);
+      }
+    } else if (o instanceof double[]) {
+      double[] a = (double[]) o;
+      writeByte(TAG_DOUBLES);
+      writeVarInt(a.length);
+      for (int i = 0; i < a.length; ++i) {
+        writeFixed64(Double.doubleToLongBits(a[i]));
+      }
+    } else if (o.getClass() == Object[].class) {
+      Object[] a = (Object[]) o;
+      writeByte(TAG_ARRAY);
+      writeVarInt(a.length);
+      for (int i = 0; i < a.length; ++i) {
+        writeObject(a[i]);
+      }
+    } else if (o instanceof SerializableImage) {
+      // the jpg bytes - not the serialized BufferedImage
+      SerializableImage img = (SerializableImage) o;
+      byte[] a = img.getBytes();
+      writeByte(TAG_IMAGE);
+      writeName(img.getSource());
+      writeVarInt(img.frameIndex);
+      writeVarLong(img.getTimestamp());
+      writeVarInt(a.length);
+      writeBytes(a, 0, a.length);
+    } else {
+      writeByte(TAG_SERIALIZED);
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(bos);
+      oos.writeObject(o);
+      oos.flush();
+      writeVarInt(bos.size());
+      writeBytes(bos.toByteArray(), 0, bos.size());
+    }
+  }
+
+  Object readObject() throws IOException, ClassNotFoundException {
+    int tag = readByte();
+    switch (tag) {
+      case TAG_NULL:
+        return null;
+      case TAG_TRUE:
+        return Boolean.TRUE;
+      case TAG_FALSE:
+        return Boolean.FALSE;
+      case TAG_INT:
+        return (int) readVarLong();
+      case TAG_LONG:
+        return readVarLong();
+      case TAG_FLOAT:
+        return Float.intBitsToFloat(readFixed32());
+      case TAG_DOUBLE:
+        return Double.longBitsToDouble(readFixed64());
+      case TAG_STRING:
+        return readString();
+      case TAG_BYTE:
+        return (byte) readByte();
+      case TAG_SHORT:
+        return (short) readVarLong();
+      case TAG_BYTES: {
+        return readBytes(readVarInt());
+      }
+      case TAG_INTS: {
+        int[] a = new int[readLength(1)];
+        for (int i = 0; i < a.length; ++i) {
+          a[i] = (int) readVarLong();
+        }
+        return a;
+      }
+      case TAG_DOUBLES: {
+        double[] a = new double[readLength(8)];
+        for (int i = 0; i < a.length; ++i) {
+          a[i] = Double.longBitsToDouble(readFixed64());
+        }
+        return a;
+      }
+      case TAG_ARRAY: {
+        Object[] a = new Object[readLength(1)];
+        for (int i = 0; i < a.length; ++i) {
+          a[i] = readObject();
+        }
+        return a;
+      }
+      case TAG_IMAGE: {
+        String source = readName();
+        int frameIndex = readVarInt();
+        long timestamp = readVarLong();
+        SerializableImage img = new SerializableImage(readBytes(readVarInt()), source, frameIndex);
+        img.setTimestamp(timestamp);
+        return img;
+      }
+      case TAG_SERIALIZED: {
+        int length = readLength(1);
+        ObjectInputStream ois = new SafeObjectInputStream(new ByteArrayInputStream(rbuf, rpos, length));
+        Object o = ois.readObject();
+        rpos += length;
+        return o;
+      }
+      default:
+        throw new IOException(String.format("unknown type tag %d", tag));
+    }
+  }
+
+  // ---------------- strings ----------------
+
+  /**
+   * names and methods - repeated constantly so they go through the dictionary
+   */
+  void writeName(String s) throws IOException {
+    if (s == null) {
+      writeVarInt(STRING_NULL);
+      return;
+    }
+    if (useDictionary) {
+      Integer index = txDictionary.get(s);
+      if (index != null) {
+        writeVarInt(STRING_INDEX + index);
+        return;
+      }
+      if (txDictionary.size() < MAX_DICTIONARY_SIZE) {
+        txDictionary.put(s, txDictionary.size());
+        writeVarInt(STRING_NEW);
+        writeUtf8(s);
+        return;
+      }
+    }
+    writeVarInt(STRING_LITERAL);
+    writeUtf8(s);
+  }
+
+  String readName() throws IOException {
+    int ref = readVarInt();
+    switch (ref) {
+      case STRING_NULL:
+        return null;
+      case STRING_LITERAL:
+        return readUtf8();
+      case STRING_NEW: {
+        String s = readUtf8();
+        rxDictionary.add(s);
+        return s;
+      }
+      default:
+        int index = ref - STRING_INDEX;
+        if (index >= rxDictionary.size()) {
+          throw new IOException(String.format("unknown dictionary index %d", index));
+        }
+        return rxDictionary.get(index);
+    }
+  }
+
+  /**
+   * payload strings - not worth a dictionary entry
+   */
+  void writeString(String s) throws IOException {
+    if (s == null) {
+      writeVarInt(STRING_NULL);
+      return;
+    }
+    writeVarInt(STRING_LITERAL);
+    writeUtf8(s);
+  }
+
+  String readString() throws IOException {
+    return readName();
+  }
+
+  void writeUtf8(String s) {
+    byte[] b = s.getBytes(StandardCharsets.UTF_8);
+    writeVarInt(b.length);
+    writeBytes(b, 0, b.length);
+  }
+
+  String readUtf8() throws IOException {
+    int length = readLength(1);
+    String s = new String(rbuf, rpos, length, StandardCharsets.UTF_8);
+    rpos += length;
+    return s;
+  }
+
+  // ---------------- primitives ----------------
+
+  void ensure(int n) {
+    if (wpos + n > wbuf.length) {
+      wbuf = Arrays.copyOf(wbuf, Math.max(wpos + n, wbuf.length * 2));
+    }
+  }
+
+  void writeByte(int b) {
+    ensure(1);
+    wbuf[wpos++] = (byte) b;
+  }
+
+  void writeBytes(byte[] b, int offset, int length) {
+    ensure(length);
+    System.arraycopy(b, offset, wbuf, wpos, length);
+    wpos += length;
+  }
+
+  void writeVarInt(int v) {
+    ensure(5);
+    while ((v & ~0x7F) != 0) {
+      wbuf[wpos++] = (byte) ((v & 0x7F) | 0x80);
+      v >>>= 7;
+    }
+    wbuf[wpos++] = (byte) v;
+  }
+
+  /**
+   * zigzag encoded so small negative numbers are small too
+   */
+  void writeVarLong(long v) {
+    ensure(10);
+    long z = (v << 1) ^ (v >> 63);
+    while ((z & ~0x7FL) != 0) {
+      wbuf[wpos++] = (byte) ((z & 0x7F) | 0x80);
+      z >>>= 7;
+    }
+    wbuf[wpos++] = (byte) z;
+  }
+
+  void writeFixed32(int v) {
+    ensure(4);
+    wbuf[wpos++] = (byte) (v >>> 24);
+    wbuf[wpos++] = (byte) (v >>> 16);
+    wbuf[wpos++] = (byte) (v >>> 8);
+    wbuf[wpos++] = (byte) v;
+  }
+
+  void writeFixed64(long v) {
+    writeFixed32((int) (v >>> 32));
+    writeFixed32((int) v);
+  }
+
+  void require(int n) throws IOException {
+    if (n < 0 || rpos + n > rlimit) {
+      throw new EOFException("truncated message");
+    }
+  }
+
+  int readByte() throws IOException {
+    require(1);
+    return rbuf[rpos++] & 0xFF;
+  }
+
+  /**
+   * a length with a sanity check against the remaining bytes
+   */
+  int readLength(int minElementSize) throws IOException {
+    int length = readVarInt();
+    require(length * minElementSize);
+    return length;
+  }
+
+  byte[] readBytes(int length) throws IOException {
+    require(length);
+    byte[] b = Arrays.copyOfRange(rbuf, rpos, rpos + length);
+    rpos += length;
+    return b;
+  }
+
+  int readVarInt() throws IOException {
+    int v = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = readByte();
+      v |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return v;
+      }
+    }
+    throw new IOException("malformed varint");
+  }
+
+  long readVarLong() throws IOException {
+    long z = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = readByte();
+      z |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return (z >>> 1) ^ -(z & 1);
+      }
+    }
+    throw new IOException("malformed varint");
+  }
+
+  int readFixed32() throws IOException {
+    require(4);
+    int v = ((rbuf[rpos] & 0xFF) << 24) | ((rbuf[rpos + 1] & 0xFF) << 16) | ((rbuf[rpos + 2] & 0xFF) << 8) | (rbuf[rpos + 3] & 0xFF);
+    rpos += 4;
+    return v;
+  }
+
+  long readFixed64() throws IOException {
+    long hi = readFixed32() & 0xFFFFFFFFL;
+    long lo = readFixed32() & 0xFFFFFFFFL;
+    return (hi << 32) | lo;
+  }
+
+}
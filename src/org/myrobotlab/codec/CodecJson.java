@@ -3,6 +3,8 @@ package org.myrobotlab.codec;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import org.myrobotlab.framework.History;
+
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
@@ -17,7 +19,7 @@ public class CodecJson implements Codec {
    * @return
    */
 
-  private transient static Gson mapper = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss.SSS").disableHtmlEscaping().create();
+  private transient static Gson mapper = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss.SSS").registerTypeAdapter(History.class, new History.JsonAdapter()).disableHtmlEscaping().create();
 
   public static final byte[] FQ_D = "d".getBytes();
 
@@ -3,6 +3,7 @@ package org.myrobotlab.codec;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import org.myrobotlab.framework.History;
 import org.myrobotlab.logging.LoggerFactory;
 import org.slf4j.Logger;
 
@@ -13,7 +14,7 @@ public class CodecMessage implements Codec {
 
   public final static Logger log = LoggerFactory.getLogger(CodecMessage.class);
 
-  private transient static Gson mapper = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss.SSS").disableHtmlEscaping().create();
+  private transient static Gson mapper = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss.SSS").registerTypeAdapter(History.class, new History.JsonAdapter()).disableHtmlEscaping().create();
 
   public static final byte[] FQ_D = "d".getBytes();
 
@@ -0,0 +1,95 @@
+package org.myrobotlab.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+
+import org.myrobotlab.framework.Message;
+
+/**
+ * The wire format of peers which predate CodecBinary - one Java serialization
+ * stream per connection, reset after every message. Used by a connection which
+ * finds CodecBinary.JAVA_HEADER instead of CodecBinary.HEADER at the start of
+ * the stream.
+ *
+ * The stream has no framing, so decodeFrame tries to read a message from what
+ * has arrived so far and leaves the buffer alone when it is not complete yet.
+ * As the peer resets its stream after every message each one can be read on
+ * its own. Classes are resolved through SafeObjectInputStream.
+ */
+public class CodecSerialized {
+
+  final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+  ObjectOutputStream oos = null;
+
+  // statistics
+  public long rxBytes = 0;
+  public long txBytes = 0;
+  public long rxCount = 0;
+  public long txCount = 0;
+
+  /**
+   * @return the stream header - must be sent before the first frame
+   */
+  public ByteBuffer encodeHeader() throws IOException {
+    oos = new ObjectOutputStream(bos);
+    oos.flush();
+    return take();
+  }
+
+  public ByteBuffer encodeFrame(Message msg) throws IOException {
+    if (oos == null) {
+      encodeHeader();
+    }
+    oos.writeObject(msg);
+    oos.reset();
+    oos.flush();
+    ++txCount;
+    return take();
+  }
+
+  ByteBuffer take() {
+    ByteBuffer frame = ByteBuffer.wrap(bos.toByteArray());
+    bos.reset();
+    txBytes += frame.remaining();
+    return frame;
+  }
+
+  /**
+   * decode the next message from a (heap) buffer in read mode - the stream
+   * header must already have been consumed
+   *
+   * @return the message or null if it is not complete yet - in which case the
+   *         position is left unchanged
+   */
+  public Message decodeFrame(ByteBuffer buf) throws IOException, ClassNotFoundException {
+    if (!buf.hasRemaining()) {
+      return null;
+    }
+    ByteArrayInputStream data = new ByteArrayInputStream(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+    Object o;
+    try {
+      SafeObjectInputStream in = new SafeObjectInputStream(new SequenceInputStream(new ByteArrayInputStream(CodecBinary.JAVA_HEADER), data));
+      o = in.readObject();
+    } catch (IOException e) {
+      // a message cut short does not always end in an EOFException - a
+      // custom readObject or block data reports it in its own way
+      if (data.available() == 0) {
+        return null;
+      }
+      throw e;
+    }
+    if (!(o instanceof Message)) {
+      throw new IOException(String.format("expected a message not %s", (o == null) ? null : o.getClass().getName()));
+    }
+    int length = buf.remaining() - data.available();
+    buf.position(buf.position() + length);
+    rxBytes += length;
+    ++rxCount;
+    return (Message) o;
+  }
+
+}
@@ -17,6 +17,7 @@ import java.util.HashSet;
 import java.util.Set;
 
 import org.apache.commons.codec.binary.Base64;
+import org.myrobotlab.framework.History;
 import org.myrobotlab.framework.MRLListener;
 import org.myrobotlab.framework.Message;
 import org.myrobotlab.logging.LoggerFactory;
@@ -64,7 +65,7 @@ public class CodecUtils {
   // private transient static Gson gson = new
   // GsonBuilder().setDateFormat("yyyy-MM-dd
   // HH:mm:ss.SSS").setPrettyPrinting().disableHtmlEscaping().create();
-  private transient static Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss.SSS").setPrettyPrinting().disableHtmlEscaping().create();
+  private transient static Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss.SSS").registerTypeAdapter(History.class, new History.JsonAdapter()).setPrettyPrinting().disableHtmlEscaping().create();
   // FIXME - switch to Jackson
 
   private static boolean initialized = false;
@@ -327,9 +328,9 @@ public class CodecUtils {
 
   public static boolean setJSONPrettyPrinting(boolean b) {
     if (b) {
-      gson = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss.SSS").setPrettyPrinting().disableHtmlEscaping().create();
+      gson = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss.SSS").registerTypeAdapter(History.class, new History.JsonAdapter()).setPrettyPrinting().disableHtmlEscaping().create();
     } else {
-      gson = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss.SSS").disableHtmlEscaping().create();
+      gson = new GsonBuilder().setDateFormat("yyyy-MM-dd HH:mm:ss.SSS").registerTypeAdapter(History.class, new History.JsonAdapter()).disableHtmlEscaping().create();
     }
     return b;
   }
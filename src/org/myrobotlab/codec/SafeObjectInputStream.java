@@ -0,0 +1,85 @@
+package org.myrobotlab.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An ObjectInputStream for objects which arrive over the network - only
+ * classes on an allow-list are resolved, so a peer can not make this process
+ * instantiate an arbitrary serializable class (deserialization gadgets).
+ * Dynamic proxies are never resolved.
+ *
+ * The list holds class names and package prefixes (ending with a '.'). Mrl's
+ * own classes, the java.lang and java.util types services are made of and a few
+ * value types are allowed - allow() adds more, e.g. for a service which keeps a
+ * third party type in a non transient field.
+ */
+public class SafeObjectInputStream extends ObjectInputStream {
+
+  static final CopyOnWriteArrayList<String> allowed = new CopyOnWriteArrayList<String>(new String[] { "org.myrobotlab.", "java.lang.", "java.util.", "java.math.", "java.net.URI", "java.net.URL",
+      "java.io.File", "java.awt.Color", "java.awt.Point", "java.awt.Rectangle", "java.awt.Dimension" });
+
+  static final String[] denied = new String[] { "java.lang.reflect.", "java.lang.invoke.", "java.lang.ProcessBuilder", "java.lang.Runtime", "java.lang.Thread", "java.lang.ClassLoader" };
+
+  public SafeObjectInputStream(InputStream in) throws IOException {
+    super(in);
+  }
+
+  /**
+   * allow a class - or all the classes of a package if name ends with a '.'
+   */
+  static public void allow(String name) {
+    allowed.addIfAbsent(name);
+  }
+
+  static public boolean isAllowed(String name) {
+    // arrays are allowed if their component type is
+    int i = 0;
+    while (i < name.length() && name.charAt(i) == '[') {
+      ++i;
+    }
+    if (i > 0) {
+      if (i == name.length()) {
+        return false;
+      }
+      if (name.charAt(i) != 'L') {
+        // primitive
+        return true;
+      }
+      name = name.substring(i + 1, name.length() - 1);
+    }
+    for (String entry : denied) {
+      if (matches(entry, name)) {
+        return false;
+      }
+    }
+    for (String entry : allowed) {
+      if (matches(entry, name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static boolean matches(String entry, String name) {
+    return entry.endsWith(".") ? name.startsWith(entry) : name.equals(entry);
+  }
+
+  @Override
+  protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+    if (!isAllowed(desc.getName())) {
+      throw new InvalidClassException(desc.getName(), "not allowed - see SafeObjectInputStream.allow");
+    }
+    return super.resolveClass(desc);
+  }
+
+  @Override
+  protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+    throw new InvalidClassException("proxy classes are not allowed");
+  }
+
+}
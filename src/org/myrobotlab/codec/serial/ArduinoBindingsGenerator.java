@@ -218,6 +218,10 @@ public class ArduinoBindingsGenerator {
       // log.info(); // hmmm "class someclass" :(
     }
 
+    // sizes the function indexed dispatch table of MrlCommDecoder
+    javaDefines.append("\t// number of function codes - size of a dispatch table indexed by function\n");
+    javaDefines.append(String.format("\tpublic final static int FUNCTION_COUNT =\t\t%d;\n\n", index));
+
     inoTemplate.append("///// INO GENERATED DEFINITION END //////\n");
     pythonTemplate.append("##### PYTHON GENERATED DEFINITION END #####\n");
 
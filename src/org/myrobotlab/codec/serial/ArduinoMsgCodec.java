@@ -386,6 +386,9 @@ public class ArduinoMsgCodec extends Codec implements Serializable {
 	// {write int int} 
 	public final static int WRITE =		72;
 
+	// number of function codes - size of a dispatch table indexed by function
+	public final static int FUNCTION_COUNT =		73;
+
 
   static {
   		byteToMethod.put(PUBLISH_MRLCOMM_ERROR,"publishMRLCommError");
@@ -165,7 +165,7 @@ public class SerialGUI extends ServiceGUI implements ActionListener, ItemListene
 
 	@Override
 	public void attachGUI() {
-		subscribe("publishRX", "publishRX", Integer.class);
+		subscribe("publishRXBytes", "publishRXBytes", byte[].class);
 		subscribe("publishTX", "publishTX", Integer.class);
 		subscribe("publishState", "getState", Serial.class);
 		subscribe("getPortNames", "onPortNames", List.class);
@@ -192,7 +192,7 @@ public class SerialGUI extends ServiceGUI implements ActionListener, ItemListene
 
 	@Override
 	public void detachGUI() {
-		unsubscribe("publishRX", "publishRX", String.class);
+		unsubscribe("publishRXBytes", "publishRXBytes", byte[].class);
 		unsubscribe("publishTX", "publishTX", String.class);
 		unsubscribe("publishState", "getState", Serial.class);
 	}
@@ -385,6 +385,29 @@ public class SerialGUI extends ServiceGUI implements ActionListener, ItemListene
 		rxTotal.setText(String.format("%d", rxCount));
 	}
 
+	/**
+	 * a coalesced chunk of received bytes - formatted and appended to the
+	 * display at once rather than a byte at a time
+	 * 
+	 * @param data
+	 * @throws BadLocationException
+	 */
+	public final void publishRXBytes(final byte[] data) throws BadLocationException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < data.length; ++i) {
+			String formatted = rxFormatter.decode(data[i] & 0xff);
+			if (formatted != null) {
+				sb.append(formatted);
+			}
+		}
+		rxCount += data.length;
+		rx.append(sb.toString());
+		if (rx.getLineCount() > 50) {
+			rx.getDocument().remove(0, rx.getLineEndOffset(rx.getLineCount() - 51));
+		}
+		rxTotal.setText(String.format("%d", rxCount));
+	}
+
 	public final void publishTX(final Integer data) {
 		++txCount;
 		tx.append(txFormatter.decode(data));
@@ -0,0 +1,421 @@
+package org.myrobotlab.framework;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * DispatchTable is a per-class table of pre-resolved MethodHandles used by
+ * Service.invokeOn. It is built once for a class (typically when the service
+ * is registered) and holds an entry for every public method keyed by (method
+ * name, parameter classes).
+ *
+ * Every handle is adapted to the generic shape (Object target, Object[] args)
+ * -&gt; Object so a message can be dispatched with a single hash probe followed
+ * by an invokeExact. Boxing, unboxing and primitive widening are done by the
+ * handle's adapter. When a message arrives with argument classes which do not
+ * exactly match a declared signature (sub-classes, boxed primitives, nulls) the
+ * table is searched once for the most specific compatible method and the
+ * result is cached under the runtime key, so subsequent messages are a single
+ * probe too. The cache of runtime keys is bounded - it is cleared when it grows
+ * past MAX_RESOLVED, e.g. when messages keep naming methods which don't exist.
+ *
+ * Methods a handle can't be created for are invoked with reflection.
+ */
+public class DispatchTable {
+
+  public final static Logger log = LoggerFactory.getLogger(DispatchTable.class);
+
+  /**
+   * pre-resolved method handle and its adapter
+   */
+  public static class Entry {
+    public final Method method;
+    /**
+     * handle of type (Object, Object[])Object - null if the method is invoked
+     * with reflection
+     */
+    public final MethodHandle invoker;
+
+    Entry(Method method, MethodHandle invoker) {
+      this.method = method;
+      this.invoker = invoker;
+    }
+
+    /**
+     * invokes the method - Errors are passed on, anything else the method
+     * throws is an Exception
+     */
+    public Object invoke(Object obj, Object[] params) throws Exception {
+      if (invoker == null) {
+        try {
+          return method.invoke(obj, params);
+        } catch (InvocationTargetException e) {
+          Throwable target = e.getCause();
+          if (target instanceof Exception) {
+            throw (Exception) target;
+          }
+          if (target instanceof Error) {
+            throw (Error) target;
+          }
+          throw e;
+        }
+      }
+      try {
+        return (Object) invoker.invokeExact(obj, params);
+      } catch (Exception e) {
+        throw e;
+      } catch (Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new InvocationTargetException(t);
+      }
+    }
+  }
+
+  static final class Key {
+    final String name;
+    final Class<?>[] types;
+    final int hash;
+
+    Key(String name, Class<?>[] types) {
+      this.name = name;
+      this.types = types;
+      this.hash = 31 * name.hashCode() + Arrays.hashCode(types);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (this == other) {
+        return true;
+      }
+      if (!(other instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) other;
+      return hash == that.hash && name.equals(that.name) && Arrays.equals(types, that.types);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  static final Class<?>[] NO_TYPES = new Class<?>[0];
+
+  /**
+   * cached result of a search which found no compatible method - so we don't
+   * search again
+   */
+  static final Entry NOT_FOUND = new Entry(null, null);
+
+  /**
+   * max runtime keys cached per class
+   */
+  static final int MAX_RESOLVED = 512;
+
+  /**
+   * deterministic order of overloads - independent of the order getMethods
+   * returns them in
+   */
+  static final Comparator<Entry> BY_SIGNATURE = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry a, Entry b) {
+      return a.method.toGenericString().compareTo(b.method.toGenericString());
+    }
+  };
+
+  static final Map<Class<?>, Class<?>> boxes = new HashMap<Class<?>, Class<?>>();
+
+  static {
+    boxes.put(boolean.class, Boolean.class);
+    boxes.put(byte.class, Byte.class);
+    boxes.put(char.class, Character.class);
+    boxes.put(short.class, Short.class);
+    boxes.put(int.class, Integer.class);
+    boxes.put(long.class, Long.class);
+    boxes.put(float.class, Float.class);
+    boxes.put(double.class, Double.class);
+  }
+
+  static final ConcurrentHashMap<Class<?>, DispatchTable> tables = new ConcurrentHashMap<Class<?>, DispatchTable>();
+
+  final Class<?> clazz;
+
+  /**
+   * all public methods grouped by name - used to resolve keys which do not
+   * exactly match a declared signature
+   */
+  final HashMap<String, List<Entry>> byName = new HashMap<String, List<Entry>>();
+
+  /**
+   * the declared signatures - with primitives boxed - built once
+   */
+  final HashMap<Key, Entry> table = new HashMap<Key, Entry>();
+
+  /**
+   * runtime keys which are not a declared signature - bounded
+   */
+  final ConcurrentHashMap<Key, Entry> resolved = new ConcurrentHashMap<Key, Entry>();
+
+  /**
+   * returns the dispatch table for a class, building it if it does not exist
+   *
+   * @param clazz
+   * @return
+   */
+  public static DispatchTable getInstance(Class<?> clazz) {
+    DispatchTable dt = tables.get(clazz);
+    if (dt == null) {
+      dt = new DispatchTable(clazz);
+      DispatchTable existing = tables.putIfAbsent(clazz, dt);
+      if (existing != null) {
+        dt = existing;
+      }
+    }
+    return dt;
+  }
+
+  DispatchTable(Class<?> clazz) {
+    this.clazz = clazz;
+    MethodHandles.Lookup lookup = MethodHandles.lookup();
+    Method[] methods = clazz.getMethods();
+    for (int i = 0; i < methods.length; ++i) {
+      Method m = methods[i];
+      if (m.isBridge()) {
+        // the covariant override it bridges to is in the list too
+        continue;
+      }
+      Entry entry = null;
+      try {
+        entry = new Entry(m, adapt(lookup, m));
+      } catch (Exception e) {
+        // could be a public method on a non-public class - it is invoked with
+        // reflection
+        log.debug("could not create method handle for {}.{} - {}", clazz.getSimpleName(), m.getName(), e.getMessage());
+        entry = new Entry(m, null);
+      }
+
+      List<Entry> overloads = byName.get(m.getName());
+      if (overloads == null) {
+        overloads = new ArrayList<Entry>();
+        byName.put(m.getName(), overloads);
+      }
+      overloads.add(entry);
+    }
+
+    // overloads which only differ in primitive vs boxed parameters share a
+    // key - the key gets the one a boxed argument matches best
+    for (List<Entry> overloads : byName.values()) {
+      Collections.sort(overloads, BY_SIGNATURE);
+      for (Entry entry : overloads) {
+        Key key = new Key(entry.method.getName(), box(entry.method.getParameterTypes()));
+        if (!table.containsKey(key)) {
+          table.put(key, resolve(key));
+        }
+      }
+    }
+    log.debug("built dispatch table for {} with {} methods", clazz.getSimpleName(), table.size());
+  }
+
+  static MethodHandle adapt(MethodHandles.Lookup lookup, Method m) throws IllegalAccessException {
+    m.setAccessible(true);
+    int arity = m.getParameterTypes().length;
+    MethodHandle mh = lookup.unreflect(m).asFixedArity();
+    if (Modifier.isStatic(m.getModifiers())) {
+      // static methods ignore the target
+      mh = MethodHandles.dropArguments(mh, 0, Object.class);
+    }
+    return mh.asType(MethodType.genericMethodType(arity + 1)).asSpreader(Object[].class, arity);
+  }
+
+  static Class<?>[] box(Class<?>[] types) {
+    Class<?>[] ret = new Class<?>[types.length];
+    for (int i = 0; i < types.length; ++i) {
+      ret[i] = (types[i].isPrimitive()) ? boxes.get(types[i]) : types[i];
+    }
+    return ret;
+  }
+
+  static Class<?>[] getTypes(Object[] params) {
+    if (params == null || params.length == 0) {
+      return NO_TYPES;
+    }
+    Class<?>[] types = new Class<?>[params.length];
+    for (int i = 0; i < params.length; ++i) {
+      types[i] = (params[i] == null) ? null : params[i].getClass();
+    }
+    return types;
+  }
+
+  /**
+   * rank of primitive types for widening conversion - a lower rank can be
+   * widened to a higher one
+   */
+  static int rank(Class<?> boxed) {
+    if (boxed == Byte.class) {
+      return 1;
+    } else if (boxed == Short.class || boxed == Character.class) {
+      return 2;
+    } else if (boxed == Integer.class) {
+      return 3;
+    } else if (boxed == Long.class) {
+      return 4;
+    } else if (boxed == Float.class) {
+      return 5;
+    } else if (boxed == Double.class) {
+      return 6;
+    }
+    return 0;
+  }
+
+  /**
+   * can an argument of class argType be passed to a parameter of type
+   * paramType - null arguments can be passed to any reference type
+   */
+  static boolean isCompatible(Class<?> paramType, Class<?> argType) {
+    if (argType == null) {
+      return !paramType.isPrimitive();
+    }
+    if (!paramType.isPrimitive()) {
+      return paramType.isAssignableFrom(argType);
+    }
+    Class<?> boxed = boxes.get(paramType);
+    if (boxed == argType) {
+      return true;
+    }
+    // primitive widening e.g. Integer -> double
+    int from = rank(argType);
+    int to = rank(boxed);
+    if (from == 0 || to == 0 || boxed == Character.class || argType == Character.class && to == 2) {
+      return false;
+    }
+    return from < to;
+  }
+
+  static boolean isApplicable(Entry entry, Class<?>[] types) {
+    Class<?>[] paramTypes = entry.method.getParameterTypes();
+    if (paramTypes.length != types.length) {
+      return false;
+    }
+    for (int j = 0; j < paramTypes.length; ++j) {
+      if (!isCompatible(paramTypes[j], types[j])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * every parameter of a could be passed to the same parameter of b
+   */
+  static boolean isMoreSpecific(Entry a, Entry b) {
+    Class<?>[] pa = a.method.getParameterTypes();
+    Class<?>[] pb = b.method.getParameterTypes();
+    for (int i = 0; i < pa.length; ++i) {
+      Class<?> from = (pa[i].isPrimitive()) ? boxes.get(pa[i]) : pa[i];
+      if (!isCompatible(pb[i], from)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static int countPrimitives(Entry entry) {
+    int ret = 0;
+    for (Class<?> type : entry.method.getParameterTypes()) {
+      if (type.isPrimitive()) {
+        ++ret;
+      }
+    }
+    return ret;
+  }
+
+  /**
+   * the most specific applicable overload - like javac, except arguments are
+   * always boxed, so of int and Integer parameters the Integer one is the exact
+   * match. What is left ambiguous is decided by signature order, so the result
+   * never depends on the order of getMethods.
+   */
+  Entry resolve(Key key) {
+    List<Entry> overloads = byName.get(key.name);
+    if (overloads == null) {
+      return NOT_FOUND;
+    }
+    Entry best = null;
+    for (int i = 0; i < overloads.size(); ++i) {
+      Entry entry = overloads.get(i);
+      if (!isApplicable(entry, key.types)) {
+        continue;
+      }
+      if (best == null) {
+        best = entry;
+        continue;
+      }
+      boolean entryFirst = isMoreSpecific(entry, best);
+      boolean bestFirst = isMoreSpecific(best, entry);
+      if (entryFirst && !bestFirst) {
+        best = entry;
+      } else if (entryFirst == bestFirst) {
+        // same parameters up to boxing - or unrelated
+        if (countPrimitives(entry) < countPrimitives(best)) {
+          best = entry;
+        } else if (!entryFirst && log.isDebugEnabled()) {
+          log.debug("ambiguous {}.{} - using {}", clazz.getSimpleName(), key.name, best.method);
+        }
+      }
+    }
+    return (best == null) ? NOT_FOUND : best;
+  }
+
+  /**
+   * finds the entry for a method name and the runtime classes of the
+   * parameters
+   *
+   * @param method
+   * @param params
+   * @return the entry or null if no compatible public method exists
+   */
+  public Entry getEntry(String method, Object[] params) {
+    Key key = new Key(method, getTypes(params));
+    Entry entry = table.get(key);
+    if (entry == null) {
+      entry = resolved.get(key);
+    }
+    if (entry == null) {
+      entry = resolve(key);
+      if (resolved.size() >= MAX_RESOLVED) {
+        resolved.clear();
+      }
+      resolved.putIfAbsent(key, entry);
+      if (entry != NOT_FOUND && log.isDebugEnabled()) {
+        log.debug("resolved {}.{} to {}", clazz.getSimpleName(), method, entry.method);
+      }
+    }
+    return (entry == NOT_FOUND) ? null : entry;
+  }
+
+  public Class<?> getDispatchClass() {
+    return clazz;
+  }
+
+  public int size() {
+    return table.size() + resolved.size();
+  }
+
+}
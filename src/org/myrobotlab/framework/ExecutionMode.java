@@ -0,0 +1,15 @@
+package org.myrobotlab.framework;
+
+/**
+ * How a service runs its inbox loop and outbox dispatcher.
+ * 
+ * DEDICATED - each gets its own thread (the original behavior)
+ * 
+ * SHARED - they run as serial tasks on a shared work-stealing pool (see
+ * SerialExecutor), messages are still processed one at a time and in order.
+ * Services whose methods block for a long time (sleeps, sendBlocking, device
+ * reads) should stay DEDICATED so they don't starve the pool.
+ */
+public enum ExecutionMode {
+  DEDICATED, SHARED
+}
@@ -0,0 +1,156 @@
+package org.myrobotlab.framework;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+
+/**
+ * The routing history of a message - the services it has passed through. Used
+ * to prevent messages from looping endlessly.
+ * 
+ * A message rarely passes through more than 2 or 3 services so the history is
+ * kept as a small array of interned service ids (see ServiceIds) which is
+ * scanned linearly - cheaper than hashing strings into a HashSet for every
+ * delivery. Names which are not interned - services of another process - are
+ * kept as strings, so foreign messages can't grow the id table. Java
+ * serialization and JSON (see JsonAdapter) carry the names so the history is
+ * valid in another process.
+ */
+public class History implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * an interned id, or -(index + 1) of a name in others
+   */
+  transient int[] ids = null;
+  transient int size = 0;
+  transient String[] others = null;
+  transient int otherCount = 0;
+
+  public boolean contains(String name) {
+    int id = ServiceIds.findId(name);
+    if (id > 0) {
+      for (int i = 0; i < size; ++i) {
+        if (ids[i] == id) {
+          return true;
+        }
+      }
+    }
+    // may have been added before it was interned
+    for (int i = 0; i < otherCount; ++i) {
+      if (others[i].equals(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public void add(String name) {
+    if (name == null || contains(name)) {
+      return;
+    }
+    if (ids == null) {
+      ids = new int[2];
+    } else if (size == ids.length) {
+      ids = Arrays.copyOf(ids, size * 2);
+    }
+    int id = ServiceIds.findId(name);
+    if (id <= 0) {
+      if (others == null) {
+        others = new String[2];
+      } else if (otherCount == others.length) {
+        others = Arrays.copyOf(others, otherCount * 2);
+      }
+      others[otherCount++] = name;
+      id = -otherCount;
+    }
+    ids[size++] = id;
+  }
+
+  public void clear() {
+    size = 0;
+    otherCount = 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the name of the index'th service passed through
+   */
+  public String get(int index) {
+    int id = ids[index];
+    return (id > 0) ? ServiceIds.getName(id) : others[-id - 1];
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < size; ++i) {
+      if (i > 0) {
+        sb.append(", ");
+      }
+      sb.append(get(i));
+    }
+    return sb.append("]").toString();
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    out.writeInt(size);
+    for (int i = 0; i < size; ++i) {
+      out.writeUTF(get(i));
+    }
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    int count = in.readInt();
+    for (int i = 0; i < count; ++i) {
+      add(in.readUTF());
+    }
+  }
+
+  /**
+   * the JSON form - an array of the names. Register it on a GsonBuilder which
+   * encodes messages, otherwise the history is lost.
+   */
+  public static class JsonAdapter implements JsonSerializer<History>, JsonDeserializer<History> {
+
+    @Override
+    public JsonElement serialize(History history, Type type, JsonSerializationContext context) {
+      JsonArray names = new JsonArray();
+      for (int i = 0; i < history.size(); ++i) {
+        names.add(new JsonPrimitive(history.get(i)));
+      }
+      return names;
+    }
+
+    @Override
+    public History deserialize(JsonElement json, Type type, JsonDeserializationContext context) throws JsonParseException {
+      if (!json.isJsonArray()) {
+        throw new JsonParseException(String.format("history must be an array of names not %s", json));
+      }
+      History history = new History();
+      for (JsonElement name : json.getAsJsonArray()) {
+        history.add(name.getAsString());
+      }
+      return history;
+    }
+  }
+
+}
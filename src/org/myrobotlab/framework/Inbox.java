@@ -25,10 +25,12 @@
 
 package org.myrobotlab.framework;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.myrobotlab.logging.LoggerFactory;
 import org.slf4j.Logger;
@@ -40,14 +42,22 @@ public class Inbox implements Serializable {
   public final static Logger log = LoggerFactory.getLogger(Inbox.class.getCanonicalName());
 
   String name;
-  LinkedList<Message> msgBox = new LinkedList<Message>();
+  transient MessageQueue msgBox;
   boolean isRunning = false;
   boolean bufferOverrun = false;
-  boolean blocking = false;
   int maxQueue = 1024; // will need to adjust unit test if you change this
   // value
 
-  HashMap<Long, Object[]> blockingList = new HashMap<Long, Object[]>();
+  /**
+   * replies being waited for by sendAsync / sendBlocking - keyed by msgId
+   */
+  ConcurrentHashMap<Long, CompletableFuture<Object>> blockingList = new ConcurrentHashMap<Long, CompletableFuture<Object>>();
+
+  /**
+   * signaled when a message is added - set when the service runs in
+   * ExecutionMode.SHARED
+   */
+  transient SerialExecutor executor = null;
 
   public Inbox() {
     this("Inbox");
@@ -55,40 +65,51 @@ public class Inbox implements Serializable {
 
   public Inbox(String name) {
     this.name = name;
+    msgBox = createMsgBox();
+  }
+
+  MessageQueue createMsgBox() {
+    return new RingBufferQueue(String.format("%s.inbox", name), maxQueue, OverflowPolicy.DROP_NEWEST);
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    msgBox = createMsgBox();
   }
 
   public void add(Message msg) {
-    if ((msg.historyList.contains(name))) {
+    if (msg.hasVisited(name)) {
       log.error(String.format("* %s dumping duplicate message %s.%s msgid - %d %s", name, msg.name, msg.method, msg.msgId, msg.historyList));
       return;
     }
 
-    msg.historyList.add(name);
+    msg.addHistory(name);
 
-    synchronized (msgBox) {
-      while (blocking && msgBox.size() == maxQueue) // queue "full"
-      {
-        try {
-          msgBox.wait();
-        } catch (InterruptedException ex) {
-          log.debug("inbox enque msg INTERRUPTED " + name);
-        }
+    // replies complete their future directly - they are never queued, so a
+    // service waiting in sendBlocking on its own inbox thread still gets them
+    if (Message.RETURN.equals(msg.status)) {
+      if (!returnBlocking(msg) && log.isDebugEnabled()) {
+        log.debug(String.format("%s dropping late reply %s.%s msgid - %d", name, msg.sender, msg.method, msg.msgId));
       }
+      return;
+    }
 
-      if (msgBox.size() > maxQueue) {
-        bufferOverrun = true;
-        log.warn(String.format("%s inbox BUFFER OVERRUN dumping msg size %d - %s", name, msgBox.size(), msg.method));
-      } else {
-        msgBox.addFirst(msg);
-        // Logging.logTime(String.format("inbox - %s size %d", name,
-        // msgBox.size()));
-        if (log.isDebugEnabled()) {
-          log.debug(String.format("%s.msgBox + 1 = %d", name, msgBox.size()));
-        }
-        msgBox.notifyAll(); // must own the lock
+    // a message which made an older one drop is queued all the same - the
+    // drop count is in the stats
+    if (msgBox.offer(msg).isQueued()) {
+      bufferOverrun = false;
+      if (log.isDebugEnabled()) {
+        log.debug(String.format("%s.msgBox + 1 = %d", name, msgBox.size()));
+      }
+      SerialExecutor e = executor;
+      if (e != null) {
+        e.signal();
       }
+    } else if (!bufferOverrun) {
+      // warn once per overrun - the drop count is in the stats
+      bufferOverrun = true;
+      log.warn(String.format("%s inbox BUFFER OVERRUN %s msg size %d - %s", name, msgBox.getOverflowPolicy(), msgBox.size(), msg.method));
     }
-
   }
 
   public void clear() {
@@ -129,53 +150,101 @@ public class Inbox implements Serializable {
 
     Message msg = null;
 
-    synchronized (msgBox) {
-
-      while (msg == null) { // while no messages && no messages that are
-        // blocking
-        if (msgBox.size() == 0) {
-          // log.debug("Inbox WAITING " + name);
-          msgBox.wait(); // must own the lock
-        } else {
-          msg = msgBox.removeLast();
-          log.debug(String.format("%s.msgBox -1 %d", name, msgBox.size()));
-
-          // --- sendBlocking support begin --------------------
-          // TODO - possible safety check msg.status == Message.RETURN
-          // &&
-          if (blockingList.containsKey(msg.msgId)) {
-            Object[] returnContainer = blockingList.get(msg.msgId);
-            if (msg.data == null) // TODO - don't know if this is
-            // correct but this works for
-            // null data now
-            {
-              returnContainer[0] = null;
-            } else {
-              returnContainer[0] = msg.data[0]; // transferring
-              // return data !
-            }
-            synchronized (returnContainer) {
-              blockingList.remove(msg.msgId);
-              returnContainer.notify(); // addListener sender
-            }
-            msg = null; // do not invoke this msg - sendBlocking has
-            // been notified data returned
-          }
-          // --- sendBlocking support end --------------------
-
-        }
+    while (msg == null) { // while no messages && no messages that are
+      // blocking
+      msg = msgBox.take();
+      if (log.isDebugEnabled()) {
+        log.debug(String.format("%s.msgBox -1 %d", name, msgBox.size()));
       }
-      msgBox.notifyAll();
     }
     return msg;
   }
 
+  /**
+   * non-blocking getMsg
+   * 
+   * @return the next Message or null if there is none waiting
+   */
+  public Message pollMsg() {
+    return msgBox.poll();
+  }
+
+  /**
+   * registers a reply to wait for
+   * 
+   * @param msgId
+   *          id of the request
+   * @return the future completed by the reply
+   */
+  public CompletableFuture<Object> expectReply(long msgId) {
+    CompletableFuture<Object> future = new CompletableFuture<Object>();
+    blockingList.put(msgId, future);
+    return future;
+  }
+
+  /**
+   * stop waiting for a reply - e.g. on a timeout
+   */
+  public void cancelReply(long msgId) {
+    blockingList.remove(msgId);
+  }
+
+  /**
+   * hands the return data to a waiting sendAsync / sendBlocking call
+   * 
+   * @return true if the message was an expected reply
+   */
+  boolean returnBlocking(Message msg) {
+    CompletableFuture<Object> future = blockingList.remove(msg.msgId);
+    if (future == null) {
+      return false;
+    }
+    // TODO - don't know if this is correct but this works for null data now
+    future.complete((msg.data == null || msg.data.length == 0) ? null : msg.data[0]);
+    return true;
+  }
+
+  public void setExecutor(SerialExecutor executor) {
+    this.executor = executor;
+  }
+
+  public MessageQueue getMsgBox() {
+    return msgBox;
+  }
+
+  /**
+   * replace the queue implementation - messages in the current queue are moved
+   * to the new one
+   * 
+   * @param queue
+   */
+  public void setMsgBox(MessageQueue queue) {
+    MessageQueue old = msgBox;
+    msgBox = queue;
+    Message msg = null;
+    while ((msg = old.poll()) != null) {
+      queue.offer(msg);
+    }
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return msgBox.getOverflowPolicy();
+  }
+
+  public void setOverflowPolicy(OverflowPolicy policy) {
+    msgBox.setOverflowPolicy(policy);
+  }
+
+  public QueueStats getStats() {
+    return msgBox.getStats();
+  }
+
   public boolean isBufferOverrun() {
     return bufferOverrun;
   }
 
   public void setBlocking(boolean toBlock) {
-    blocking = toBlock;
+    msgBox.setOverflowPolicy((toBlock) ? OverflowPolicy.BLOCK : OverflowPolicy.DROP_NEWEST);
   }
 
   public int size() {
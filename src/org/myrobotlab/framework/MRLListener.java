@@ -69,6 +69,11 @@ public final class MRLListener implements Serializable {
    */
   public String callbackMethod;
 
+  /**
+   * interned id of callbackName - resolved on first use
+   */
+  transient private int callbackId = 0;
+
   private int _hashCode = 0;
 
   public MRLListener(String topicMethod, String callbackName, String callbackMethod) {
@@ -93,6 +98,13 @@ public final class MRLListener implements Serializable {
     return _hashCode;
   }
 
+  final public int getCallbackId() {
+    if (callbackId == 0 && callbackName != null) {
+      callbackId = ServiceIds.getId(callbackName);
+    }
+    return callbackId;
+  }
+
   /*
    * Default format was xml is now JSON TODO - make toStringStyler like spring
    */
@@ -27,7 +27,6 @@ package org.myrobotlab.framework;
 
 import java.io.Serializable;
 import java.util.HashMap;
-import java.util.HashSet;
 
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.logging.Level;
@@ -72,9 +71,12 @@ public class Message implements Serializable {
    * ArrayList is quicker than HashSet on small sets
    * http://www.javacodegeeks.com
    * /2010/08/java-best-practices-vector-arraylist.html
+   * 
+   * null until the message is first delivered to an Inbox - copies made for
+   * each subscriber of a broadcast don't pay for a history they may never need
    */
   // public ArrayList<RoutingEntry> historyList;
-  public HashSet<String> historyList;
+  public History historyList;
   public HashMap<String, String> security;
   /*
    * @Override public int hashCode() { final int prime = 31; int result = 1;
@@ -128,6 +130,14 @@ public class Message implements Serializable {
    */
   public Object[] data;
 
+  /**
+   * interned id (ServiceIds) of the destination when it is already known - lets
+   * local sends index the registry directly instead of looking up the name. 0
+   * is unresolved. It is not copied with the message and must be set together
+   * with name.
+   */
+  transient public int targetId;
+
   /**
    * TODO - this needs to be a POJO - remove main to a JUnit Test !!
    * 
@@ -154,7 +164,6 @@ public class Message implements Serializable {
     name = new String(); // FIXME - allow NULL !
     sender = new String(); // FIXME - allow NULL !
     sendingMethod = new String();
-    historyList = new HashSet<String>();
     method = new String();
   }
 
@@ -170,6 +179,25 @@ public class Message implements Serializable {
     return name;
   }
 
+  /**
+   * @param name
+   * @return true if the message has already passed through the named service
+   */
+  public boolean hasVisited(String name) {
+    return historyList != null && historyList.contains(name);
+  }
+
+  public void addHistory(String name) {
+    if (historyList == null) {
+      historyList = new History();
+    }
+    historyList.add(name);
+  }
+
+  public void clearHistory() {
+    historyList = null;
+  }
+
   final public void set(final Message other) {
     msgId = other.msgId;
     name = other.getName();
@@ -178,7 +206,7 @@ public class Message implements Serializable {
     // FIXED - not valid making a copy of a message
     // to send and copying there history list
     // historyList = other.historyList;
-    historyList = new HashSet<String>();
+    historyList = null;
     status = other.status;
     msgType = other.msgType;
     method = other.method;
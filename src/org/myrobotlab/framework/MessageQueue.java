@@ -0,0 +1,69 @@
+package org.myrobotlab.framework;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue of messages used by the Inbox and Outbox. Implementations are bounded
+ * and apply an OverflowPolicy when full.
+ */
+public interface MessageQueue {
+
+  /**
+   * enqueue a message - applying the overflow policy if the queue is full
+   * 
+   * @param msg
+   * @return whether the message was queued and if another one was dropped for
+   *         it
+   */
+  public OfferResult offer(Message msg);
+
+  /**
+   * enqueue a message - waiting for space regardless of the overflow policy
+   * 
+   * @param msg
+   * @throws InterruptedException
+   */
+  public void put(Message msg) throws InterruptedException;
+
+  /**
+   * enqueue a message if there is space - never waits or drops
+   * 
+   * @param msg
+   * @return false if the queue is full
+   */
+  public boolean tryOffer(Message msg);
+
+  /**
+   * @return the next message or null if the queue is empty
+   */
+  public Message poll();
+
+  /**
+   * waits up to the timeout for a message
+   * 
+   * @return the next message or null if the timeout expired
+   */
+  public Message poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+  /**
+   * blocks until a message is available
+   */
+  public Message take() throws InterruptedException;
+
+  public int size();
+
+  public int capacity();
+
+  public void clear();
+
+  public OverflowPolicy getOverflowPolicy();
+
+  public void setOverflowPolicy(OverflowPolicy policy);
+
+  /**
+   * snapshot of the queue's counters - rates are calculated from the previous
+   * snapshot
+   */
+  public QueueStats getStats();
+
+}
@@ -0,0 +1,32 @@
+package org.myrobotlab.framework;
+
+/**
+ * what MessageQueue.offer did with a message
+ */
+public enum OfferResult {
+  /**
+   * the message was queued
+   */
+  QUEUED,
+  /**
+   * the message was queued - the oldest queued message was dropped to make
+   * space for it
+   */
+  QUEUED_DROPPED_OLDEST,
+  /**
+   * the message replaced a queued message with the same destination and
+   * method
+   */
+  COALESCED,
+  /**
+   * the message was not queued - the queue was full
+   */
+  DROPPED;
+
+  /**
+   * the message is in the queue - on its own or coalesced into a queued one
+   */
+  public boolean isQueued() {
+    return this != DROPPED;
+  }
+}
@@ -25,13 +25,15 @@
 
 package org.myrobotlab.framework;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.logging.Logging;
 import org.myrobotlab.service.interfaces.CommunicationInterface;
 import org.myrobotlab.service.interfaces.NameProvider;
 import org.slf4j.Logger;
@@ -55,52 +57,133 @@ public class Outbox implements Runnable, Serializable {
   static public final String PROCESSANDBROADCAST = "PROCESSANDBROADCAST";
 
   NameProvider myService = null;
-  LinkedList<Message> msgBox = new LinkedList<Message>();
+  transient MessageQueue msgBox;
   private boolean isRunning = false;
-  private boolean blocking = false;
+  private boolean bufferOverrun = false;
   int maxQueue = 1024;
-  int initialThreadCount = 1;
+  /**
+   * number of threads delivering messages - with 1 the outbox thread delivers
+   * everything itself, with more the deliveries are striped onto lanes
+   */
+  int threadCount = 1;
+
+  ExecutionMode executionMode = ExecutionMode.DEDICATED;
+  /**
+   * runs the dispatcher in ExecutionMode.SHARED
+   */
+  transient SerialExecutor executor = null;
   transient ArrayList<Thread> outboxThreadPool = new ArrayList<Thread>();
+  transient Lane[] lanes = null;
 
   public HashMap<String, ArrayList<MRLListener>> notifyList = new HashMap<String, ArrayList<MRLListener>>();
   CommunicationInterface comm = null;
 
+  /**
+   * A single threaded delivery lane. A (sending method, destination) pair
+   * always hashes to the same lane, so its messages keep their FIFO order,
+   * while a slow subscriber only holds up the pairs which share its lane.
+   */
+  class Lane implements Runnable {
+    final MessageQueue queue;
+    SerialExecutor executor = null;
+
+    Lane(int index) {
+      queue = new RingBufferQueue(String.format("%s.outbox.lane.%d", myService.getName(), index), maxQueue, OverflowPolicy.BLOCK);
+    }
+
+    @Override
+    public void run() {
+      while (isRunning) {
+        Message msg = null;
+        try {
+          msg = queue.take();
+        } catch (InterruptedException e) {
+          log.debug("outbox lane INTERRUPTED ");
+          return;
+        }
+        send(msg);
+      }
+    }
+
+    void send(Message msg) {
+      try {
+        comm.send(msg);
+      } catch (Exception e) {
+        log.error(String.format("%s outbox lane could not send %s.%s", myService.getName(), msg.name, msg.method));
+        Logging.logError(e);
+      }
+    }
+  }
+
   public Outbox(NameProvider myService) {
     this.myService = myService;
+    msgBox = createMsgBox();
+  }
+
+  /**
+   * a full outbox holds up the publisher - dropping is opt-in with
+   * setBlocking(false) or setOverflowPolicy
+   */
+  MessageQueue createMsgBox() {
+    return new RingBufferQueue(String.format("%s.outbox", myService.getName()), maxQueue, OverflowPolicy.BLOCK);
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    msgBox = createMsgBox();
+    outboxThreadPool = new ArrayList<Thread>();
   }
 
-  // TODO - config to put message in block mode - with no buffer overrun
-  // TODO - config to drop message without buffer overrun e.g. like UDP
   public void add(Message msg) {
     // chase network bugs
     // log.error(String.format("%s.outbox.add(msg) %s.%s --> %s.%s",
     // myService.getName(), msg.sender, msg.sendingMethod, msg.name,
     // msg.method));
-    synchronized (msgBox) {
-      while (blocking && msgBox.size() == maxQueue) {
-        // queue "full"
-        try {
-          // log.debug("outbox enque msg WAITING ");
-          msgBox.wait(); // Limit the size
-        } catch (InterruptedException ex) {
-          log.debug("outbox add enque msg INTERRUPTED ");
-        }
-      }
+    offer(msg);
+  }
 
-      // we warn if over 10 messages are in the queue - but we will still
-      // process them
-      if (msgBox.size() > maxQueue) {
-        log.warn(String.format("%s outbox BUFFER OVERRUN size %d", myService.getName(), msgBox.size()));
-      }
-      msgBox.addFirst(msg);
+  private boolean offer(Message msg) {
+    // a message which made an older one drop is queued all the same - the
+    // drop count is in the stats
+    if (msgBox.offer(msg).isQueued()) {
+      queued(msg);
+      return true;
+    }
+    if (!bufferOverrun) {
+      // warn once per overrun - the drop count is in the stats
+      bufferOverrun = true;
+      log.warn(String.format("%s outbox BUFFER OVERRUN %s size %d", myService.getName(), msgBox.getOverflowPolicy(), msgBox.size()));
+    }
+    return false;
+  }
 
-      // Logging.logTime(String.format("outbox %s size %d",myService.getName(),
-      // msgBox.size()));
+  /**
+   * add for threads which must never wait - an event loop. Where add would
+   * hold up the caller (a full outbox with the BLOCK policy) the message is
+   * not queued and the caller keeps it to try again, otherwise it is the same
+   * as add.
+   * 
+   * @return false if the message was not queued because the outbox is full
+   */
+  public boolean tryAdd(Message msg) {
+    if (msgBox.getOverflowPolicy() != OverflowPolicy.BLOCK) {
+      return offer(msg);
+    }
+    if (!msgBox.tryOffer(msg)) {
+      return false;
+    }
+    queued(msg);
+    return true;
+  }
 
-      if (log.isDebugEnabled()) {
-        log.debug(String.format("msg [%s]", msg.toString()));
-      }
-      msgBox.notifyAll(); // must own the lock
+  private void queued(Message msg) {
+    bufferOverrun = false;
+    if (log.isDebugEnabled()) {
+      log.debug(String.format("msg [%s]", msg.toString()));
+    }
+    SerialExecutor e = executor;
+    if (e != null) {
+      e.signal();
     }
   }
 
@@ -108,78 +191,102 @@ public class Outbox implements Runnable, Serializable {
     return comm;
   }
 
-  // FIXME - consider using a blocking queue now that we are using Java 5.0
   @Override
   public void run() {
     isRunning = true;
     while (isRunning) {
       Message msg = null;
-      synchronized (msgBox) {
-        try {
-          while (msgBox.size() == 0) {
-            // log.debug("outbox run WAITING ");
-            msgBox.wait(); // must own the lock
-          }
-        } catch (InterruptedException ex) {
-          log.debug("outbox run INTERRUPTED ");
-          // msgBox.notifyAll();
-          isRunning = false;
-          return;
-        }
-        msg = msgBox.removeLast();
-        // chase network bugs
-        // log.error(String.format("%s.outbox.run(msg) %s.%s -- %s.%s ",
-        // myService.getName(), msg.sender, msg.sendingMethod, msg.name,
-        // msg.method));
-        // log.debug(String.format("removed from msgBox size now %d",
-        // msgBox.size()));
-        msgBox.notifyAll();
+      try {
+        msg = msgBox.take();
+      } catch (InterruptedException ex) {
+        log.debug("outbox run INTERRUPTED ");
+        isRunning = false;
+        return;
       }
+      process(msg);
+    } // while (isRunning)
+  }
 
-      // RELAY OTHER SERVICE'S MSGS
-      // if the msg name is not my name - then
-      // relay it
-      // WARNING - broadcast apparently means name == ""
-      // why would a message with my name be in my outbox ??? - FIXME
-      // deprecate that logic
-      if (msg.name != null) { // commented out recently -> &&
-        // !myService.getName().equals(msg.name)
-        log.debug("{} configured to RELAY ", msg.getName());
-        comm.send(msg);
-        // recently added -
-        // if I'm relaying I'm not broadcasting...(i think)
-        continue;
-      }
+  void process(Message msg) {
+    // chase network bugs
+    // log.error(String.format("%s.outbox.run(msg) %s.%s -- %s.%s ",
+    // myService.getName(), msg.sender, msg.sendingMethod, msg.name,
+    // msg.method));
 
-      // BROADCASTS name=="" WILL DROP DOWN and be processed here
-      if (notifyList.size() != 0) {
-        // get the value for the source method
-        ArrayList<MRLListener> subList = notifyList.get(msg.sendingMethod);
-        if (subList == null) {
-          log.debug(String.format("no static route for %s.%s ", msg.sender, msg.sendingMethod));
-          // This will cause issues in broadcasts
-          continue;
-        }
+    // RELAY OTHER SERVICE'S MSGS
+    // if the msg name is not my name - then
+    // relay it
+    // WARNING - broadcast apparently means name == ""
+    // why would a message with my name be in my outbox ??? - FIXME
+    // deprecate that logic
+    if (msg.name != null) { // commented out recently -> &&
+      // !myService.getName().equals(msg.name)
+      log.debug("{} configured to RELAY ", msg.getName());
+      deliver(msg);
+      // recently added -
+      // if I'm relaying I'm not broadcasting...(i think)
+      return;
+    }
 
-        for (int i = 0; i < subList.size(); ++i) {
-          MRLListener listener = subList.get(i);
-          msg.name = listener.callbackName;
-          msg.method = listener.callbackMethod;
-          comm.send(msg);
+    // BROADCASTS name=="" WILL DROP DOWN and be processed here
+    if (notifyList.size() != 0) {
+      // get the value for the source method
+      ArrayList<MRLListener> subList = notifyList.get(msg.sendingMethod);
+      if (subList == null) {
+        log.debug(String.format("no static route for %s.%s ", msg.sender, msg.sendingMethod));
+        // This will cause issues in broadcasts
+        return;
+      }
 
-          // must make new for internal queues
-          // otherwise you'll change the name on
-          // existing enqueued messages
-          msg = new Message(msg);
-        }
-      } else {
-        if (log.isDebugEnabled()) {
-          log.debug(String.format("%s/%s(%s)", msg.getName(), msg.method, CodecUtils.getParameterSignature(msg.data) + " notifyList is empty"));
-        }
-        continue;
+      // each delivery needs its own routing record (name & method) - it
+      // must be new for internal queues otherwise you'll change the name on
+      // existing enqueued messages. The payload and headers are shared by
+      // reference and the history is only allocated once it reaches an
+      // inbox. The last listener gets the original message.
+      int last = subList.size() - 1;
+      for (int i = 0; i <= last; ++i) {
+        MRLListener listener = subList.get(i);
+        Message delivery = (i == last) ? msg : new Message(msg);
+        delivery.name = listener.callbackName;
+        delivery.targetId = listener.getCallbackId();
+        delivery.method = listener.callbackMethod;
+        deliver(delivery);
+      }
+    } else {
+      if (log.isDebugEnabled()) {
+        log.debug(String.format("%s/%s(%s)", msg.getName(), msg.method, CodecUtils.getParameterSignature(msg.data) + " notifyList is empty"));
       }
+    }
+  }
 
-    } // while (isRunning)
+  /**
+   * sends the message on the outbox thread, or hands it to the lane of its
+   * (sending method, destination) pair
+   */
+  void deliver(Message msg) {
+    Lane[] l = lanes;
+    if (l == null) {
+      comm.send(msg);
+      return;
+    }
+    int hash = 31 * hashCode(msg.sendingMethod) + hashCode(msg.name);
+    Lane lane = l[(hash & 0x7fffffff) % l.length];
+    try {
+      // a full lane holds up the dispatcher - on a shared pool worker the
+      // queue waits as a managed blocker, so the lane can still run
+      lane.queue.put(msg);
+    } catch (InterruptedException e) {
+      // stopping - let run() see the interrupt
+      Thread.currentThread().interrupt();
+    }
+    SerialExecutor e = lane.executor;
+    if (e != null) {
+      e.signal();
+    }
+  }
+
+  static int hashCode(String s) {
+    return (s == null) ? 0 : s.hashCode();
   }
 
   public void setCommunicationManager(CommunicationInterface c) {
@@ -191,37 +298,159 @@ public class Outbox implements Runnable, Serializable {
   }
 
   public void start() {
-    for (int i = outboxThreadPool.size(); i < initialThreadCount; ++i) {
-      Thread t = new Thread(this, myService.getName() + "_outbox_" + i);
-      outboxThreadPool.add(t);
-      t.start();
+    if (outboxThreadPool.size() > 0 || executor != null) {
+      log.debug("{} outbox already started", myService.getName());
+      return;
     }
+    isRunning = true;
+    if (executionMode == ExecutionMode.SHARED) {
+      startShared();
+      return;
+    }
+    if (threadCount > 1) {
+      Lane[] newLanes = new Lane[threadCount];
+      for (int i = 0; i < threadCount; ++i) {
+        newLanes[i] = new Lane(i);
+        Thread t = new Thread(newLanes[i], myService.getName() + "_outbox_" + (i + 1));
+        outboxThreadPool.add(t);
+        t.start();
+      }
+      lanes = newLanes;
+    }
+    Thread t = new Thread(this, myService.getName() + "_outbox_0");
+    outboxThreadPool.add(t);
+    t.start();
+  }
+
+  void startShared() {
+    if (threadCount > 1) {
+      Lane[] newLanes = new Lane[threadCount];
+      for (int i = 0; i < threadCount; ++i) {
+        final Lane lane = new Lane(i);
+        lane.executor = new SerialExecutor(String.format("%s.outbox.lane.%d", myService.getName(), i), lane.queue) {
+          @Override
+          protected boolean runNext() {
+            Message msg = lane.queue.poll();
+            if (msg == null) {
+              return false;
+            }
+            lane.send(msg);
+            return true;
+          }
+        };
+        newLanes[i] = lane;
+      }
+      lanes = newLanes;
+    }
+    executor = new SerialExecutor(String.format("%s.outbox", myService.getName()), msgBox) {
+      @Override
+      protected boolean runNext() {
+        Message msg = msgBox.poll();
+        if (msg == null) {
+          return false;
+        }
+        process(msg);
+        return true;
+      }
+    };
+    // anything queued before starting
+    executor.signal();
   }
 
   public void stop() {
     isRunning = false;
     for (int i = 0; i < outboxThreadPool.size(); ++i) {
-      Thread t = outboxThreadPool.get(i);
-      t.interrupt();
-      outboxThreadPool.remove(i);
-      t = null;
+      outboxThreadPool.get(i).interrupt();
     }
+    outboxThreadPool.clear();
+    if (executor != null) {
+      executor.stop();
+      executor = null;
+    }
+    Lane[] l = lanes;
+    if (l != null) {
+      for (int i = 0; i < l.length; ++i) {
+        if (l[i].executor != null) {
+          l[i].executor.stop();
+        }
+      }
+    }
+    lanes = null;
+  }
+
+  /**
+   * run the dispatcher (and lanes) on dedicated threads or on the shared pool.
+   * Takes effect the next time the outbox is started.
+   */
+  public void setExecutionMode(ExecutionMode mode) {
+    executionMode = mode;
+  }
+
+  public ExecutionMode getExecutionMode() {
+    return executionMode;
+  }
+
+  /**
+   * sets the number of delivery threads - more than 1 lets a slow subscriber
+   * be delivered to without delaying the others. Messages from one sending
+   * method to one subscriber are always delivered in order. Takes effect the
+   * next time the outbox is started.
+   * 
+   * @param threadCount
+   */
+  public void setThreadCount(int threadCount) {
+    this.threadCount = (threadCount < 1) ? 1 : threadCount;
+  }
+
+  public int getThreadCount() {
+    return threadCount;
   }
 
-  public LinkedList<Message> getMsgBox() {
+  public MessageQueue getMsgBox() {
     return msgBox;
   }
 
+  /**
+   * replace the queue implementation - messages in the current queue are moved
+   * to the new one
+   * 
+   * @param queue
+   */
+  public void setMsgBox(MessageQueue queue) {
+    MessageQueue old = msgBox;
+    msgBox = queue;
+    Message msg = null;
+    while ((msg = old.poll()) != null) {
+      queue.offer(msg);
+    }
+  }
+
   public int getMaxQueueSize() {
-    return maxQueue;
+    return msgBox.capacity();
   }
 
   public boolean isBlocking() {
-    return blocking;
+    return msgBox.getOverflowPolicy() == OverflowPolicy.BLOCK;
   }
 
   public void setBlocking(boolean blocking) {
-    this.blocking = blocking;
+    msgBox.setOverflowPolicy((blocking) ? OverflowPolicy.BLOCK : OverflowPolicy.DROP_NEWEST);
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return msgBox.getOverflowPolicy();
+  }
+
+  public void setOverflowPolicy(OverflowPolicy policy) {
+    msgBox.setOverflowPolicy(policy);
+  }
+
+  public QueueStats getStats() {
+    return msgBox.getStats();
+  }
+
+  public boolean isBufferOverrun() {
+    return bufferOverrun;
   }
 
   public boolean isRunning() {
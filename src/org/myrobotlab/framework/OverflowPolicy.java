@@ -0,0 +1,24 @@
+package org.myrobotlab.framework;
+
+/**
+ * what a MessageQueue does with a message when it is full
+ */
+public enum OverflowPolicy {
+  /**
+   * the producer waits until there is space
+   */
+  BLOCK,
+  /**
+   * the new message is dropped
+   */
+  DROP_NEWEST,
+  /**
+   * the oldest queued message is dropped to make space for the new one
+   */
+  DROP_OLDEST,
+  /**
+   * a queued message with the same destination and method is replaced by the
+   * new one (last writer wins) - if there is none the new message is dropped
+   */
+  COALESCE
+}
@@ -11,8 +11,27 @@ public class QueueStats {
   public long delta;
   public long lineSpeed;
 
+  // MessageQueue counters
+  public int capacity;
+  public int highWaterMark;
+  public long enqueued;
+  public long dequeued;
+  public long dropped;
+  public long coalesced;
+  /**
+   * messages per second since the previous snapshot
+   */
+  public double enqueueRate;
+  public double dequeueRate;
+
   public String getName() {
     return name;
   }
 
+  @Override
+  public String toString() {
+    return String.format("%s size %d/%d high water %d enqueued %d (%.1f/s) dequeued %d (%.1f/s) dropped %d coalesced %d", name, currentQueueCount, capacity, highWaterMark, enqueued,
+        enqueueRate, dequeued, dequeueRate, dropped, coalesced);
+  }
+
 }
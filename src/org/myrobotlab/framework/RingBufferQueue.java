@@ -0,0 +1,378 @@
+package org.myrobotlab.framework;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded lock-free ring buffer of messages. Many producers (any thread calling
+ * send/invoke) and typically a single consumer (the Inbox or Outbox thread).
+ *
+ * Each slot carries a sequence number, so producers claim a slot with a single
+ * CAS and never contend on a lock (Vyukov's bounded queue). The lock and
+ * conditions are only touched when a consumer has actually parked on an empty
+ * queue, or a producer has parked on a full queue with the BLOCK policy - so
+ * an enqueue does not wake anyone unless someone is asleep.
+ *
+ */
+public class RingBufferQueue implements MessageQueue {
+
+  final String name;
+  final int capacity;
+  final int mask;
+  final AtomicReferenceArray<Message> buffer;
+  final AtomicLongArray sequence;
+  final AtomicLong head = new AtomicLong(); // next position to dequeue
+  final AtomicLong tail = new AtomicLong(); // next position to enqueue
+
+  volatile OverflowPolicy policy;
+
+  // parking support
+  final ReentrantLock lock = new ReentrantLock();
+  final Condition notEmpty = lock.newCondition();
+  final Condition notFull = lock.newCondition();
+  final AtomicInteger parkedConsumers = new AtomicInteger();
+  final AtomicInteger parkedProducers = new AtomicInteger();
+
+  // stats
+  final AtomicLong enqueued = new AtomicLong();
+  final AtomicLong dequeued = new AtomicLong();
+  final AtomicLong dropped = new AtomicLong();
+  final AtomicLong coalesced = new AtomicLong();
+  final AtomicInteger highWaterMark = new AtomicInteger();
+  long lastStatsTs = System.currentTimeMillis();
+  long lastEnqueued = 0;
+  long lastDequeued = 0;
+
+  public RingBufferQueue(String name, int capacity) {
+    this(name, capacity, OverflowPolicy.DROP_NEWEST);
+  }
+
+  public RingBufferQueue(String name, int capacity, OverflowPolicy policy) {
+    this.name = name;
+    // round up to a power of 2
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    this.capacity = size;
+    this.mask = size - 1;
+    this.policy = policy;
+    buffer = new AtomicReferenceArray<Message>(size);
+    sequence = new AtomicLongArray(size);
+    for (int i = 0; i < size; ++i) {
+      sequence.set(i, i);
+    }
+  }
+
+  /**
+   * @return false if full
+   */
+  boolean tryEnqueue(Message msg) {
+    while (true) {
+      long pos = tail.get();
+      int index = (int) (pos & mask);
+      long dif = sequence.get(index) - pos;
+      if (dif == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          buffer.set(index, msg);
+          sequence.set(index, pos + 1);
+          return true;
+        }
+      } else if (dif < 0) {
+        return false;
+      }
+    }
+  }
+
+  Message tryDequeue() {
+    while (true) {
+      long pos = head.get();
+      int index = (int) (pos & mask);
+      long dif = sequence.get(index) - (pos + 1);
+      if (dif == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          // getAndSet - a coalescing producer may be swapping the message
+          Message msg = buffer.getAndSet(index, null);
+          sequence.set(index, pos + capacity);
+          return msg;
+        }
+      } else if (dif < 0) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * replace a queued message with the same destination & method
+   */
+  boolean tryCoalesce(Message msg) {
+    long end = tail.get();
+    for (long pos = head.get(); pos < end; ++pos) {
+      int index = (int) (pos & mask);
+      if (sequence.get(index) != pos + 1) {
+        // consumed or not yet published
+        continue;
+      }
+      Message queued = buffer.get(index);
+      if (queued != null && isSameTopic(queued, msg) && buffer.compareAndSet(index, queued, msg)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static boolean isSameTopic(Message a, Message b) {
+    return equals(a.method, b.method) && equals(a.name, b.name) && equals(a.sendingMethod, b.sendingMethod);
+  }
+
+  static boolean equals(String a, String b) {
+    return (a == null) ? b == null : a.equals(b);
+  }
+
+  void enqueued() {
+    enqueued.incrementAndGet();
+    int size = size();
+    int hwm = highWaterMark.get();
+    while (size > hwm && !highWaterMark.compareAndSet(hwm, size)) {
+      hwm = highWaterMark.get();
+    }
+    if (parkedConsumers.get() > 0) {
+      lock.lock();
+      try {
+        notEmpty.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  void dequeued() {
+    dequeued.incrementAndGet();
+    if (parkedProducers.get() > 0) {
+      lock.lock();
+      try {
+        notFull.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public OfferResult offer(Message msg) {
+    if (tryEnqueue(msg)) {
+      enqueued();
+      return OfferResult.QUEUED;
+    }
+
+    switch (policy) {
+      case BLOCK:
+        try {
+          put(msg);
+          return OfferResult.QUEUED;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          dropped.incrementAndGet();
+          return OfferResult.DROPPED;
+        }
+      case DROP_OLDEST:
+        OfferResult result = OfferResult.QUEUED;
+        while (!tryEnqueue(msg)) {
+          if (tryDequeue() != null) {
+            dropped.incrementAndGet();
+            dequeued();
+            result = OfferResult.QUEUED_DROPPED_OLDEST;
+          }
+        }
+        enqueued();
+        return result;
+      case COALESCE:
+        if (tryCoalesce(msg)) {
+          coalesced.incrementAndGet();
+          return OfferResult.COALESCED;
+        }
+        // if nothing to coalesce with we still try again - the consumer
+        // may have made space while we were looking
+        if (tryEnqueue(msg)) {
+          enqueued();
+          return OfferResult.QUEUED;
+        }
+        dropped.incrementAndGet();
+        return OfferResult.DROPPED;
+      case DROP_NEWEST:
+      default:
+        dropped.incrementAndGet();
+        return OfferResult.DROPPED;
+    }
+  }
+
+  @Override
+  public boolean tryOffer(Message msg) {
+    if (tryEnqueue(msg)) {
+      enqueued();
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void put(final Message msg) throws InterruptedException {
+    if (tryEnqueue(msg)) {
+      enqueued();
+      return;
+    }
+    if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+      // a shared pool worker - the consumer which makes space may be waiting
+      // for a worker too, so let the pool compensate while this one waits
+      ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+        boolean done = false;
+
+        @Override
+        public boolean isReleasable() {
+          if (!done) {
+            done = tryEnqueue(msg);
+          }
+          return done;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+          awaitEnqueue(msg);
+          done = true;
+          return true;
+        }
+      });
+    } else {
+      awaitEnqueue(msg);
+    }
+    enqueued();
+  }
+
+  void awaitEnqueue(Message msg) throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      parkedProducers.incrementAndGet();
+      while (!tryEnqueue(msg)) {
+        notFull.await();
+      }
+    } finally {
+      parkedProducers.decrementAndGet();
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public Message poll() {
+    Message msg = tryDequeue();
+    if (msg != null) {
+      dequeued();
+    }
+    return msg;
+  }
+
+  @Override
+  public Message poll(long timeout, TimeUnit unit) throws InterruptedException {
+    Message msg = poll();
+    if (msg != null) {
+      return msg;
+    }
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      parkedConsumers.incrementAndGet();
+      while ((msg = tryDequeue()) == null) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+    } finally {
+      parkedConsumers.decrementAndGet();
+      lock.unlock();
+    }
+    dequeued();
+    return msg;
+  }
+
+  @Override
+  public Message take() throws InterruptedException {
+    Message msg = poll();
+    if (msg != null) {
+      return msg;
+    }
+    lock.lockInterruptibly();
+    try {
+      parkedConsumers.incrementAndGet();
+      while ((msg = tryDequeue()) == null) {
+        notEmpty.await();
+      }
+    } finally {
+      parkedConsumers.decrementAndGet();
+      lock.unlock();
+    }
+    dequeued();
+    return msg;
+  }
+
+  @Override
+  public int size() {
+    long size = tail.get() - head.get();
+    if (size < 0) {
+      return 0;
+    }
+    return (size > capacity) ? capacity : (int) size;
+  }
+
+  @Override
+  public int capacity() {
+    return capacity;
+  }
+
+  @Override
+  public void clear() {
+    while (poll() != null) {
+    }
+  }
+
+  @Override
+  public OverflowPolicy getOverflowPolicy() {
+    return policy;
+  }
+
+  @Override
+  public void setOverflowPolicy(OverflowPolicy policy) {
+    this.policy = policy;
+  }
+
+  @Override
+  public synchronized QueueStats getStats() {
+    QueueStats stats = new QueueStats();
+    stats.name = name;
+    stats.ts = System.currentTimeMillis();
+    stats.lastTS = lastStatsTs;
+    stats.delta = stats.ts - stats.lastTS;
+    stats.capacity = capacity;
+    stats.currentQueueCount = size();
+    stats.highWaterMark = highWaterMark.get();
+    stats.enqueued = enqueued.get();
+    stats.dequeued = dequeued.get();
+    stats.dropped = dropped.get();
+    stats.coalesced = coalesced.get();
+    if (stats.delta > 0) {
+      stats.enqueueRate = (stats.enqueued - lastEnqueued) * 1000.0 / stats.delta;
+      stats.dequeueRate = (stats.dequeued - lastDequeued) * 1000.0 / stats.delta;
+    }
+    lastStatsTs = stats.ts;
+    lastEnqueued = stats.enqueued;
+    lastDequeued = stats.dequeued;
+    return stats;
+  }
+
+}
@@ -0,0 +1,99 @@
+package org.myrobotlab.framework;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.logging.Logging;
+import org.slf4j.Logger;
+
+/**
+ * Runs a message loop as short tasks on a shared work-stealing pool instead of
+ * a dedicated thread. Producers call signal() after queueing a message - at
+ * most one task per executor is scheduled at a time, so messages are processed
+ * one at a time and in order, just like on a dedicated thread. A task handles
+ * a batch of messages and then reschedules itself to be fair to the other
+ * services in the pool.
+ */
+public abstract class SerialExecutor implements Runnable {
+
+  public final static Logger log = LoggerFactory.getLogger(SerialExecutor.class);
+
+  static private ForkJoinPool sharedPool = null;
+
+  final String name;
+  final MessageQueue queue;
+  final AtomicBoolean scheduled = new AtomicBoolean(false);
+  volatile boolean running = true;
+  int batchSize = 64;
+
+  public SerialExecutor(String name, MessageQueue queue) {
+    this.name = name;
+    this.queue = queue;
+  }
+
+  static public synchronized ForkJoinPool getSharedPool() {
+    if (sharedPool == null) {
+      final AtomicInteger count = new AtomicInteger();
+      sharedPool = new ForkJoinPool(java.lang.Runtime.getRuntime().availableProcessors(), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+          ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+          t.setName(String.format("shared_%d", count.incrementAndGet()));
+          return t;
+        }
+      }, null, true);
+    }
+    return sharedPool;
+  }
+
+  /**
+   * process the next message
+   * 
+   * @return false if there was nothing to process
+   */
+  protected abstract boolean runNext() throws Exception;
+
+  /**
+   * schedules the executor if it isn't already
+   */
+  public void signal() {
+    if (running && scheduled.compareAndSet(false, true)) {
+      getSharedPool().execute(this);
+    }
+  }
+
+  public void stop() {
+    running = false;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  @Override
+  public void run() {
+    try {
+      for (int i = 0; running && i < batchSize; ++i) {
+        try {
+          if (!runNext()) {
+            break;
+          }
+        } catch (Exception e) {
+          log.error(String.format("%s threw processing message", name));
+          Logging.logError(e);
+        }
+      }
+    } finally {
+      scheduled.set(false);
+      // a producer may have queued after the last poll but before the flag was
+      // cleared - its signal was lost so check here
+      if (running && queue.size() > 0) {
+        signal();
+      }
+    }
+  }
+
+}
@@ -33,7 +33,6 @@ import java.io.Serializable;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
@@ -46,15 +45,17 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SimpleTimeZone;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
 
-import org.myrobotlab.cache.LRUMethodCache;
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.codec.Recorder;
 import org.myrobotlab.io.FileIO;
@@ -86,9 +87,11 @@ import org.slf4j.Logger;
  */
 public abstract class Service extends MessageService implements Runnable, Serializable, ServiceInterface, Invoker, QueueReporter {
 
-  // FIXME upgrade to ScheduledExecutorService
-  // http://howtodoinjava.com/2015/03/25/task-scheduling-with-executors-scheduledthreadpoolexecutor-example/
-  protected class Task extends TimerTask {
+  /**
+   * puts a message into the inbox each time it runs - scheduled on the
+   * runtime-wide TimingWheel
+   */
+  protected class Task implements Runnable {
     String taskName;
     Message msg;
     long interval = 0;
@@ -99,27 +102,11 @@ public abstract class Service extends MessageService implements Runnable, Serial
       this.taskName = taskName;
     }
 
-    public Task(Task s) {
-      this.msg = s.msg;
-      this.interval = s.interval;
-      this.taskName = s.taskName;
-    }
-
     @Override
     public void run() {
       info("task %s running - next run %s", taskName, MathUtils.msToString(interval));
-      getInbox().add(msg);
-
-      if (interval > 0) {
-        Task t = new Task(this);
-        // clear history list - becomes "new" message
-        t.msg.historyList.clear();
-        Timer timer = tasks.get(taskName);
-        if (timer != null) {
-          //timer = new Timer(String.format("%s.timer", getName()));
-          timer.schedule(t, interval);
-        }
-      }
+      // a copy each time - becomes a "new" message with no history
+      getInbox().add(new Message(msg));
     }
 
   }
@@ -162,12 +149,23 @@ public abstract class Service extends MessageService implements Runnable, Serial
 
   transient protected Inbox inbox = null;
 
-  transient Timer timer = null;
+  /**
+   * mode used by services which haven't had one set - see
+   * setDefaultExecutionMode
+   */
+  static private ExecutionMode defaultExecutionMode = ExecutionMode.DEDICATED;
+
+  transient private ExecutionMode executionMode = null;
+
+  /**
+   * runs the inbox loop in ExecutionMode.SHARED
+   */
+  transient protected SerialExecutor executor = null;
 
   /**
    * a more capable task handler
    */
-  transient HashMap<String, Timer> tasks = new HashMap<String, Timer>();
+  transient HashMap<String, TimedTask> tasks = new HashMap<String, TimedTask>();
 
   protected boolean allowDisplay = true;
 
@@ -177,6 +175,11 @@ public abstract class Service extends MessageService implements Runnable, Serial
 
   transient protected Set<String> methodSet;
 
+  /**
+   * pre-resolved method handles used by invokeOn
+   */
+  transient protected DispatchTable dispatchTable;
+
   transient protected SimpleDateFormat TSFormatter = new SimpleDateFormat("yyyyMMddHHmmssSSS");
 
   transient protected Calendar cal = Calendar.getInstance(new SimpleTimeZone(0, "GMT"));
@@ -716,6 +719,10 @@ public abstract class Service extends MessageService implements Runnable, Serial
       methodSet = getMessageSet();
     }
 
+    // build (or fetch) the dispatch table for this class once - so
+    // message invoking is a single lookup
+    dispatchTable = DispatchTable.getInstance(getClass());
+
     // a "safety" if Service was created by new Service(name)
     // we still want the local Runtime running
     if (!Runtime.isRuntime(this)) {
@@ -805,45 +812,41 @@ public abstract class Service extends MessageService implements Runnable, Serial
    * @param name
    */
   public void addTask(String name, int interval, String method, Object... params) {
-    Timer timer = new Timer(String.format("%s.timer", String.format("%s.%s", getName(), name)));
     Task task = new Task(name, interval, getName(), method, params);
-    timer.schedule(task, 0);
-    tasks.put(name, timer);
+    TimedTask timed = TimingWheel.getInstance().scheduleAtFixedRate(String.format("%s.%s", getName(), name), task, 0, interval);
+    TimedTask old = tasks.put(name, timed);
+    if (old != null) {
+      old.cancel();
+    }
   }
 
-  public HashMap<String, Timer> getTasks() {
+  public HashMap<String, TimedTask> getTasks() {
     return tasks;
   }
 
+  /**
+   * @return jitter statistics of this service's tasks
+   */
+  public List<TaskStats> getTaskStats() {
+    ArrayList<TaskStats> ret = new ArrayList<TaskStats>();
+    for (TimedTask task : tasks.values()) {
+      ret.add(task.getStats());
+    }
+    return ret;
+  }
+
   public void purgeTask(String taskName) {
-    if (tasks.containsKey(taskName)) {
-      Timer timer = tasks.get(taskName);
-      if (timer != null) {
-        try {
-          timer.cancel();
-          timer.purge();
-          timer = null;
-        } catch (Exception e) {
-          log.info(e.getMessage());
-        }
-      }
+    TimedTask task = tasks.remove(taskName);
+    if (task != null) {
+      task.cancel();
     } else {
       log.warn("purgeTask - task {} does not exist", taskName);
     }
   }
 
   public void purgeTasks() {
-    for (String taskName : tasks.keySet()) {
-      Timer timer = tasks.get(taskName);
-      if (timer != null) {
-        try {
-          timer.cancel();
-          timer.purge();
-          timer = null;
-        } catch (Exception e) {
-          log.info(e.getMessage());
-        }
-      }
+    for (TimedTask task : tasks.values()) {
+      task.cancel();
     }
     tasks.clear();
   }
@@ -1101,6 +1104,34 @@ public abstract class Service extends MessageService implements Runnable, Serial
     return simpleName;
   }
 
+  /**
+   * sets the runtime-wide execution mode for services started after this call
+   * which have not had their own mode set
+   * 
+   * @param mode
+   */
+  static public void setDefaultExecutionMode(ExecutionMode mode) {
+    defaultExecutionMode = mode;
+  }
+
+  static public ExecutionMode getDefaultExecutionMode() {
+    return defaultExecutionMode;
+  }
+
+  public ExecutionMode getExecutionMode() {
+    return (executionMode == null) ? defaultExecutionMode : executionMode;
+  }
+
+  /**
+   * run this service's inbox loop and outbox on dedicated threads or on the
+   * shared pool - takes effect the next time the service is started
+   * 
+   * @param mode
+   */
+  public void setExecutionMode(ExecutionMode mode) {
+    executionMode = mode;
+  }
+
   /**
    * 
    * @return
@@ -1285,106 +1316,31 @@ public abstract class Service extends MessageService implements Runnable, Serial
     }
 
     Object retobj = null;
-    Class<?> c = null;
-    Class<?>[] paramTypes = null;
 
     try {
-      c = obj.getClass();
-
-      if (params != null) {
-        paramTypes = new Class[params.length];
-        for (int i = 0; i < params.length; ++i) {
-          if (params[i] != null) {
-            paramTypes[i] = params[i].getClass();
-          } else {
-            paramTypes[i] = null;
-          }
-        }
+      // single probe into the pre-built dispatch table - the table resolves
+      // (and caches) upcasting & boxing the first time an argument signature
+      // is seen
+      DispatchTable dt = (obj == this && dispatchTable != null) ? dispatchTable : DispatchTable.getInstance(obj.getClass());
+      DispatchTable.Entry entry = dt.getEntry(method, params);
+      if (entry == null) {
+        log.error(String.format("did not find method - %s.%s(%s)", obj.getClass().getSimpleName(), method, CodecUtils.getParameterSignature(params)));
+        return null;
       }
-      Method meth = null;
-
-      // TODO - method cache map
-      // can not auto-box or downcast with this method - getMethod will
-      // return a "specific & exact" match based
-      // on parameter types - the thing is we may have a typed signature
-      // which will allow execution - but
-      // if so we need to search
 
       // SECURITY - ??? can't be implemented here - need a full message
-      meth = c.getMethod(method, paramTypes); // getDeclaredMethod zod !!!
-      retobj = meth.invoke(obj, params);
+      retobj = entry.invoke(obj, params);
 
       // put return object onEvent
       out(method, retobj);
-    } catch (NoSuchMethodException e) {
-
-      // cache key compute
-
-      // TODO: validate what "params.toString()" returns.
-      StringBuilder keyBuilder = new StringBuilder();
-      if (paramTypes != null) {
-        for (Object o : paramTypes) {
-          keyBuilder.append(o);
-        }
-      }
-      String methodCacheKey = c.toString() + "_" + keyBuilder.toString();
-      Method mC = LRUMethodCache.getInstance().getCacheEntry(methodCacheKey);
-      if (mC != null) {
-        // We found a cached hit! lets invoke on that.
-        try {
-          retobj = mC.invoke(obj, params);
-          // put return object onEvent
-          out(method, retobj);
-          // return
-          return retobj;
-        } catch (Exception e1) {
-          log.error(String.format("boom goes method %s", mC.getName()));
-          Logging.logError(e1);
-        }
-
-      }
-
-      // TODO - build method cache map from errors
-      log.warn(String.format("no such method %s.%s - attempting upcasting", c.getSimpleName(), MethodEntry.getPrettySignature(method, paramTypes, null)));
-
-      // TODO - optimize with a paramter TypeConverter & Map
-      // c.getMethod - returns on EXACT match - not "Working" match
-      Method[] allMethods = c.getMethods(); // ouch
-      log.warn(String.format("ouch! need to search through %d methods", allMethods.length));
-
-      for (Method m : allMethods) {
-        String mname = m.getName();
-        if (!mname.equals(method)) {
-          continue;
-        }
-
-        Type[] pType = m.getGenericParameterTypes();
-        // checking parameter lengths
-        if (params == null && pType.length != 0 || pType.length != params.length) {
-          continue;
-        }
-        try {
-          log.debug("found appropriate method");
-          retobj = m.invoke(obj, params);
-          // put return object onEvent
-          out(method, retobj);
-          // we've found a match. put that in the cache.
-          LRUMethodCache.getInstance().addCacheEntry(methodCacheKey, m);
-          return retobj;
-        } catch (Exception e1) {
-          log.error(String.format("boom goes method %s", m.getName()));
-          Logging.logError(e1);
-        }
-      }
-
-      log.error(String.format("did not find method - %s(%s)", method, CodecUtils.getParameterSignature(params)));
-    } catch (InvocationTargetException e) {
-      Throwable target = e.getTargetException();
+    } catch (VirtualMachineError e) {
+      // out of memory, stack overflow ... - not the method's result
+      throw e;
+    } catch (Throwable target) {
+      // like Method.invoke did - a LinkageError (missing native library or
+      // class) is a failure of the method, it must not end the inbox thread
       error(String.format("%s %s", target.getClass().getSimpleName(), target.getMessage()));
-      Logging.logError(e);
-    } catch (Exception uknown) {
-      error(String.format("%s %s", uknown.getClass().getSimpleName(), uknown.getMessage()));
-      Logging.logError(uknown);
+      Logging.logError(target);
     }
 
     return retobj;
@@ -1475,6 +1431,11 @@ public abstract class Service extends MessageService implements Runnable, Serial
    * @param o
    */
   public void out(String method, Object o) {
+    // nobody subscribed - the outbox would only drop the broadcast, so don't
+    // build and queue it
+    if (!hasSubscribers(method)) {
+      return;
+    }
     Message m = createMessage(null, method, o); // create a un-named message
     // as output
 
@@ -1487,6 +1448,21 @@ public abstract class Service extends MessageService implements Runnable, Serial
     outbox.add(m);
   }
 
+  /**
+   * true if any listener subscribed to the publishing method - publishers can
+   * use this to skip building data nobody will receive
+   * 
+   * @param method
+   * @return
+   */
+  public boolean hasSubscribers(String method) {
+    if (outbox == null) {
+      return false;
+    }
+    ArrayList<MRLListener> listeners = outbox.notifyList.get(method);
+    return listeners != null && listeners.size() > 0;
+  }
+
   // override for extended functionality
   public boolean preProcessHook(Message m) {
     return true;
@@ -1508,6 +1484,28 @@ public abstract class Service extends MessageService implements Runnable, Serial
     return stats;
   }
 
+  /**
+   * publishes a snapshot of the Inbox & Outbox queue stats - rates are
+   * calculated since the previous call
+   */
+  public void broadcastQueueStats() {
+    invoke("publishQueueStats", inbox.getStats());
+    invoke("publishQueueStats", outbox.getStats());
+  }
+
+  /**
+   * sets what happens to messages when this service's queues are full e.g.
+   * a service publishing sensor data could COALESCE its outbox so only the
+   * latest reading per method is kept
+   *
+   * @param inboxPolicy
+   * @param outboxPolicy
+   */
+  public void setOverflowPolicy(OverflowPolicy inboxPolicy, OverflowPolicy outboxPolicy) {
+    inbox.setOverflowPolicy(inboxPolicy);
+    outbox.setOverflowPolicy(outboxPolicy);
+  }
+
   /**
    * publishing point for the whole service the entire Service is published
    * 
@@ -1645,47 +1643,7 @@ public abstract class Service extends MessageService implements Runnable, Serial
         // TODO should this declaration be outside the while loop? if
         // so, make sure to release prior to continue
         Message m = getMsg();
-
-        if (!preRoutingHook(m)) {
-          continue;
-        }
-
-        // nameless Runtime messages
-        if (m.name == null) {
-          // don't know if this is "correct"
-          // but we are substituting the Runtime name as soon as we
-          // see that its a null
-          // name message
-          m.name = Runtime.getInstance().getName();
-        }
-
-        // route if necessary
-        if (!m.getName().equals(this.getName())) // && RELAY
-        {
-          outbox.add(m); // RELAYING
-          continue; // sweet - that was a long time coming fix !
-        }
-
-        if (!preProcessHook(m)) {
-          // if preProcessHook returns false
-          // the message does not need to continue
-          // processing
-          continue;
-        }
-        // TODO should this declaration be outside the while loop?
-        Object ret = invoke(m);
-        if (Message.BLOCKING.equals(m.status)) {
-          // TODO should this declaration be outside the while loop?
-          // create new message reverse sender and name set to same
-          // msg id
-          Message msg = createMessage(m.sender, m.method, ret);
-          msg.sender = this.getName();
-          msg.msgId = m.msgId;
-          // msg.status = Message.BLOCKING;
-          msg.status = Message.RETURN;
-
-          outbox.add(msg);
-        }
+        handleMessage(m);
       }
     } catch (InterruptedException edown) {
       info("shutting down");
@@ -1694,6 +1652,50 @@ public abstract class Service extends MessageService implements Runnable, Serial
     }
   }
 
+  /**
+   * routes or invokes a single message taken from the inbox
+   */
+  final void handleMessage(Message m) {
+    if (!preRoutingHook(m)) {
+      return;
+    }
+
+    // nameless Runtime messages
+    if (m.name == null) {
+      // don't know if this is "correct"
+      // but we are substituting the Runtime name as soon as we
+      // see that its a null
+      // name message
+      m.name = Runtime.getInstance().getName();
+    }
+
+    // route if necessary
+    if (!m.getName().equals(this.getName())) // && RELAY
+    {
+      outbox.add(m); // RELAYING
+      return; // sweet - that was a long time coming fix !
+    }
+
+    if (!preProcessHook(m)) {
+      // if preProcessHook returns false
+      // the message does not need to continue
+      // processing
+      return;
+    }
+    Object ret = invoke(m);
+    if (Message.BLOCKING.equals(m.status)) {
+      // create new message reverse sender and name set to same
+      // msg id
+      Message msg = createMessage(m.sender, m.method, ret);
+      msg.sender = this.getName();
+      msg.msgId = m.msgId;
+      // msg.status = Message.BLOCKING;
+      msg.status = Message.RETURN;
+
+      outbox.add(msg);
+    }
+  }
+
   /**
    * method of serializing default will be simple xml to name file
    */
@@ -1817,28 +1819,71 @@ public abstract class Service extends MessageService implements Runnable, Serial
    * @return
    */
   public Object sendBlocking(String name, Integer timeout, String method, Object... data) {
+    CompletableFuture<Object> future = sendAsync(name, timeout, method, data);
+    try {
+      // block until message comes back
+      return future.get();
+    } catch (ExecutionException e) {
+      // timed out - null as before
+      log.info(String.format("sendBlocking %s.%s %s", name, method, e.getCause()));
+    } catch (InterruptedException e) {
+      // not ours to swallow - and nobody waits for the reply any more
+      Thread.currentThread().interrupt();
+      future.cancel(false);
+      logException(e);
+    }
+    return null;
+  }
+
+  @Override
+  public CompletableFuture<Object> sendAsync(String name, String method, Object... data) {
+    return sendAsync(name, 1000, method, data);
+  }
+
+  /**
+   * sends a request and returns a future completed with the return value of
+   * the remote method - many requests can be outstanding at once
+   * 
+   * @param timeout
+   *          ms after which the future completes exceptionally with a
+   *          TimeoutException, 0 or less waits forever - or until the caller
+   *          cancels the future
+   */
+  @Override
+  public CompletableFuture<Object> sendAsync(final String name, Integer timeout, final String method, Object... data) {
     Message msg = createMessage(name, method, data);
     msg.sender = this.getName();
     msg.status = Message.BLOCKING;
     msg.msgId = Runtime.getUniqueID();
 
-    Object[] returnContainer = new Object[1];
-    /*
-     * if (inbox.blockingList.contains(msg.msgID)) { log.error("DUPLICATE"); }
-     */
-    inbox.blockingList.put(msg.msgId, returnContainer);
+    final long msgId = msg.msgId;
+    final CompletableFuture<Object> future = inbox.expectReply(msgId);
 
-    try {
-      // block until message comes back
-      synchronized (returnContainer) {
-        outbox.add(msg);
-        returnContainer.wait(timeout); // NEW !!! TIMEOUT !!!!
-      }
-    } catch (InterruptedException e) {
-      logException(e);
+    final TimedTask deadline;
+    if (timeout != null && timeout > 0) {
+      deadline = TimingWheel.getInstance().schedule(String.format("%s.%s.timeout", name, method), new Runnable() {
+        @Override
+        public void run() {
+          future.completeExceptionally(new TimeoutException(String.format("%s.%s did not return", name, method)));
+        }
+      }, timeout);
+    } else {
+      deadline = null;
     }
+    future.whenComplete(new BiConsumer<Object, Throwable>() {
+      @Override
+      public void accept(Object ret, Throwable t) {
+        if (deadline != null) {
+          deadline.cancel();
+        }
+        // timed out or cancelled by the caller - a late reply is not matched
+        // to anything
+        inbox.cancelReply(msgId);
+      }
+    });
 
-    return returnContainer[0];
+    outbox.add(msg);
+    return future;
   }
 
   // BOXING - End --------------------------------------
@@ -1947,7 +1992,27 @@ public abstract class Service extends MessageService implements Runnable, Serial
       Runtime.create(name, getSimpleName());
     }
     if (!isRunning()) {
+      ExecutionMode mode = getExecutionMode();
+      outbox.setExecutionMode(mode);
       outbox.start();
+      if (mode == ExecutionMode.SHARED) {
+        isRunning = true;
+        executor = new SerialExecutor(name, inbox.getMsgBox()) {
+          @Override
+          protected boolean runNext() {
+            Message m = inbox.pollMsg();
+            if (m == null) {
+              return false;
+            }
+            handleMessage(m);
+            return true;
+          }
+        };
+        inbox.setExecutor(executor);
+        // anything queued before starting
+        executor.signal();
+        return;
+      }
       if (thisThread == null) {
         thisThread = new Thread(this, name);
       }
@@ -1983,6 +2048,11 @@ public abstract class Service extends MessageService implements Runnable, Serial
       thisThread.interrupt();
     }
     thisThread = null;
+    if (executor != null) {
+      inbox.setExecutor(null);
+      executor.stop();
+      executor = null;
+    }
 
     save();
   }
@@ -0,0 +1,73 @@
+package org.myrobotlab.framework;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns service names to small process-local integer ids. Ids are handed out
+ * in order starting at 1 and never reused, so a name keeps its id if a service
+ * is released and created again. 0 is never assigned - it is the default of an
+ * unset (or deserialized transient) id. Ids are only meaningful inside this
+ * process - anything leaving it (serialization) must carry names.
+ * 
+ * Only registered services and subscription callbacks are interned, and the
+ * table is bounded - past MAX_IDS names get no id and callers fall back to the
+ * name.
+ */
+public class ServiceIds {
+
+  public static final int MAX_IDS = 65536;
+
+  static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+  static final ArrayList<String> names = new ArrayList<String>();
+
+  static {
+    // reserve 0
+    names.add(null);
+  }
+
+  /**
+   * @param name
+   * @return the id of the name - assigning a new one if necessary, -1 if the
+   *         table is full
+   */
+  public static int getId(String name) {
+    Integer id = ids.get(name);
+    if (id != null) {
+      return id;
+    }
+    synchronized (names) {
+      id = ids.get(name);
+      if (id == null) {
+        if (names.size() >= MAX_IDS) {
+          return -1;
+        }
+        id = names.size();
+        names.add(name);
+        ids.put(name, id);
+      }
+      return id;
+    }
+  }
+
+  /**
+   * @param name
+   * @return the id of the name or -1 if it has never been interned
+   */
+  public static int findId(String name) {
+    Integer id = ids.get(name);
+    return (id == null) ? -1 : id;
+  }
+
+  public static String getName(int id) {
+    synchronized (names) {
+      return (id <= 0 || id >= names.size()) ? null : names.get(id);
+    }
+  }
+
+  public static int size() {
+    return ids.size();
+  }
+
+}
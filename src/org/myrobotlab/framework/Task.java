@@ -1,8 +1,9 @@
 package org.myrobotlab.framework;
 
-import java.util.TimerTask;
-
-public class Task extends TimerTask {
+/**
+ * a message sent to a service's inbox on a schedule - see start()
+ */
+public class Task implements Runnable {
 
   Message msg;
   int interval = 0;
@@ -29,15 +30,18 @@ public class Task extends TimerTask {
 
   @Override
   public void run() {
+    // a copy each time - becomes a "new" message with no history
+    myService.getInbox().add(new Message(msg));
+  }
 
-    myService.getInbox().add(msg);
-
-    if (interval > 0) {
-      Task t = new Task(this);
-      // clear history list - becomes "new" message
-      t.msg.historyList.clear();
-      myService.timer.schedule(t, interval);
-    }
+  /**
+   * schedules the task on the runtime-wide TimingWheel - once, or every
+   * interval ms if interval is greater than 0
+   * 
+   * @return the handle to cancel it
+   */
+  public TimedTask start() {
+    return TimingWheel.getInstance().scheduleAtFixedRate(String.format("%s.%s", myService.getName(), msg.method), this, 0, interval);
   }
 
 }
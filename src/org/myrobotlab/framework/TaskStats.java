@@ -0,0 +1,19 @@
+package org.myrobotlab.framework;
+
+/**
+ * Timing statistics of a TimedTask. Jitter is how late a run started compared
+ * to its deadline.
+ */
+public class TaskStats {
+  public String name;
+  public long count;
+  public long overruns;
+  public double lastJitterMs;
+  public double meanJitterMs;
+  public double maxJitterMs;
+
+  @Override
+  public String toString() {
+    return String.format("%s runs %d overruns %d jitter last %.3f mean %.3f max %.3f ms", name, count, overruns, lastJitterMs, meanJitterMs, maxJitterMs);
+  }
+}
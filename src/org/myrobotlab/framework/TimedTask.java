@@ -0,0 +1,144 @@
+package org.myrobotlab.framework;
+
+import org.myrobotlab.logging.Logging;
+
+/**
+ * A task scheduled on the TimingWheel. It is the handle used to cancel the
+ * task, change its period and read its jitter statistics.
+ *
+ * A period of 0 means the task runs once. Fixed rate tasks are scheduled from
+ * their previous deadline, so they don't drift. If a run overruns a whole period
+ * the missed runs are skipped (counted in TaskStats.overruns) rather than run in
+ * a burst. Fixed delay tasks are scheduled from the end of their previous run.
+ * A task never runs concurrently with itself.
+ */
+public class TimedTask {
+
+  final String name;
+  final Runnable runnable;
+  final TimingWheel wheel;
+  final boolean fixedRate;
+  volatile long periodNanos;
+  volatile boolean cancelled = false;
+
+  /**
+   * deadline of the next run in System.nanoTime() terms
+   */
+  long deadline;
+
+  // wheel bookkeeping - only touched by the wheel's tick thread
+  long dueTick;
+  TimedTask next;
+
+  // stats - written by the single thread running the task at a time
+  long count;
+  long overruns;
+  long jitterTotal;
+  long jitterMax;
+  long lastJitter;
+
+  TimedTask(TimingWheel wheel, String name, Runnable runnable, long deadline, long periodNanos, boolean fixedRate) {
+    this.wheel = wheel;
+    this.name = name;
+    this.runnable = runnable;
+    this.deadline = deadline;
+    this.periodNanos = periodNanos;
+    this.fixedRate = fixedRate;
+  }
+
+  void execute() {
+    if (cancelled) {
+      return;
+    }
+    long start = System.nanoTime();
+    long jitter = start - deadline;
+    ++count;
+    lastJitter = jitter;
+    jitterTotal += jitter;
+    if (jitter > jitterMax) {
+      jitterMax = jitter;
+    }
+
+    try {
+      runnable.run();
+    } catch (Exception e) {
+      TimingWheel.log.error(String.format("timed task %s threw", name));
+      Logging.logError(e);
+    }
+
+    long period = periodNanos;
+    if (period <= 0 || cancelled) {
+      cancel();
+      return;
+    }
+
+    if (fixedRate) {
+      long now = System.nanoTime();
+      deadline += period;
+      if (now - deadline > period) {
+        // fell behind more than a period - skip the missed runs
+        long missed = (now - deadline) / period;
+        overruns += missed;
+        deadline += missed * period;
+      }
+    } else {
+      deadline = System.nanoTime() + period;
+    }
+    wheel.add(this);
+  }
+
+  /**
+   * schedules a task made by TimingWheel.create - once
+   *
+   * @param delayMs
+   *          until the first run
+   */
+  public void start(long delayMs) {
+    deadline = System.nanoTime() + delayMs * 1000000;
+    wheel.tasks.add(this);
+    wheel.add(this);
+  }
+
+  public void cancel() {
+    cancelled = true;
+    wheel.tasks.remove(this);
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public long getPeriod() {
+    return periodNanos / 1000000;
+  }
+
+  /**
+   * change the period - takes effect after the next run
+   *
+   * @param periodMs
+   */
+  public void setPeriod(long periodMs) {
+    periodNanos = periodMs * 1000000;
+  }
+
+  public TaskStats getStats() {
+    TaskStats stats = new TaskStats();
+    stats.name = name;
+    stats.count = count;
+    stats.overruns = overruns;
+    stats.lastJitterMs = lastJitter / 1000000.0;
+    stats.maxJitterMs = jitterMax / 1000000.0;
+    stats.meanJitterMs = (count == 0) ? 0 : jitterTotal / (double) count / 1000000.0;
+    return stats;
+  }
+
+  @Override
+  public String toString() {
+    return getStats().toString();
+  }
+
+}
@@ -0,0 +1,268 @@
+package org.myrobotlab.framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.logging.Logging;
+import org.slf4j.Logger;
+
+/**
+ * A hashed timing wheel - the runtime-wide timer facility. Instead of a thread
+ * per timer, one tick thread advances a wheel of buckets every tick and hands
+ * expired tasks to a small pool of worker threads, so hundreds of periodic
+ * tasks cost a few threads. Scheduling and cancelling are O(1) for the
+ * caller.
+ *
+ * Resolution is one tick (1 ms by default) - a task runs within a tick after
+ * its deadline, never before. The tick thread parks until the next tick with
+ * a task due, or indefinitely when there is nothing scheduled. It finds that
+ * tick in a min-heap of the due ticks - O(log n) per task run, an expiry only
+ * visits its own bucket.
+ */
+public class TimingWheel implements Runnable {
+
+  public final static Logger log = LoggerFactory.getLogger(TimingWheel.class);
+
+  static private TimingWheel instance = null;
+
+  final String name;
+  final long tickNanos;
+  final TimedTask[] buckets;
+  final int mask;
+  final ConcurrentLinkedQueue<TimedTask> pending = new ConcurrentLinkedQueue<TimedTask>();
+  final ExecutorService workers;
+  final Set<TimedTask> tasks = Collections.newSetFromMap(new ConcurrentHashMap<TimedTask, Boolean>());
+  final Thread tickThread;
+  volatile boolean running = true;
+
+  /**
+   * tasks in the wheel - only touched by the tick thread
+   */
+  int wheelCount = 0;
+  /**
+   * the dueTick of each task put in the wheel - the head is the next tick to
+   * expire. A cancelled task's entry stays until its tick comes up. Only
+   * touched by the tick thread.
+   */
+  final PriorityQueue<Long> deadlines = new PriorityQueue<Long>();
+
+  /**
+   * @return the runtime-wide timing wheel - 1 ms ticks, 4 worker threads
+   */
+  static public synchronized TimingWheel getInstance() {
+    if (instance == null) {
+      instance = new TimingWheel("timer", 1, 512, 4);
+    }
+    return instance;
+  }
+
+  /**
+   * @param name
+   *          prefix of the thread names
+   * @param tickMs
+   *          resolution
+   * @param wheelSize
+   *          number of buckets - rounded up to a power of 2
+   * @param workerCount
+   *          threads running the expired tasks
+   */
+  public TimingWheel(final String name, long tickMs, int wheelSize, int workerCount) {
+    this.name = name;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+    int size = 1;
+    while (size < wheelSize) {
+      size <<= 1;
+    }
+    buckets = new TimedTask[size];
+    mask = size - 1;
+
+    final AtomicInteger count = new AtomicInteger();
+    workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, String.format("%s_%d", name, count.incrementAndGet()));
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+    tickThread = new Thread(this, String.format("%s_tick", name));
+    tickThread.setDaemon(true);
+    tickThread.start();
+  }
+
+  /**
+   * run once after delayMs
+   */
+  public TimedTask schedule(String name, Runnable runnable, long delayMs) {
+    return schedule(name, runnable, delayMs, 0, true);
+  }
+
+  /**
+   * run every periodMs measured from the first deadline - no drift, missed runs
+   * are skipped
+   */
+  public TimedTask scheduleAtFixedRate(String name, Runnable runnable, long initialDelayMs, long periodMs) {
+    return schedule(name, runnable, initialDelayMs, periodMs, true);
+  }
+
+  /**
+   * run with delayMs between the end of one run and the start of the next
+   */
+  public TimedTask scheduleWithFixedDelay(String name, Runnable runnable, long initialDelayMs, long delayMs) {
+    return schedule(name, runnable, initialDelayMs, delayMs, false);
+  }
+
+  TimedTask schedule(String name, Runnable runnable, long delayMs, long periodMs, boolean fixedRate) {
+    TimedTask task = create(name, runnable, periodMs, fixedRate);
+    task.start(delayMs);
+    return task;
+  }
+
+  /**
+   * a task which is not scheduled yet - for a runnable which needs its own
+   * handle (to cancel itself) before it first runs. TimedTask.start schedules
+   * it.
+   *
+   * @param periodMs
+   *          0 runs it once
+   * @param fixedRate
+   *          false for a fixed delay between runs
+   */
+  public TimedTask create(String name, Runnable runnable, long periodMs, boolean fixedRate) {
+    return new TimedTask(this, name, runnable, 0, TimeUnit.MILLISECONDS.toNanos(periodMs), fixedRate);
+  }
+
+  void add(TimedTask task) {
+    pending.add(task);
+    LockSupport.unpark(tickThread);
+  }
+
+  /**
+   * @return stats of all the tasks which haven't been cancelled
+   */
+  public List<TaskStats> getStats() {
+    ArrayList<TaskStats> ret = new ArrayList<TaskStats>();
+    for (TimedTask task : tasks) {
+      ret.add(task.getStats());
+    }
+    return ret;
+  }
+
+  public void stop() {
+    running = false;
+    LockSupport.unpark(tickThread);
+    workers.shutdownNow();
+  }
+
+  @Override
+  public void run() {
+    long start = System.nanoTime();
+    long tick = 0;
+    while (running) {
+      if (wheelCount == 0 && pending.isEmpty()) {
+        // nothing to do - wait for add()
+        LockSupport.park(this);
+        start = System.nanoTime();
+        tick = 0;
+        // ticks of cancelled tasks - counted from the old start
+        deadlines.clear();
+        continue;
+      }
+
+      transferPending(start, tick);
+      if (wheelCount == 0) {
+        // all cancelled
+        continue;
+      }
+
+      // sleep through the ticks with nothing due - add() wakes us early
+      long due = Math.max(tick, deadlines.peek());
+      long sleep = start + (due + 1) * tickNanos - System.nanoTime();
+      if (sleep > 0) {
+        LockSupport.parkNanos(this, sleep);
+        continue;
+      }
+
+      tick = due;
+      expire(tick);
+      ++tick;
+    }
+  }
+
+  void transferPending(long start, long tick) {
+    TimedTask task;
+    while ((task = pending.poll()) != null) {
+      if (task.cancelled) {
+        continue;
+      }
+      long ticks = (task.deadline - start) / tickNanos;
+      if (ticks < tick) {
+        // overdue - this tick
+        ticks = tick;
+      }
+      task.dueTick = ticks;
+      int index = (int) (ticks & mask);
+      task.next = buckets[index];
+      buckets[index] = task;
+      ++wheelCount;
+      deadlines.add(ticks);
+    }
+  }
+
+  void expire(long tick) {
+    int index = (int) (tick & mask);
+    TimedTask task = buckets[index];
+    TimedTask prev = null;
+    while (task != null) {
+      TimedTask next = task.next;
+      if (task.cancelled || task.dueTick <= tick) {
+        // unlink
+        if (prev == null) {
+          buckets[index] = next;
+        } else {
+          prev.next = next;
+        }
+        task.next = null;
+        --wheelCount;
+        if (!task.cancelled) {
+          submit(task);
+        }
+      } else {
+        prev = task;
+      }
+      task = next;
+    }
+    while (!deadlines.isEmpty() && deadlines.peek() <= tick) {
+      deadlines.poll();
+    }
+  }
+
+  void submit(final TimedTask task) {
+    try {
+      workers.execute(new Runnable() {
+        @Override
+        public void run() {
+          task.execute();
+        }
+      });
+    } catch (Exception e) {
+      log.error(String.format("%s could not run %s", name, task.name));
+      Logging.logError(e);
+    }
+  }
+
+}
@@ -0,0 +1,237 @@
+package org.myrobotlab.i2c;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.myrobotlab.framework.SerialExecutor;
+import org.myrobotlab.framework.TimedTask;
+import org.myrobotlab.framework.TimingWheel;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.interfaces.I2CControl;
+import org.myrobotlab.service.interfaces.I2CController;
+import org.slf4j.Logger;
+
+/**
+ * A scheduled set of register block reads over one or more i2c devices.
+ *
+ * Every sample all reads are issued back to back with i2cWriteReadAsync - on
+ * an Arduino that is one pipelined burst of I2C_WRITE_READ commands instead of
+ * a write and a read round trip per device. The results are packed into one
+ * frame and each I2CControl gets its slice through onI2cData. The frame is
+ * reused for the next sample, so a control has to copy what it keeps.
+ *
+ * A sample is skipped (counted as an overrun) while the previous one is still
+ * outstanding.
+ *
+ * Neither the TimingWheel worker nor the thread which completes the reads (the
+ * controller's reader) does the work - issuing can wait for the controller's
+ * send window, so it is handed to the shared pool as a managed block, and the
+ * frame is dispatched to the controls from the shared pool too.
+ */
+public class I2CBurst {
+
+	public final static Logger log = LoggerFactory.getLogger(I2CBurst.class);
+
+	public static class Read {
+		public final I2CControl control;
+		public final int busAddress;
+		public final int deviceAddress;
+		public final int register;
+		public final int length;
+		/**
+		 * position of this read in the packed frame
+		 */
+		public final int offset;
+
+		Read(I2CControl control, int busAddress, int deviceAddress, int register, int length, int offset) {
+			this.control = control;
+			this.busAddress = busAddress;
+			this.deviceAddress = deviceAddress;
+			this.register = register;
+			this.length = length;
+			this.offset = offset;
+		}
+	}
+
+	final String name;
+	final List<Read> reads = new ArrayList<Read>();
+	byte[] frame = new byte[0];
+
+	I2CController controller;
+	TimedTask task = null;
+	Executor executor = SerialExecutor.getSharedPool();
+	final AtomicBoolean outstanding = new AtomicBoolean(false);
+
+	// stats
+	final AtomicLong samples = new AtomicLong();
+	final AtomicLong overruns = new AtomicLong();
+	final AtomicLong errors = new AtomicLong();
+	final AtomicLong latencyTotal = new AtomicLong();
+
+	public I2CBurst(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * read length bytes starting at register of a device every sample
+	 */
+	public synchronized I2CBurst add(I2CControl control, int busAddress, int deviceAddress, int register, int length) {
+		reads.add(new Read(control, busAddress, deviceAddress, register, length, frame.length));
+		frame = new byte[frame.length + length];
+		return this;
+	}
+
+	public synchronized List<Read> getReads() {
+		return new ArrayList<Read>(reads);
+	}
+
+	/**
+	 * sample every periodMs on the TimingWheel
+	 */
+	public synchronized void start(I2CController controller, long periodMs) {
+		stop();
+		this.controller = controller;
+		task = TimingWheel.getInstance().scheduleAtFixedRate(String.format("%s.burst", name), new Runnable() {
+			@Override
+			public void run() {
+				sample();
+			}
+		}, periodMs, periodMs);
+	}
+
+	public synchronized void stop() {
+		if (task != null) {
+			task.cancel();
+			task = null;
+		}
+	}
+
+	public synchronized boolean isRunning() {
+		return task != null;
+	}
+
+	/**
+	 * start a sample - skipped if the previous one is still outstanding, the
+	 * reads are issued from the executor
+	 */
+	public void sample() {
+		if (!outstanding.compareAndSet(false, true)) {
+			overruns.incrementAndGet();
+			return;
+		}
+		final Read[] burst;
+		final byte[] frame;
+		final I2CController controller;
+		synchronized (this) {
+			burst = reads.toArray(new Read[reads.size()]);
+			frame = this.frame;
+			controller = this.controller;
+		}
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				issue(controller, burst, frame);
+			}
+		});
+	}
+
+	void issue(final I2CController controller, final Read[] burst, final byte[] frame) {
+		final long sampleTs = System.nanoTime();
+		@SuppressWarnings("unchecked")
+		final CompletableFuture<byte[]>[] results = new CompletableFuture[burst.length];
+		try {
+			if (Thread.currentThread() instanceof ForkJoinWorkerThread) {
+				// a full send window or a controller without a real async path
+				// waits - let the pool compensate
+				ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+					boolean done = false;
+
+					@Override
+					public boolean isReleasable() {
+						return done;
+					}
+
+					@Override
+					public boolean block() {
+						request(controller, burst, results);
+						done = true;
+						return true;
+					}
+				});
+			} else {
+				request(controller, burst, results);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			errors.incrementAndGet();
+			outstanding.set(false);
+			return;
+		} catch (RuntimeException e) {
+			errors.incrementAndGet();
+			outstanding.set(false);
+			log.warn(String.format("%s could not start sample", name), e);
+			return;
+		}
+		CompletableFuture.allOf(results).whenCompleteAsync(new BiConsumer<Void, Throwable>() {
+			@Override
+			public void accept(Void v, Throwable t) {
+				try {
+					latencyTotal.addAndGet(System.nanoTime() - sampleTs);
+					dispatch(burst, results, frame);
+				} finally {
+					outstanding.set(false);
+				}
+			}
+		}, executor);
+	}
+
+	void request(I2CController controller, Read[] burst, CompletableFuture<byte[]>[] results) {
+		for (int i = 0; i < burst.length; ++i) {
+			Read read = burst[i];
+			byte[] register = new byte[] { (byte) read.register };
+			results[i] = controller.i2cWriteReadAsync(read.control, read.busAddress, read.deviceAddress, register, register.length, read.length);
+		}
+	}
+
+	void dispatch(Read[] burst, CompletableFuture<byte[]>[] results, byte[] frame) {
+		samples.incrementAndGet();
+		// pack the whole sample before handing it out
+		boolean[] valid = new boolean[burst.length];
+		for (int i = 0; i < burst.length; ++i) {
+			Read read = burst[i];
+			byte[] data = results[i].isCompletedExceptionally() ? null : results[i].getNow(null);
+			if (data == null || data.length < read.length || read.offset + read.length > frame.length) {
+				errors.incrementAndGet();
+				continue;
+			}
+			System.arraycopy(data, 0, frame, read.offset, read.length);
+			valid[i] = true;
+		}
+		for (int i = 0; i < burst.length; ++i) {
+			if (!valid[i]) {
+				continue;
+			}
+			try {
+				burst[i].control.onI2cData(burst[i], frame);
+			} catch (Exception e) {
+				errors.incrementAndGet();
+				log.warn(String.format("%s %s could not process i2c data", name, burst[i].control.getName()), e);
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		long samples = this.samples.get();
+		return String.format("%s %d reads %d bytes samples %d overruns %d errors %d latency avg %.2f ms", name, reads.size(), frame.length, samples, overruns.get(), errors.get(),
+				(samples == 0) ? 0 : latencyTotal.get() / (samples * 1000000.0));
+	}
+
+}
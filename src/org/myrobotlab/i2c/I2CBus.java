@@ -10,11 +10,17 @@ import org.myrobotlab.service.interfaces.SensorDataListener;
 public class I2CBus implements DeviceController, I2CBusControl, SensorDataListener{
 
 	String name;
+	int busAddress;
 	// transient too help prevent infinite recursion in gson 
 	transient I2CBusController controller;
 	
-	public I2CBus(String Name){
+	public I2CBus(String Name, int busAddress){
 		this.name = Name;
+		this.busAddress = busAddress;
+	}
+
+	public int getBusAddress() {
+		return busAddress;
 	}
 	@Override
 	public void setController(DeviceController controller) {
@@ -50,7 +56,7 @@ public class I2CBus implements DeviceController, I2CBusControl, SensorDataListen
 		// This is where the data read from the i2c bus gets returned 
 		// pass it back to the I2cController ( Arduino ) so that it can be 
 		// returned to the i2cdevice
-		controller.i2cReturnData(data);
+		controller.i2cReturnData(busAddress, data);
 		
 	}
 	@Override
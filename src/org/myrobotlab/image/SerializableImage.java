@@ -36,7 +36,10 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
 import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.imageio.stream.MemoryCacheImageOutputStream;
 
@@ -77,6 +80,12 @@ public class SerializableImage implements Serializable {
   private long timestamp;
   public int frameIndex;
 
+  /**
+   * quality 0-100 when the image has to be jpg encoded - less than 0 is the
+   * ImageIO default
+   */
+  private int jpgQuality = -1;
+
   public static void main(String[] args) throws Exception {
     try {
       LoggingFactory.getInstance().configure();
@@ -133,11 +142,39 @@ public class SerializableImage implements Serializable {
     this.timestamp = System.currentTimeMillis();
   }
 
+  /**
+   * jpg encodes image with quality 0-100, less than 0 uses the ImageIO default
+   */
+  public static byte[] encodeJpg(BufferedImage image, int quality) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    MemoryCacheImageOutputStream out = new MemoryCacheImageOutputStream(bos);
+    if (quality < 0) {
+      ImageIO.write(image, "jpg", out);
+    } else {
+      ImageWriter writer = ImageIO.getImageWritersByFormatName("jpg").next();
+      try {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(Math.min(quality, 100) / 100.0f);
+        writer.setOutput(out);
+        writer.write(null, new IIOImage(image, null, null), param);
+      } finally {
+        writer.dispose();
+      }
+    }
+    out.close();
+    return bos.toByteArray();
+  }
+
   public ByteBuffer getByteBuffer() {
     return buffer;
   }
 
-  public byte[] getBytes() {
+  /**
+   * the jpg encoded image - encoded once on first access, all consumers share
+   * the bytes
+   */
+  public synchronized byte[] getBytes() {
     if (bytes != null) {
       return bytes;
     }
@@ -150,9 +187,7 @@ public class SerializableImage implements Serializable {
 
     if (image != null) {
       try {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        ImageIO.write(image, "jpg", new MemoryCacheImageOutputStream(bos));
-        bytes = bos.toByteArray();
+        bytes = encodeJpg(image, jpgQuality);
         return bytes;
       } catch (Exception e) {
         Logging.logError(e);
@@ -163,10 +198,13 @@ public class SerializableImage implements Serializable {
   }
 
   public int getHeight() {
-    return image.getHeight();
+    return getImage().getHeight();
   }
 
-  public BufferedImage getImage() {
+  /**
+   * the decoded image - decoded once on first access, all consumers share it
+   */
+  public synchronized BufferedImage getImage() {
     if (image != null)
       return image;
 
@@ -189,7 +227,7 @@ public class SerializableImage implements Serializable {
       Logging.logError(e);
     }
 
-    return null;
+    return image;
   }
 
   public String getSource() {
@@ -201,7 +239,11 @@ public class SerializableImage implements Serializable {
   }
 
   public int getWidth() {
-    return image.getWidth();
+    return getImage().getWidth();
+  }
+
+  public int getJpgQuality() {
+    return jpgQuality;
   }
 
   private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
@@ -209,10 +251,18 @@ public class SerializableImage implements Serializable {
     Logging.logTime("readObject");
   }
 
-  public void setImage(BufferedImage image) {
+  public synchronized void setBytes(byte[] bytes) {
+    this.bytes = bytes;
+  }
+
+  public synchronized void setImage(BufferedImage image) {
     this.image = image;
   }
 
+  public void setJpgQuality(int jpgQuality) {
+    this.jpgQuality = jpgQuality;
+  }
+
   public void setSource(String source) {
     this.source = source;
   }
@@ -224,12 +274,12 @@ public class SerializableImage implements Serializable {
   // FIXME ??? use OpenCV cvEncode ???
   // FIXME !! PNG default ???
   private void writeObject(java.io.ObjectOutputStream out) throws IOException {
-    ImageIO.write(image, "jpg", new MemoryCacheImageOutputStream(out));
+    ImageIO.write(getImage(), "jpg", new MemoryCacheImageOutputStream(out));
     Logging.logTime("writeObject");
   }
 
   public void writeToFile(String filename) {
-    writeToFile(image, filename);
+    writeToFile(getImage(), filename);
   }
 
 }
\ No newline at end of file
@@ -65,7 +65,11 @@ public class CommunicationManager implements Serializable, CommunicationInterfac
   @Override
   final public void send(final Message msg) {
 
-    ServiceInterface sw = Runtime.getService(msg.getName());
+    // the pre-resolved id is only trusted if the name was not changed since
+    ServiceInterface sw = (msg.targetId > 0) ? Runtime.getService(msg.targetId) : null;
+    if (sw == null || !sw.getName().equals(msg.name)) {
+      sw = Runtime.getService(msg.getName());
+    }
     if (sw == null) {
       log.error(String.format("could not find service %s to process %s from sender %s - tearing down route", msg.name, msg.method, msg.sender));
       ServiceInterface sender = Runtime.getService(msg.sender);
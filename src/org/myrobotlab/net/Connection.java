@@ -53,6 +53,17 @@ public class Connection implements Serializable {
   public int rx = 0;
   public int tx = 0;
 
+  /**
+   * bytes on the wire - including framing
+   */
+  public long rxBytes = 0;
+  public long txBytes = 0;
+
+  /**
+   * messages dropped because the peer was not keeping up
+   */
+  public long txDropped = 0;
+
   public String rxSender;
   public String rxSendingMethod;
   public String rxName;
@@ -80,10 +91,18 @@ public class Connection implements Serializable {
      */
   }
 
+  public double getRxBytesPerMessage() {
+    return (rx == 0) ? 0 : rxBytes / (double) rx;
+  }
+
+  public double getTxBytesPerMessage() {
+    return (tx == 0) ? 0 : txBytes / (double) tx;
+  }
+
   @Override
   public String toString() {
-    return String.format("%s %s rx %d %s.%s --> %s.%s tx %d %s.%s --> %s.%s", protocolKey, state, rx, rxSender, rxSendingMethod, rxName, rxMethod, tx, txSender, txSendingMethod,
-        txName, txMethod);
+    return String.format("%s %s rx %d (%.1f bytes/msg) %s.%s --> %s.%s tx %d (%.1f bytes/msg) %s.%s --> %s.%s", protocolKey, state, rx, getRxBytesPerMessage(), rxSender,
+        rxSendingMethod, rxName, rxMethod, tx, getTxBytesPerMessage(), txSender, txSendingMethod, txName, txMethod);
   }
 
 }
@@ -0,0 +1,113 @@
+package org.myrobotlab.net;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.logging.Logging;
+import org.slf4j.Logger;
+
+/**
+ * A selector thread - one of the small fixed pool of threads which do all the
+ * non-blocking socket io of a TcpServer. Each channel belongs to a single loop
+ * and is only touched by that loop's thread - other threads hand work over
+ * with execute().
+ */
+public class EventLoop implements Runnable {
+
+	public final static Logger log = LoggerFactory.getLogger(EventLoop.class);
+
+	/**
+	 * called by the loop thread when the channel's key is ready
+	 */
+	public interface Handler {
+		void onReady(SelectionKey key) throws IOException;
+
+		void onError(Exception e);
+	}
+
+	final Selector selector;
+	final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	final Thread thread;
+	volatile boolean running = true;
+
+	public EventLoop(String name) throws IOException {
+		selector = Selector.open();
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * run task on the loop thread
+	 */
+	public void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	public boolean inLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * register channel - must be called from the loop thread
+	 */
+	public SelectionKey register(SelectableChannel channel, int ops, Handler handler) throws IOException {
+		channel.configureBlocking(false);
+		return channel.register(selector, ops, handler);
+	}
+
+	public void stop() {
+		running = false;
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				selector.select();
+
+				Runnable task;
+				while ((task = tasks.poll()) != null) {
+					task.run();
+				}
+
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					Handler handler = (Handler) key.attachment();
+					try {
+						if (key.isValid()) {
+							handler.onReady(key);
+						}
+					} catch (Exception e) {
+						handler.onError(e);
+					}
+				}
+			} catch (Exception e) {
+				Logging.logError(e);
+			}
+		}
+
+		for (SelectionKey key : selector.keys()) {
+			try {
+				key.channel().close();
+			} catch (IOException e) {
+				// dont care
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			// dont care
+		}
+	}
+
+}
@@ -1,16 +1,17 @@
 package org.myrobotlab.net;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.Socket;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
-import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Properties;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.myrobotlab.image.SerializableImage;
 import org.myrobotlab.logging.Level;
@@ -21,105 +22,333 @@ import org.slf4j.Logger;
 
 /**
  * @author GroG
- * 
+ *
  *         mjpeg server - allows multiple jpeg streams to be sent to multiple
- *         clients extends the most excellent NanoHTTPD server - multi-part mime
- *         was done with little parts borg'd in from -
+ *         clients - multi-part mime was done with little parts borg'd in from -
  *         http://www.servlets.com/cos/
  *         http://www.damonkohler.com/2010/10/mjpeg-streaming-protocol.html
- * 
+ *
+ *         Non-blocking - all clients are served by a couple of EventLoops.
+ *         Each frame is jpg encoded and framed as a multipart part once, every
+ *         client of the feed writes the same bytes. A client has a single
+ *         "latest frame" slot - when it can't keep up, newer frames replace the
+ *         one it has not started yet, so a slow browser skips frames instead
+ *         of holding up the others.
+ *
  */
-public class MjpegServer extends NanoHTTPD {
+public class MjpegServer implements EventLoop.Handler {
 
-  public class Connection {
-    boolean initialized = false;
-    Socket socket;
-    OutputStream os;
+  public final static Logger log = LoggerFactory.getLogger(MjpegServer.class.getCanonicalName());
+
+  final static byte[] STREAM_HEADER = ("HTTP/1.0 200 OK\r\n" + "Server: YourServerName\r\n" + "Connection: close\r\n" + "Max-Age: 0\r\n" + "Expires: 0\r\n"
+      + "Cache-Control: no-cache, private\r\n" + "Pragma: no-cache\r\n" + "Content-Type: multipart/x-mixed-replace; " + "boundary=--BoundaryString\r\n\r\n").getBytes();
+
+  final static byte[] PART_END = "\r\n\r\n".getBytes();
+
+  /**
+   * largest http request accepted
+   */
+  final static int MAX_REQUEST = 8192;
 
-    public Connection(Socket socket) throws IOException {
-      this.socket = socket;
-      os = socket.getOutputStream();
+  /**
+   * a named video feed and the clients watching it
+   */
+  public class Feed {
+    final String name;
+    final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<Client>();
+    /**
+     * the last frame as a multipart part - new clients start with it
+     */
+    volatile ByteBuffer last = null;
+    long frames = 0;
+
+    Feed(String name) {
+      this.name = name;
     }
 
-    public void close() {
-      try {
-        socket.close();
-        socket = null;
-      } catch (IOException e) {
+    void publish(SerializableImage frame) {
+      ++frames;
+      if (clients.size() == 0) {
+        // nobody watching - don't encode
+        last = null;
+        return;
+      }
+
+      byte[] bytes = frame.getBytes();
+      if (bytes == null) {
+        return;
+      }
+      byte[] header = ("--BoundaryString\r\n" + "Content-type: image/jpg\r\n" + "Content-Length: " + bytes.length + "\r\n\r\n").getBytes();
+      ByteBuffer part = ByteBuffer.allocate(header.length + bytes.length + PART_END.length);
+      part.put(header).put(bytes).put(PART_END);
+      part.flip();
+      last = part.asReadOnlyBuffer();
+
+      for (Client client : clients) {
+        client.offer(last);
       }
     }
   }
 
-  public class VideoWebClient extends Thread {
-    String feed;
-    ArrayList<Connection> connections = new ArrayList<Connection>();
-    BlockingQueue<SerializableImage> videoFeed;
+  /**
+   * stream statistics of a client
+   */
+  public static class ClientStats implements Serializable {
+    private static final long serialVersionUID = 1L;
 
-    VideoWebClient(BlockingQueue<SerializableImage> videoFeed, String feed, Socket socket) throws IOException {
-      // super(String.format("stream_%s:%s",
-      // socket.getInetAddress().getHostAddress(), socket.getPort()));
-      super(String.format("stream_%s", feed));
-      this.videoFeed = videoFeed;
-      this.feed = feed;
-      connections.add(new Connection(socket));
+    public String feed;
+    public String address;
+    public long framesSent;
+    /**
+     * frames replaced by a newer one before they were started
+     */
+    public long framesSkipped;
+    public long bytesSent;
+    /**
+     * frames sent per second over the last full second
+     */
+    public double fps;
+
+    @Override
+    public String toString() {
+      return String.format("%s %s sent %d skipped %d bytes %d %.1f fps", feed, address, framesSent, framesSkipped, bytesSent, fps);
+    }
+  }
+
+  /**
+   * a browser connection - owned by one loop
+   */
+  class Client implements EventLoop.Handler {
+    final SocketChannel channel;
+    final EventLoop loop;
+    SelectionKey key = null;
+    final ClientStats stats = new ClientStats();
+
+    // read side - loop thread only
+    ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST);
+    Feed feed = null;
+
+    // write side - loop thread only
+    ByteBuffer writing = null;
+    boolean writingFrame = false;
+    boolean closeAfterWrite = false;
+    long windowStart = 0;
+    long windowFrames = 0;
+
+    // guarded by this
+    /**
+     * the latest frame not yet started
+     */
+    ByteBuffer pending = null;
+    /**
+     * nothing to write - the next offer has to re-arm OP_WRITE
+     */
+    boolean idle = false;
+
+    volatile boolean closed = false;
+
+    Client(EventLoop loop, SocketChannel channel) throws IOException {
+      this.loop = loop;
+      this.channel = channel;
+      InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+      stats.address = String.format("%s:%d", remote.getAddress().getHostAddress(), remote.getPort());
+    }
+
+    void start() {
+      final Client self = this;
+      loop.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            key = loop.register(channel, SelectionKey.OP_READ, self);
+          } catch (Exception e) {
+            onError(e);
+          }
+        }
+      });
+    }
+
+    /**
+     * a new frame of the feed - from the publishing thread
+     */
+    void offer(ByteBuffer part) {
+      boolean arm;
+      synchronized (this) {
+        if (pending != null) {
+          ++stats.framesSkipped;
+        }
+        pending = part.duplicate();
+        arm = idle;
+        idle = false;
+      }
+      if (arm) {
+        loop.execute(new Runnable() {
+          @Override
+          public void run() {
+            if (key != null && key.isValid()) {
+              key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+          }
+        });
+      }
     }
 
-    // TODO - look into buffered output stream
     @Override
-    public void run() {
-      try {
-        while (true) {
-          SerializableImage frame = videoFeed.take();
-          // ++frameIndex;
-          // log.info("frame {}", frameIndex);
-          Logging.logTime(String.format("Mjpeg frameIndex %d %d", frame.frameIndex, System.currentTimeMillis()));
-          for (Iterator<Connection> iterator = connections.iterator(); iterator.hasNext();) {
-            Connection c = iterator.next();
-
-            try {
-
-              if (!c.initialized) {
-                c.os.write(
-                    ("HTTP/1.0 200 OK\r\n" + "Server: YourServerName\r\n" + "Connection: close\r\n" + "Max-Age: 0\r\n" + "Expires: 0\r\n" + "Cache-Control: no-cache, private\r\n"
-                        + "Pragma: no-cache\r\n" + "Content-Type: multipart/x-mixed-replace; " + "boundary=--BoundaryString\r\n\r\n").getBytes());
-                c.initialized = true;
-              }
-
-              byte[] bytes = frame.getBytes();
-
-              // begin jpg
-              c.os.write(("--BoundaryString\r\n" + "Content-type: image/jpg\r\n" + "Content-Length: " + bytes.length + "\r\n\r\n").getBytes());
-              // write the jpg
-              c.os.write(bytes);
-
-              // end
-              c.os.write("\r\n\r\n".getBytes());
-
-              // flush or not to flush that is the question
-              c.os.flush();
-              Logging.logTime(String.format("Mjpeg frameIndex %d %d SENT", frame.frameIndex, System.currentTimeMillis()));
-            } catch (Exception e) {
-              Logging.logError(e);
-              log.info("removing socket");
-              iterator.remove();
-              c.close();
+    public void onReady(SelectionKey key) throws IOException {
+      if (key.isReadable()) {
+        read();
+      }
+      if (key.isValid() && key.isWritable()) {
+        write();
+      }
+    }
+
+    @Override
+    public void onError(Exception e) {
+      if (!closed) {
+        log.info("mjpeg client {} closed {}", stats.address, e.getMessage());
+      }
+      close();
+    }
+
+    void read() throws IOException {
+      if (!request.hasRemaining()) {
+        // request handled - only watching for the browser to hang up
+        request.clear();
+      }
+      int n = channel.read(request);
+      if (n < 0) {
+        close();
+        return;
+      }
+      if (feed != null || closeAfterWrite) {
+        request.clear();
+        return;
+      }
+
+      String text = new String(request.array(), 0, request.position(), "ISO-8859-1");
+      if (!text.contains("\r\n\r\n")) {
+        if (!request.hasRemaining()) {
+          throw new IOException("request too large");
+        }
+        return;
+      }
+      request.clear();
+      onRequest(text);
+    }
+
+    void onRequest(String text) {
+      // GET /feed?params HTTP/1.1
+      String uri = "/";
+      String[] parts = text.substring(0, text.indexOf("\r\n")).split(" ");
+      if (parts.length > 1) {
+        uri = parts[1];
+      }
+      int pos = uri.indexOf('?');
+      if (pos != -1) {
+        uri = uri.substring(0, pos);
+      }
+      String name = uri.substring(uri.lastIndexOf('/') + 1);
+      log.info("mjpeg {} GET {}", stats.address, uri);
+
+      Feed f = feeds.get(name);
+      if (f == null) {
+        writing = ByteBuffer.wrap(getIndex());
+        closeAfterWrite = true;
+      } else {
+        feed = f;
+        stats.feed = name;
+        writing = ByteBuffer.wrap(STREAM_HEADER);
+        synchronized (this) {
+          ByteBuffer last = f.last;
+          if (last != null) {
+            pending = last.duplicate();
+          }
+        }
+        f.clients.add(this);
+      }
+      writingFrame = false;
+      key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    void write() throws IOException {
+      while (true) {
+        if (writing == null) {
+          synchronized (this) {
+            writing = pending;
+            pending = null;
+            if (writing == null) {
+              idle = true;
+            }
+          }
+          if (writing == null) {
+            if (closeAfterWrite) {
+              close();
+            } else {
+              key.interestOps(SelectionKey.OP_READ);
             }
+            return;
+          }
+          writingFrame = true;
+        }
 
-          } // for each socket
+        stats.bytesSent += channel.write(writing);
+        if (writing.hasRemaining()) {
+          // socket buffer full - continue when it drains
+          return;
         }
-      } catch (Exception e) {
-        // FIXME remove socket from list - continue to run
-        Logging.logError(e);
+        if (writingFrame) {
+          sent();
+        }
+        writing = null;
       }
+    }
 
+    void sent() {
+      ++stats.framesSent;
+      long now = System.nanoTime();
+      if (windowStart == 0) {
+        windowStart = now;
+      }
+      ++windowFrames;
+      long elapsed = now - windowStart;
+      if (elapsed >= 1000000000L) {
+        stats.fps = windowFrames * 1000000000.0 / elapsed;
+        windowStart = now;
+        windowFrames = 0;
+      }
+    }
+
+    void close() {
+      closed = true;
+      if (feed != null) {
+        feed.clients.remove(this);
+      }
+      clients.remove(this);
+      if (key != null) {
+        key.cancel();
+      }
+      try {
+        channel.close();
+      } catch (IOException e) {
+        // dont care
+      }
     }
   }
 
-  public final static Logger log = LoggerFactory.getLogger(MjpegServer.class.getCanonicalName());
+  final int port;
+  transient ServerSocketChannel serverChannel = null;
+  transient EventLoop[] loops = null;
+  int nextLoop = 0;
 
-  transient public HashMap<String, BlockingQueue<SerializableImage>> videoFeeds = new HashMap<String, BlockingQueue<SerializableImage>>();
+  /**
+   * number of selector threads
+   */
+  int loopCount = Math.min(2, java.lang.Runtime.getRuntime().availableProcessors());
+
+  transient public ConcurrentHashMap<String, Feed> feeds = new ConcurrentHashMap<String, Feed>();
 
-  transient public HashMap<String, VideoWebClient> clients = new HashMap<String, VideoWebClient>();
+  transient CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<Client>();
 
   /**
    * @param args
@@ -131,70 +360,137 @@ public class MjpegServer extends NanoHTTPD {
       server.start();
       log.info("here");
     } catch (IOException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
+      Logging.logError(e);
     }
 
   }
 
   public MjpegServer(int port) {
-    super(port);
+    this.port = port;
   }
 
-  @Override
-  public Response serve(String uri, String method, Properties header, Properties parms, Socket socket) {
-    log.info(method + " '" + uri + "' ");
-
-    Enumeration e = header.propertyNames();
-    while (e.hasMoreElements()) {
-      String value = (String) e.nextElement();
-      log.info("  HDR: '" + value + "' = '" + header.getProperty(value) + "'");
-    }
-    e = parms.propertyNames();
-    while (e.hasMoreElements()) {
-      String value = (String) e.nextElement();
-      log.info("  PRM: '" + value + "' = '" + parms.getProperty(value) + "'");
+  synchronized EventLoop nextLoop() throws IOException {
+    if (loops == null) {
+      loops = new EventLoop[loopCount];
+      for (int i = 0; i < loops.length; ++i) {
+        loops[i] = new EventLoop(String.format("mjpeg.%d.%d", port, i));
+      }
     }
+    EventLoop loop = loops[nextLoop];
+    nextLoop = (nextLoop + 1) % loops.length;
+    return loop;
+  }
 
-    String feed = null;
-
-    // look for "file" requests
-    if (uri.contains(".")) {
-      return serveFile(uri, header, new File("."), true);
+  public void start() throws IOException {
+    if (serverChannel != null) {
+      stop();
     }
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.socket().setReuseAddress(true);
+    serverChannel.bind(new InetSocketAddress(port), 10);
+    log.info("mjpeg server listening on {}", serverChannel.getLocalAddress());
 
-    int pos0 = uri.lastIndexOf("/");
-    if (pos0 != -1) {
-      feed = uri.substring(pos0 + 1);
-    }
+    final EventLoop loop = nextLoop();
+    final MjpegServer self = this;
+    final ServerSocketChannel channel = serverChannel;
+    loop.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          loop.register(channel, SelectionKey.OP_ACCEPT, self);
+        } catch (Exception e) {
+          onError(e);
+        }
+      }
+    });
+  }
 
-    if (!videoFeeds.containsKey(feed)) {
-      StringBuffer response = new StringBuffer(String.format("<html><body align=center>video feeds<br/>", feed));
-      for (Map.Entry<String, BlockingQueue<SerializableImage>> o : videoFeeds.entrySet()) {
-        // Map.Entry<String,SerializableImage> pairs = o;
-        // response.append(String.format("<a href=\"http://%\" >%s</a><br/>",
-        // o.getKey()));
-        response.append(String.format("<img src=\"%s\" /><br/>%s<br/>", o.getKey(), o.getKey()));
-        log.info(o.getKey());
+  public void stop() {
+    if (serverChannel != null) {
+      try {
+        serverChannel.close();
+      } catch (IOException e) {
+        // dont care
       }
-      if (videoFeeds.size() == 0) {
-        response.append("no video feed exist - try attaching a VideoSource to the VideoStreamer");
+    }
+    serverChannel = null;
+    for (Client client : clients) {
+      client.close();
+    }
+    synchronized (this) {
+      if (loops != null) {
+        for (int i = 0; i < loops.length; ++i) {
+          loops[i].stop();
+        }
+        loops = null;
       }
-      response.append("</body></html>");
-      return new Response(HTTP_OK, MIME_HTML, response.toString());
-    } else {
+    }
+  }
+
+  /**
+   * accept - called by the loop thread
+   */
+  @Override
+  public void onReady(SelectionKey key) throws IOException {
+    if (!key.isAcceptable()) {
+      return;
+    }
+    SocketChannel channel;
+    while ((channel = ((ServerSocketChannel) key.channel()).accept()) != null) {
       try {
-        VideoWebClient client = new VideoWebClient(videoFeeds.get(feed), feed, socket);
+        channel.socket().setTcpNoDelay(true);
+        Client client = new Client(nextLoop(), channel);
+        clients.add(client);
         client.start();
-        clients.put(feed, client);
-      } catch (IOException e1) {
-        Logging.logError(e1);
+      } catch (Exception e) {
+        log.error("accepting mjpeg client threw", e);
+        channel.close();
       }
     }
-    // new Response(HTTP_OK, MIME_HTML, "<html><body>Redirected: <a href=\""
-    // + uri + "\">" + uri + "</a></body></html>");
+  }
+
+  @Override
+  public void onError(Exception e) {
+    log.error("mjpeg server socket threw", e);
+  }
+
+  /**
+   * a frame for the feed named by the image's source - encoded once and only
+   * if someone is watching
+   */
+  public void publish(SerializableImage frame) {
+    String name = frame.getSource();
+    Feed feed = feeds.get(name);
+    if (feed == null) {
+      feeds.putIfAbsent(name, new Feed(name));
+      feed = feeds.get(name);
+    }
+    feed.publish(frame);
+  }
 
-    return null; // serveFile(uri, header, new File("."), true);
+  public List<ClientStats> getClientStats() {
+    ArrayList<ClientStats> ret = new ArrayList<ClientStats>();
+    for (Client client : clients) {
+      ret.add(client.stats);
+    }
+    return ret;
+  }
+
+  byte[] getIndex() {
+    StringBuffer response = new StringBuffer("<html><body align=center>video feeds<br/>");
+    for (Map.Entry<String, Feed> o : feeds.entrySet()) {
+      response.append(String.format("<img src=\"%s\" /><br/>%s<br/>", o.getKey(), o.getKey()));
+    }
+    if (feeds.size() == 0) {
+      response.append("no video feed exist - try attaching a VideoSource to the VideoStreamer");
+    }
+    response.append("</body></html>");
+    byte[] body = response.toString().getBytes();
+    byte[] header = ("HTTP/1.0 200 OK\r\n" + "Content-Type: text/html\r\n" + "Content-Length: " + body.length + "\r\n" + "Connection: close\r\n\r\n").getBytes();
+    byte[] ret = new byte[header.length + body.length];
+    System.arraycopy(header, 0, ret, 0, header.length);
+    System.arraycopy(body, 0, ret, header.length, body.length);
+    return ret;
   }
 
 }
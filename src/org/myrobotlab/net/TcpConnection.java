@@ -0,0 +1,728 @@
+package org.myrobotlab.net;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.myrobotlab.codec.CodecBinary;
+import org.myrobotlab.codec.CodecSerialized;
+import org.myrobotlab.codec.CodecUtils;
+import org.myrobotlab.framework.MRLListener;
+import org.myrobotlab.framework.Message;
+import org.myrobotlab.framework.ServiceEnvironment;
+import org.myrobotlab.framework.TimingWheel;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.logging.Logging;
+import org.myrobotlab.service.RemoteAdapter;
+import org.myrobotlab.service.Runtime;
+import org.myrobotlab.service.interfaces.CommunicationInterface;
+import org.myrobotlab.service.interfaces.ServiceInterface;
+import org.slf4j.Logger;
+
+/**
+ * A tcp connection to another mrl instance (or any client speaking the binary
+ * codec). The socket is non-blocking and owned by one of the TcpServer's
+ * EventLoops - there is no thread per connection.
+ * 
+ * Outbound messages are encoded by the sending thread into a bounded write
+ * queue and the loop writes everything queued with a single gathering write.
+ * When a peer can not keep up and the queue is full, send() holds the sending
+ * thread (the sender's Outbox) for up to writeTimeoutMs - so the back pressure
+ * shows up in the sender's Outbox and its OverflowPolicy - before the message
+ * is dropped and counted. Senders to other peers are not affected. The other
+ * way the loop never waits for a service's outbox - while it is full the
+ * connection stops reading, which holds up the peer.
+ * 
+ * Peers which predate the binary codec speak Java serialization. Such a peer
+ * writes its stream header as soon as it is connected and fails on anything
+ * but a Java serialization header, so the codec is picked from what the peer
+ * sends first: an accepted connection waits for the client's header and
+ * answers in kind, a connection we opened waits up to handshakeTimeoutMs for
+ * the server to speak first before it sends the binary header. Messages sent
+ * in the meantime are held and encoded once the codec is known.
+ */
+public class TcpConnection implements EventLoop.Handler {
+
+	public final static Logger log = LoggerFactory.getLogger(TcpConnection.class);
+
+	final static int MAX_GATHER = 64;
+
+	/**
+	 * bytes which can be queued for a peer before senders are held back
+	 */
+	public static int maxQueuedBytes = 1024 * 1024;
+
+	/**
+	 * how long a sender is held back by a full queue before the message is
+	 * dropped
+	 */
+	public static long writeTimeoutMs = 2000;
+
+	/**
+	 * how long a connection we opened waits for a Java serialization header
+	 * before it starts the binary codec
+	 */
+	public static long handshakeTimeoutMs = 250;
+
+	/**
+	 * the most messages held before the codec is known - after that senders
+	 * are held up like with a full write queue
+	 */
+	public static int maxHeld = 1024;
+
+	/**
+	 * while the service's outbox is full reading stops - it is retried this
+	 * often
+	 */
+	public static long stallRetryMs = 10;
+
+	// FIXME - should be Gateway not Service
+	RemoteAdapter myService;
+	TcpServer server;
+	EventLoop loop;
+	SocketChannel channel;
+	SelectionKey key;
+	public Connection data;
+	URI protocolKey;
+	URI uri; // mrl uri
+
+	CodecBinary codec = new CodecBinary();
+	/**
+	 * set when the peer speaks Java serialization - before headerSent
+	 */
+	CodecSerialized legacy = null;
+	final boolean outbound;
+
+	// read side - loop thread only
+	ByteBuffer readBuf = ByteBuffer.allocate(64 * 1024);
+	/**
+	 * messages read while the outbox was full - no more are decoded until
+	 * these are delivered
+	 */
+	ArrayDeque<Message> stalled = new ArrayDeque<Message>();
+	boolean readPaused = false;
+	boolean headerRead = false;
+
+	// write side - guarded by this
+	ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<ByteBuffer>();
+	int queuedBytes = 0;
+	boolean writePending = false;
+	ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+	boolean headerSent = false;
+	/**
+	 * messages sent before the codec is known
+	 */
+	ArrayList<Message> held = new ArrayList<Message>();
+
+	volatile boolean closed = false;
+
+	// debug / logging
+	private transient FileOutputStream msgLog = null;
+
+	/**
+	 * @param key
+	 *          the key the TcpServer knows the connection by
+	 * @param outbound
+	 *          true if we connected - false if it was accepted
+	 */
+	public TcpConnection(TcpServer server, EventLoop loop, SocketChannel channel, URI key, boolean outbound) throws IOException, URISyntaxException {
+		this.server = server;
+		this.outbound = outbound;
+		this.myService = server.myService;
+		this.loop = loop;
+		this.channel = channel;
+		this.data = new Connection(myService.getName(), key);
+
+		// creating new mrluri to represent this connection... (its specific to a single client)
+		InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+		protocolKey = new URI(String.format("tcp://%s:%d", remote.getAddress().getHostAddress(), remote.getPort()));
+		uri = new URI(String.format("mrl://%s/%s", myService.getName(), protocolKey.toString()));
+
+		if (server.logMessages) {
+			msgLog = new FileOutputStream(String.format("%s.%d.json", myService.getName(), System.currentTimeMillis()));
+		}
+
+		channel.socket().setTcpNoDelay(true);
+	}
+
+	/**
+	 * register with the loop - starts reading, the header is sent once the
+	 * codec is known
+	 */
+	public void start() {
+		final TcpConnection self = this;
+		loop.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					key = loop.register(channel, SelectionKey.OP_READ, self);
+				} catch (Exception e) {
+					onError(e);
+				}
+			}
+		});
+		if (outbound) {
+			// a server which predates the binary codec speaks first
+			TimingWheel.getInstance().schedule(String.format("%s.handshake", protocolKey), new Runnable() {
+				@Override
+				public void run() {
+					loop.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								sendHeader(false);
+							} catch (Exception e) {
+								onError(e);
+							}
+						}
+					});
+				}
+			}, handshakeTimeoutMs);
+		}
+	}
+
+	/**
+	 * picks the codec, queues its header and the messages held until now - loop
+	 * thread only. Does nothing if the header has been sent.
+	 */
+	void sendHeader(boolean java) throws IOException {
+		synchronized (this) {
+			if (headerSent || closed) {
+				return;
+			}
+			ByteBuffer header;
+			if (java) {
+				legacy = new CodecSerialized();
+				header = legacy.encodeHeader();
+			} else {
+				header = ByteBuffer.wrap(CodecBinary.HEADER);
+			}
+			writeQueue.add(header);
+			queuedBytes += header.limit();
+			headerSent = true;
+			for (int i = 0; i < held.size(); ++i) {
+				queue(held.get(i));
+			}
+			held = null;
+			writePending = true;
+			notifyAll();
+		}
+		updateInterest();
+	}
+
+	/**
+	 * read unless paused, write if anything is queued - loop thread only
+	 */
+	void updateInterest() {
+		if (key == null || !key.isValid()) {
+			return;
+		}
+		int ops = readPaused ? 0 : SelectionKey.OP_READ;
+		synchronized (this) {
+			if (writePending) {
+				ops |= SelectionKey.OP_WRITE;
+			}
+		}
+		key.interestOps(ops);
+	}
+
+	public String getXforewarderName(String name){
+		return String.format("%s%s", myService.getPrefix(protocolKey), name);
+	}
+
+	@Override
+	public void onReady(SelectionKey key) throws IOException {
+		if (key.isReadable()) {
+			read();
+		}
+		if (key.isValid() && key.isWritable()) {
+			write();
+		}
+	}
+
+	@Override
+	public void onError(Exception e) {
+		if (!closed) {
+			log.info("{} closed {}", protocolKey, e.getMessage());
+		}
+		close();
+	}
+
+	void read() throws IOException {
+		int n = channel.read(readBuf);
+		if (n < 0) {
+			close();
+			return;
+		}
+		process();
+	}
+
+	/**
+	 * decodes and delivers what has been read - stops when the outbox is full
+	 */
+	void process() throws IOException {
+		readBuf.flip();
+		try {
+			if (!headerRead) {
+				int type = CodecBinary.detectHeader(readBuf);
+				if (type == CodecBinary.STREAM_UNKNOWN) {
+					return;
+				}
+				boolean java = (type == CodecBinary.STREAM_JAVA);
+				// answer in kind - unless we already spoke
+				sendHeader(java);
+				if (java != (legacy != null)) {
+					throw new IOException(String.format("peer speaks %s but the %s header was sent", java ? "java serialization" : "binary", java ? "binary" : "java serialization"));
+				}
+				if (java) {
+					log.info("{} speaks java serialization - falling back", protocolKey);
+				}
+				headerRead = true;
+				data.state = Connection.CONNECTED;
+			}
+
+			Message msg;
+			while (!closed && stalled.isEmpty() && (msg = decodeFrame()) != null) {
+				++data.rx;
+				data.rxBytes = (legacy != null) ? legacy.rxBytes : codec.rxBytes;
+				try {
+					onMessage(msg);
+				} catch (Exception e) {
+					// a bad message does not take the connection down
+					Logging.logError(e);
+				}
+			}
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		} finally {
+			readBuf.compact();
+		}
+
+		if (!readBuf.hasRemaining() && stalled.isEmpty()) {
+			// a frame larger than the buffer
+			if (readBuf.capacity() > CodecBinary.MAX_FRAME_SIZE) {
+				throw new IOException("frame too large");
+			}
+			ByteBuffer bigger = ByteBuffer.allocate(readBuf.capacity() * 2);
+			readBuf.flip();
+			bigger.put(readBuf);
+			readBuf = bigger;
+		}
+	}
+
+	void write() throws IOException {
+		int n = 0;
+		synchronized (this) {
+			Iterator<ByteBuffer> it = writeQueue.iterator();
+			while (n < MAX_GATHER && it.hasNext()) {
+				gather[n++] = it.next();
+			}
+		}
+
+		if (n > 0) {
+			channel.write(gather, 0, n);
+			Arrays.fill(gather, 0, n, null);
+		}
+
+		synchronized (this) {
+			boolean freed = false;
+			while (!writeQueue.isEmpty() && !writeQueue.peek().hasRemaining()) {
+				queuedBytes -= writeQueue.poll().limit();
+				freed = true;
+			}
+			if (writeQueue.isEmpty()) {
+				writePending = false;
+			}
+			if (freed) {
+				notifyAll();
+			}
+		}
+		updateInterest();
+	}
+
+	/**
+	 * hands msg to the service's outbox without waiting - if it is full the
+	 * message is kept and reading paused until it is delivered, so a slow
+	 * service holds up its peer (tcp flow control) and not the loop
+	 */
+	void deliver(Message msg) {
+		if (stalled.isEmpty() && myService.getOutbox().tryAdd(msg)) {
+			return;
+		}
+		stalled.add(msg);
+		if (!readPaused) {
+			readPaused = true;
+			updateInterest();
+			retryLater();
+		}
+	}
+
+	void retryLater() {
+		TimingWheel.getInstance().schedule(String.format("%s.stalled", protocolKey), new Runnable() {
+			@Override
+			public void run() {
+				loop.execute(new Runnable() {
+					@Override
+					public void run() {
+						resume();
+					}
+				});
+			}
+		}, stallRetryMs);
+	}
+
+	/**
+	 * delivers the stalled messages and carries on reading - loop thread only
+	 */
+	void resume() {
+		if (closed) {
+			return;
+		}
+		while (!stalled.isEmpty()) {
+			if (!myService.getOutbox().tryAdd(stalled.peek())) {
+				retryLater();
+				return;
+			}
+			stalled.poll();
+		}
+		readPaused = false;
+		updateInterest();
+		try {
+			// frames which were read before the stall
+			process();
+		} catch (Exception e) {
+			onError(e);
+		}
+	}
+
+	/**
+	 * like Service.send - but never waits for the outbox
+	 */
+	void sendLocal(String name, String method, Object... data) {
+		Message msg = myService.createMessage(name, method, data);
+		msg.sender = myService.getName();
+		msg.sendingMethod = "send";
+		deliver(msg);
+	}
+
+	/**
+	 * guarded by this
+	 */
+	boolean isFull() {
+		return queuedBytes >= maxQueuedBytes || (held != null && held.size() >= maxHeld);
+	}
+
+	Message decodeFrame() throws IOException, ClassNotFoundException {
+		return (legacy != null) ? legacy.decodeFrame(readBuf) : codec.decodeFrame(readBuf);
+	}
+
+	/**
+	 * encodes msg onto the write queue - guarded by this
+	 */
+	void queue(Message msg) throws IOException {
+		// encoded in queue order - the codec's dictionary depends on it
+		ByteBuffer frame = (legacy != null) ? legacy.encodeFrame(msg) : codec.encodeFrame(msg);
+		writeQueue.add(frame);
+		queuedBytes += frame.limit();
+		data.txBytes = (legacy != null) ? legacy.txBytes : codec.txBytes;
+	}
+
+	/**
+	 * listening for inbound messages - runs on the loop thread so it must never
+	 * block
+	 */
+	void onMessage(Message msg) throws Exception {
+		// nice for debugging
+		if (msgLog != null) {
+			msgLog.write(String.format("%s <-- %s - %s\n", myService.getName(), uri, CodecUtils.toJson(msg)).getBytes());
+		}
+
+		data.rxSender = msg.sender;
+		data.rxSendingMethod = msg.sendingMethod;
+		data.rxName = msg.name;
+		data.rxMethod = msg.method;
+
+		/**
+		 * mrl works similar to - router x-forwarded in that it
+		 * re-writes names in order to provide an abstraction to a
+		 * remote system. This can prevent name collision and add
+		 * clarity to remote system names - msg sender / name re-write
+		 * are trivial - the danger & difficulty comes when names are
+		 * embedded in the data payload - such as register, addListener
+		 * and other(?) methods - for example - service names as
+		 * parameters ! - which "should" only happen with incorrect user scripts..
+		 * because registration is where all info regarding foreign service names should
+		 * come from
+		 */
+		msg.sender = String.format("%s%s", myService.getPrefix(protocolKey), msg.sender);
+
+		// router x-forwarded inbound proxy begin
+		// router x-forwarded inbound proxy end
+
+		// FIXME - SCARY ! - anywhere address (name) info is in the data
+		// payload you will get errors & bugs :(
+		// getName() would need to be there of couse... I can't imagine
+		// how many other places ..
+		// Not the best implementation - an Instance would
+
+		// FIXME - HashSet of methods needed ?
+		// FIXME - if Encode.getMethodSignature("publishState",
+		// Service.class).equals(Encode.getMethodSignature(msg));
+		
+		if ("publishState".equals(msg.method)) { // this is to a specific service not runtime - msg.name != null
+			// FIXME - normalize
+			// router x-forwarded inbound proxy begin
+			Object[] msgData = msg.data;
+			ServiceInterface si = null;
+
+			if (msgData != null) {
+				if (msg.data.length == 0) {
+					log.error("*** a publishState was sent without a service - you probably want to send broadcastState ! {} {}**", msg.sender, msg.data.length);
+					return;
+				}
+
+				si = (ServiceInterface) msg.data[0];
+				si.setInstanceId(uri);
+				String xForwardDataName = String.format("%s%s", myService.getPrefix(protocolKey), si.getName());
+				si.setName(xForwardDataName);
+			}
+			// router x-forwarded inbound proxy end
+		}
+
+		if ("onState".equals(msg.method)) { // this is to a specific service not runtime - msg.name != null
+			// FIXME - normalize
+			// router x-forwarded inbound proxy begin
+			Object[] msgData = msg.data;
+			ServiceInterface si = null;
+
+			if (msgData != null) {
+				if (msg.data.length == 0) {
+					log.error("*** a publishState was sent without a service - you probably want to send broadcastState ! {} {}**", msg.sender, msg.data.length);
+					return;
+				}
+
+				si = (ServiceInterface) msg.data[0];
+				si.setInstanceId(uri);
+				String xForwardDataName = String.format("%s%s", myService.getPrefix(protocolKey), si.getName());
+				si.setName(xForwardDataName);
+			}
+			// router x-forwarded inbound proxy end
+		}
+
+		// establishing a callback route - src needs xforward modification
+		if ("addListener".equals(msg.method)) { // this is to a specific service not runtime - msg.name != null
+			MRLListener listener = (MRLListener) msg.data[0];
+			listener.callbackName = msg.sender;
+		}
+
+		// FIXME - THIS NEEDS TO BE NORMALIZED - WILL BE THE SAME IN
+		// XMPP & WEBGUI & REMOTEADAPTER
+		// FIXME - normalize to single method - check for data
+		// type too ? !!!
+		if (msg.method.equals("onRegistered")) {
+			Object[] msgData = msg.data;
+			ServiceInterface si = null;
+
+			// ALLOWED TO BE NULL - establishes initial contact & a
+			// ServiceEnvironment
+			if (msgData != null) {
+				si = (ServiceInterface) msg.data[0];
+				si.setInstanceId(uri);
+				String xForwardDataName = String.format("%s%s", myService.getPrefix(protocolKey), si.getName());
+				si.setName(xForwardDataName);
+				sendLocal(Runtime.getInstance().getName(), "register", si, uri);
+			}
+
+		}
+		if (msg.method.equals("register")) {
+			// create the URI key for foreign service environment
+
+			// IMPORTANT - this is an optimization and probably
+			// should be in the Comm interface defintion
+			CommunicationInterface cm = myService.getComm();
+			cm.addRemote(uri, protocolKey);
+
+			// check if the URI is already defined - if not - we will
+			// send back the services which we want to export -
+			// Security will filter appropriately
+			ServiceEnvironment foreignEnvironment = Runtime.getEnvironment(uri);
+
+			// FIXME - normalize ...
+			Object[] msgData = msg.data;
+			ServiceInterface si = null;
+
+			// ALLOWED TO BE NULL - establishes initial contact & a
+			// ServiceEnvironment
+			if (msgData != null) {
+				si = (ServiceInterface) msg.data[0];
+				si.setInstanceId(uri);
+				String xForwardDataName = String.format("%s%s", myService.getPrefix(protocolKey), si.getName());
+				si.setName(xForwardDataName);
+
+			}
+
+			// invoke directly or send msg - we've gone both ways
+			// if invoke directly - security/control must be employed here
+			sendLocal(Runtime.getInstance().getName(), "register", si, uri);
+
+			// if is a foreign process - send our registration
+			if (foreignEnvironment == null) {
+
+				// not defined we will send export
+				// TODO - Security filters - default export (include
+				// exclude) - mapset of name
+				ServiceEnvironment localProcess = Runtime.getLocalServicesForExport();
+
+				Iterator<String> it = localProcess.serviceDirectory.keySet().iterator();
+				String name;
+				ServiceInterface toRegister;
+				while (it.hasNext()) {
+					name = it.next();
+					toRegister = localProcess.serviceDirectory.get(name);
+
+					// the following will wrap a message within a
+					// message and send it remotely
+					// This Thread CANNOT Write on The
+					// ObjectOutputStream directly -
+					// IT SHOULD NEVER DO ANY METHOD WHICH CAN BLOCK
+					// !!!! - 3 days of bug chasing when
+					// it wrote to ObjectOutputStream and oos blocked
+					// when the buffer was full - causing deadlock
+					// putting it on the inbox will move it to a
+					// different thread
+					Message sendService = myService.createMessage(null, "register", toRegister);
+					Message outbound = myService.createMessage(myService.getName(), "sendRemote", new Object[] { protocolKey, sendService });
+					myService.getInbox().add(outbound);
+
+				}
+
+			}
+
+			// BEGIN ENCAPSULATION --- ENCODER END -------------
+		} else {
+			deliver(msg);
+		}
+	}
+
+	/**
+	 * queue msg for the peer - called by the sending thread
+	 * 
+	 * @return false if the connection is closed or the message was dropped
+	 *         because the peer did not keep up
+	 */
+	// FIXME - merge with RemoteAdapter - this is just sendRemote
+	public boolean send(Message msg) {
+		boolean wakeup = false;
+		try {
+
+			// router x-forwarded outbound proxy begin
+			// TODO - optimize - set once ! same with prefix .. +1 for the
+			// String.format("%s.", n) period !			
+			
+			if (msg.name != null) {
+				msg.name = msg.name.substring(myService.getPrefix(protocolKey).length());
+			}
+			// router x-forwarded outbound proxy end
+
+			// nice for debugging
+			if (msgLog != null) {
+				msgLog.write(String.format("%s --> %s - %s\n", myService.getName(), uri, CodecUtils.toJson(msg)).getBytes());
+			}
+
+			synchronized (this) {
+				if (isFull()) {
+					// back pressure - hold the sender
+					long deadline = System.currentTimeMillis() + writeTimeoutMs;
+					long wait;
+					while (!closed && isFull() && (wait = deadline - System.currentTimeMillis()) > 0) {
+						wait(wait);
+					}
+					if (!closed && isFull()) {
+						++data.txDropped;
+						log.warn("{} is not keeping up - dropped {}.{}", protocolKey, msg.name, msg.method);
+						return false;
+					}
+				}
+				if (closed) {
+					return false;
+				}
+
+				if (!headerSent) {
+					// codec not known yet
+					held.add(msg);
+				} else {
+					queue(msg);
+					if (!writePending) {
+						writePending = true;
+						wakeup = true;
+					}
+				}
+
+				data.txSender = msg.sender;
+				data.txSendingMethod = msg.sendingMethod;
+				data.txName = msg.name;
+				data.txMethod = msg.method;
+				++data.tx;
+			}
+
+		} catch (Exception e) {
+			myService.error(e);
+			close();
+			return false;
+		}
+
+		if (wakeup) {
+			// coalesces - everything queued until the loop runs goes in one write
+			loop.execute(new Runnable() {
+				@Override
+				public void run() {
+					updateInterest();
+				}
+			});
+		}
+		return true;
+	}
+
+	public int getQueuedBytes() {
+		return queuedBytes;
+	}
+
+	// FIXME - prepare for re-init / or completely de-init
+	// and have RA re-establish connection
+	public void close() {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			notifyAll();
+		}
+		data.state = Connection.DISCONNECTED;
+		server.remove(this);
+		try {
+			if (key != null) {
+				key.cancel();
+			}
+			channel.close();
+			if (msgLog != null) {
+				msgLog.close();
+			}
+			String instanceID = String.format("mrl://%s/%s", myService.getName(), data.protocolKey);
+			log.info("removing {} from registry", instanceID);
+			// FIXME - not working - are you sure you want to do this?
+			// just because the connection is broken
+			Runtime.release(new URI(instanceID));
+		} catch (Exception dontCare) {
+		}
+	}
+
+}
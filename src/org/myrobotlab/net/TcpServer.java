@@ -1,12 +1,14 @@
 package org.myrobotlab.net;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.URI;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.myrobotlab.framework.Message;
 import org.myrobotlab.logging.LoggerFactory;
@@ -14,100 +16,153 @@ import org.myrobotlab.logging.Logging;
 import org.myrobotlab.service.RemoteAdapter;
 import org.slf4j.Logger;
 
-public class TcpServer implements Runnable {
+/**
+ * Non-blocking tcp transport of a RemoteAdapter. Accepting, reading and writing
+ * for all connections - inbound and outbound - is done by a small fixed pool of
+ * EventLoops, so hundreds of clients cost no more threads than a few.
+ */
+public class TcpServer implements EventLoop.Handler {
 	public final static Logger log = LoggerFactory.getLogger(TcpServer.class);
 
 	/**
-	 * list of active tcp connections tcp connections need a new thread for a
-	 * listener - to recv messages and maintain the connection udp does not - it
-	 * requires a single server on a single port
+	 * list of active tcp connections - connections share the event loops, udp
+	 * does not need them - it requires a single server on a single port
 	 */
-	transient private HashMap<URI, TcpThread> tcpClientList = new HashMap<URI, TcpThread>();
+	transient private ConcurrentHashMap<URI, TcpConnection> tcpClientList = new ConcurrentHashMap<URI, TcpConnection>();
 
 	transient RemoteAdapter myService = null;
-	transient ServerSocket serverSocket = null;
-	transient ObjectOutputStream out;
-	transient ObjectInputStream in;
+	transient ServerSocketChannel serverChannel = null;
+	transient EventLoop[] loops = null;
+	int nextLoop = 0;
 	Integer serverPort;
 	boolean isRunning = false;
-	transient Thread serverThread = null;
+
+	/**
+	 * number of selector threads
+	 */
+	int loopCount = Math.min(4, java.lang.Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * write every message as json to a file per connection - debugging only
+	 */
+	boolean logMessages = false;
 
 	public TcpServer(RemoteAdapter s) {
 		myService = s;
 	}
 
+	synchronized EventLoop nextLoop() throws IOException {
+		if (loops == null) {
+			loops = new EventLoop[loopCount];
+			for (int i = 0; i < loops.length; ++i) {
+				loops[i] = new EventLoop(String.format("%s.tcp.%d", myService.getName(), i));
+			}
+		}
+		EventLoop loop = loops[nextLoop];
+		nextLoop = (nextLoop + 1) % loops.length;
+		return loop;
+	}
+
 	public void start(int serverPort){
 		
 		this.serverPort = serverPort;
 		
-		if (serverThread != null){
+		if (serverChannel != null){
 			stop();
 		}
-		
-		serverThread = new Thread(this, String.format("%s.tcp.%d", myService.getName(), this.serverPort));
-		serverThread.start();
+
+		try {
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.socket().setReuseAddress(true);
+			serverChannel.bind(new InetSocketAddress(serverPort), 10);
+			myService.info(String.format("TcpServer listening on %s", serverChannel.getLocalAddress()));
+
+			final EventLoop loop = nextLoop();
+			final TcpServer self = this;
+			final ServerSocketChannel channel = serverChannel;
+			loop.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						loop.register(channel, SelectionKey.OP_ACCEPT, self);
+					} catch (Exception e) {
+						onError(e);
+					}
+				}
+			});
+			isRunning = true;
+		} catch (Exception e) {
+			log.error("tcp server socket threw", e);
+			isRunning = false;
+		}
 	}
 
 	public void stop() {
-		if (serverThread != null) {
-			serverThread.interrupt();
+		isRunning = false;
+		if (serverChannel != null) {
+			try {
+				serverChannel.close();
+			} catch (IOException e) {
+				// dont care
+			}
 		}
+		serverChannel = null;
 	}
 
+	/**
+	 * accept - called by the loop thread
+	 */
 	@Override
-	public void run() {
-		try {
-
-			serverSocket = new ServerSocket(serverPort, 10);
-			myService.info(String.format("TcpServer listening on %s", serverSocket.getLocalSocketAddress()));
-
-			isRunning = true;
-
-			while (isRunning) {
+	public void onReady(SelectionKey key) throws IOException {
+		if (!key.isAcceptable()) {
+			return;
+		}
+		SocketChannel clientChannel;
+		while ((clientChannel = ((ServerSocketChannel) key.channel()).accept()) != null) {
+			try {
 				// FIXME - on contact register the "environment" regardless
 				// if a service registers !!!
-				java.net.Socket clientSocket = serverSocket.accept();
-				// inbound connection FIXME - all keys constructed in
-				// Encoder
-				// TODO reduce these 2 methods to an interface
-				// addTcpClient(clientSocket, myService);
-				
-				
-				// ADD TCP CLIENT BEGIN ! - probably should not be in RemoteAdapter - as this is a detail for tcp
-				
-				String clientKey = String.format("tcp://%s:%d", clientSocket.getInetAddress().getHostAddress(), clientSocket.getPort());
+				InetSocketAddress remote = (InetSocketAddress) clientChannel.getRemoteAddress();
+				String clientKey = String.format("tcp://%s:%d", remote.getAddress().getHostAddress(), remote.getPort());
 				URI uri = new URI(clientKey);
 				// HELP PROTOKEY VS MRL KEY ??
-				TcpThread tcp = new TcpThread(myService, uri, clientSocket);
+				TcpConnection tcp = new TcpConnection(this, nextLoop(), clientChannel, uri, false);
 				tcpClientList.put(uri, tcp);
 				myService.connections.put(uri, tcp.data);
-				
-				// ADD TCP CLIENT END ! - probably should not be in RemoteAdapter - as this is a detail for tcp
-				
+				tcp.start();
+
 				myService.broadcastState();
+			} catch (Exception e) {
+				log.error("accepting connection threw", e);
+				clientChannel.close();
 			}
-
-			serverSocket.close();
-		} catch (Exception e) {
-			log.error("tcp server socket threw", e);
 		}
-		isRunning = false;
+	}
+
+	@Override
+	public void onError(Exception e) {
+		log.error("tcp server socket threw", e);
 	}
 
 	public void shutdown() {
-		if ((serverSocket != null) && (!serverSocket.isClosed())) {
-			try {
-				serverSocket.close();
-			} catch (IOException e) {
-				// dont care
+		stop();
+		for (TcpConnection tcp : tcpClientList.values()) {
+			tcp.close();
+		}
+		synchronized (this) {
+			if (loops != null) {
+				for (int i = 0; i < loops.length; ++i) {
+					loops[i].stop();
+				}
+				loops = null;
 			}
 		}
-		serverSocket = null;
 	}
 
 	public boolean isReady() {
-		if (serverSocket != null) {
-			return serverSocket.isBound();
+		ServerSocketChannel channel = serverChannel;
+		if (channel != null) {
+			return channel.socket().isBound();
 		}
 		return false;
 	}
@@ -126,7 +181,7 @@ public class TcpServer implements Runnable {
 			// get an asynch response
 
 			if (uri.getScheme().equals("tcp")) {
-				TcpThread tcp = tcpClientList.get(uri);
+				TcpConnection tcp = tcpClientList.get(uri);
 				log.info("" + tcp);
 				// check socket connectivity
 				// attempt to re-connect if disconnected
@@ -137,28 +192,54 @@ public class TcpServer implements Runnable {
 		return myService.connections;
 	}
 
+	/**
+	 * queue msg for uri - connects first if needed. Only blocks when the peer
+	 * is not keeping up (see TcpConnection.send)
+	 */
 	public void sendTcp(URI uri, Message msg) {
-		TcpThread tcp = null;
 		try {
-			if (tcpClientList.containsKey(uri)) {
-				tcp = tcpClientList.get(uri);
-			} else {
-
-				// constructor will throw if can not connect -> new Socket(host,
-				// port)
-				tcp = new TcpThread(myService, uri, null);
-				tcpClientList.put(uri, tcp);
-				// FIXME - refactor out
-				myService.connections.put(uri, tcp.data);
-				myService.broadcastState();
+			TcpConnection tcp = tcpClientList.get(uri);
+			if (tcp == null) {
+				// throws if can not connect - not under the lock, a peer which
+				// is slow to answer must not hold up senders to other peers
+				SocketChannel channel = SocketChannel.open(new InetSocketAddress(uri.getHost(), uri.getPort()));
+				boolean added = false;
+				synchronized (tcpClientList) {
+					tcp = tcpClientList.get(uri);
+					if (tcp == null) {
+						tcp = new TcpConnection(this, nextLoop(), channel, uri, true);
+						tcpClientList.put(uri, tcp);
+						// FIXME - refactor out
+						myService.connections.put(uri, tcp.data);
+						tcp.start();
+						added = true;
+					}
+				}
+				if (added) {
+					myService.broadcastState();
+				} else {
+					// another sender connected first
+					channel.close();
+				}
 			}
 
 			tcp.send(msg);
-			myService.connections.get(uri).tx++;
 
 		} catch (Exception e) {
 			Logging.logError(e);
 		}
 	}
 
+	void remove(TcpConnection tcp) {
+		tcpClientList.remove(tcp.data.protocolKey, tcp);
+	}
+
+	public void setLogMessages(boolean b) {
+		logMessages = b;
+	}
+
+	public void setLoopCount(int count) {
+		loopCount = count;
+	}
+
 }
@@ -0,0 +1,59 @@
+package org.myrobotlab.opencv;
+
+import java.awt.image.BufferedImage;
+
+import org.bytedeco.javacpp.opencv_core.IplImage;
+import org.myrobotlab.image.SerializableImage;
+import org.myrobotlab.service.OpenCV;
+
+/**
+ * a published display which is converted on demand. The first consumer to ask
+ * for the BufferedImage or the jpg bytes converts the frame's display - the
+ * other format is made from that one if it is asked for too. Either way each
+ * conversion happens at most once per frame.
+ *
+ * The display owns its image - a copy which is not part of the frame's pool,
+ * so nothing is leaked or recycled under it when the message is dropped before
+ * anyone converts it. It is freed after the first conversion, or by its
+ * deallocator when an unconverted display is garbage collected.
+ */
+public class DisplayImage extends SerializableImage {
+
+  private static final long serialVersionUID = 1L;
+
+  private transient IplImage display;
+
+  /**
+   * @param display
+   *          an image of its own - not one of the frame's acquired images
+   */
+  public DisplayImage(OpenCVData data, IplImage display) {
+    super((BufferedImage) null, data.getDisplayFilterName(), data.getFrameIndex());
+    setJpgQuality(data.getJpgQuality());
+    this.display = display;
+  }
+
+  @Override
+  public synchronized BufferedImage getImage() {
+    if (display != null) {
+      setImage(OpenCV.IplImageToBufferedImage(display));
+      converted();
+    }
+    return super.getImage();
+  }
+
+  @Override
+  public synchronized byte[] getBytes() {
+    if (display != null) {
+      setBytes(OpenCVData.encodeJpg(display, getJpgQuality()));
+      converted();
+    }
+    return super.getBytes();
+  }
+
+  private void converted() {
+    display.deallocate();
+    display = null;
+  }
+
+}
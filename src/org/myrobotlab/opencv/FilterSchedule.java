@@ -0,0 +1,202 @@
+package org.myrobotlab.opencv;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import org.myrobotlab.service.data.Rectangle;
+
+/**
+ * scheduling of an expensive detection filter - face detect, surf, match
+ * template. Set on a filter, the VideoProcessor uses it to decide what the
+ * filter gets to see:
+ *
+ * everyN - the filter runs on every n-th frame only, the frames between get
+ * the bounding boxes (and output) of the last run held over.
+ *
+ * roi - while there is a detection the filter only runs on the region around
+ * it, grown by roiMargin of its size on every side. Every fullFrameEvery frames
+ * and whenever the last run found nothing it runs on the full frame again, so a
+ * target which jumped or a second target is picked up.
+ *
+ * pyramidLevels - the region is scaled down by 2 per level before the filter
+ * sees it - as long as its short side stays above minSize. Only for scale
+ * invariant detectors, a template won't match a scaled down image.
+ *
+ * Filters report their results in frame coordinates - OpenCVFilter.frameX,
+ * frameY and frameLength map from the image they processed.
+ */
+public class FilterSchedule implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  public int everyN = 1;
+  public boolean roi = false;
+  public float roiMargin = 0.5f;
+  public int fullFrameEvery = 15;
+  public int pyramidLevels = 0;
+  /**
+   * no pyramid level makes the processed image's short side smaller than this
+   */
+  public int minSize = 64;
+
+  // the region of the current run - in frame pixels
+  transient int x;
+  transient int y;
+  transient int width;
+  transient int height;
+  transient int levels;
+  transient int scale = 1;
+
+  transient boolean hasRun = false;
+  transient int lastRun;
+  transient int lastFullFrame;
+
+  /**
+   * the union of the last run's bounding boxes in frame pixels - x, y, width,
+   * height - null if it found nothing
+   */
+  transient int[] lastDetection = null;
+  transient ArrayList<Rectangle> heldBoxes = null;
+
+  // counters
+  long runs = 0;
+  long skipped = 0;
+  long roiRuns = 0;
+
+  public FilterSchedule() {
+  }
+
+  public FilterSchedule(int everyN, boolean roi, int fullFrameEvery, int pyramidLevels) {
+    this.everyN = everyN;
+    this.roi = roi;
+    this.fullFrameEvery = fullFrameEvery;
+    this.pyramidLevels = pyramidLevels;
+  }
+
+  /**
+   * does the filter run on this frame - false counts it as skipped
+   */
+  public boolean shouldRun(int frameIndex) {
+    if (!hasRun || everyN <= 1 || frameIndex - lastRun >= everyN || frameIndex < lastRun) {
+      return true;
+    }
+    ++skipped;
+    return false;
+  }
+
+  /**
+   * picks region & pyramid levels of a run on this frame
+   */
+  public void plan(int frameIndex, int frameWidth, int frameHeight) {
+    boolean full = !roi || lastDetection == null || !hasRun || frameIndex - lastFullFrame >= fullFrameEvery || frameIndex < lastFullFrame;
+    if (full) {
+      x = 0;
+      y = 0;
+      width = frameWidth;
+      height = frameHeight;
+      lastFullFrame = frameIndex;
+    } else {
+      int mx = Math.round(lastDetection[2] * roiMargin);
+      int my = Math.round(lastDetection[3] * roiMargin);
+      x = Math.max(0, lastDetection[0] - mx);
+      y = Math.max(0, lastDetection[1] - my);
+      width = Math.min(frameWidth, lastDetection[0] + lastDetection[2] + mx) - x;
+      height = Math.min(frameHeight, lastDetection[1] + lastDetection[3] + my) - y;
+      if (width < 1 || height < 1) {
+        // detection off the frame
+        x = 0;
+        y = 0;
+        width = frameWidth;
+        height = frameHeight;
+        lastFullFrame = frameIndex;
+      } else {
+        ++roiRuns;
+      }
+    }
+
+    levels = 0;
+    int w = width;
+    int h = height;
+    while (levels < pyramidLevels && Math.min((w + 1) / 2, (h + 1) / 2) >= minSize) {
+      w = (w + 1) / 2;
+      h = (h + 1) / 2;
+      ++levels;
+    }
+    scale = 1 << levels;
+
+    hasRun = true;
+    lastRun = frameIndex;
+    ++runs;
+  }
+
+  /**
+   * the run covers the whole frame at full resolution
+   */
+  public boolean isFullFrame(int frameWidth, int frameHeight) {
+    return x == 0 && y == 0 && width == frameWidth && height == frameHeight && levels == 0;
+  }
+
+  public int toFrameX(double px) {
+    return x + (int) Math.round(px * scale);
+  }
+
+  public int toFrameY(double py) {
+    return y + (int) Math.round(py * scale);
+  }
+
+  public int toFrameLength(double length) {
+    return (int) Math.round(length * scale);
+  }
+
+  /**
+   * the bounding boxes the run reported - in frame coordinates, normalized to
+   * the frame size if the filter uses float values
+   */
+  public void detected(ArrayList<Rectangle> boxes, boolean normalized, int frameWidth, int frameHeight) {
+    heldBoxes = boxes;
+    if (boxes == null || boxes.size() == 0) {
+      lastDetection = null;
+      return;
+    }
+    float fx = normalized ? frameWidth : 1;
+    float fy = normalized ? frameHeight : 1;
+    float x0 = Float.MAX_VALUE;
+    float y0 = Float.MAX_VALUE;
+    float x1 = -Float.MAX_VALUE;
+    float y1 = -Float.MAX_VALUE;
+    for (Rectangle r : boxes) {
+      x0 = Math.min(x0, r.x * fx);
+      y0 = Math.min(y0, r.y * fy);
+      x1 = Math.max(x1, (r.x + r.width) * fx);
+      y1 = Math.max(y1, (r.y + r.height) * fy);
+    }
+    lastDetection = new int[] { Math.round(x0), Math.round(y0), Math.round(x1 - x0), Math.round(y1 - y0) };
+  }
+
+  /**
+   * forget the last detection - the next run is on the full frame
+   */
+  public void reset() {
+    hasRun = false;
+    lastDetection = null;
+    heldBoxes = null;
+  }
+
+  public long getRuns() {
+    return runs;
+  }
+
+  public long getSkipped() {
+    return skipped;
+  }
+
+  public long getRoiRuns() {
+    return roiRuns;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("every %d roi %b full frame every %d pyramid %d - runs %d roi runs %d skipped %d", everyN, roi, fullFrameEvery, pyramidLevels, runs, roiRuns, skipped);
+  }
+
+}
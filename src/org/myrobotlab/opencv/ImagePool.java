@@ -0,0 +1,150 @@
+package org.myrobotlab.opencv;
+
+import static org.bytedeco.javacpp.opencv_core.cvResetImageROI;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+import org.bytedeco.javacpp.opencv_core.IplImage;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * recycles the per frame IplImages of a VideoProcessor. Images are pooled by
+ * format - width, height, depth & channels - and handed out through
+ * OpenCVData.acquireImage. They come back when the last reference to the
+ * frame is released.
+ *
+ * An image which never comes back is not lost - it is freed by its
+ * deallocator when it is garbage collected, the outstanding count shows it.
+ * Images of a frame handed to code which does not release it are detached
+ * from the pool (OpenCVData.detach) and counted as such.
+ */
+public class ImagePool {
+
+  public final static Logger log = LoggerFactory.getLogger(ImagePool.class);
+
+  /**
+   * max free images kept per format - more are freed
+   */
+  int maxFree = 8;
+
+  final HashMap<Long, ArrayDeque<IplImage>> free = new HashMap<Long, ArrayDeque<IplImage>>();
+
+  // counters
+  long allocated = 0;
+  long reused = 0;
+  long returned = 0;
+  long freed = 0;
+  long detached = 0;
+
+  static long key(int width, int height, int depth, int channels) {
+    // depth has a sign bit (IPL_DEPTH_SIGN) - keep its low 16 bits & the sign
+    long d = (depth & 0xffff) | ((depth < 0) ? 0x10000 : 0);
+    return ((long) width << 40) | ((long) height << 24) | (d << 7) | (channels & 0x7f);
+  }
+
+  public synchronized IplImage acquire(int width, int height, int depth, int channels) {
+    ArrayDeque<IplImage> q = free.get(key(width, height, depth, channels));
+    if (q != null && q.size() > 0) {
+      ++reused;
+      return q.pop();
+    }
+    ++allocated;
+    return IplImage.create(width, height, depth, channels);
+  }
+
+  public IplImage acquire(IplImage like) {
+    return acquire(like.width(), like.height(), like.depth(), like.nChannels());
+  }
+
+  public synchronized void release(IplImage image) {
+    if (image == null) {
+      return;
+    }
+    ++returned;
+    long k = key(image.width(), image.height(), image.depth(), image.nChannels());
+    ArrayDeque<IplImage> q = free.get(k);
+    if (q == null) {
+      q = new ArrayDeque<IplImage>();
+      free.put(k, q);
+    }
+    if (q.size() < maxFree) {
+      // a filter may have left a roi on it
+      cvResetImageROI(image);
+      q.push(image);
+    } else {
+      ++freed;
+      image.deallocate();
+    }
+  }
+
+  /**
+   * images which will not come back - see OpenCVData.detach
+   */
+  public synchronized void detached(int count) {
+    detached += count;
+  }
+
+  /**
+   * frees all pooled images - e.g. after the resolution changed
+   */
+  public synchronized void clear() {
+    for (ArrayDeque<IplImage> q : free.values()) {
+      for (IplImage image : q) {
+        ++freed;
+        image.deallocate();
+      }
+    }
+    free.clear();
+  }
+
+  public synchronized void setMaxFree(int maxFree) {
+    this.maxFree = maxFree;
+  }
+
+  /**
+   * new native images created by the pool
+   */
+  public synchronized long getAllocated() {
+    return allocated;
+  }
+
+  /**
+   * acquires served from the pool
+   */
+  public synchronized long getReused() {
+    return reused;
+  }
+
+  public synchronized long getReturned() {
+    return returned;
+  }
+
+  /**
+   * images handed out and not (yet) returned - keeps growing if frames are
+   * never released
+   */
+  public synchronized long getOutstanding() {
+    return allocated + reused - returned - detached;
+  }
+
+  public synchronized long getDetached() {
+    return detached;
+  }
+
+  public synchronized int getFree() {
+    int ret = 0;
+    for (ArrayDeque<IplImage> q : free.values()) {
+      ret += q.size();
+    }
+    return ret;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("allocated %d reused %d returned %d freed %d detached %d outstanding %d free %d", allocated, reused, returned, freed, detached, getOutstanding(),
+        getFree());
+  }
+
+}
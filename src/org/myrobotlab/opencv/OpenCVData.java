@@ -1,6 +1,10 @@
 package org.myrobotlab.opencv;
 
+import static org.bytedeco.javacpp.opencv_core.cvCopy;
+import static org.bytedeco.javacpp.opencv_core.cvReleaseMat;
+import static org.bytedeco.javacpp.opencv_imgcodecs.CV_IMWRITE_JPEG_QUALITY;
 import static org.bytedeco.javacpp.opencv_imgcodecs.cvEncodeImage;
+import static org.bytedeco.javacpp.opencv_imgproc.cvResize;
 import static org.myrobotlab.opencv.VideoProcessor.INPUT_KEY;
 
 import java.awt.image.BufferedImage;
@@ -15,11 +19,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.imageio.ImageIO;
 
 import org.bytedeco.javacpp.opencv_core.CvMat;
 import org.bytedeco.javacpp.opencv_core.IplImage;
+import org.myrobotlab.image.SerializableImage;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
 import org.myrobotlab.service.OpenCV;
@@ -117,6 +123,19 @@ public class OpenCVData implements Serializable {
   private int frameIndex;
   private int eyesDifference;
 
+  /**
+   * images of this frame which go back to the pool when the last reference is
+   * released
+   */
+  private transient ImagePool pool = null;
+  private transient ArrayList<IplImage> pooled = null;
+  private transient AtomicInteger refCount = new AtomicInteger(1);
+
+  /**
+   * quality 0-100 of the jpgs encoded from this frame
+   */
+  private int jpgQuality = 95;
+
   static BufferedImage deepCopy(BufferedImage bi) {
     ColorModel cm = bi.getColorModel();
     boolean isAlphaPremultiplied = cm.isAlphaPremultiplied();
@@ -139,6 +158,103 @@ public class OpenCVData implements Serializable {
     this.frameIndex = frameIndex;
   }
 
+  public OpenCVData(String serviceName, int frameIndex, ImagePool pool) {
+    this(serviceName, frameIndex);
+    this.pool = pool;
+  }
+
+  // -------- frame lifecycle begin ----------------
+
+  /**
+   * a work or output image which lives as long as this frame - it is recycled
+   * when the last reference to the frame is released
+   */
+  public IplImage acquireImage(int width, int height, int depth, int channels) {
+    if (pool == null) {
+      return IplImage.create(width, height, depth, channels);
+    }
+    IplImage image = pool.acquire(width, height, depth, channels);
+    synchronized (this) {
+      if (pooled == null) {
+        pooled = new ArrayList<IplImage>();
+      }
+      pooled.add(image);
+    }
+    return image;
+  }
+
+  /**
+   * an image of the same format as like
+   */
+  public IplImage acquireImage(IplImage like) {
+    return acquireImage(like.width(), like.height(), like.depth(), like.nChannels());
+  }
+
+  /**
+   * a frame lived copy of src
+   */
+  public IplImage copyImage(IplImage src) {
+    IplImage copy = acquireImage(src);
+    cvCopy(src, copy, null);
+    return copy;
+  }
+
+  /**
+   * take a reference - code which holds on to the images after the frame was
+   * published (e.g. VideoSources) retains the frame and releases it when done
+   */
+  public OpenCVData retain() {
+    if (refCount == null) {
+      // deserialized - no images to recycle
+      return this;
+    }
+    refCount.incrementAndGet();
+    return this;
+  }
+
+  /**
+   * drop a reference - with the last one the acquired images go back to the
+   * pool and must not be used any more
+   */
+  public void release() {
+    if (refCount == null || refCount.decrementAndGet() != 0) {
+      return;
+    }
+    ArrayList<IplImage> images;
+    synchronized (this) {
+      images = pooled;
+      pooled = null;
+    }
+    if (images != null && pool != null) {
+      for (IplImage image : images) {
+        pool.release(image);
+      }
+    }
+  }
+
+  /**
+   * hand the frame to code which never releases it - subscribers and
+   * OpenCV.getOpenCVData callers. The acquired images leave the pool, they are
+   * freed by their deallocators when they are garbage collected.
+   */
+  public OpenCVData detach() {
+    ArrayList<IplImage> images;
+    synchronized (this) {
+      images = pooled;
+      pooled = null;
+    }
+    if (images != null && pool != null) {
+      pool.detached(images.size());
+    }
+    return this;
+  }
+
+  public int getRefCount() {
+    return (refCount == null) ? 0 : refCount.get();
+  }
+
+  // -------- frame lifecycle end ----------------
+
   public boolean containsAttribute(String name) {
     return data.containsKey(String.format("%s.attribute.%s", selectedFilter, name));
   }
@@ -178,7 +294,7 @@ public class OpenCVData implements Serializable {
    * @param filterName
    * @return
    */
-  public BufferedImage getBufferedImage(String filterName, String subkey) {
+  public synchronized BufferedImage getBufferedImage(String filterName, String subkey) {
     String bufferedImageKey;
     if (subkey != null) {
       bufferedImageKey = String.format("%s.%s.%s.%s", serviceName, filterName, subkey, KEY_BUFFERED_IMAGE);
@@ -198,6 +314,9 @@ public class OpenCVData implements Serializable {
       }
 
       IplImage img = (IplImage) data.get(imgKey);
+      if (img == null) {
+        return null;
+      }
 
       BufferedImage image = OpenCV.IplImageToBufferedImage(img);
 
@@ -332,6 +451,24 @@ public class OpenCVData implements Serializable {
     return ((IplImage) data.get(key));
   }
 
+  /**
+   * lowest level - full key path required
+   * 
+   * @param fullkey
+   * @return the IplImage or null
+   */
+  public IplImage getImageByKey(String fullkey) {
+    Object o = data.get(fullkey);
+    if (o instanceof IplImage) {
+      return (IplImage) o;
+    }
+    return null;
+  }
+
+  public int getFrameIndex() {
+    return frameIndex;
+  }
+
   public BufferedImage getInputBufferedImage() {
     return getBufferedImage(inputFilterName, null);
   }
@@ -359,22 +496,78 @@ public class OpenCVData implements Serializable {
     return byteBuffer;
   }
 
-  // FIXME FIXME FIXME - always push result back into data structure
-  public byte[] getJPGBytes(String filterName) {
+  /**
+   * jpg encoded with jpgQuality - encoded once, every consumer of this frame
+   * gets the same bytes
+   */
+  public synchronized byte[] getJPGBytes(String filterName) {
     String key = String.format("%s.%s.jpg.Bytes", serviceName, filterName);
     if (data.containsKey(key)) {
       return (byte[]) data.get(key);
     }
 
-    CvMat mat = getJPG(filterName);
-
-    ByteBuffer byteBuffer = mat.getByteBuffer();
-    byte[] barray = new byte[byteBuffer.remaining()];
-    byteBuffer.get(barray);
+    IplImage img = getImage(filterName);
+    if (img == null) {
+      return null;
+    }
+    byte[] barray = encodeJpg(img, jpgQuality);
     data.put(key, barray);
     return barray;
   }
 
+  /**
+   * jpg encodes img natively with quality 0-100
+   */
+  static public byte[] encodeJpg(IplImage img, int quality) {
+    CvMat mat = cvEncodeImage(".jpg", img, new int[] { CV_IMWRITE_JPEG_QUALITY, quality, 0 });
+    try {
+      ByteBuffer byteBuffer = mat.getByteBuffer();
+      byte[] barray = new byte[byteBuffer.remaining()];
+      byteBuffer.get(barray);
+      return barray;
+    } finally {
+      cvReleaseMat(mat);
+    }
+  }
+
+  public int getJpgQuality() {
+    return jpgQuality;
+  }
+
+  public void setJpgQuality(int jpgQuality) {
+    this.jpgQuality = jpgQuality;
+  }
+
+  /**
+   * the display of this frame for publishDisplay. Nothing is converted here -
+   * the BufferedImage or jpg is made from the display on first access and
+   * shared by all subscribers.
+   * 
+   * @param maxWidth
+   *          wider displays are scaled down, 0 keeps the size
+   * @return null if there is no display
+   */
+  public SerializableImage getDisplaySerializableImage(int maxWidth) {
+    IplImage display = getImageByKey(String.format("%s.%s.%s", serviceName, displayFilterName, KEY_DISPLAY));
+    if (display == null) {
+      return null;
+    }
+
+    // the display may be a filter's buffer which is overwritten with the next
+    // frame before the subscribers get to it - they get a copy which is not
+    // pooled, the message can be dropped without anyone releasing it
+    IplImage copy;
+    if (maxWidth > 0 && display.width() > maxWidth) {
+      int height = Math.max(1, display.height() * maxWidth / display.width());
+      copy = IplImage.create(maxWidth, height, display.depth(), display.nChannels());
+      cvResize(display, copy);
+    } else {
+      copy = IplImage.create(display.width(), display.height(), display.depth(), display.nChannels());
+      cvCopy(display, copy, null);
+    }
+    return new DisplayImage(this, copy);
+  }
+
   // -------- JPG to file end ----------------
   // -------- HashMap begin ----------------
 
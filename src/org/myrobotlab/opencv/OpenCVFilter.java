@@ -60,6 +60,16 @@ public abstract class OpenCVFilter implements Serializable {
 
   transient protected VideoProcessor vp;
 
+  /**
+   * scheduling of an expensive filter - null runs it on every full frame
+   */
+  public FilterSchedule schedule = null;
+
+  /**
+   * output of the last scheduled run - handed on while the filter is skipped
+   */
+  transient IplImage heldOutput = null;
+
   public OpenCVFilter() {
     this.name = this.getClass().getSimpleName().substring("OpenCVFilter".length());
   }
@@ -119,6 +129,41 @@ public abstract class OpenCVFilter implements Serializable {
     vp.getOpencv().invoke("publishFilterState", fw);
   }
 
+  /**
+   * schedule this filter - null runs it on every full frame again
+   */
+  public void setSchedule(FilterSchedule schedule) {
+    this.schedule = schedule;
+    heldOutput = null;
+  }
+
+  public FilterSchedule getSchedule() {
+    return schedule;
+  }
+
+  /**
+   * x of the processed image in frame pixels - the image may be a scaled down
+   * region of the frame if the filter has a schedule
+   */
+  public int frameX(double x) {
+    return (schedule == null) ? (int) Math.round(x) : schedule.toFrameX(x);
+  }
+
+  public int frameY(double y) {
+    return (schedule == null) ? (int) Math.round(y) : schedule.toFrameY(y);
+  }
+
+  public int frameLength(double length) {
+    return (schedule == null) ? (int) Math.round(length) : schedule.toFrameLength(length);
+  }
+
+  /**
+   * the image being processed is the full frame at full resolution
+   */
+  public boolean isFullFrame() {
+    return schedule == null || schedule.isFullFrame(width, height);
+  }
+
   public ArrayList<String> getPossibleSources() {
     ArrayList<String> ret = new ArrayList<String>();
     ret.add(name);
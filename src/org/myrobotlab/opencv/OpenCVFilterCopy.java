@@ -26,10 +26,6 @@
 // http://stackoverflow.com/questions/11515072/how-to-identify-optimal-parameters-for-cvcanny-for-polygon-approximation
 package org.myrobotlab.opencv;
 
-import static org.bytedeco.javacpp.opencv_core.cvCopy;
-import static org.bytedeco.javacpp.opencv_core.cvCreateImage;
-import static org.bytedeco.javacpp.opencv_core.cvGetSize;
-
 import org.bytedeco.javacpp.opencv_core.IplImage;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
@@ -70,10 +66,8 @@ public class OpenCVFilterCopy extends OpenCVFilter {
     try {
       // CvRect roiRect = new CvRect(0, 0, 30, 120);
       // cvSetImageROI(img, roiRect);
-      IplImage copy = cvCreateImage(cvGetSize(img), img.depth(), img.nChannels());
-
-      cvCopy(img, copy, null);
-      vp.sources.put(vp.boundServiceName, String.format("%s.copy", vp.boundServiceName, name), img);
+      IplImage copy = data.copyImage(img);
+      vp.sources.put(vp.boundServiceName, String.format("%s.copy", vp.boundServiceName, name), copy, data);
       // cvResetImageROI(img);
 
     } catch (Exception e) {
@@ -192,11 +192,18 @@ public class OpenCVFilterFaceDetect extends OpenCVFilter {
 
           CvRect r = new CvRect(cvGetSeqElem(faces, i));
 
+          // the image may be a scaled down region of the frame if this
+          // filter is scheduled
+          int fx = frameX(r.x());
+          int fy = frameY(r.y());
+          int fw = frameLength(r.width());
+          int fh = frameLength(r.height());
+
           Rectangle rect;
           if (useFloatValues) {
-            rect = new Rectangle((float) r.x() / width, (float) r.y() / height, (float) r.width() / width, (float) r.height() / height);
+            rect = new Rectangle((float) fx / width, (float) fy / height, (float) fw / width, (float) fh / height);
           } else {
-            rect = new Rectangle(r.x(), r.y(), r.width(), r.height());
+            rect = new Rectangle(fx, fy, fw, fh);
           }
           bb.add(rect);
 
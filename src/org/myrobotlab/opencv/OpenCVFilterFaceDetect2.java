@@ -190,7 +190,7 @@ public class OpenCVFilterFaceDetect2 extends OpenCVFilter {
   public IplImage process(IplImage image, OpenCVData data) 
 		  throws InterruptedException {
     // convert to grayscale
-    Frame grayFrame = makeGrayScale(image);
+    Frame grayFrame = makeGrayScale(image, data);
     // TODO: this seems super wonky! isn't there an easy way to go from IplImage
     // to opencv Mat?
     int cols = grayFrame.imageWidth;
@@ -244,8 +244,9 @@ public class OpenCVFilterFaceDetect2 extends OpenCVFilter {
     return image;
   }
 
-  private Frame makeGrayScale(IplImage image) {
-    IplImage imageBW = IplImage.create(image.width(), image.height(), 8, 1);
+  private Frame makeGrayScale(IplImage image, OpenCVData data) {
+    // lives as long as the frame - then it goes back to the pool
+    IplImage imageBW = data.acquireImage(image.width(), image.height(), 8, 1);
     cvCvtColor(image, imageBW, CV_BGR2GRAY);
     return converterToMat.convert(imageBW);
   }
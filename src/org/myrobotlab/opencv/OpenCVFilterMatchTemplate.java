@@ -31,6 +31,7 @@ import static org.bytedeco.javacpp.opencv_core.cvCopy;
 import static org.bytedeco.javacpp.opencv_core.cvCreateImage;
 import static org.bytedeco.javacpp.opencv_core.cvMinMaxLoc;
 import static org.bytedeco.javacpp.opencv_core.cvPoint;
+import static org.bytedeco.javacpp.opencv_core.cvReleaseImage;
 import static org.bytedeco.javacpp.opencv_core.cvResetImageROI;
 import static org.bytedeco.javacpp.opencv_core.cvScalar;
 import static org.bytedeco.javacpp.opencv_core.cvSetImageROI;
@@ -42,6 +43,8 @@ import static org.bytedeco.javacpp.opencv_imgproc.cvMatchTemplate;
 import static org.bytedeco.javacpp.opencv_imgproc.cvPutText;
 import static org.bytedeco.javacpp.opencv_imgproc.cvRectangle;
 
+import java.util.ArrayList;
+
 import org.bytedeco.javacpp.DoublePointer;
 import org.bytedeco.javacpp.opencv_core.CvPoint;
 import org.bytedeco.javacpp.opencv_core.CvRect;
@@ -49,6 +52,7 @@ import org.bytedeco.javacpp.opencv_core.IplImage;
 import org.bytedeco.javacpp.opencv_imgproc.CvFont;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.service.OpenCV;
+import org.myrobotlab.service.data.Rectangle;
 import org.slf4j.Logger;
 
 // TODO - http://opencv.willowgarage.com/wiki/FastMatchTemplate
@@ -92,6 +96,12 @@ public class OpenCVFilterMatchTemplate extends OpenCVFilter {
 
   boolean isTracking = false;
 
+  /**
+   * the match in frame coordinates - drawn by display
+   */
+  transient CvPoint frameRect0 = new CvPoint();
+  transient CvPoint frameRect1 = new CvPoint();
+
   public OpenCVFilterMatchTemplate() {
     super();
   }
@@ -118,7 +128,19 @@ public class OpenCVFilterMatchTemplate extends OpenCVFilter {
 
     // CV_TM_CCOEFF_NORMED
     // cv.cvMatchTemplate(arg0, arg1, arg2, arg3);
-    if (template != null && res != null) {
+    boolean matched = false;
+    if (template != null && image.width() >= template.width() && image.height() >= template.height()) {
+      // the image is a region of the frame if this filter is scheduled - the
+      // result has to fit it
+      int resWidth = image.width() - template.width() + 1;
+      int resHeight = image.height() - template.height() + 1;
+      if (res == null || res.width() != resWidth || res.height() != resHeight) {
+        if (res != null) {
+          cvReleaseImage(res);
+        }
+        res = cvCreateImage(cvSize(resWidth, resHeight), IPL_DEPTH_32F, 1);
+      }
+
       // TODO - DISPLAY RES SO THAT RESULTS FORM DIFFERENT FN's CAN BE
       // EXAMINED
       cvMatchTemplate(image, template, res, CV_TM_SQDIFF);
@@ -129,9 +151,12 @@ public class OpenCVFilterMatchTemplate extends OpenCVFilter {
       tempRect0.y(minLoc.y());
       tempRect1.x(minLoc.x() + template.width());
       tempRect1.y(minLoc.y() + template.height());
+      matched = true;
     }
 
-    if (makeTemplate) {
+    // the template is cut from the full frame - sample points are frame
+    // coordinates
+    if (makeTemplate && isFullFrame()) {
       makeTemplate = false;
       template = cvCreateImage(cvSize(rect.width(), rect.height()), image.depth(), image.nChannels());
       /* copy ROI to subimg */
@@ -143,26 +168,29 @@ public class OpenCVFilterMatchTemplate extends OpenCVFilter {
       // IplImage
       // is not
       // serializable
-      res = cvCreateImage(cvSize(image.width() - template.width() + 1, image.height() - template.height() + 1), IPL_DEPTH_32F, 1);
     }
 
-    if (template != null) {
-      // String text = "" + minVal[0];
-
-      // textpt.y(20);
-      // cvPutText(image, text, textpt, font, CV_RGB(254, 254, 254));
-      textpt.y(20);
+    if (matched) {
       matchRatio = (int) (minVal[0] / ((tempRect1.x() - tempRect0.x()) * (tempRect1.y() - tempRect0.y())));
-      cvPutText(image, "" + matchRatio, textpt, font, CV_RGB(254, 254, 254));
 
       if (matchRatio < 500) {
-        // draw rectangle
-        cvRectangle(image, tempRect0, tempRect1, cvScalar(255, 255, 255, 0), 1, 0, 0);
+        frameRect0.x(frameX(tempRect0.x()));
+        frameRect0.y(frameY(tempRect0.y()));
+        frameRect1.x(frameX(tempRect1.x()));
+        frameRect1.y(frameY(tempRect1.y()));
+
+        int w = frameRect1.x() - frameRect0.x();
+        int h = frameRect1.y() - frameRect0.y();
+        ArrayList<Rectangle> bb = new ArrayList<Rectangle>();
+        if (useFloatValues) {
+          bb.add(new Rectangle((float) frameRect0.x() / width, (float) frameRect0.y() / height, (float) w / width, (float) h / height));
+        } else {
+          bb.add(new Rectangle(frameRect0.x(), frameRect0.y(), w, h));
+        }
+        data.put(bb);
 
-        textpt.y(30);
-        cvPutText(image, "locked", textpt, font, CV_RGB(254, 254, 254));
-        centeroid.x(tempRect0.x() + ((tempRect1.x() - tempRect0.x()) / 2));
-        centeroid.y(tempRect0.y() + ((tempRect1.y() - tempRect0.y()) / 2));
+        centeroid.x(frameRect0.x() + (w / 2));
+        centeroid.y(frameRect0.y() + (h / 2));
         invoke("publish", centeroid);
         if (isTracking != true) // message clutter optimization
         {
@@ -176,12 +204,33 @@ public class OpenCVFilterMatchTemplate extends OpenCVFilter {
         }
         isTracking = false;
       }
-    } // if template != null
+    } // if matched
 
     return image;
 
   }
 
+  @Override
+  public IplImage display(IplImage image, OpenCVData data) {
+    if (template != null) {
+      // String text = "" + minVal[0];
+
+      // textpt.y(20);
+      // cvPutText(image, text, textpt, font, CV_RGB(254, 254, 254));
+      textpt.y(20);
+      cvPutText(image, "" + matchRatio, textpt, font, CV_RGB(254, 254, 254));
+
+      if (isTracking) {
+        // draw rectangle
+        cvRectangle(image, frameRect0, frameRect1, cvScalar(255, 255, 255, 0), 1, 0, 0);
+
+        textpt.y(30);
+        cvPutText(image, "locked", textpt, font, CV_RGB(254, 254, 254));
+      }
+    }
+    return image;
+  }
+
   public void samplePoint(Float x, Float y) {
     samplePoint((int) (x * width), (int) (y * height));
   }
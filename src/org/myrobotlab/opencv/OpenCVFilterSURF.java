@@ -38,11 +38,14 @@ import static org.bytedeco.javacpp.opencv_imgproc.CV_GRAY2BGR;
 import static org.bytedeco.javacpp.opencv_imgproc.cvCvtColor;
 import static org.bytedeco.javacpp.opencv_imgproc.cvLine;
 
+import java.util.ArrayList;
+
 import org.bytedeco.javacpp.opencv_core.CvScalar;
 import org.bytedeco.javacpp.opencv_core.IplImage;
 import org.bytedeco.javacv.ObjectFinder;
 import org.bytedeco.javacv.ObjectFinder.Settings;
 import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.data.Rectangle;
 import org.slf4j.Logger;
 
 public class OpenCVFilterSURF extends OpenCVFilter {
@@ -166,6 +169,33 @@ public class OpenCVFilterSURF extends OpenCVFilter {
         i += 4;
       }
       log.info("Found " + pointCount + " correlated points of interest.");
+
+      // the bounding box of the points in the scene - the second pair of
+      // each group of 4, the first pair is in the object - in frame
+      // coordinates
+      double minX = Double.MAX_VALUE;
+      double minY = Double.MAX_VALUE;
+      double maxX = -Double.MAX_VALUE;
+      double maxY = -Double.MAX_VALUE;
+      for (int i = 0; i + 3 < dst_corners.length; i += 4) {
+        minX = Math.min(minX, dst_corners[i + 2]);
+        minY = Math.min(minY, dst_corners[i + 3]);
+        maxX = Math.max(maxX, dst_corners[i + 2]);
+        maxY = Math.max(maxY, dst_corners[i + 3]);
+      }
+      if (maxX >= minX) {
+        int fx = frameX(minX);
+        int fy = frameY(minY);
+        int fw = frameLength(maxX - minX);
+        int fh = frameLength(maxY - minY);
+        ArrayList<Rectangle> bb = new ArrayList<Rectangle>();
+        if (useFloatValues) {
+          bb.add(new Rectangle((float) fx / width, (float) fy / height, (float) fw / width, (float) fh / height));
+        } else {
+          bb.add(new Rectangle(fx, fy, fw, fh));
+        }
+        data.put(bb);
+      }
     } else {
       log.info("No Object Found in video.");
     }
@@ -0,0 +1,85 @@
+package org.myrobotlab.opencv;
+
+import java.io.Serializable;
+
+/**
+ * timing of one stage of a pipelined VideoProcessor - grab, a group of
+ * filters or publish
+ */
+public class StageStats implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  public String name;
+
+  /**
+   * frames this stage has processed
+   */
+  public long frames;
+  /**
+   * frames this stage finished but the next stage was still busy with the one
+   * before - they are dropped
+   */
+  public long dropped;
+
+  /**
+   * ms spent on the last frame
+   */
+  public double latency;
+  /**
+   * moving average of the ms spent per frame
+   */
+  public double avgLatency;
+  /**
+   * frames per second over the last full second
+   */
+  public double fps;
+
+  transient long windowStart = 0;
+  transient long windowFrames = 0;
+
+  public StageStats(String name) {
+    this.name = name;
+  }
+
+  /**
+   * a frame which started at startNs is done
+   */
+  synchronized void done(long startNs) {
+    long now = System.nanoTime();
+    latency = (now - startNs) / 1000000.0;
+    avgLatency = (frames == 0) ? latency : avgLatency * 0.9 + latency * 0.1;
+    ++frames;
+
+    if (windowStart == 0) {
+      windowStart = now;
+    }
+    ++windowFrames;
+    long elapsed = now - windowStart;
+    if (elapsed >= 1000000000L) {
+      fps = windowFrames * 1000000000.0 / elapsed;
+      windowStart = now;
+      windowFrames = 0;
+    }
+  }
+
+  synchronized void drop() {
+    ++dropped;
+  }
+
+  public synchronized StageStats copy() {
+    StageStats ret = new StageStats(name);
+    ret.frames = frames;
+    ret.dropped = dropped;
+    ret.latency = latency;
+    ret.avgLatency = avgLatency;
+    ret.fps = fps;
+    return ret;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s frames %d dropped %d latency %.1f ms avg %.1f ms %.1f fps", name, frames, dropped, latency, avgLatency, fps);
+  }
+
+}
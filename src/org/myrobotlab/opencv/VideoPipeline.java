@@ -0,0 +1,308 @@
+package org.myrobotlab.opencv;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.bytedeco.javacpp.opencv_core.IplImage;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.logging.Logging;
+import org.slf4j.Logger;
+
+/**
+ * pipelined execution of a VideoProcessor. The capture thread only grabs,
+ * each group of filters runs on its own stage thread and a last stage
+ * publishes - so a frame can be published while the next one is filtered and
+ * the one after that is grabbed.
+ *
+ * Stages are connected by single slot hand offs. If the next stage is still
+ * busy with the previous frame when a stage is done, the frame is dropped -
+ * the slow stage sets the frame rate but never builds up latency.
+ *
+ * Every filter runs on exactly one stage thread, so filters don't need to be
+ * thread safe. Every filter output a stage hands on is copied into a pooled
+ * image of the frame, because filters reuse their output buffers for the next
+ * frame.
+ */
+public class VideoPipeline {
+
+  public final static Logger log = LoggerFactory.getLogger(VideoPipeline.class);
+
+  /**
+   * how long stop waits for a stage thread
+   */
+  final static long STOP_TIMEOUT_MS = 1000;
+
+  /**
+   * single slot hand off - offer fails while the slot is occupied
+   */
+  static class Slot {
+    OpenCVData data = null;
+
+    synchronized boolean offer(OpenCVData d) {
+      if (data != null) {
+        return false;
+      }
+      data = d;
+      notifyAll();
+      return true;
+    }
+
+    synchronized OpenCVData poll() {
+      OpenCVData d = data;
+      data = null;
+      return d;
+    }
+
+    synchronized OpenCVData take() throws InterruptedException {
+      while (data == null) {
+        wait();
+      }
+      OpenCVData d = data;
+      data = null;
+      return d;
+    }
+  }
+
+  class Stage implements Runnable {
+    final List<OpenCVFilter> stageFilters;
+    final Slot in = new Slot();
+    /**
+     * the next stage - null for the publishing stage
+     */
+    Stage next = null;
+    final StageStats stats;
+    Thread thread = null;
+    /**
+     * keys this stage put filter outputs under and the outputs with their
+     * copies - reused for every frame
+     */
+    final ArrayList<String> outputKeys = new ArrayList<String>();
+    final IdentityHashMap<IplImage, IplImage> outputs = new IdentityHashMap<IplImage, IplImage>();
+
+    Stage(String name, List<OpenCVFilter> stageFilters) {
+      this.stageFilters = stageFilters;
+      this.stats = new StageStats(name);
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        OpenCVData data;
+        try {
+          data = in.take();
+        } catch (InterruptedException e) {
+          return;
+        }
+
+        long start = System.nanoTime();
+        try {
+          if (next == null) {
+            // other services chain to this one's images through sources
+            for (String key : data.keySet()) {
+              IplImage image = data.getImageByKey(key);
+              if (image != null) {
+                vp.sources.put(key, image, data);
+              }
+            }
+            vp.publish(data);
+          } else {
+            process(data);
+          }
+        } catch (InterruptedException e) {
+          data.release();
+          return;
+        } catch (Exception e) {
+          Logging.logError(e);
+          log.error("stopping capture");
+          data.release();
+          vp.stop();
+          return;
+        }
+        stats.done(start);
+
+        if (next != null && !next.in.offer(data)) {
+          stats.drop();
+          data.release();
+        }
+      }
+    }
+
+    void process(OpenCVData data) throws InterruptedException {
+      outputKeys.clear();
+      outputs.clear();
+
+      for (OpenCVFilter filter : stageFilters) {
+        // the chained image travels with the frame - sources only has images
+        // of other services
+        IplImage source = data.getImageByKey(filter.sourceKey);
+        if (source == null) {
+          source = vp.sources.get(filter.sourceKey);
+        }
+        if (source == null) {
+          log.debug("{} has no image - skipping {}", filter.sourceKey, filter.name);
+          continue;
+        }
+
+        IplImage image = vp.applyFilter(filter, source, data);
+        if (image != source) {
+          outputs.put(image, null);
+        }
+
+        String key = String.format("%s.%s", vp.boundServiceName, filter.name);
+        String displayKey = String.format("%s.%s", key, OpenCVData.KEY_DISPLAY);
+        data.put(key, image);
+        data.put(displayKey, image);
+        outputKeys.add(key);
+        outputKeys.add(displayKey);
+
+        if (vp.isDisplayFilter(filter)) {
+          // the display is drawn on - and converted by the publishing stage
+          // while this filter already works on the next frame
+          IplImage display = data.copyImage(image);
+          vp.drawDisplay(filter, display, data);
+          data.put(displayKey, display);
+        }
+      }
+
+      // the filters overwrite their outputs with the next frame while this
+      // one is still on its way - each output gets one copy, shared by all
+      // keys it is under
+      for (int i = 0; i < outputKeys.size(); ++i) {
+        String key = outputKeys.get(i);
+        IplImage image = data.getImageByKey(key);
+        if (image == null || !outputs.containsKey(image)) {
+          continue;
+        }
+        IplImage copy = outputs.get(image);
+        if (copy == null) {
+          copy = data.copyImage(image);
+          outputs.put(image, copy);
+        }
+        data.put(key, copy);
+      }
+      outputs.clear();
+    }
+
+    void start(String threadName) {
+      thread = new Thread(this, threadName);
+      thread.start();
+    }
+  }
+
+  final VideoProcessor vp;
+  final StageStats grabStats = new StageStats("grab");
+  final ArrayList<Stage> stages = new ArrayList<Stage>();
+
+  /**
+   * the filter list this pipeline was built from
+   */
+  final int filtersModCount;
+
+  /**
+   * the filtersPerStage it was built with
+   */
+  final int filtersPerStage;
+
+  volatile boolean running = false;
+
+  /**
+   * builds the stages - filtersPerStage consecutive filters share a stage
+   * thread
+   */
+  public VideoPipeline(VideoProcessor vp, List<OpenCVFilter> filters, int filtersPerStage, int filtersModCount) {
+    this.vp = vp;
+    this.filtersModCount = filtersModCount;
+    this.filtersPerStage = filtersPerStage;
+    if (filtersPerStage < 1) {
+      filtersPerStage = 1;
+    }
+
+    for (int i = 0; i < filters.size(); i += filtersPerStage) {
+      List<OpenCVFilter> group = new ArrayList<OpenCVFilter>(filters.subList(i, Math.min(i + filtersPerStage, filters.size())));
+      StringBuilder name = new StringBuilder();
+      for (OpenCVFilter filter : group) {
+        if (name.length() > 0) {
+          name.append("+");
+        }
+        name.append(filter.name);
+      }
+      stages.add(new Stage(name.toString(), group));
+    }
+    stages.add(new Stage("publish", new ArrayList<OpenCVFilter>()));
+
+    for (int i = 0; i < stages.size() - 1; ++i) {
+      stages.get(i).next = stages.get(i + 1);
+    }
+  }
+
+  public void start() {
+    running = true;
+    for (int i = 0; i < stages.size(); ++i) {
+      stages.get(i).start(String.format("%s_videoProcessor_stage_%d", vp.boundServiceName, i));
+    }
+  }
+
+  /**
+   * stops the stage threads and waits for them - frames left in the slots go
+   * back to the pool
+   */
+  public void stop() {
+    running = false;
+    for (Stage stage : stages) {
+      if (stage.thread != null) {
+        stage.thread.interrupt();
+      }
+    }
+    for (Stage stage : stages) {
+      Thread thread = stage.thread;
+      // a stage stops the capture on an error - it can't wait for itself
+      if (thread == null || thread == Thread.currentThread()) {
+        continue;
+      }
+      try {
+        thread.join(STOP_TIMEOUT_MS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      if (thread.isAlive()) {
+        log.warn("{} did not stop within {} ms", thread.getName(), STOP_TIMEOUT_MS);
+      }
+    }
+    for (Stage stage : stages) {
+      OpenCVData data = stage.in.poll();
+      if (data != null) {
+        data.release();
+      }
+    }
+  }
+
+  /**
+   * hand a grabbed frame to the first stage - grabbing started at startNs
+   *
+   * @return false if the first stage was busy and the frame is dropped
+   */
+  public boolean offer(OpenCVData data, long startNs) {
+    grabStats.done(startNs);
+    if (!stages.get(0).in.offer(data)) {
+      grabStats.drop();
+      data.release();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * a snapshot of grab, each filter stage and publish
+   */
+  public List<StageStats> getStats() {
+    ArrayList<StageStats> ret = new ArrayList<StageStats>();
+    ret.add(grabStats.copy());
+    for (Stage stage : stages) {
+      ret.add(stage.stats.copy());
+    }
+    return ret;
+  }
+
+}
@@ -1,13 +1,15 @@
 package org.myrobotlab.opencv;
 
 import static org.bytedeco.javacpp.opencv_core.cvCopy;
-import static org.bytedeco.javacpp.opencv_core.cvCreateImage;
-import static org.bytedeco.javacpp.opencv_core.cvGetSize;
 import static org.bytedeco.javacpp.opencv_core.cvPoint;
+import static org.bytedeco.javacpp.opencv_core.cvRect;
+import static org.bytedeco.javacpp.opencv_core.cvResetImageROI;
 import static org.bytedeco.javacpp.opencv_core.cvScalar;
+import static org.bytedeco.javacpp.opencv_core.cvSetImageROI;
 import static org.bytedeco.javacpp.opencv_imgproc.CV_FONT_HERSHEY_PLAIN;
 import static org.bytedeco.javacpp.opencv_imgproc.cvInitFont;
 import static org.bytedeco.javacpp.opencv_imgproc.cvPutText;
+import static org.bytedeco.javacpp.opencv_imgproc.cvPyrDown;
 
 import java.io.Serializable;
 import java.lang.reflect.Constructor;
@@ -15,6 +17,7 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.SimpleTimeZone;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -79,8 +82,6 @@ public class VideoProcessor implements Runnable, Serializable {
   // use getOpenCVData
   // OpenCVData lastData = null;
 
-  StringBuffer frameTitle = new StringBuffer();
-
   OpenCVData data = null;
 
   // FIXME - more than 1 type is being used on this in more than one context
@@ -136,6 +137,41 @@ public class VideoProcessor implements Runnable, Serializable {
    */
   public boolean publishDisplay = true;
 
+  /**
+   * quality 0-100 of the jpgs encoded from the frames
+   */
+  public int jpgQuality = 95;
+
+  /**
+   * published displays wider than this are scaled down - 0 publishes them at
+   * full size
+   */
+  public int displayMaxWidth = 0;
+
+  /**
+   * grab, filters and publish run on separate threads - see VideoPipeline
+   */
+  public volatile boolean pipelined = false;
+
+  /**
+   * in pipelined mode - the number of consecutive filters which share a stage
+   * thread, a running pipeline is rebuilt when it changes
+   */
+  public volatile int filtersPerStage = 1;
+
+  transient VideoPipeline pipeline = null;
+
+  /**
+   * recycles the per frame images - see OpenCVData.acquireImage
+   */
+  transient ImagePool pool = new ImagePool();
+
+  /**
+   * bumped on every change of the filter list - a pipeline built from an older
+   * list is rebuilt
+   */
+  volatile int filtersModCount = 0;
+
   public static String getDefaultFrameGrabberType() {
     Platform platform = Runtime.getInstance().getPlatform();
     if (platform.isWindows()) {
@@ -171,6 +207,7 @@ public class VideoProcessor implements Runnable, Serializable {
       }
 
       filters.add(filter);
+      ++filtersModCount;
       log.info(String.format("added new filter %s.%s, %s", boundServiceName, filter.name, filter.getClass().getCanonicalName()));
     }
 
@@ -281,6 +318,7 @@ public class VideoProcessor implements Runnable, Serializable {
         if (filter == inFilter) {
           filter.release();
           itr.remove();
+          ++filtersModCount;
           if (filters.size() - 1 > 0) {
             displayFilterName = filters.get(filters.size() - 1).name;
             log.info("remove and switch displayFilter to {}", displayFilterName);
@@ -299,6 +337,7 @@ public class VideoProcessor implements Runnable, Serializable {
         filter.release();
       }
       filters.clear();
+      ++filtersModCount;
     }
   }
 
@@ -408,6 +447,7 @@ public class VideoProcessor implements Runnable, Serializable {
         ++frameIndex;
         if (Logging.performanceTiming)
           Logging.logTime("start");
+        long grabStart = System.nanoTime();
 
         frame = grabber.grab();
 
@@ -433,7 +473,16 @@ public class VideoProcessor implements Runnable, Serializable {
          */
 
         // TODO - option to accumulate? - e.g. don't new
-        data = new OpenCVData(boundServiceName, frameIndex);
+        data = new OpenCVData(boundServiceName, frameIndex, pool);
+        data.setJpgQuality(jpgQuality);
+
+        if (pipelined) {
+          offer(data, grabStart);
+          continue;
+        } else if (pipeline != null) {
+          pipeline.stop();
+          pipeline = null;
+        }
 
         if (Logging.performanceTiming)
           Logging.logTime("pre-synchronized-filter");
@@ -449,12 +498,6 @@ public class VideoProcessor implements Runnable, Serializable {
           while (capturing && itr.hasNext()) {
 
             OpenCVFilter filter = itr.next();
-            if (Logging.performanceTiming)
-              Logging.logTime(String.format("pre set-filter %s", filter.name));
-            // set the selected filter
-            data.setFilter(filter);
-            if (Logging.performanceTiming)
-              Logging.logTime(String.format("set-filter %s", filter.name));
 
             // get the source image this filter is chained to
             // should be safe and correct if operating in this
@@ -468,27 +511,16 @@ public class VideoProcessor implements Runnable, Serializable {
               continue;
             }
 
-            // pre process for image size & channel changes
-            filter.preProcess(frameIndex, image, data);
-            if (Logging.performanceTiming)
-              Logging.logTime(String.format("preProcess-filter %s", filter.name));
-            image = filter.process(image, data); // <- image =
-            // filter.process(image,
-            // data) <--
-            // this means if
-            // the
-            // filter.process
-            // copies and
-            // returns a new
-            // buffer - it's
+            image = applyFilter(filter, image, data); // <- if the
+            // filter.process copies and returns a new buffer - it's
             // FORKED
-            if (Logging.performanceTiming)
-              Logging.logTime(String.format("process-filter %s", filter.name));
 
             // process the image - push into source as new output
             // other pipelines will pull it off the from the sources
-            sources.put(boundServiceName, filter.name, image);
-            sources.put(boundServiceName, filter.name, OpenCVData.KEY_DISPLAY, image);
+            // the output can be one of the frame's pooled images - sources
+            // holds on to the frame until the next one replaces it
+            sources.put(boundServiceName, filter.name, image, data);
+            sources.put(boundServiceName, filter.name, OpenCVData.KEY_DISPLAY, image, data);
 
             // no display || merge display || fork display
             // currently there is no "display" in sources
@@ -496,9 +528,7 @@ public class VideoProcessor implements Runnable, Serializable {
             // filter
             // TODO - future make displayFilterName a set -
             // displayFilters !
-            if (publishDisplay && displayFilterName != null && displayFilterName.equals(filter.name)) {
-              data.setDisplayFilterName(displayFilterName);
-
+            if (isDisplayFilter(filter)) {
               // The fact that I'm in a filter loop
               // and there is a display to publish means
               // i've got to process a filter's display
@@ -508,39 +538,14 @@ public class VideoProcessor implements Runnable, Serializable {
               // display - then display INPUT
               IplImage display;
               if (forkDisplay) {
-                IplImage forked = cvCreateImage(cvGetSize(image), image.depth(), image.nChannels());
-                cvCopy(image, forked, null);
-                display = forked;
+                display = data.copyImage(image);
                 // push reference to fork back in
-                sources.put(boundServiceName, filter.name, OpenCVData.KEY_DISPLAY, display);
+                sources.put(boundServiceName, filter.name, OpenCVData.KEY_DISPLAY, display, data);
               } else {
                 display = image;
               }
 
-              filter.display(display, data);
-
-              // if display frame
-              if (showFrameNumbers || showTimestamp) {
-
-                frameTitle.setLength(0);
-
-                if (showFrameNumbers) {
-                  frameTitle.append("frame ");
-                  frameTitle.append(frameIndex);
-                  frameTitle.append(" ");
-                }
-
-                if (showTimestamp) {
-                  frameTitle.append(System.currentTimeMillis());
-                }
-                // log.info("Adding text: " + frameTitle.toString());
-                cvPutText(display, frameTitle.toString(), cvPoint(20, 20), font, CvScalar.BLACK);
-                for (Overlay overlay : overlays.values()) {
-                  // log.info("Overlay text:" + overlay.text);
-                  cvPutText(display, overlay.text, overlay.pos, overlay.font, overlay.color);
-                }
-              }
-
+              drawDisplay(filter, display, data);
             } // end of display processing
 
           } // capturing && itr.hasNext()
@@ -557,33 +562,7 @@ public class VideoProcessor implements Runnable, Serializable {
         // next iteration
         data.putAll(sources.getData());
 
-        // has to be 2 tests for publishDisplay
-        // one inside the filter loop - to set the display to a new
-        // filter
-        // and this one to publish - if it is left "unset" then the
-        // input becomes the
-        // display filter
-        if (publishDisplay) {
-          SerializableImage display = new SerializableImage(data.getDisplayBufferedImage(), data.getDisplayFilterName(), frameIndex);
-          opencv.invoke("publishDisplay", display);
-        }
-
-        // publish accumulated data
-        if (publishOpenCVData) {
-          opencv.invoke("publishOpenCVData", data);
-        }
-
-        // this has to be before record as
-        // record uses the queue - this has the "issue" if
-        // the consumer does not pickup-it will get stale
-        if (blockingData.size() == 0) {
-          blockingData.add(data);
-        }
-
-        if (recordOutput) {
-          // TODO - add input, filter, & display
-          record(data);
-        }
+        publish(data);
 
       } catch (Exception e) {
         Logging.logError(e);
@@ -595,6 +574,11 @@ public class VideoProcessor implements Runnable, Serializable {
         Logging.logTime("finished pass");
     } // while capturing
 
+    if (pipeline != null) {
+      pipeline.stop();
+      pipeline = null;
+    }
+
     try {
       grabber.release();
       grabber = null;
@@ -603,6 +587,208 @@ public class VideoProcessor implements Runnable, Serializable {
     }
   }
 
+  /**
+   * runs a filter on the image it is chained to - returns the filter's output
+   */
+  IplImage applyFilter(OpenCVFilter filter, IplImage image, OpenCVData data) throws InterruptedException {
+    if (Logging.performanceTiming)
+      Logging.logTime(String.format("pre set-filter %s", filter.name));
+    // set the selected filter
+    data.setFilter(filter);
+    if (Logging.performanceTiming)
+      Logging.logTime(String.format("set-filter %s", filter.name));
+
+    // pre process for image size & channel changes
+    filter.preProcess(data.getFrameIndex(), image, data);
+    if (Logging.performanceTiming)
+      Logging.logTime(String.format("preProcess-filter %s", filter.name));
+    FilterSchedule schedule = filter.schedule;
+    if (schedule == null) {
+      image = filter.process(image, data);
+    } else {
+      image = applySchedule(filter, schedule, image, data);
+    }
+    if (Logging.performanceTiming)
+      Logging.logTime(String.format("process-filter %s", filter.name));
+    return image;
+  }
+
+  /**
+   * runs a scheduled filter - on its frames only, on the region around its
+   * last detection and scaled down as the schedule says. Skipped frames get the
+   * last run's bounding boxes and output.
+   */
+  IplImage applySchedule(OpenCVFilter filter, FilterSchedule schedule, IplImage image, OpenCVData data) throws InterruptedException {
+    int frameIndex = data.getFrameIndex();
+    if (!schedule.shouldRun(frameIndex)) {
+      if (schedule.heldBoxes != null) {
+        data.put(schedule.heldBoxes);
+      }
+      return (filter.heldOutput != null) ? filter.heldOutput : image;
+    }
+
+    schedule.plan(frameIndex, image.width(), image.height());
+    IplImage input = image;
+    if (!schedule.isFullFrame(image.width(), image.height())) {
+      // a frame lived copy of the region - scaled down a level at a time
+      int w = schedule.width;
+      int h = schedule.height;
+      cvSetImageROI(image, cvRect(schedule.x, schedule.y, w, h));
+      try {
+        if (schedule.levels == 0) {
+          input = data.acquireImage(w, h, image.depth(), image.nChannels());
+          cvCopy(image, input, null);
+        } else {
+          for (int i = 0; i < schedule.levels; ++i) {
+            w = (w + 1) / 2;
+            h = (h + 1) / 2;
+            IplImage down = data.acquireImage(w, h, image.depth(), image.nChannels());
+            cvPyrDown(input, down, OpenCVFilterPyramidDown.CV_GAUSSIAN_5X5);
+            input = down;
+          }
+        }
+      } finally {
+        cvResetImageROI(image);
+      }
+    }
+
+    IplImage output = filter.process(input, data);
+    schedule.detected(data.getBoundingBoxArray(), filter.useFloatValues, image.width(), image.height());
+
+    if (output == input) {
+      // pass through filters hand the full frame on
+      filter.heldOutput = null;
+      return image;
+    }
+    // NOTE - held over output has to outlive the frame, it can't be a frame
+    // lived image
+    filter.heldOutput = output;
+    return output;
+  }
+
+  boolean isDisplayFilter(OpenCVFilter filter) {
+    return publishDisplay && displayFilterName != null && displayFilterName.equals(filter.name);
+  }
+
+  /**
+   * the filter's display processing, frame title and overlays drawn onto
+   * display
+   */
+  void drawDisplay(OpenCVFilter filter, IplImage display, OpenCVData data) {
+    data.setDisplayFilterName(filter.name);
+
+    filter.display(display, data);
+
+    // if display frame
+    if (showFrameNumbers || showTimestamp) {
+
+      StringBuilder frameTitle = new StringBuilder();
+
+      if (showFrameNumbers) {
+        frameTitle.append("frame ");
+        frameTitle.append(data.getFrameIndex());
+        frameTitle.append(" ");
+      }
+
+      if (showTimestamp) {
+        frameTitle.append(System.currentTimeMillis());
+      }
+      // log.info("Adding text: " + frameTitle.toString());
+      cvPutText(display, frameTitle.toString(), cvPoint(20, 20), font, CvScalar.BLACK);
+      for (Overlay overlay : overlays.values()) {
+        // log.info("Overlay text:" + overlay.text);
+        cvPutText(display, overlay.text, overlay.pos, overlay.font, overlay.color);
+      }
+    }
+  }
+
+  /**
+   * publishes the data of a processed frame
+   */
+  void publish(OpenCVData data) {
+    // has to be 2 tests for publishDisplay
+    // one inside the filter loop - to set the display to a new
+    // filter
+    // and this one to publish - if it is left "unset" then the
+    // input becomes the
+    // display filter
+    //
+    // the display is converted on demand by its subscribers - with none
+    // nothing is converted at all
+    if (publishDisplay && opencv.hasSubscribers("publishDisplay")) {
+      SerializableImage display = data.getDisplaySerializableImage(displayMaxWidth);
+      if (display != null) {
+        opencv.invoke("publishDisplay", display);
+      }
+    }
+
+    // publish accumulated data
+    if (publishOpenCVData && opencv.hasSubscribers("publishOpenCVData")) {
+      // subscribers keep the data as long as they like and never release
+      // it - its images are not recycled
+      data.detach();
+      opencv.invoke("publishOpenCVData", data);
+    }
+
+    // this has to be before record as
+    // record uses the queue - this has the "issue" if
+    // the consumer does not pickup-it will get stale
+    if (blockingData.size() == 0) {
+      // neither does a getOpenCVData caller
+      data.detach();
+      blockingData.add(data);
+    }
+
+    if (recordOutput) {
+      // TODO - add input, filter, & display
+      record(data);
+    }
+
+    // the processing reference - if nobody else holds one, the frame's
+    // images are recycled
+    data.release();
+  }
+
+  /**
+   * pipelined mode - the grabbed frame goes to the first stage, the pipeline is
+   * (re)built if the filters or filtersPerStage changed
+   */
+  void offer(OpenCVData data, long grabStart) {
+    int modCount = filtersModCount;
+    int perStage = filtersPerStage;
+    if (pipeline == null || pipeline.filtersModCount != modCount || pipeline.filtersPerStage != perStage) {
+      if (pipeline != null) {
+        // waits for the old stages - no two threads run the same filter
+        pipeline.stop();
+      }
+      pipeline = new VideoPipeline(this, getFiltersCopy(), perStage, modCount);
+      pipeline.start();
+    }
+
+    // the grabber reuses its buffer for the next grab
+    IplImage input = data.copyImage(converter.convert(frame));
+    String inputKey = String.format("%s.%s", boundServiceName, INPUT_KEY);
+    data.put(inputKey, input);
+    data.put(String.format("%s.%s", inputKey, OpenCVData.KEY_DISPLAY), input);
+
+    pipeline.offer(data, grabStart);
+  }
+
+  /**
+   * per stage latency & fps - empty if not running pipelined
+   */
+  public List<StageStats> getStageStats() {
+    VideoPipeline p = pipeline;
+    if (p == null) {
+      return new ArrayList<StageStats>();
+    }
+    return p.getStats();
+  }
+
+  public ImagePool getImagePool() {
+    return pool;
+  }
+
   public void setMinDelay(int minDelay) {
     this.minDelay = minDelay;
   }
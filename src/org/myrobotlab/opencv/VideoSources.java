@@ -1,6 +1,7 @@
 package org.myrobotlab.opencv;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Set;
 
 import org.bytedeco.javacpp.opencv_core.IplImage;
@@ -17,17 +18,24 @@ import org.bytedeco.javacpp.opencv_core.IplImage;
  *         TODO create interface offer a switch - straight reference versus
  *         LinkedBlockingQueue
  * 
+ *         An image which lives as long as its frame (OpenCVData.acquireImage)
+ *         is put together with the frame - the frame is retained while the
+ *         image is a source and released when the key gets a new image.
  * 
  */
 public class VideoSources {
 
   private final static HashMap<String, Object> data = new HashMap<String, Object>();
 
+  /**
+   * the retained frame of each pooled image
+   */
+  private final static HashMap<String, OpenCVData> frames = new HashMap<String, OpenCVData>();
+
   public IplImage get(String key) {
-    if (data.containsKey(key)) {
+    synchronized (data) {
       return (IplImage) data.get(key);// .clone();
     }
-    return null;
   }
 
   public IplImage get(String serviceName, String filtername) {
@@ -36,7 +44,9 @@ public class VideoSources {
   }
 
   public HashMap<String, Object> getData() {
-    return new HashMap<String, Object>(data);
+    synchronized (data) {
+      return new HashMap<String, Object>(data);
+    }
   }
 
   /*
@@ -49,21 +59,47 @@ public class VideoSources {
    */
 
   public Set<String> getKeySet() {
-    return data.keySet();
+    synchronized (data) {
+      return new HashSet<String>(data.keySet());
+    }
   }
 
   public void put(String inputKey, IplImage frame) {
-    data.put(inputKey, frame);
+    put(inputKey, frame, null);
+  }
+
+  /**
+   * an image of frame - e.g. one of its acquired images, frame is null if the
+   * image does not belong to a frame
+   */
+  public void put(String key, IplImage img, OpenCVData frame) {
+    if (frame != null) {
+      frame.retain();
+    }
+    OpenCVData replaced;
+    synchronized (data) {
+      data.put(key, img);
+      replaced = (frame == null) ? frames.remove(key) : frames.put(key, frame);
+    }
+    if (replaced != null) {
+      replaced.release();
+    }
   }
 
   public void put(String serviceName, String filtername, IplImage img) {
-    String key = (String.format("%s.%s", serviceName, filtername));
-    data.put(key, img);
+    put(serviceName, filtername, img, null);
+  }
+
+  public void put(String serviceName, String filtername, IplImage img, OpenCVData frame) {
+    put(String.format("%s.%s", serviceName, filtername), img, frame);
   }
 
   public void put(String serviceName, String filtername, String subkey, IplImage img) {
-    String key = (String.format("%s.%s.%s", serviceName, filtername, subkey));
-    data.put(key, img);
+    put(serviceName, filtername, subkey, img, null);
+  }
+
+  public void put(String serviceName, String filtername, String subkey, IplImage img, OpenCVData frame) {
+    put(String.format("%s.%s.%s", serviceName, filtername, subkey), img, frame);
   }
 
 }
\ No newline at end of file
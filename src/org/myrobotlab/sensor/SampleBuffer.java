@@ -0,0 +1,162 @@
+package org.myrobotlab.sensor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.myrobotlab.framework.TimedTask;
+import org.myrobotlab.framework.TimingWheel;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.data.PinWindow;
+import org.myrobotlab.service.interfaces.PinWindowListener;
+import org.slf4j.Logger;
+
+/**
+ * Per pin SampleRings of a controller with subscribers which get the samples
+ * aggregated (count, min, max, avg, last) over windows of their own period,
+ * instead of an event for every raw sample.
+ */
+public class SampleBuffer {
+
+  public final static Logger log = LoggerFactory.getLogger(SampleBuffer.class);
+
+  static class Subscription {
+    final String name;
+    final PinWindowListener listener;
+    final int[] addresses;
+    long lastTs;
+    TimedTask task;
+
+    Subscription(String name, PinWindowListener listener, int[] addresses) {
+      this.name = name;
+      this.listener = listener;
+      this.addresses = addresses;
+      lastTs = System.currentTimeMillis();
+    }
+  }
+
+  final String source;
+  /**
+   * by pin address - MRLComm addresses are a byte
+   */
+  final SampleRing[] rings = new SampleRing[256];
+  final Map<String, Subscription> subscriptions = new HashMap<String, Subscription>();
+
+  int capacity = 1024;
+  volatile long retentionMs = 60000;
+
+  public SampleBuffer(String source) {
+    this.source = source;
+  }
+
+  public void add(int address, long timestamp, int value) {
+    SampleRing ring = rings[address & 0xff];
+    if (ring == null) {
+      ring = createRing(address & 0xff);
+    }
+    ring.add(timestamp, value);
+  }
+
+  synchronized SampleRing createRing(int address) {
+    if (rings[address] == null) {
+      rings[address] = new SampleRing(capacity);
+    }
+    return rings[address];
+  }
+
+  /**
+   * @return null if nothing was sampled on address yet
+   */
+  public SampleRing getRing(int address) {
+    return rings[address & 0xff];
+  }
+
+  /**
+   * call listener every periodMs with the windows of the given addresses - all
+   * sampled pins if none are given
+   */
+  public synchronized void subscribe(String name, long periodMs, PinWindowListener listener, int... addresses) {
+    unsubscribe(name);
+    final Subscription s = new Subscription(name, listener, (addresses == null || addresses.length == 0) ? null : addresses.clone());
+    s.task = TimingWheel.getInstance().scheduleAtFixedRate(String.format("%s.%s.windows", source, name), new Runnable() {
+      @Override
+      public void run() {
+        deliver(s);
+      }
+    }, periodMs, periodMs);
+    subscriptions.put(name, s);
+  }
+
+  public synchronized void unsubscribe(String name) {
+    Subscription s = subscriptions.remove(name);
+    if (s != null) {
+      s.task.cancel();
+    }
+  }
+
+  public synchronized void clear() {
+    for (Subscription s : subscriptions.values()) {
+      s.task.cancel();
+    }
+    subscriptions.clear();
+  }
+
+  void deliver(Subscription s) {
+    long now = System.currentTimeMillis();
+    long from = Math.max(s.lastTs, now - retentionMs);
+    s.lastTs = now;
+    List<PinWindow> windows = null;
+    int n = (s.addresses == null) ? rings.length : s.addresses.length;
+    for (int i = 0; i < n; ++i) {
+      int address = (s.addresses == null) ? i : s.addresses[i] & 0xff;
+      SampleRing ring = rings[address];
+      if (ring == null) {
+        continue;
+      }
+      PinWindow window = new PinWindow(source, address);
+      if (ring.aggregate(from, now, window)) {
+        if (windows == null) {
+          windows = new ArrayList<PinWindow>();
+        }
+        windows.add(window);
+      }
+    }
+    if (windows == null) {
+      return;
+    }
+    try {
+      s.listener.onPinWindows(windows.toArray(new PinWindow[windows.size()]));
+    } catch (Exception e) {
+      log.warn(String.format("%s could not deliver pin windows to %s", source, s.name), e);
+    }
+  }
+
+  /**
+   * ring size of pins sampled from now on
+   */
+  public synchronized void setCapacity(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * samples older than this are not aggregated or copied anymore
+   */
+  public void setRetention(long ms) {
+    retentionMs = ms;
+  }
+
+  /**
+   * raw samples of a pin within the retention, oldest first
+   *
+   * @return number of samples copied
+   */
+  public int copy(int address, long from, long[] timestamps, int[] values) {
+    SampleRing ring = getRing(address);
+    if (ring == null) {
+      return 0;
+    }
+    return ring.copy(Math.max(from, System.currentTimeMillis() - retentionMs), timestamps, values);
+  }
+
+}
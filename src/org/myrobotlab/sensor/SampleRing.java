@@ -0,0 +1,105 @@
+package org.myrobotlab.sensor;
+
+import org.myrobotlab.service.data.PinWindow;
+
+/**
+ * Time series of one sensor value - timestamps and values in primitive
+ * arrays, the oldest samples overwritten once capacity is reached.
+ */
+public class SampleRing {
+
+  final long[] ts;
+  final int[] values;
+  final int mask;
+  /**
+   * total number of samples added - the newest is at (count - 1) & mask
+   */
+  long count = 0;
+
+  /**
+   * @param capacity
+   *          rounded up to a power of 2
+   */
+  public SampleRing(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    ts = new long[size];
+    values = new int[size];
+    mask = size - 1;
+  }
+
+  public synchronized void add(long timestamp, int value) {
+    int i = (int) (count & mask);
+    ts[i] = timestamp;
+    values[i] = value;
+    ++count;
+  }
+
+  /**
+   * min, max, avg and last of the samples with from &lt;= timestamp &lt; to
+   *
+   * @return false if there were none
+   */
+  public synchronized boolean aggregate(long from, long to, PinWindow window) {
+    long oldest = Math.max(0, count - ts.length);
+    long i = count - 1;
+    // skip what came in at or after to
+    while (i >= oldest && ts[(int) (i & mask)] >= to) {
+      --i;
+    }
+    if (i < oldest || ts[(int) (i & mask)] < from) {
+      return false;
+    }
+    int last = values[(int) (i & mask)];
+    int min = last;
+    int max = last;
+    long sum = 0;
+    int n = 0;
+    for (; i >= oldest && ts[(int) (i & mask)] >= from; --i) {
+      int v = values[(int) (i & mask)];
+      if (v < min) {
+        min = v;
+      }
+      if (v > max) {
+        max = v;
+      }
+      sum += v;
+      ++n;
+    }
+    window.count = n;
+    window.min = min;
+    window.max = max;
+    window.avg = sum / (double) n;
+    window.last = last;
+    window.startTs = from;
+    window.endTs = to;
+    return true;
+  }
+
+  /**
+   * copy the raw samples with timestamp &gt;= from, oldest first
+   *
+   * @return number of samples copied
+   */
+  public synchronized int copy(long from, long[] timestamps, int[] samples) {
+    long oldest = Math.max(0, count - ts.length);
+    long i = count;
+    while (i > oldest && ts[(int) ((i - 1) & mask)] >= from) {
+      --i;
+    }
+    int n = (int) Math.min(count - i, Math.min(timestamps.length, samples.length));
+    for (int j = 0; j < n; ++j, ++i) {
+      timestamps[j] = ts[(int) (i & mask)];
+      samples[j] = values[(int) (i & mask)];
+    }
+    return n;
+  }
+
+  public synchronized int size() {
+    return (int) Math.min(count, ts.length);
+  }
+
+  public int capacity() {
+    return ts.length;
+  }
+
+}
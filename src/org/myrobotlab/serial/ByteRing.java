@@ -0,0 +1,376 @@
+package org.myrobotlab.serial;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.myrobotlab.framework.QueueStats;
+
+/**
+ * Bounded ring buffer of bytes for one producer thread (the port's reader) and
+ * any number of consumer threads (blocking reads). Bytes are stored in a byte[]
+ * so queueing allocates nothing - no node and no Integer per byte.
+ *
+ * The producer publishes by advancing tail, written by its thread only. A
+ * consumer copies bytes out and then claims them by a compare and set of head
+ * - if another consumer got there first the copy is discarded and it tries
+ * again. The lock is only touched when the other side has actually parked - on
+ * an empty ring for take/poll or a full ring for put.
+ *
+ * Concurrent consumers each get whole, in order runs of bytes but a read of
+ * several bytes may be interleaved with another consumer's.
+ *
+ * There must only be one producer at a time - a source with several threads
+ * writing has to serialize them itself (PortQueue and Serial lock around the
+ * producer calls). A ring being replaced is closed, which wakes every thread
+ * parked on it.
+ */
+public class ByteRing {
+
+  final String name;
+  final byte[] buffer;
+  final int capacity;
+  final int mask;
+  final AtomicLong head = new AtomicLong(); // next position to read
+  final AtomicLong tail = new AtomicLong(); // next position to write
+
+  final ReentrantLock lock = new ReentrantLock();
+  final Condition notEmpty = lock.newCondition();
+  final Condition notFull = lock.newCondition();
+  final AtomicInteger parkedConsumers = new AtomicInteger();
+  volatile boolean producerParked = false;
+  volatile boolean closed = false;
+
+  // stats - each written by one side only
+  volatile long dropped = 0;
+  volatile int highWaterMark = 0;
+  long lastStatsTs = System.currentTimeMillis();
+  long lastEnqueued = 0;
+  long lastDequeued = 0;
+
+  /**
+   * @param capacity
+   *          rounded up to a power of 2
+   */
+  public ByteRing(String name, int capacity) {
+    this.name = name;
+    int size = 1;
+    while (size < capacity) {
+      size <<= 1;
+    }
+    this.capacity = size;
+    this.mask = size - 1;
+    buffer = new byte[size];
+  }
+
+  // ---------------- producer ----------------
+
+  /**
+   * @return false if the ring is full - the byte is dropped
+   */
+  public boolean offer(int b) {
+    long t = tail.get();
+    if (t - head.get() == capacity) {
+      ++dropped;
+      return false;
+    }
+    buffer[(int) (t & mask)] = (byte) b;
+    published(t + 1);
+    return true;
+  }
+
+  /**
+   * queue as much of data as fits - the rest is dropped
+   *
+   * @return number of bytes queued
+   */
+  public int offer(byte[] data, int offset, int length) {
+    int n = write(data, offset, length);
+    if (n < length) {
+      dropped += length - n;
+    }
+    return n;
+  }
+
+  /**
+   * queue b - waits while the ring is full
+   */
+  public void put(int b) throws InterruptedException {
+    while (!offerNoDrop(b)) {
+      if (closed) {
+        ++dropped;
+        return;
+      }
+      awaitNotFull();
+    }
+  }
+
+  /**
+   * queue all of data - waits while the ring is full, what is left when the
+   * ring gets closed is dropped
+   */
+  public void put(byte[] data, int offset, int length) throws InterruptedException {
+    while (length > 0) {
+      int n = write(data, offset, length);
+      if (n == 0) {
+        if (closed) {
+          dropped += length;
+          return;
+        }
+        awaitNotFull();
+      }
+      offset += n;
+      length -= n;
+    }
+  }
+
+  boolean offerNoDrop(int b) {
+    long t = tail.get();
+    if (t - head.get() == capacity) {
+      return false;
+    }
+    buffer[(int) (t & mask)] = (byte) b;
+    published(t + 1);
+    return true;
+  }
+
+  int write(byte[] data, int offset, int length) {
+    long t = tail.get();
+    int n = Math.min(capacity - (int) (t - head.get()), length);
+    if (n == 0) {
+      return 0;
+    }
+    int index = (int) (t & mask);
+    int first = Math.min(n, capacity - index);
+    System.arraycopy(data, offset, buffer, index, first);
+    if (first < n) {
+      System.arraycopy(data, offset + first, buffer, 0, n - first);
+    }
+    published(t + n);
+    return n;
+  }
+
+  void awaitNotFull() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      producerParked = true;
+      if (tail.get() - head.get() == capacity && !closed) {
+        notFull.await(10, TimeUnit.MILLISECONDS);
+      }
+    } finally {
+      producerParked = false;
+      lock.unlock();
+    }
+  }
+
+  void published(long newTail) {
+    // a full volatile write - ordered before the read of parkedConsumers
+    tail.set(newTail);
+    int size = (int) (newTail - head.get());
+    if (size > highWaterMark) {
+      highWaterMark = size;
+    }
+    if (parkedConsumers.get() > 0) {
+      lock.lock();
+      try {
+        notEmpty.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  // ---------------- consumer ----------------
+
+  /**
+   * @return the next byte (0-255) or -1 if the ring is empty
+   */
+  public int poll() {
+    while (true) {
+      long h = head.get();
+      if (h == tail.get()) {
+        return -1;
+      }
+      int b = buffer[(int) (h & mask)] & 0xff;
+      if (head.compareAndSet(h, h + 1)) {
+        consumed();
+        return b;
+      }
+    }
+  }
+
+  /**
+   * @return the next byte (0-255) or -1 if none arrived within the timeout or
+   *         the ring was closed
+   */
+  public int poll(long timeout, TimeUnit unit) throws InterruptedException {
+    int b = poll();
+    if (b >= 0) {
+      return b;
+    }
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      parkedConsumers.incrementAndGet();
+      while ((b = poll()) < 0) {
+        if (nanos <= 0 || closed) {
+          return -1;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return b;
+    } finally {
+      parkedConsumers.decrementAndGet();
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the next byte (0-255) - waits until there is one, -1 if the ring
+   *         was closed
+   */
+  public int take() throws InterruptedException {
+    int b = poll();
+    if (b >= 0) {
+      return b;
+    }
+    lock.lockInterruptibly();
+    try {
+      parkedConsumers.incrementAndGet();
+      while ((b = poll()) < 0) {
+        if (closed) {
+          return -1;
+        }
+        notEmpty.await();
+      }
+      return b;
+    } finally {
+      parkedConsumers.decrementAndGet();
+      lock.unlock();
+    }
+  }
+
+  /**
+   * copy what is queued (up to length) into data - does not wait
+   *
+   * @return number of bytes copied
+   */
+  public int poll(byte[] data, int offset, int length) {
+    while (true) {
+      long h = head.get();
+      int n = (int) Math.min(tail.get() - h, length);
+      if (n == 0) {
+        return 0;
+      }
+      int index = (int) (h & mask);
+      int first = Math.min(n, capacity - index);
+      System.arraycopy(buffer, index, data, offset, first);
+      if (first < n) {
+        System.arraycopy(buffer, 0, data, offset + first, n - first);
+      }
+      // the producer only overwrites what has been claimed - if another
+      // consumer claimed these bytes the copy may be garbage and is redone
+      if (head.compareAndSet(h, h + n)) {
+        consumed();
+        return n;
+      }
+    }
+  }
+
+  /**
+   * waits for at least one byte then copies what is queued (up to length)
+   *
+   * @return number of bytes copied - 0 only if the ring was closed
+   */
+  public int take(byte[] data, int offset, int length) throws InterruptedException {
+    int b = take();
+    if (b < 0) {
+      return 0;
+    }
+    data[offset] = (byte) b;
+    return 1 + poll(data, offset + 1, length - 1);
+  }
+
+  void consumed() {
+    if (producerParked) {
+      lock.lock();
+      try {
+        notFull.signal();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * discard everything queued - consumer side
+   */
+  public void clear() {
+    long h;
+    long t;
+    do {
+      h = head.get();
+      t = tail.get();
+    } while (h < t && !head.compareAndSet(h, t));
+    consumed();
+  }
+
+  /**
+   * wakes every consumer parked in take/poll and a producer parked in put -
+   * they return empty handed once nothing is left to read
+   */
+  public void close() {
+    closed = true;
+    lock.lock();
+    try {
+      notEmpty.signalAll();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  public int size() {
+    return (int) (tail.get() - head.get());
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public QueueStats getStats() {
+    QueueStats stats = new QueueStats();
+    long now = System.currentTimeMillis();
+    long enqueued = tail.get();
+    long dequeued = head.get();
+    stats.name = name;
+    stats.currentQueueCount = (int) (enqueued - dequeued);
+    stats.capacity = capacity;
+    stats.highWaterMark = highWaterMark;
+    stats.enqueued = enqueued;
+    stats.dequeued = dequeued;
+    stats.dropped = dropped;
+    stats.ts = now;
+    stats.lastTS = lastStatsTs;
+    stats.delta = now - lastStatsTs;
+    if (stats.delta > 0) {
+      stats.enqueueRate = (enqueued - lastEnqueued) * 1000.0 / stats.delta;
+      stats.dequeueRate = (dequeued - lastDequeued) * 1000.0 / stats.delta;
+    }
+    lastStatsTs = now;
+    lastEnqueued = enqueued;
+    lastDequeued = dequeued;
+    return stats;
+  }
+
+}
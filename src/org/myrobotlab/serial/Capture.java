@@ -0,0 +1,165 @@
+package org.myrobotlab.serial;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Binary timestamped capture of the rx and tx traffic of a serial port - an
+ * append log written through a memory mapped file, so recording costs a copy
+ * into the page cache and no system call per chunk.
+ *
+ * <pre>
+ * header  | 'M' 'R' 'L' 'C' | version (int) | start (long, epoch ms) | length (long) |
+ * record  | ts (long, ns since start) | direction (byte) | length (short) | data ... |
+ * </pre>
+ *
+ * Everything is big endian. The header's length is the size of the capture
+ * including the header - it is written by close, the file itself stays padded
+ * to the end of its last segment. It can't be truncated while a segment is
+ * still mapped on every platform (Windows) and a MappedByteBuffer has no
+ * unmap. A capture which was not closed has a length of 0 and ends at the
+ * first empty record. Replay it with CaptureReader or PortReplay.
+ */
+public class Capture implements Closeable {
+
+  public final static int MAGIC = 0x4d524c43; // MRLC
+  public final static int VERSION = 2;
+  public final static int HEADER_SIZE = 24;
+  final static int LENGTH_OFFSET = 16;
+  public final static int RECORD_HEADER_SIZE = 11;
+
+  public final static int RX = 0;
+  public final static int TX = 1;
+
+  /**
+   * the file is mapped and grown in segments of this size
+   */
+  final static int SEGMENT_SIZE = 1 << 20;
+  final static int MAX_RECORD = 0xffff;
+
+  final String filename;
+  final RandomAccessFile file;
+  final FileChannel channel;
+  MappedByteBuffer buffer;
+  /**
+   * file position of buffer[0]
+   */
+  long segmentStart = 0;
+  final long startNs;
+  long records = 0;
+
+  public Capture(String filename) throws IOException {
+    this.filename = filename;
+    file = new RandomAccessFile(filename, "rw");
+    file.setLength(0);
+    channel = file.getChannel();
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+    startNs = System.nanoTime();
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putLong(System.currentTimeMillis());
+    buffer.putLong(0);
+  }
+
+  public void write(int direction, int b) throws IOException {
+    long ts = System.nanoTime() - startNs;
+    synchronized (this) {
+      if (header(ts, direction, 1)) {
+        buffer.put((byte) b);
+      }
+    }
+  }
+
+  public void write(int direction, byte[] data, int offset, int length) throws IOException {
+    long ts = System.nanoTime() - startNs;
+    synchronized (this) {
+      while (length > 0) {
+        int n = Math.min(length, MAX_RECORD);
+        if (!header(ts, direction, n)) {
+          return;
+        }
+        buffer.put(data, offset, n);
+        offset += n;
+        length -= n;
+      }
+    }
+  }
+
+  /**
+   * the low byte of each int - as Serial.write(int[]) sends it
+   */
+  public void write(int direction, int[] data) throws IOException {
+    long ts = System.nanoTime() - startNs;
+    synchronized (this) {
+      int offset = 0;
+      while (offset < data.length) {
+        int n = Math.min(data.length - offset, MAX_RECORD);
+        if (!header(ts, direction, n)) {
+          return;
+        }
+        for (int i = 0; i < n; ++i) {
+          buffer.put((byte) data[offset + i]);
+        }
+        offset += n;
+      }
+    }
+  }
+
+  /**
+   * @return false if the capture was closed - what races with close is
+   *         dropped
+   */
+  boolean header(long ts, int direction, int length) throws IOException {
+    if (buffer == null) {
+      return false;
+    }
+    if (buffer.remaining() < RECORD_HEADER_SIZE + length) {
+      // the os writes the pages of the old segment back on its own
+      segmentStart += buffer.position();
+      buffer = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, SEGMENT_SIZE);
+    }
+    buffer.putLong(ts);
+    buffer.put((byte) direction);
+    buffer.putShort((short) length);
+    ++records;
+    return true;
+  }
+
+  public synchronized long getRecords() {
+    return records;
+  }
+
+  /**
+   * bytes written so far including headers
+   */
+  public synchronized long size() {
+    return (buffer == null) ? 0 : segmentStart + buffer.position();
+  }
+
+  public String getName() {
+    return filename;
+  }
+
+  /**
+   * flushes and records the length of what was written in the header
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (buffer == null) {
+      return;
+    }
+    long length = segmentStart + buffer.position();
+    buffer.force();
+    buffer = null;
+    ByteBuffer header = ByteBuffer.allocate(8);
+    header.putLong(0, length);
+    channel.write(header, LENGTH_OFFSET);
+    channel.force(false);
+    file.close();
+  }
+
+}
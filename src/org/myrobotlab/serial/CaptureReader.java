@@ -0,0 +1,133 @@
+package org.myrobotlab.serial;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Sequential reader of a Capture file
+ */
+public class CaptureReader implements Closeable {
+
+  final String filename;
+  final RandomAccessFile file;
+  final MappedByteBuffer buffer;
+  final long startTime;
+  final long size;
+
+  long ts;
+  int direction;
+  int length;
+  int dataPosition;
+
+  public CaptureReader(String filename) throws IOException {
+    this.filename = filename;
+    file = new RandomAccessFile(filename, "r");
+    long size = file.length();
+    if (size > Integer.MAX_VALUE) {
+      file.close();
+      throw new IOException(String.format("%s is too large to replay", filename));
+    }
+    buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+    if (size < Capture.HEADER_SIZE || buffer.getInt() != Capture.MAGIC) {
+      file.close();
+      throw new IOException(String.format("%s is not a capture", filename));
+    }
+    int version = buffer.getInt();
+    if (version != Capture.VERSION) {
+      file.close();
+      throw new IOException(String.format("%s has capture version %d expected %d", filename, version, Capture.VERSION));
+    }
+    startTime = buffer.getLong();
+    long length = buffer.getLong();
+    if (length >= Capture.HEADER_SIZE && length < size) {
+      // the rest is the padding of the last segment
+      buffer.limit((int) length);
+    }
+    this.size = buffer.limit();
+  }
+
+  /**
+   * move to the next record
+   *
+   * @return false at the end of the capture
+   */
+  public boolean next() {
+    int position = dataPosition + length;
+    if (position < Capture.HEADER_SIZE) {
+      position = Capture.HEADER_SIZE;
+    }
+    if (buffer.limit() - position < Capture.RECORD_HEADER_SIZE) {
+      return false;
+    }
+    buffer.position(position);
+    long nextTs = buffer.getLong();
+    int nextDirection = buffer.get();
+    int nextLength = buffer.getShort() & 0xffff;
+    // a capture which was not closed ends in the zeros of its last segment
+    if (nextLength == 0 || nextLength > buffer.remaining()) {
+      return false;
+    }
+    ts = nextTs;
+    direction = nextDirection;
+    length = nextLength;
+    dataPosition = buffer.position();
+    return true;
+  }
+
+  /**
+   * back to before the first record
+   */
+  public void rewind() {
+    dataPosition = 0;
+    length = 0;
+  }
+
+  /**
+   * bytes of the capture including the header - the file can be longer
+   */
+  public long getSize() {
+    return size;
+  }
+
+  /**
+   * epoch ms the capture was started
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * ns since the start of the capture
+   */
+  public long getTimestamp() {
+    return ts;
+  }
+
+  /**
+   * Capture.RX or Capture.TX
+   */
+  public int getDirection() {
+    return direction;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * copy part of the current record's data
+   */
+  public void read(int recordOffset, byte[] data, int offset, int len) {
+    buffer.position(dataPosition + recordOffset);
+    buffer.get(data, offset, len);
+  }
+
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+
+}
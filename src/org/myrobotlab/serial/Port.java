@@ -2,6 +2,7 @@ package org.myrobotlab.serial;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 
 import org.myrobotlab.framework.QueueStats;
@@ -39,6 +40,11 @@ public abstract class Port implements Runnable, SerialControl {
 
   QueueStats stats = new QueueStats();
 
+  /**
+   * reused for every chunk read from the port
+   */
+  transient byte[] rxBuffer = new byte[4096];
+
   // hardware serial port details
   // default convention over configuration
   // int rate = 57600;
@@ -136,6 +142,44 @@ public abstract class Port implements Runnable, SerialControl {
 
   abstract public int read() throws Exception;
 
+  /**
+   * read what is available into data - blocks until at least one byte is
+   * available. The default reads a single byte - ports which can read more at
+   * once override it.
+   * 
+   * @return number of bytes read or -1 at the end of the stream
+   */
+  public int read(byte[] data) throws Exception {
+    int b = read();
+    if (b < 0) {
+      return b;
+    }
+    data[0] = (byte) b;
+    return 1;
+  }
+
+  /**
+   * hand a chunk of received bytes to all the listeners and update the stats
+   */
+  void dispatch(byte[] data, int length) throws IOException {
+    for (SerialDataListener listener : listeners.values()) {
+      listener.onBytes(data, 0, length);
+    }
+    int before = stats.total;
+    stats.total += length;
+    if (stats.interval > 0 && before / stats.interval != stats.total / stats.interval) {
+      stats.ts = System.currentTimeMillis();
+      stats.delta = stats.ts - stats.lastTS;
+      if (stats.delta > 0) {
+        stats.lineSpeed = (8 * stats.interval) / stats.delta;
+      }
+      for (SerialDataListener listener : listeners.values()) {
+        listener.updateStats(stats);
+      }
+      stats.lastTS = stats.ts;
+    }
+  }
+
   /**
    * reads from Ports input stream and puts it on the Serials main RX line - to
    * be published and buffered
@@ -151,33 +195,17 @@ public abstract class Port implements Runnable, SerialControl {
 
     log.info(String.format("listening on port %s", portName));
     listening = true;
-    Integer newByte = -1;
+    int length = -1;
     try {
       // opened.countDown();
-      // TODO - if (Queue) while take()
       // normal streams are processed here - rxtx is abnormal
-      while (listening && ((newByte = read()) > -1)) { // "real" java byte
-        // 255 / -1 will
-        // kill this
-        for (String key : listeners.keySet()) {
-          listeners.get(key).onByte(newByte);
-          // log.info(String.format("%d",newByte));
-        }
-        ++stats.total;
-        if (stats.total % stats.interval == 0) {
-
-          stats.ts = System.currentTimeMillis();
-          stats.delta = stats.ts - stats.lastTS;
-          stats.lineSpeed = (8 * stats.interval) / stats.delta;
-          for (String key : listeners.keySet()) {
-            listeners.get(key).updateStats(stats);
-          }
-          // publishQueueStats(stats);
-          stats.lastTS = stats.ts;
+      // a chunk at a time - not a byte and a listener lookup per byte
+      while (listening && ((length = read(rxBuffer)) > -1)) {
+        if (length > 0) {
+          dispatch(rxBuffer, length);
         }
-        // log.info(String.format("%d",newByte));
       }
-      log.info(String.format("%s no longer listening - last byte %d ", portName, newByte));
+      log.info(String.format("%s no longer listening - last read %d ", portName, length));
     } catch (InterruptedException x) {
       log.info(String.format("InterruptedException %s stopping ", portName));
     } catch (InterruptedIOException c) {
@@ -221,6 +249,18 @@ public abstract class Port implements Runnable, SerialControl {
   
   abstract public void write(int[] data) throws Exception;
 
+  /**
+   * writes the remaining bytes of a frame in one call - ports which can write
+   * a block natively override this, the default goes through write(int[])
+   */
+  public void write(ByteBuffer data) throws Exception {
+    int[] frame = new int[data.remaining()];
+    for (int i = 0; i < frame.length; ++i) {
+      frame[i] = data.get() & 0xff;
+    }
+    write(frame);
+  }
+
   public boolean setParams(int rate, int dataBits, int stopBits, int parity) throws Exception {
     // TODO Auto-generated method stub
     return false;
@@ -2,6 +2,7 @@ package org.myrobotlab.serial;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -149,6 +150,25 @@ public class PortJSSC extends Port implements SerialControl, SerialPortEventList
      */
   }
 
+  /**
+   * blocks for the first byte then takes whatever else is in the driver's
+   * buffer
+   */
+  @Override
+  public int read(byte[] data) throws Exception {
+    data[0] = port.readBytes(1)[0];
+    int available = Math.min(port.getInputBufferBytesCount(), data.length - 1);
+    if (available <= 0) {
+      return 1;
+    }
+    byte[] more = port.readBytes(available);
+    System.arraycopy(more, 0, data, 1, more.length);
+    if (debug && debugRX) {
+      log.info("Read : {} bytes", more.length + 1);
+    }
+    return more.length + 1;
+  }
+
   @Override
   public void setDTR(boolean state) {
     try {
@@ -208,6 +228,13 @@ public class PortJSSC extends Port implements SerialControl, SerialPortEventList
     port.writeIntArray(data);
   }
 
+  @Override
+  public void write(ByteBuffer data) throws Exception {
+    byte[] frame = new byte[data.remaining()];
+    data.get(frame);
+    port.writeBytes(frame);
+  }
+
   @Override
   public boolean isHardware() {
     return true;
@@ -228,28 +255,14 @@ public class PortJSSC extends Port implements SerialControl, SerialPortEventList
   public void serialEvent(SerialPortEvent event) {
     log.info(String.format("rxtx event on port %s", portName));
 
-    Integer newByte = -1;
+    int length = -1;
 
     try {
-      while (listening && ((newByte = read()) > -1)) {
-        // listener.onByte(newByte); // <-- FIXME ?? onMsg() < ???
-        for (String key : listeners.keySet()) {
-          listeners.get(key).onByte(newByte);
-        }
-        ++stats.total;
-        if (stats.total % stats.interval == 0) {
-          stats.ts = System.currentTimeMillis();
-          log.error(String.format("===stats - dequeued total %d - %d bytes in %d ms %d Kbps", stats.total, stats.interval, stats.ts - stats.lastTS,
-              8 * stats.interval / (stats.ts - stats.lastTS)));
-          // publishQueueStats(stats);
-          stats.lastTS = stats.ts;
-        }
-        // log.info(String.format("%d",newByte));
-        // rxtx leave whenever it has no new data to delver with a -1
-        // which is not what an Java InputStream is supposed to do..
+      while (listening && ((length = read(rxBuffer)) > -1)) {
+        dispatch(rxBuffer, length);
       }
 
-      log.info(String.format("%d", newByte));
+      log.info(String.format("%d", length));
     } catch (Exception e) {
       ++rxErrors;
       Logging.logError(e);
@@ -1,9 +1,10 @@
 package org.myrobotlab.serial;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 
 import org.myrobotlab.logging.LoggerFactory;
 import org.slf4j.Logger;
@@ -22,14 +23,23 @@ public class PortQueue extends Port {
 
   public final static Logger log = LoggerFactory.getLogger(PortQueue.class);
 
-  private BlockingQueue<Integer> in;
-  private BlockingQueue<Integer> out;
+  /**
+   * default size of the rings of a virtual port pair
+   */
+  public final static int RING_SIZE = 64 * 1024;
+
+  private ByteRing in;
+  private ByteRing out;
 
   public PortQueue(String portName) {
     super(portName);
   }
 
-  public PortQueue(String portName, BlockingQueue<Integer> in, BlockingQueue<Integer> out) {
+  /**
+   * in is read by this port's listening thread only - out is written to by any
+   * thread, writes are serialized on the ring so it keeps a single producer
+   */
+  public PortQueue(String portName, ByteRing in, ByteRing out) {
     super(portName);
     this.in = in;
     this.out = out;
@@ -51,26 +61,70 @@ public class PortQueue extends Port {
     return in.take();
   }
 
+  /**
+   * blocks for the first byte then drains what else is queued
+   */
+  @Override
+  public int read(byte[] data) throws IOException, InterruptedException {
+    return in.take(data, 0, data.length);
+  }
+
   public boolean setParams(int rate, int databits, int stopbits, int parity) {
 
     log.debug(String.format("setSerialPortParams %d %d %d %d", rate, databits, stopbits, parity));
     return true;
   }
 
+  /**
+   * writes are never lost - if the other end is not keeping up the writer
+   * waits for space in the ring
+   */
   @Override
   public void write(int data) throws IOException {
-    out.add(data);
-    // WOW - PipedOutputStream auto flushes about 1 time every second :P
-    // we force flushing here !
+    synchronized (out) {
+      try {
+        out.put(data);
+      } catch (InterruptedException e) {
+        throw interrupted();
+      }
+    }
   }
   
   public void write(int[] data) throws IOException {
-    // TODO: is there a more effecient way to do this?
-    for (int i = 0; i < data.length ; i++) {
-      write(data[i]);
+    synchronized (out) {
+      try {
+        for (int i = 0; i < data.length ; i++) {
+          out.put(data[i]);
+        }
+      } catch (InterruptedException e) {
+        throw interrupted();
+      }
     }
   }
 
+  @Override
+  public void write(ByteBuffer data) throws IOException {
+    synchronized (out) {
+      try {
+        if (data.hasArray()) {
+          out.put(data.array(), data.arrayOffset() + data.position(), data.remaining());
+          data.position(data.limit());
+        } else {
+          while (data.hasRemaining()) {
+            out.put(data.get());
+          }
+        }
+      } catch (InterruptedException e) {
+        throw interrupted();
+      }
+    }
+  }
+
+  InterruptedIOException interrupted() {
+    Thread.currentThread().interrupt();
+    return new InterruptedIOException(String.format("%s write interrupted", getName()));
+  }
+
   @Override
   public boolean isHardware() {
     return false;
@@ -3,6 +3,7 @@ package org.myrobotlab.serial;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
@@ -197,11 +198,23 @@ public class PortRXTX extends Port implements SerialControl, SerialPortEventList
     return in.read();
   }
 
-  // WORTHLESS INPUTSTREAM FUNCTION !! -- because if the size of the buffer
-  // is ever bigger than the read and no end of stream has occurred
-  // it will block forever :P
+  /**
+   * the first byte then whatever else is available - -1 when rxtx has nothing
+   * to deliver
+   */
+  @Override
   public int read(byte[] data) throws IOException {
-    return in.read(data);
+    int b = in.read();
+    if (b < 0) {
+      return b;
+    }
+    data[0] = (byte) b;
+    int available = Math.min(in.available(), data.length - 1);
+    if (available <= 0) {
+      return 1;
+    }
+    int n = in.read(data, 1, available);
+    return (n < 0) ? 1 : n + 1;
   }
 
   @Override
@@ -238,6 +251,18 @@ public class PortRXTX extends Port implements SerialControl, SerialPortEventList
     }
   }
 
+  @Override
+  public void write(ByteBuffer data) throws IOException {
+    if (data.hasArray()) {
+      out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+      data.position(data.limit());
+    } else {
+      byte[] frame = new byte[data.remaining()];
+      data.get(frame);
+      out.write(frame);
+    }
+  }
+
   @Override
   public boolean isHardware() {
     return true;
@@ -264,28 +289,16 @@ public class PortRXTX extends Port implements SerialControl, SerialPortEventList
   public void serialEvent(SerialPortEvent event) {
     log.info(String.format("rxtx event on port %s", portName));
 
-    Integer newByte = -1;
+    int length = -1;
 
     try {
-      while (listening && ((newByte = read()) > -1)) {
-        // listener.onByte(newByte); // <-- FIXME ?? onMsg() < ???
-        for (String key : listeners.keySet()) {
-          listeners.get(key).onByte(newByte);
-        }
-        ++stats.total;
-        if (stats.total % stats.interval == 0) {
-          stats.ts = System.currentTimeMillis();
-          log.error(String.format("===stats - dequeued total %d - %d bytes in %d ms %d Kbps", stats.total, stats.interval, stats.ts - stats.lastTS,
-              8 * stats.interval / (stats.ts - stats.lastTS)));
-          // publishQueueStats(stats);
-          stats.lastTS = stats.ts;
-        }
-        // log.info(String.format("%d",newByte));
-        // rxtx leave whenever it has no new data to delver with a -1
-        // which is not what an Java InputStream is supposed to do..
+      // rxtx leave whenever it has no new data to delver with a -1
+      // which is not what an Java InputStream is supposed to do..
+      while (listening && ((length = read(rxBuffer)) > -1)) {
+        dispatch(rxBuffer, length);
       }
 
-      log.info(String.format("%d", newByte));
+      log.info(String.format("%d", length));
     } catch (Exception e) {
       ++rxErrors;
       Logging.logError(e);
@@ -0,0 +1,148 @@
+package org.myrobotlab.serial;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * A port which plays the rx side of a Capture back to its listeners - paced
+ * like it was recorded, speed times faster, or as fast as the listeners take
+ * it with a speed of 0. What is written to the port is counted and dropped.
+ */
+public class PortReplay extends Port {
+
+  public final static Logger log = LoggerFactory.getLogger(PortReplay.class);
+
+  final String filename;
+  volatile double speed;
+  CaptureReader reader;
+
+  boolean inRecord = false;
+  int recordOffset = 0;
+  volatile long replayStartNs = 0;
+  long firstTs = 0;
+
+  long rxBytes = 0;
+  long txBytes = 0;
+
+  final byte[] single = new byte[1];
+
+  /**
+   * @param speed
+   *          1 real time, 2 twice as fast ... 0 as fast as possible
+   */
+  public PortReplay(String portName, String filename, double speed) {
+    super(portName);
+    this.filename = filename;
+    this.speed = speed;
+  }
+
+  @Override
+  public void open() throws IOException {
+    reader = new CaptureReader(filename);
+    inRecord = false;
+    replayStartNs = 0;
+    super.open();
+  }
+
+  @Override
+  public void close() {
+    super.close();
+    isOpen = false;
+    try {
+      if (reader != null) {
+        reader.close();
+      }
+    } catch (IOException e) {
+      log.warn("closing {} failed", filename, e);
+    }
+  }
+
+  @Override
+  public int read() throws Exception {
+    int n = read(single);
+    return (n < 0) ? n : single[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] data) throws Exception {
+    if (!inRecord) {
+      do {
+        if (!reader.next()) {
+          log.info("{} replayed {} rx bytes", filename, rxBytes);
+          return -1;
+        }
+      } while (reader.getDirection() != Capture.RX);
+      inRecord = true;
+      recordOffset = 0;
+      pace(reader.getTimestamp());
+    }
+    int n = Math.min(data.length, reader.getLength() - recordOffset);
+    reader.read(recordOffset, data, 0, n);
+    recordOffset += n;
+    if (recordOffset == reader.getLength()) {
+      inRecord = false;
+    }
+    rxBytes += n;
+    return n;
+  }
+
+  /**
+   * wait until a record recorded at ts is due
+   */
+  void pace(long ts) throws InterruptedException {
+    double s = speed;
+    if (s <= 0) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (replayStartNs == 0) {
+      replayStartNs = now;
+      firstTs = ts;
+      return;
+    }
+    long wait = replayStartNs + (long) ((ts - firstTs) / s) - now;
+    if (wait > 0) {
+      Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+    }
+  }
+
+  /**
+   * takes effect from the next record on
+   */
+  public void setSpeed(double speed) {
+    this.speed = speed;
+    replayStartNs = 0;
+  }
+
+  @Override
+  public void write(int b) {
+    ++txBytes;
+  }
+
+  @Override
+  public void write(int[] data) {
+    txBytes += data.length;
+  }
+
+  @Override
+  public void write(ByteBuffer data) {
+    txBytes += data.remaining();
+    data.position(data.limit());
+  }
+
+  @Override
+  public boolean isHardware() {
+    return false;
+  }
+
+  @Override
+  public List<String> getPortNames() {
+    return new ArrayList<String>();
+  }
+
+}
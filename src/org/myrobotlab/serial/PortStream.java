@@ -3,6 +3,7 @@ package org.myrobotlab.serial;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -60,11 +61,23 @@ public class PortStream extends Port {
     return in.read();
   }
 
-  // WORTHLESS INPUTSTREAM FUNCTION !! -- because if the size of the buffer
-  // is ever bigger than the read and no end of stream has occurred
-  // it will block forever :P
+  /**
+   * blocks for the first byte then takes whatever else is available -
+   * InputStream.read(byte[]) may block until the whole buffer is filled
+   */
+  @Override
   public int read(byte[] data) throws IOException {
-    return in.read(data);
+    int b = in.read();
+    if (b < 0) {
+      return b;
+    }
+    data[0] = (byte) b;
+    int available = Math.min(in.available(), data.length - 1);
+    if (available <= 0) {
+      return 1;
+    }
+    int n = in.read(data, 1, available);
+    return (n < 0) ? 1 : n + 1;
   }
 
   public void setInputStream(InputStream in) {
@@ -95,6 +108,19 @@ public class PortStream extends Port {
     }
   }
 
+  @Override
+  public void write(ByteBuffer data) throws IOException {
+    if (data.hasArray()) {
+      out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+      data.position(data.limit());
+    } else {
+      byte[] frame = new byte[data.remaining()];
+      data.get(frame);
+      out.write(frame);
+    }
+    out.flush();
+  }
+
   @Override
   public boolean isHardware() {
     return false;
@@ -64,15 +64,21 @@ import static org.myrobotlab.codec.serial.ArduinoMsgCodec.SET_TRIGGER;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.myrobotlab.arduino.ArduinoUtils;
+import org.myrobotlab.arduino.I2cTransactions;
+import org.myrobotlab.arduino.MrlCommDecoder;
 import org.myrobotlab.arduino.MrlMsg;
+import org.myrobotlab.arduino.SendWindow;
+import org.myrobotlab.arduino.ServoScheduler;
 import org.myrobotlab.codec.serial.ArduinoMsgCodec;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.ServiceType;
@@ -86,9 +92,11 @@ import org.myrobotlab.motor.MotorConfig;
 import org.myrobotlab.motor.MotorConfigDualPwm;
 import org.myrobotlab.motor.MotorConfigPulse;
 import org.myrobotlab.motor.MotorConfigSimpleH;
+import org.myrobotlab.sensor.SampleBuffer;
 import org.myrobotlab.service.data.DeviceMapping;
 import org.myrobotlab.service.data.Pin;
 import org.myrobotlab.service.data.PinData;
+import org.myrobotlab.service.data.PinWindow;
 import org.myrobotlab.service.data.SensorData;
 import org.myrobotlab.service.interfaces.DeviceControl;
 import org.myrobotlab.service.interfaces.DeviceController;
@@ -105,11 +113,13 @@ import org.myrobotlab.service.interfaces.PinArrayControl;
 import org.myrobotlab.service.interfaces.PinArrayListener;
 import org.myrobotlab.service.interfaces.PinDefinition;
 import org.myrobotlab.service.interfaces.PinListener;
+import org.myrobotlab.service.interfaces.PinWindowListener;
 import org.myrobotlab.service.interfaces.SensorControl;
 import org.myrobotlab.service.interfaces.SensorController;
 import org.myrobotlab.service.interfaces.SensorDataListener;
 import org.myrobotlab.service.interfaces.SensorDataPublisher;
 import org.myrobotlab.service.interfaces.SerialDataListener;
+import org.myrobotlab.service.interfaces.ServiceInterface;
 import org.myrobotlab.service.interfaces.ServoControl;
 import org.myrobotlab.service.interfaces.ServoController;
 import org.slf4j.Logger;
@@ -524,6 +534,12 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 
 	transient Map<String, PinArrayListener> pinArrayListeners = new HashMap<String, PinArrayListener>();
 
+	/**
+	 * recent samples of every polled pin - subscribers get them aggregated
+	 * at their own rate
+	 */
+	transient SampleBuffer pinSamples = new SampleBuffer(getName());
+
 	/**
 	 * map of pin listeners
 	 */
@@ -551,19 +567,32 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 	 */
 	Serial serial;
 
-	int error_arduino_to_mrl_rx_cnt;
-
 	int error_mrl_to_arduino_rx_cnt;
 
-	int byteCount;
-	public int msgSize;
+	/**
+	 * frames from MRLComm - dispatched by function code to the handlers
+	 * registered in initHandlers
+	 */
+	transient MrlCommDecoder decoder = new MrlCommDecoder(getName());
+
+	/**
+	 * reused buffer for messages routed to an attached controller
+	 */
+	transient int[] routeMsg = new int[MAX_MSG_SIZE];
+
+	/**
+	 * reused sensor events by device id - see onSensorDataMsg
+	 */
+	transient SensorData[] sensorEvents = new SensorData[256];
+	/**
+	 * outstanding i2c reads - completed by i2cReturnData
+	 */
+	transient I2cTransactions i2cTransactions = new I2cTransactions(getName());
 
-	transient int[] msg = new int[MAX_MSG_SIZE];
-	// i2c This needs to be volatile because it will be updated in a different
-	// threads
-	volatile boolean i2cDataReturned = false;
-	volatile byte[] i2cData = new byte[64];
-	volatile int i2cDataSize;
+	/**
+	 * keeps the order of i2c requests the same as their commands on the wire
+	 */
+	transient final Object i2cLock = new Object();
 
 	/**
 	 * <pre>
@@ -688,8 +717,26 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 	public int retryMax = 3;
 	public int retryConnectDelay = 1500;
 
-	// make sure this is sync'd across threads,
-	private volatile boolean ackRecieved = false;
+	/**
+	 * messages in flight to MRLComm - completed by PUBLISH_MESSAGE_ACK
+	 */
+	transient SendWindow sendWindow = new SendWindow(getName(), new SendWindow.Transport() {
+		@Override
+		public void write(int[] frame) throws Exception {
+			serial.write(frame);
+		}
+	});
+
+	/**
+	 * coalesces servoWrite calls - one SERVO_WRITE per dirty servo and
+	 * control period
+	 */
+	transient ServoScheduler servoScheduler = new ServoScheduler(getName(), new ServoScheduler.Writer() {
+		@Override
+		public void write(ServoControl servo, int output) throws Exception {
+			sendMsgAsync(SERVO_WRITE, getDeviceId(servo), output);
+		}
+	});
 
 	private int numAck = 0;
 
@@ -724,6 +771,7 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 		deviceList.put(getName(), map);
 		deviceIndex.put(0, map);
 
+		initHandlers();
 	}
 
 	/**
@@ -781,6 +829,63 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 		pinArrayListeners.put(listener.getName(), listener);
 	}
 
+	/**
+	 * attach a listener which gets the min, max, avg and last value of the
+	 * polled pins every periodMs instead of every sample - all pins if no
+	 * addresses are given
+	 */
+	public void attach(PinWindowListener listener, long periodMs, int... addresses) {
+		pinSamples.subscribe(listener.getName(), periodMs, listener, addresses);
+	}
+
+	/**
+	 * String interface - a listener which is not local gets the windows
+	 * through its onPinWindows method
+	 */
+	public void attachPinWindows(final String listener, long periodMs) {
+		ServiceInterface si = Runtime.getService(listener);
+		if (si instanceof PinWindowListener && si.isLocal()) {
+			attach((PinWindowListener) si, periodMs);
+			return;
+		}
+		pinSamples.subscribe(listener, periodMs, new PinWindowListener() {
+			@Override
+			public void onPinWindows(PinWindow[] windows) {
+				send(listener, "onPinWindows", (Object) windows);
+			}
+
+			@Override
+			public String getName() {
+				return listener;
+			}
+
+			@Override
+			public boolean isLocal() {
+				return false;
+			}
+		});
+	}
+
+	public void detachPinWindows(String listener) {
+		pinSamples.unsubscribe(listener);
+	}
+
+	/**
+	 * how long pin samples are kept for aggregation and getPinSamples
+	 */
+	public void setPinRetention(long ms) {
+		pinSamples.setRetention(ms);
+	}
+
+	/**
+	 * raw samples of a pin since from (ms), oldest first
+	 *
+	 * @return number of samples copied
+	 */
+	public int getPinSamples(int address, long from, long[] timestamps, int[] values) {
+		return pinSamples.copy(address, from, timestamps, values);
+	}
+
 	/**
 	 * String interface - this allows you to easily use url api requests like
 	 * /attach/nameOfListener/3
@@ -881,8 +986,8 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 		// To add the i2c bus to the deviceList I need an device that represents
 		// the i2c bus here and in MRLComm
 		// This will only handle the creation of i2cBus.
-		if (i2cBus == null) {
-			i2cBus = new I2CBus(String.format("I2CBus%s", busAddress));
+		if (i2cBus == null || i2cBus.getBusAddress() != busAddress) {
+			i2cBus = new I2CBus(String.format("I2CBus%s", busAddress), busAddress);
 		}
 		deviceAttach(i2cBus, getMrlDeviceType(i2cBus), busAddress);
 
@@ -1141,6 +1246,9 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 
 	public void disconnect() {
 		mrlCommVersion = null;
+		sendWindow.clear();
+		i2cTransactions.clear();
+		servoScheduler.clear();
 		for (Arduino controller : attachedController.values()) {
 			controller.disconnect();
 		}
@@ -1169,6 +1277,10 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 		sendMsg(msg.getMethod(), msg.getList());
 	}
 
+	public CompletableFuture<Integer> sendMsgAsync(MrlMsg msg) {
+		return sendMsgAsync(msg.getMethod(), toArray(msg.getList()));
+	}
+
 	public void disableBoardStatus() {
 		sendMsg(DISABLE_BOARD_STATUS);
 	}
@@ -1355,43 +1467,17 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 
 	@Override
 	public int i2cRead(I2CControl control, int busAddress, int deviceAddress, byte[] buffer, int size) {
-		i2cDataReturned = false;
-		// Get the device index to the MRL i2c bus
-		String i2cBus = String.format("I2CBus%s", busAddress);
-		DeviceMapping map;
-		map = deviceList.get(i2cBus);
-		int id = map.getId(); // Device index to the I2CBus
-		int msgBuffer[] = new int[3];
-		msgBuffer[0] = id;
-		msgBuffer[1] = deviceAddress;
-		msgBuffer[2] = size;
-		sendMsg(I2C_READ, msgBuffer);
-		int retry = 0;
-		int retryMax = 1000; // ( About 1000ms = s)
-		try {
-			/**
-			 * We will wait up to retryMax times to get the i2c data back from
-			 * MRLComm.c and wait 1 ms between each try. A blocking queue is not
-			 * needed, as this is only a single data element - and blocking is
-			 * not necessary.
-			 */
-			while ((retry < retryMax) && (!i2cDataReturned)) {
-				sleep(1);
-				++retry;
-			}
-		} catch (Exception e) {
-			Logging.logError(e);
-		}
-		if (i2cDataReturned) {
-			log.debug(String.format("i2cReturnData returned %s bytes to caller %s.", i2cDataSize, control.getName()));
-			for (int i = 0; i < i2cDataSize; i++) {
-				buffer[i] = i2cData[i];
-				log.debug(String.format("i2cReturnData returned ix %s value %s", i, buffer[i]));
-			}
-			return i2cDataSize;
-		}
-		// Time out, no data returned
-		return -1;
+		return i2cWait(control, i2cReadAsync(control, busAddress, deviceAddress, size), buffer);
+	}
+
+	/**
+	 * I2CREAD | DEVICE_INDEX | I2CADDRESS | DATASIZE
+	 *
+	 * @return completed with the bytes read when MRLComm returns them
+	 */
+	@Override
+	public CompletableFuture<byte[]> i2cReadAsync(I2CControl control, int busAddress, int deviceAddress, int size) {
+		return i2cRequest(I2C_READ, busAddress, deviceAddress, size, size);
 	}
 
 	@Override
@@ -1411,60 +1497,86 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 
 	@Override
 	public int i2cWriteRead(I2CControl control, int busAddress, int deviceAddress, byte[] writeBuffer, int writeSize, byte[] readBuffer, int readSize) {
+		return i2cWait(control, i2cWriteReadAsync(control, busAddress, deviceAddress, writeBuffer, writeSize, readSize), readBuffer);
+	}
+
+	/**
+	 * I2WRITEREAD | DEVICE_INDEX | I2CADDRESS | DATASIZE | DEVICE_MEMORY_ADDRESS
+	 *
+	 * MRLComm only handles a single register byte in one command - anything
+	 * longer is written first and then read
+	 */
+	@Override
+	public CompletableFuture<byte[]> i2cWriteReadAsync(I2CControl control, int busAddress, int deviceAddress, byte[] writeBuffer, int writeSize, int readSize) {
 		if (writeSize != 1) {
-			i2cWrite(control, busAddress, deviceAddress, writeBuffer, writeSize);
-			return i2cRead(control, busAddress, deviceAddress, readBuffer, readSize);
-		} else {
-			i2cDataReturned = false;
-			// Get the device index to the MRL i2c bus
-			String i2cBus = String.format("I2CBus%s", busAddress);
-			DeviceMapping map;
-			map = deviceList.get(i2cBus);
-			int id = map.getId(); // Device index to the I2CBus
-			int msgBuffer[] = new int[4];
-			msgBuffer[0] = id;
-			msgBuffer[1] = deviceAddress;
-			msgBuffer[2] = readSize;
-			msgBuffer[3] = writeBuffer[0];
-			sendMsg(I2C_WRITE_READ, msgBuffer);
-			int retry = 0;
-			int retryMax = 1000; // ( About 1000ms = s)
-			try {
-				/**
-				 * We will wait up to retryMax times to get the i2c data back
-				 * from MRLComm.c and wait 1 ms between each try. A blocking
-				 * queue is not needed, as this is only a single data element -
-				 * and blocking is not necessary.
-				 */
-				while ((retry < retryMax) && (!i2cDataReturned)) {
-					sleep(1);
-					++retry;
-				}
-			} catch (Exception e) {
-				Logging.logError(e);
+			synchronized (i2cLock) {
+				i2cWrite(control, busAddress, deviceAddress, writeBuffer, writeSize);
+				return i2cReadAsync(control, busAddress, deviceAddress, readSize);
 			}
-			if (i2cDataReturned) {
-				log.debug(String.format("i2cReturnData returned %s bytes to caller %s.", i2cDataSize, control.getName()));
-				for (int i = 0; i < i2cDataSize; i++) {
-					readBuffer[i] = i2cData[i];
-					log.debug(String.format("i2cReturnData returned ix %s value %s", i, readBuffer[i]));
+		}
+		return i2cRequest(I2C_WRITE_READ, busAddress, deviceAddress, readSize, readSize, writeBuffer[0] & 0xff);
+	}
+
+	CompletableFuture<byte[]> i2cRequest(int function, int busAddress, int deviceAddress, int readSize, int... params) {
+		// Get the device index to the MRL i2c bus
+		DeviceMapping map = deviceList.get(String.format("I2CBus%s", busAddress));
+		if (map == null) {
+			CompletableFuture<byte[]> failed = new CompletableFuture<byte[]>();
+			failed.completeExceptionally(new IOException(String.format("i2c bus %d not created", busAddress)));
+			return failed;
+		}
+		int msgBuffer[] = new int[2 + params.length];
+		msgBuffer[0] = map.getId(); // Device index to the I2CBus
+		msgBuffer[1] = deviceAddress;
+		System.arraycopy(params, 0, msgBuffer, 2, params.length);
+
+		// replies are matched in the order the requests are sent
+		final I2cTransactions.Request request;
+		synchronized (i2cLock) {
+			request = i2cTransactions.add(busAddress, deviceAddress, readSize);
+			sendMsgAsync(function, msgBuffer).whenComplete(new BiConsumer<Integer, Throwable>() {
+				@Override
+				public void accept(Integer ack, Throwable t) {
+					if (t != null) {
+						i2cTransactions.fail(request, t);
+					}
 				}
-				return i2cDataSize;
-			}
-			// Time out, no data returned
-			return -1;
+			});
+		}
+		return request.future;
+	}
+
+	/**
+	 * blocking form of the i2c reads - copies the data into buffer
+	 *
+	 * @return number of bytes read or -1 if no data came back
+	 */
+	int i2cWait(I2CControl control, CompletableFuture<byte[]> future, byte[] buffer) {
+		try {
+			byte[] data = future.get(i2cTransactions.getTimeout() * 2, TimeUnit.MILLISECONDS);
+			System.arraycopy(data, 0, buffer, 0, Math.min(data.length, buffer.length));
+			log.debug("i2cReturnData returned {} bytes to caller {}", data.length, control.getName());
+			return data.length;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			log.warn("i2c read for {} failed - {}", control.getName(), e.getMessage());
 		}
+		// Time out, no data returned
+		return -1;
 	}
 
 	@Override
-	public void i2cReturnData(SensorData data) {
+	public void i2cReturnData(int busAddress, SensorData data) {
 		int[] rawData = (int[]) data.getData();
-		i2cDataSize = rawData.length;
-		for (int i = 0; i < i2cDataSize; i++) {
-			i2cData[i] = (byte) (rawData[i] & 0xff);
-		}
-		log.debug("i2cReturnData invoked");
-		i2cDataReturned = true;
+		i2cTransactions.complete(busAddress, rawData, rawData.length);
+	}
+
+	/**
+	 * outstanding, completed and failed i2c reads
+	 */
+	public String getI2cStats() {
+		return i2cTransactions.toString();
 	}
 
 	@Override
@@ -1637,88 +1749,21 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 	 *
 	 * Other services may use the same technique or subscribe to a Serial's
 	 * publishByte method
-	 *
-	 * it might be worthwhile to look in optimizing reads into arrays vs single
-	 * byte processing .. but maybe there would be no gain
-	 *
 	 */
-
-	// FIXME - onByte(int[] data)
 	@Override
 	public Integer onByte(Integer newByte) {
-		try {
-			/**
-			 * Archtype InputStream read - rxtxLib does not have this
-			 * straightforward design, but the details of how it behaves is is
-			 * handled in the Serial service and we are given a unified
-			 * interface
-			 *
-			 * The "read()" is data taken from a blocking queue in the Serial
-			 * service. If we want to support blocking functions in Arduino then
-			 * we'll "publish" to our local queues
-			 */
-			// TODO: consider reading more than 1 byte at a time ,and make this
-			// callback onBytes or something like that.
-
-			++byteCount;
-			if (log.isDebugEnabled()) {
-				log.info("onByte {} \tbyteCount \t{}", newByte, byteCount);
-			}
-			if (byteCount == 1) {
-				if (newByte != MAGIC_NUMBER) {
-					byteCount = 0;
-					msgSize = 0;
-					Arrays.fill(msg, MAGIC_NUMBER);
-					warn(String.format("Arduino->MRL error - bad magic number %d - %d rx errors", newByte, ++error_arduino_to_mrl_rx_cnt));
-					// dump.setLength(0);
-				}
-				return newByte;
-			} else if (byteCount == 2) {
-				// get the size of message
-				if (newByte > 64) {
-					byteCount = 0;
-					msgSize = 0;
-					error(String.format("Arduino->MRL error %d rx sz errors", ++error_arduino_to_mrl_rx_cnt));
-					return newByte;
-				}
-				msgSize = (byte) newByte.intValue();
-				// dump.append(String.format("MSG|SZ %d", msgSize));
-			} else if (byteCount > 2) {
-				// remove header - fill msg data - (2) headbytes -1
-				// (offset)
-				// dump.append(String.format("|P%d %d", byteCount,
-				// newByte));
-				msg[byteCount - 3] = (byte) newByte.intValue();
-			} else {
-				// the case where byteCount is negative?! not got.
-				error(String.format("Arduino->MRL error %d rx negsz errors", ++error_arduino_to_mrl_rx_cnt));
-				return newByte;
-			}
-			if (byteCount == 2 + msgSize) {
-				// we've received a full message
-				// process valid message
-				// TODO: deserialize this byte array as an mrl message object to
-				// help clean up the code.
-				// int[] payload = Arrays.copyOfRange(msg, 2, msgSize);
-				// MrlCommMessage mrlMsg = new MrlCommMessage(msg[0], payload);
-				processMessage(msg);
-				// clean up memory/buffers
-				msgSize = 0;
-				byteCount = 0;
-				Arrays.fill(msg, 0); // optimize remove
-			}
-		} catch (Exception e) {
-			++error_mrl_to_arduino_rx_cnt;
-			error("msg structure violation %d", error_mrl_to_arduino_rx_cnt);
-			log.warn("msg_structure violation byteCount {} buffer {}", byteCount, Arrays.copyOf(msg, byteCount));
-			// try again (clean up memory buffer)
-			msgSize = 0;
-			byteCount = 0;
-			Logging.logError(e);
-		}
+		decoder.decode(newByte & 0xff);
 		return newByte;
 	}
 
+	/**
+	 * the chunks read by the serial port - decoded without boxing each byte
+	 */
+	@Override
+	public void onBytes(byte[] data, int offset, int length) {
+		decoder.decode(data, offset, length);
+	}
+
 	@Override
 	public String onConnect(String portName) {
 		info("%s connected to %s", getName(), portName);
@@ -1779,61 +1824,60 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 		return pinMap.get(pinName).getAddress();
 	}
 
-	// This is called when a valid message is received from the serial port.
-	private void processMessage(int[] message) {
-
-		// MSG CONTENTS = FN | D0 | D1 | ...
-		int function = message[0];
-		// log.info("Process Message Called: {}",
-		// ArduinoMsgCodec.functionToString(function));
-		// if (log.isDebugEnabled()) {
-		// log.debug("Process Message Called: {}",
-		// ArduinoMsgCodec.functionToString(function));
-		// }
-		switch (function) {
-		case PUBLISH_MRLCOMM_ERROR: {
-			++error_mrl_to_arduino_rx_cnt;
-			StringBuilder payload = new StringBuilder();
-			for (int i = 2; i < msgSize; i++) {
-				payload.append((char) message[i]);
+	/**
+	 * the function code to handler table of the decoder - one handler for each
+	 * message MRLComm publishes
+	 */
+	void initHandlers() {
+		decoder.setHandler(PUBLISH_MRLCOMM_ERROR, new MrlCommDecoder.Handler() {
+			@Override
+			public void onMsg(int[] message, int size) {
+				++error_mrl_to_arduino_rx_cnt;
+				StringBuilder payload = new StringBuilder();
+				for (int i = 2; i < size; i++) {
+					payload.append((char) message[i]);
+				}
+				error("MRL->Arduino rx %d type %d: %s", error_mrl_to_arduino_rx_cnt, message[1], payload);
 			}
-			error("MRL->Arduino rx %d type %d: %s", error_mrl_to_arduino_rx_cnt, message[1], payload);
-			break;
-		}
-		case PUBLISH_VERSION: {
-			// TODO - get vendor version
-			// String version = String.format("%d", message[1]);
-			// versionQueue.add(message[1] & 0xff);
-			mrlCommVersion = message[1] & 0xff;
-			log.info("PUBLISH_VERSION {}", mrlCommVersion);
-			invoke("publishVersion", mrlCommVersion);
-			break;
-		}
-		case PUBLISH_BOARD_STATUS: {
-			long microsPerLoop = Serial.bytesToInt(message, 1, 2);
-			int sram = (int) Serial.bytesToInt(message, 3, 2);
-			int deviceCount = (int) Serial.bytesToInt(message, 5, 2);
-			info("load %d us - sram %d bytes  device count %d", microsPerLoop, sram, deviceCount);
-			invoke("publishBoardStatus", new BoardStatus(microsPerLoop, sram, deviceCount));
-			break;
-		}
-
+		});
+		decoder.setHandler(PUBLISH_VERSION, new MrlCommDecoder.Handler() {
+			@Override
+			public void onMsg(int[] message, int size) {
+				// TODO - get vendor version
+				mrlCommVersion = message[1] & 0xff;
+				log.info("PUBLISH_VERSION {}", mrlCommVersion);
+				invoke("publishVersion", mrlCommVersion);
+			}
+		});
+		decoder.setHandler(PUBLISH_BOARD_STATUS, new MrlCommDecoder.Handler() {
+			@Override
+			public void onMsg(int[] message, int size) {
+				long microsPerLoop = Serial.bytesToInt(message, 1, 2);
+				int sram = (int) Serial.bytesToInt(message, 3, 2);
+				int deviceCount = (int) Serial.bytesToInt(message, 5, 2);
+				info("load %d us - sram %d bytes  device count %d", microsPerLoop, sram, deviceCount);
+				invoke("publishBoardStatus", new BoardStatus(microsPerLoop, sram, deviceCount));
+			}
+		});
 		// TODO - REMOVE - this needs to be routed through
 		// PUBLISH_SENSOR_DATA and processed in Servo service !
-		case PUBLISH_SERVO_EVENT: {
-			int id = message[1];
-			int eventType = message[2];
-			int currentPos = message[3];
-			int targetPos = message[4];
-			log.info(String.format(" id %d type %d cur %d target %d", id, eventType, currentPos & 0xff, targetPos & 0xff));
-			// uber good -
-			// TODO - deprecate ServoControl interface - not
-			// needed Servo is abstraction enough
-			Servo servo = (Servo) deviceIndex.get(id).getDevice();
-			servo.invoke("publishServoEvent", currentPos & 0xff);
-			break;
-		}
-
+		decoder.setHandler(PUBLISH_SERVO_EVENT, new MrlCommDecoder.Handler() {
+			@Override
+			public void onMsg(int[] message, int size) {
+				int id = message[1] & 0xff;
+				int eventType = message[2];
+				int currentPos = message[3];
+				int targetPos = message[4];
+				if (log.isDebugEnabled()) {
+					log.debug(String.format(" id %d type %d cur %d target %d", id, eventType, currentPos & 0xff, targetPos & 0xff));
+				}
+				// uber good -
+				// TODO - deprecate ServoControl interface - not
+				// needed Servo is abstraction enough
+				Servo servo = (Servo) deviceIndex.get(id).getDevice();
+				servo.invoke("publishServoEvent", currentPos & 0xff);
+			}
+		});
 		/**
 		 * PUBLISH_DEVICE_ATTACHED - is the callback from MRLComm to bind a
 		 * service with its id
@@ -1844,153 +1888,170 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 		 * </pre>
 		 *
 		 */
-		case PUBLISH_ATTACHED_DEVICE: {
+		decoder.setHandler(PUBLISH_ATTACHED_DEVICE, new MrlCommDecoder.Handler() {
+			@Override
+			public void onMsg(int[] message, int size) {
+				// ids go up to 255 - the decoder hands out signed bytes
+				int newDeviceId = message[1] & 0xff;
+				int nameStrSize = message[2] & 0xff;
+				String deviceName = intsToString(message, 3, nameStrSize);
+
+				if (!deviceList.containsKey(deviceName)) {
+					error("PUBLISH_ATTACHED_DEVICE deviceName %s not found !", deviceName);
+					return;
+				}
 
-			int newDeviceId = message[1];
-			int nameStrSize = message[2];
-			String deviceName = intsToString(message, 3, nameStrSize);
+				DeviceMapping deviceMapping = deviceList.get(deviceName);
+				deviceMapping.setId(newDeviceId);
+				deviceIndex.put(newDeviceId, deviceList.get(deviceName));
+				invoke("publishAttachedDevice", deviceName);
 
-			if (!deviceList.containsKey(deviceName)) {
-				error("PUBLISH_ATTACHED_DEVICE deviceName %s not found !", deviceName);
-				break;
+				info("==== ATTACHED DEVICE %s WITH MRLDEVICE %d ====", deviceName, newDeviceId);
 			}
-
-			DeviceMapping deviceMapping = deviceList.get(deviceName);
-			deviceMapping.setId(newDeviceId);
-			deviceIndex.put(newDeviceId, deviceList.get(deviceName));
-			invoke("publishAttachedDevice", deviceName);
-
-			info("==== ATTACHED DEVICE %s WITH MRLDEVICE %d ====", deviceName, newDeviceId);
-
-			break;
-		}
-
-		/**
-		 * FIXME - this needs to be publishing SensorEvent (s) since the Arduino
-		 * is a PinArrayControl & Controller - if the "pin" is active the events
-		 * will become PinEvents
-		 * 
-		 * SensorEvent is the most "raw" form.. PinEvents is typically just Pin
-		 * state change
-		 * 
-		 * Some sensors will need the "raw" form so that they can
-		 * re-interpret/decode the data
-		 */
-		case PUBLISH_SENSOR_DATA: {
-			// PUBLISH_ATTACHED_SENSOR | DEVICE_INDEX | DATA_SIZE | DATA ....
-
-			int id = message[1];
-
-			// get the size of the data payload
-			int size = (int) message[2];
-			if (size > message.length - 2) {
-				error("PUBLISH_SENSOR_DATA invalid size %d", size);
-				break;
+		});
+		decoder.setHandler(PUBLISH_SENSOR_DATA, new MrlCommDecoder.Handler() {
+			@Override
+			public void onMsg(int[] message, int size) {
+				onSensorDataMsg(message, size);
 			}
-
-			// get the device mapping from the returning id
-			DeviceMapping map = deviceIndex.get(id);
-			// get the device - in this case it "should" be a sensor listener
-			// since mrl is trying to publish data back to it...
-			SensorDataListener sensor = (SensorDataListener) map.getDevice();
-
-			// unload the data
-			int[] rawDate = new int[size];
-			for (int i = 0; i < size; ++i) {
-				rawDate[i] = message[i + 2 + 1];
+		});
+		decoder.setHandler(PUBLISH_PULSE_STOP, new MrlCommDecoder.Handler() {
+			@Override
+			public void onMsg(int[] message, int size) {
+				// FIXME - assumption its a encoder pin on a Motor NO !!!
+				// SensorDataPublisher sensor = deviceIndex.get(id).sensor;
+				// Integer data = Serial.bytesToInt(message, 2, 4);
+				// sensor.update(data);
 			}
-
-			SensorData event = new SensorData(rawDate);
-
-			// an optimization - bypass queues if local
-			if (sensor.isLocal()) {
-				sensor.onSensorData(event);
+		});
+		decoder.setHandler(PUBLISH_MESSAGE_ACK, new MrlCommDecoder.Handler() {
+			@Override
+			public void onMsg(int[] message, int size) {
+				if (log.isDebugEnabled()) {
+					log.debug("Message Ack received: {}", ArduinoMsgCodec.functionToString(message[1]));
+				}
+				sendWindow.ack(message[1] & 0xff);
+				numAck++;
+				heartbeat = true;
 			}
+		});
+		decoder.setHandler(PUBLISH_DEBUG, new MrlCommDecoder.Handler() {
+			@Override
+			public void onMsg(int[] message, int size) {
+				// convert the int array to a string.
+				StringBuilder payload = new StringBuilder();
+				for (int i = 1; i < size; i++) {
+					payload.append((char) message[i]);
+				}
+				log.info("MRLComm Debug Message {}", payload);
+			}
+		});
+		decoder.setHandler(PUBLISH_BOARD_INFO, new MrlCommDecoder.Handler() {
+			@Override
+			public void onMsg(int[] message, int size) {
+				int boardId = message[1];
+				String boardName = "";
+				switch (boardId) {
+				case BOARD_TYPE_ID_MEGA:
+					boardName = BOARD_TYPE_MEGA;
+					break;
+				case BOARD_TYPE_ID_UNO:
+					boardName = BOARD_TYPE_UNO;
+					break;
+				default:
+					boardName = "Unknown";
+					break;
+				}
+				log.info("Board type returned by Arduino: {}", boardName);
+				log.info("Board type currently set: {}", boardType);
+				if ((boardType == "" || boardType == null) && boardId != BOARD_TYPE_ID_UNKNOWN) {
+					setBoard(boardName);
+					log.info("Board type set to: {}", boardType);
+				} else {
+					log.info("No change in board type");
+				}
+			}
+		});
+		decoder.setHandler(MSG_ROUTE, new MrlCommDecoder.Handler() {
+			@Override
+			public void onMsg(int[] message, int size) {
+				// MSG_ROUTE | IO TYPE | FN | D0 ...
+				for (int i = 2; i < size; i++) {
+					routeMsg[i - 2] = message[i];
+				}
+				attachedController.get(message[1] & 0xff).decoder.dispatch(routeMsg, size - 2);
+			}
+		});
+		decoder.setHandler(PUBLISH_CUSTOM_MSG, new MrlCommDecoder.Handler() {
+			@Override
+			public void onMsg(int[] message, int size) {
+				int[] data = new int[size - 2];
+				for (int i = 2; i < size; i++) {
+					data[i - 2] = message[i];
+				}
+				invoke("publishCustomMsg", data);
+			}
+		});
+		decoder.setUnknownHandler(new MrlCommDecoder.Handler() {
+			@Override
+			public void onMsg(int[] message, int size) {
+				error("unknown serial event %d", message[0]);
+			}
+		});
+	}
 
-			// publish for everything else..
-			// standard pub / sub
-			invoke("publishSensorData", event);
-
-			break;
-		}
+	/**
+	 * FIXME - this needs to be publishing SensorEvent (s) since the Arduino is
+	 * a PinArrayControl & Controller - if the "pin" is active the events will
+	 * become PinEvents
+	 * 
+	 * SensorEvent is the most "raw" form.. PinEvents is typically just Pin
+	 * state change
+	 * 
+	 * Some sensors will need the "raw" form so that they can
+	 * re-interpret/decode the data
+	 * 
+	 * PUBLISH_SENSOR_DATA | DEVICE_INDEX | DATA_SIZE | DATA ....
+	 * 
+	 * The event handed to a local sensor is reused for the next data of the
+	 * same device - a sensor which keeps the data must copy it. Subscribers of
+	 * publishSensorData get their own copy as the message is queued.
+	 */
+	void onSensorDataMsg(int[] message, int msgSize) {
+		int id = message[1] & 0xff;
 
-		case PUBLISH_PULSE_STOP: {
-			int id = (int) message[1];
-			// FIXME - assumption its a encoder pin on a Motor NO !!!
-			// SensorDataPublisher sensor = deviceIndex.get(id).sensor;
-			// Integer data = Serial.bytesToInt(message, 2, 4);
-			// sensor.update(data);
-			break;
+		// get the size of the data payload
+		int size = message[2];
+		if (size < 0 || size > msgSize - 3) {
+			error("PUBLISH_SENSOR_DATA invalid size %d", size);
+			return;
 		}
 
-		case PUBLISH_MESSAGE_ACK: {
-			log.info("Message Ack received: {}", ArduinoMsgCodec.functionToString(message[1]));
-			ackRecieved = true;
+		// get the device mapping from the returning id
+		DeviceMapping map = deviceIndex.get(id);
+		// get the device - in this case it "should" be a sensor listener
+		// since mrl is trying to publish data back to it...
+		SensorDataListener sensor = (SensorDataListener) map.getDevice();
 
-			numAck++;
-			// TODO: do i need to call notify?
-			// notify();
-			// TODO: something more async for notification on this mutex.
-			heartbeat = true;
-			break;
-		}
-		case PUBLISH_DEBUG: {
-			// convert the int array to a string.
-			// TODO is there an easier / better way to do this?
-			StringBuilder payload = new StringBuilder();
-			for (int i = 1; i < msgSize; i++) {
-				payload.append((char) message[i]);
-			}
-			log.info("MRLComm Debug Message {}", payload);
-			break;
-		}
-		case PUBLISH_BOARD_INFO: {
-			int boardId = message[1];
-			String boardName = "";
-			switch (boardId) {
-			case BOARD_TYPE_ID_MEGA:
-				boardName = BOARD_TYPE_MEGA;
-				break;
-			case BOARD_TYPE_ID_UNO:
-				boardName = BOARD_TYPE_UNO;
-				break;
-			default:
-				boardName = "Unknown";
-				break;
-			}
-			log.info("Board type returned by Arduino: {}", boardName);
-			log.info("Board type currently set: {}", boardType);
-			if ((boardType == "" || boardType == null) && boardId != BOARD_TYPE_ID_UNKNOWN) {
-				setBoard(boardName);
-				log.info("Board type set to: {}", boardType);
-			} else {
-				log.info("No change in board type");
-			}
-			break;
+		SensorData event = sensorEvents[id];
+		int[] rawData = (event == null) ? null : (int[]) event.getData();
+		if (rawData == null || rawData.length != size) {
+			rawData = new int[size];
+			event = new SensorData(rawData);
+			sensorEvents[id] = event;
 		}
-		case MSG_ROUTE: {
-			int[] newMsg = new int[MAX_MSG_SIZE];
-			for (int i = 2; i < msgSize; i++) {
-				newMsg[i - 2] = message[i];
-			}
-			attachedController.get(message[1]).msgSize = msgSize - 2;
-			attachedController.get(message[1]).processMessage(newMsg);
-			break;
+		System.arraycopy(message, 3, rawData, 0, size);
+
+		// an optimization - bypass queues if local
+		if (sensor.isLocal()) {
+			sensor.onSensorData(event);
 		}
-		case PUBLISH_CUSTOM_MSG: {
-		  int[] data = new int[msgSize-2];
-		  for (int i = 2; i < msgSize; i++) {
-		    data[i-2] = message[i];
-		  }
-		  invoke("publishCustomMsg",data);
-		  break;
-		}
-		default: {
-			// FIXME - use formatter for message
-			error("unknown serial event %d", function);
-			break;
+
+		// publish for everything else..
+		// standard pub / sub
+		if (hasSubscribers("publishSensorData")) {
+			invoke("publishSensorData", new SensorData(rawData.clone()));
 		}
-		} // end switch
 	}
 
 	/**
@@ -2143,7 +2204,8 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 	}
 
 	/**
-	 * MRL protocol method
+	 * MRL protocol method - queues the message and only waits if the send
+	 * window is full, see sendMsgAsync
 	 *
 	 * @param function
 	 * @param param1
@@ -2152,7 +2214,29 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 	 *            MAGIC_NUMBER|LENGTH|FUNCTION|PARAM0|PARAM1 ... |PARAM(N)
 	 *
 	 */
-	public synchronized void sendMsg(int function, int... params) {
+	public void sendMsg(int function, int... params) {
+		sendMsgAsync(function, params);
+		// putting delay at the end so we give the message and allow the
+		// arduino to process
+		// This helps avoid the arduino dropping messages and getting
+		// lost/disconnected.
+		if (delay > 0) {
+			sleep(delay);
+		}
+	}
+
+	public void sendMsg(int function, List<Integer> params) {
+		sendMsg(function, toArray(params));
+	}
+
+	/**
+	 * pipelined send - several messages can be in flight, the window keeps the
+	 * bytes in flight within MRLComm's rx buffer
+	 *
+	 * @return completed when MRLComm acks the message, exceptionally if it
+	 *         times out or can not be sent
+	 */
+	public CompletableFuture<Integer> sendMsgAsync(int function, int... params) {
 		if (rootController != null) {
 			MrlMsg msg = new MrlMsg(MSG_ROUTE);
 			msg.addData(controllerAttachAs);
@@ -2160,114 +2244,66 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 			for (int i = 0; i < params.length; i++) {
 				msg.addData(params[i]);
 			}
-			rootController.sendMsg(msg);
-		} else {
-			// log.info("Sending Message : {}",
-			// ArduinoMsgCodec.functionToString(function));
-			// if (log.isDebugEnabled()) {
-			// log.debug("Sending Arduino message funciton {}",
-			// ArduinoMsgCodec.functionToString(function));
-			// }
-			// some sanity checking.
-			if (!serial.isConnected()) {
-				log.warn("Serial port is not connected, unable to send message.");
-				return;
-			}
-			// don't even attempt to send it if we know it's a bogus message.
-			// TODO: we need to account for the magic byte & length bytes. max
-			// message size is 64-2 (potentially)
-			if (params.length > MAX_MSG_SIZE) {
-				log.error("Arduino Message size was large! Function {} Size {}", function, params.length);
-				return;
-			}
-			// System.out.println("Sending Message " + function );
-			try {
-				// Minimum MRLComm message is 3 bytes(int).
-				// MAGIC_NUMBER|LENGTH|FUNCTION|PARAM0|PARAM1 would be valid
-				int[] msgToSend = new int[3 + params.length];
-				msgToSend[0] = MAGIC_NUMBER;
-				msgToSend[1] = 1 + params.length;
-				msgToSend[2] = function;
-				for (int i = 0; i < params.length; i++) {
-					// What if the int is > 127 ?
-					msgToSend[3 + i] = params[i];
-				}
-				// send the message as an array. (serial port actually writes 1
-				// byte
-				// at a time anyway.. oh well.)
-
-				// set a flag that a message is in flight.
-				ackRecieved = false;
-				// notify();
-
-				// Technically this is the only thing that needs to be
-				// synchronized
-				// i think.
-				synchronized (msgToSend) {
-					serial.write(msgToSend);
-				}
-			} catch (Exception e) {
-				error("sendMsg " + e.getMessage());
-			}
-		}
-		// TODO: wait for an ack of the message to arrive!
-		long start = System.currentTimeMillis();
-		// wait a max of 100 for the ack.
-		int limit = 2000;
-		// log.info("Waiting on ack. {}", function);
-		while (!ackRecieved) {
-			// TODO: Avoid excessive cpu usage, and limit the amount of time
-			// we wait on this "ackRecieved"
-			// variable. There's some java thread/notify stuff that might be
-			// better to use?
-			// sleep 1 nanosecond?!
-			// Thread.sleep(0,1);
-			// sleep 1 millisecond
-			// Thread.sleep(1);
-			sleep(1);
-			// log.info("Waiting on ack {}", numAck);
-			long delta = System.currentTimeMillis() - start;
-			// timeout waiting for the ack.
-			if (delta > limit) {
-				// log.warn(, limit, function);
-				// warn(String.format("No ack received.. timing out after %d
-				// ms and continuing for function %s", limit,
-				// ArduinoMsgCodec.functionToString(function)));
-				// ackRecieved = true;
-				// Try again!
-				// sendMsg(function, params);
-				// eek?
-				// ackRecieved = false;
-				break;
-			}
-			// break;
-		}
-
-		// if (log.isDebugEnabled()) {
-		if (!ackRecieved) {
-			log.info("Ack not received : {} {}", ArduinoMsgCodec.functionToString(function), numAck);
+			return rootController.sendMsgAsync(msg);
+		}
+
+		CompletableFuture<Integer> failed = new CompletableFuture<Integer>();
+		// some sanity checking.
+		if (!serial.isConnected()) {
+			log.warn("Serial port is not connected, unable to send message.");
+			failed.completeExceptionally(new IOException("serial port is not connected"));
+			return failed;
+		}
+		// don't even attempt to send it if we know it's a bogus message.
+		// TODO: we need to account for the magic byte & length bytes. max
+		// message size is 64-2 (potentially)
+		if (params.length > MAX_MSG_SIZE) {
+			log.error("Arduino Message size was large! Function {} Size {}", function, params.length);
+			failed.completeExceptionally(new IOException(String.format("message size %d too large", params.length)));
+			return failed;
+		}
+
+		// Minimum MRLComm message is 3 bytes(int).
+		// MAGIC_NUMBER|LENGTH|FUNCTION|PARAM0|PARAM1 would be valid
+		int[] msgToSend = new int[3 + params.length];
+		msgToSend[0] = MAGIC_NUMBER;
+		msgToSend[1] = 1 + params.length;
+		msgToSend[2] = function;
+		for (int i = 0; i < params.length; i++) {
+			// What if the int is > 127 ?
+			msgToSend[3 + i] = params[i];
 		}
-		// }
-		// putting delay at the end so we give the message and allow the
-		// arduino to process
-		// this decreases the latency between when mrl sends the message
-		// and the message is picked up by the arduino.
-		// This helps avoid the arduino dropping messages and getting
-		// lost/disconnected.
-		if (delay > 0) {
-			// Thread.sleep(delay);
-			sleep(delay);
+		try {
+			return sendWindow.send(function, msgToSend);
+		} catch (InterruptedException e) {
+			// not ours to swallow
+			Thread.currentThread().interrupt();
+			failed.completeExceptionally(e);
+			return failed;
 		}
-
 	}
 
-	public synchronized void sendMsg(int function, List<Integer> params) {
+	static int[] toArray(List<Integer> params) {
 		int[] p = new int[params.size()];
 		for (int i = 0; i < params.size(); ++i) {
 			p[i] = params.get(i);
 		}
+		return p;
+	}
 
-		sendMsg(function, p);
+	/**
+	 * max number of messages in flight to MRLComm - 1 is stop and wait
+	 */
+	public void setSendWindow(int size) {
+		sendWindow.setWindowSize(size);
+	}
+
+	/**
+	 * acks, retries, window occupancy and round trip histogram of the send
+	 * pipeline
+	 */
+	public String getSendStats() {
+		return sendWindow.toString();
 	}
 
 	@Override
@@ -2309,6 +2345,7 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 
 	@Override
 	public void servoAttach(ServoControl servo, int pin) {
+		servoScheduler.flush(servo);
 		sendMsg(SERVO_ATTACH, getDeviceId(servo), pin);
 	}
 
@@ -2318,6 +2355,7 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 	 */
 	@Override
 	public void servoDetach(ServoControl servo) {
+		servoScheduler.flush(servo);
 		int id = getDeviceId(servo);
 		sendMsg(SERVO_DETACH, getDeviceId(servo), id);
 	}
@@ -2325,6 +2363,7 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 	// FIXME - do sweep single method call from ServoControl
 	@Override
 	public void servoSweepStart(ServoControl servo) {
+		servoScheduler.flush(servo);
 		int id = getDeviceId(servo);
 		log.info(String.format("servoSweep %s id %d min %d max %d step %d", servo.getName(), id, servo.getSweepMin(), servo.getSweepMax(), servo.getSweepStep()));
 		sendMsg(SERVO_SWEEP_START, id, servo.getSweepMin(), servo.getSweepMax(), servo.getSweepStep());
@@ -2332,18 +2371,35 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 
 	@Override
 	public void servoSweepStop(ServoControl servo) {
+		servoScheduler.flush(servo);
 		sendMsg(SERVO_SWEEP_STOP, getDeviceId(servo));
 	}
 
 	@Override
 	public void servoWrite(ServoControl servo) {
-		int id = getDeviceId(servo);
-		log.info("servoWrite {} {} id {}", servo.getName(), servo.getTargetOutput(), id);
-		sendMsg(SERVO_WRITE, id, servo.getTargetOutput().intValue());
+		log.debug("servoWrite {} {}", servo.getName(), servo.getTargetOutput());
+		servoScheduler.write(servo, servo.getTargetOutput().intValue());
+	}
+
+	/**
+	 * max rate servo positions are sent at - writes in between are coalesced,
+	 * 0 sends every servoWrite immediately
+	 */
+	public void setServoControlRate(int hz) {
+		servoScheduler.setRate(hz);
+	}
+
+	/**
+	 * requested and written servo commands, coalesced intermediate positions
+	 * and the effective command rate
+	 */
+	public String getServoStats() {
+		return servoScheduler.toString();
 	}
 
 	@Override
 	public void servoWriteMicroseconds(ServoControl servo, int uS) {
+		servoScheduler.flush(servo);
 		int id = getDeviceId(servo);
 		log.info(String.format("writeMicroseconds %s %d id %d", servo.getName(), uS, id));
 		MrlMsg msg = new MrlMsg(SERVO_WRITE_MICROSECONDS, id);
@@ -2553,6 +2609,7 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 	@Override
 	public void stopService() {
 		super.stopService();
+		pinSamples.clear();
 		disconnect();
 	}
 
@@ -2650,17 +2707,28 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 			log.error("something is wrong - expecting 3 bytes per pin data");
 		}
 
-		PinData[] pinArray = new PinData[pinDataCnt];
+		// PinData objects are only made for whoever wants every sample
+		PinData[] pinArray = (hasSubscribers("publishPinArray")) ? new PinData[pinDataCnt] : null;
+		long now = System.currentTimeMillis();
 
 		// parse sort reduce ...
-		for (int i = 0; i < pinArray.length; ++i) {
-			PinData pinData = new PinData(rawPinData[3 * i], Serial.bytesToInt(rawPinData, (3 * i) + 1, 2));
-			pinArray[i] = pinData;
-			int address = pinData.getAddress();
+		for (int i = 0; i < pinDataCnt; ++i) {
+			int address = rawPinData[3 * i];
+			int value = Serial.bytesToInt(rawPinData, (3 * i) + 1, 2);
+			pinSamples.add(address, now, value);
+
+			PinData pinData = null;
+			if (pinArray != null) {
+				pinData = new PinData(address, value);
+				pinArray[i] = pinData;
+			}
 
 			// handle individual pins
-			if (pinListeners.containsKey(address)) {
-				List<PinListener> list = pinListeners.get(address);
+			List<PinListener> list = pinListeners.get(address);
+			if (list != null) {
+				if (pinData == null) {
+					pinData = new PinData(address, value);
+				}
 				for (int j = 0; j < list.size(); ++j) {
 					PinListener pinListner = list.get(j);
 					if (pinListner.isLocal()) {
@@ -2673,7 +2741,9 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 		}
 
 		// publish array
-		invoke("publishPinArray", new Object[] { pinArray });
+		if (pinArray != null) {
+			invoke("publishPinArray", new Object[] { pinArray });
+		}
 	}
 
 	public void publishBoardInfo() {
@@ -2699,6 +2769,7 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
 
 	@Override
 	public void servoSetMaxVelocity(ServoControl servo) {
+		servoScheduler.flush(servo);
 		MrlMsg msg = new MrlMsg(SERVO_SET_MAX_VELOCITY);
 		msg.addData(getDeviceId(servo));
 		msg.addData(2);
@@ -2726,6 +2797,7 @@ public class Arduino extends Service implements Microcontroller, PinArrayControl
   @Override
   public void servoSetVelocity(ServoControl servo) {
     // TODO Auto-generated method stub
+    servoScheduler.flush(servo);
     MrlMsg msg = new MrlMsg(SERVO_SET_VELOCITY);
     msg.addData(getDeviceId(servo));
     msg.addData(2);
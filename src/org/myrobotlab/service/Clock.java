@@ -33,6 +33,8 @@ import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.framework.Message;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.ServiceType;
+import org.myrobotlab.framework.TimedTask;
+import org.myrobotlab.framework.TimingWheel;
 import org.myrobotlab.logging.Level;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
@@ -47,36 +49,25 @@ import org.slf4j.Logger;
  */
 public class Clock extends Service {
 
-	public class ClockThread implements Runnable {
-		public Thread thread = null;
-
-		ClockThread() {
-			thread = new Thread(this, getName() + "_ticking_thread");
-			thread.start();
-		}
-
+	/**
+	 * a tick of the clock - runs at a fixed rate on the runtime-wide
+	 * TimingWheel
+	 */
+	public class ClockTick implements Runnable {
 		@Override
 		public void run() {
-			try {
-				while (isClockRunning == true) {
-					Date now = new Date();
-					Iterator<ClockEvent> i = events.iterator();
-					while (i.hasNext()) {
-						ClockEvent event = i.next();
-						if (now.after(event.time)) {
-							// TODO repeat - don't delete set time forward
-							// interval
-							send(event.name, event.method, event.data);
-							i.remove();
-						}
-					}
-					invoke("pulse", new Date());
-					Thread.sleep(interval);
+			Date now = new Date();
+			Iterator<ClockEvent> i = events.iterator();
+			while (i.hasNext()) {
+				ClockEvent event = i.next();
+				if (now.after(event.time)) {
+					// TODO repeat - don't delete set time forward
+					// interval
+					send(event.name, event.method, event.data);
+					i.remove();
 				}
-			} catch (InterruptedException e) {
-				log.info("ClockThread interrupt");
-				isClockRunning = false;
 			}
+			invoke("pulse", now);
 		}
 	}
 
@@ -87,7 +78,7 @@ public class Clock extends Service {
 
 	public int interval = 1000;
 
-	public transient ClockThread myClock = null;
+	public transient TimedTask myClock = null;
 
 	// FIXME
 	ArrayList<ClockEvent> events = new ArrayList<ClockEvent>();
@@ -114,6 +105,9 @@ public class Clock extends Service {
 
 	public void setInterval(Integer milliseconds) {
 		interval = milliseconds;
+		if (myClock != null) {
+			myClock.setPeriod(interval);
+		}
 		broadcastState();
 	}
 
@@ -121,7 +115,7 @@ public class Clock extends Service {
 		if (myClock == null) {
 			info("starting clock");
 			isClockRunning = true;
-			myClock = new ClockThread();
+			myClock = TimingWheel.getInstance().scheduleAtFixedRate(String.format("%s.clock", getName()), new ClockTick(), 0, interval);
 			invoke("clockStarted");
 		} else {
 			log.warn("clock already started");
@@ -136,8 +130,7 @@ public class Clock extends Service {
 			info("stopping clock");
 			log.info("stopping " + getName() + " myClock");
 			isClockRunning = false;
-			myClock.thread.interrupt();
-			myClock.thread = null;
+			myClock.cancel();
 			myClock = null;
 			// have requestors broadcast state !
 			// broadcastState();
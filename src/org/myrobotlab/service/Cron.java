@@ -2,17 +2,20 @@ package org.myrobotlab.service;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.UUID;
 
 import org.myrobotlab.codec.CodecUtils;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.ServiceType;
+import org.myrobotlab.framework.TimedTask;
+import org.myrobotlab.framework.TimingWheel;
 import org.myrobotlab.logging.Level;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
 import org.myrobotlab.logging.LoggingFactory;
 import org.slf4j.Logger;
 
-import it.sauronsoftware.cron4j.Scheduler;
+import it.sauronsoftware.cron4j.SchedulingPattern;
 
 /**
  * Cron - This is a cron based service that can execute a "task" at some point
@@ -29,10 +32,12 @@ public class Cron extends Service {
   public static class Task implements Serializable, Runnable {
     private static final long serialVersionUID = 1L;
     transient Cron myService;
+    public String id;
     public String cronPattern;
     public String name;
     public String method;
     public Object[] data;
+    transient SchedulingPattern pattern;
 
     public Task(Cron myService, String cronPattern, String name, String method) {
       this(myService, cronPattern, name, method, (Object[]) null);
@@ -40,10 +45,19 @@ public class Cron extends Service {
 
     public Task(Cron myService, String cronPattern, String name, String method, Object... data) {
       this.myService = myService;
+      this.id = UUID.randomUUID().toString();
       this.cronPattern = cronPattern;
       this.name = name;
       this.method = method;
       this.data = data;
+      this.pattern = new SchedulingPattern(cronPattern);
+    }
+
+    public boolean match(long millis) {
+      if (pattern == null) {
+        pattern = new SchedulingPattern(cronPattern);
+      }
+      return pattern.match(millis);
     }
 
     @Override
@@ -57,7 +71,29 @@ public class Cron extends Service {
 
   public final static Logger log = LoggerFactory.getLogger(Cron.class.getCanonicalName());
 
-  transient private Scheduler scheduler = new Scheduler();
+  /**
+   * checks the tasks at the start of every minute - a one shot on the
+   * runtime-wide TimingWheel re-aligned to the wall clock each time
+   */
+  transient private TimedTask ticker = null;
+
+  transient private Runnable tick = new Runnable() {
+    @Override
+    public void run() {
+      long now = System.currentTimeMillis();
+      ArrayList<Task> toCheck;
+      synchronized (tasks) {
+        toCheck = new ArrayList<Task>(tasks);
+      }
+      for (int i = 0; i < toCheck.size(); ++i) {
+        Task task = toCheck.get(i);
+        if (task.match(now)) {
+          task.run();
+        }
+      }
+      scheduleTick();
+    }
+  };
 
   // Schedule a once-a-week task at 8am on Sunday.
   // 0 8 * * 7
@@ -147,8 +183,21 @@ public class Cron extends Service {
    */
   public String addTask(String cron, String serviceName, String method, Object... data) {
     Task task = new Task(this, cron, serviceName, method, data);
-    tasks.add(task);
-    return scheduler.schedule(cron, task);
+    synchronized (tasks) {
+      tasks.add(task);
+    }
+    return task.id;
+  }
+
+  synchronized void scheduleTick() {
+    if (!isRunning()) {
+      ticker = null;
+      return;
+    }
+    long now = System.currentTimeMillis();
+    // just past the next minute
+    long delay = 60000 - (now % 60000) + 1;
+    ticker = TimingWheel.getInstance().schedule(String.format("%s.cron", getName()), tick, delay);
   }
 
   public ArrayList<Task> getCronTasks() {
@@ -158,16 +207,19 @@ public class Cron extends Service {
   @Override
   public void startService() {
     super.startService();
-    if (!scheduler.isStarted()) {
-      scheduler.start();
+    if (ticker == null) {
+      scheduleTick();
     }
   }
 
   @Override
   public void stopService() {
     super.stopService();
-    if (scheduler.isStarted()) {
-      scheduler.stop();
+    synchronized (this) {
+      if (ticker != null) {
+        ticker.cancel();
+        ticker = null;
+      }
     }
   }
 
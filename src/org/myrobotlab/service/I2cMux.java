@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.ServiceType;
@@ -242,6 +243,22 @@ public class I2cMux extends Service implements I2CControl, I2CController {
 		return readBuffer.length;
 	}
 
+	/**
+	 * The mux is switched and the read sent together, so reads on different
+	 * mux buses can be outstanding at the same time
+	 */
+	@Override
+	public synchronized CompletableFuture<byte[]> i2cReadAsync(I2CControl control, int busAddress, int deviceAddress, int size) {
+		setMuxBus(busAddress);
+		return controller.i2cReadAsync(this, Integer.parseInt(this.deviceBus), deviceAddress, size);
+	}
+
+	@Override
+	public synchronized CompletableFuture<byte[]> i2cWriteReadAsync(I2CControl control, int busAddress, int deviceAddress, byte[] writeBuffer, int writeSize, int readSize) {
+		setMuxBus(busAddress);
+		return controller.i2cWriteReadAsync(this, Integer.parseInt(this.deviceBus), deviceAddress, writeBuffer, writeSize, readSize);
+	}
+
 	/**
 	 * This static method returns all the details of the class without it having
 	 * to be constructed. It has description, categories, dependencies, and peer
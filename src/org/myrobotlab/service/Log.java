@@ -29,11 +29,11 @@ import java.lang.reflect.Method;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 
 import org.myrobotlab.framework.MRLListener;
 import org.myrobotlab.framework.Message;
+import org.myrobotlab.framework.OverflowPolicy;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.ServiceType;
 import org.myrobotlab.logging.Level;
@@ -84,6 +84,9 @@ public class Log extends Service implements Appender<ILoggingEvent>, NameProvide
 
 	public Log(String n) {
 		super(n);
+		// logging threads - shared pool workers included - must never wait on
+		// a slow subscriber, under load the oldest events go
+		outbox.setOverflowPolicy(OverflowPolicy.DROP_OLDEST);
 	}
 
 	public void addListener(MRLListener listener) {
@@ -298,15 +301,9 @@ public class Log extends Service implements Appender<ILoggingEvent>, NameProvide
 		}
 	}
 
-	public void add(Message msg) throws InterruptedException {
-		LinkedList<Message> msgBox = getOutbox().getMsgBox();
-		synchronized (msgBox) {
-			while (msgBox.size() > getOutbox().getMaxQueueSize()) {
-				msgBox.wait(); // Limit the size
-			}
-			msgBox.addFirst(msg);
-			msgBox.notifyAll(); // must own the lock
-		}
+	public void add(Message msg) {
+		// never waits - a full outbox drops its oldest message
+		getOutbox().add(msg);
 	}
 
 	public void setRootLogLevel(String level) {
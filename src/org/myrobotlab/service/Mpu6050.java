@@ -6,6 +6,7 @@ import java.util.List;
 
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.ServiceType;
+import org.myrobotlab.i2c.I2CBurst;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
 import org.myrobotlab.logging.LoggingFactory;
@@ -81,6 +82,11 @@ public class Mpu6050 extends Service implements I2CControl {
 
 	transient I2CController controller;
 
+	/**
+	 * scheduled sampling of the raw registers - see startBurst
+	 */
+	transient I2CBurst burst = null;
+
 	public List<String> deviceAddressList = Arrays.asList("0x68", "0x69");
 	public String deviceAddress = "0x68";
 
@@ -670,22 +676,50 @@ public class Mpu6050 extends Service implements I2CControl {
 	}
 
 	public void getRaw() {
-		// Set the start address to read from
+		// Set the start address to read from and request 14 bytes from the
+		// MPU-6050 in one transaction
 		byte[] writebuffer = { MPU6050_RA_ACCEL_XOUT_H };
-		controller.i2cWrite(this, Integer.parseInt(deviceBus), Integer.decode(deviceAddress), writebuffer, writebuffer.length);
-		// The Arduino example executes a request_from()
-		// Not sure if this will do the trick
-		// Request 14 bytes from the MPU-6050
 		byte[] readbuffer = new byte[14];
-		controller.i2cRead(this, Integer.parseInt(deviceBus), Integer.decode(deviceAddress), readbuffer, readbuffer.length);
+		controller.i2cWriteRead(this, Integer.parseInt(deviceBus), Integer.decode(deviceAddress), writebuffer, writebuffer.length, readbuffer, readbuffer.length);
+		setRaw(readbuffer, 0);
+	}
+
+	/**
+	 * sample the raw registers every periodMs with a scheduled burst read of
+	 * the controller instead of calling getRaw
+	 */
+	public void startBurst(long periodMs) {
+		stopBurst();
+		burst = new I2CBurst(getName());
+		burst.add(this, Integer.parseInt(deviceBus), Integer.decode(deviceAddress), MPU6050_RA_ACCEL_XOUT_H, 14);
+		controller.i2cBurstStart(burst, periodMs);
+	}
+
+	public void stopBurst() {
+		if (burst != null) {
+			controller.i2cBurstStop(burst);
+			burst = null;
+		}
+	}
+
+	@Override
+	public void onI2cData(I2CBurst.Read read, byte[] frame) {
+		setRaw(frame, read.offset);
+		complementaryFilter(gyroX, gyroY, gyroZ, accelX, accelY, accelZ);
+	}
+
+	/**
+	 * the 14 bytes from ACCEL_XOUT_H to GYRO_ZOUT_L
+	 */
+	void setRaw(byte[] readbuffer, int i) {
 		// Fill the variables with the result from the read operation
-		accelX = (byte) readbuffer[0] << 8 | readbuffer[1] & 0xFF;
-		accelY = (byte) readbuffer[2] << 8 | readbuffer[3] & 0xFF;
-		accelZ = (byte) readbuffer[4] << 8 | readbuffer[5] & 0xFF;
-		temperature = (byte) readbuffer[6] << 8 | readbuffer[7] & 0xFF;
-		gyroX = (byte) readbuffer[8] << 8 | readbuffer[9] & 0xFF;
-		gyroY = (byte) readbuffer[10] << 8 | readbuffer[11] & 0xFF;
-		gyroZ = (byte) readbuffer[12] << 8 | readbuffer[13] & 0xFF;
+		accelX = (byte) readbuffer[i] << 8 | readbuffer[i + 1] & 0xFF;
+		accelY = (byte) readbuffer[i + 2] << 8 | readbuffer[i + 3] & 0xFF;
+		accelZ = (byte) readbuffer[i + 4] << 8 | readbuffer[i + 5] & 0xFF;
+		temperature = (byte) readbuffer[i + 6] << 8 | readbuffer[i + 7] & 0xFF;
+		gyroX = (byte) readbuffer[i + 8] << 8 | readbuffer[i + 9] & 0xFF;
+		gyroY = (byte) readbuffer[i + 10] << 8 | readbuffer[i + 11] & 0xFF;
+		gyroZ = (byte) readbuffer[i + 12] << 8 | readbuffer[i + 13] & 0xFF;
 		// Convert acceleration to G assuming min-max 2G as set in initialize()
 		accelGX = accelX / 16384.0;
 		accelGY = accelY / 16384.0;
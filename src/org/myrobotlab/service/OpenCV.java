@@ -43,6 +43,7 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.bytedeco.javacpp.opencv_core.CvPoint;
@@ -62,6 +63,7 @@ import org.myrobotlab.logging.Level;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.LoggingFactory;
 import org.myrobotlab.opencv.BlockingQueueGrabber;
+import org.myrobotlab.opencv.FilterSchedule;
 import org.myrobotlab.opencv.FilterWrapper;
 import org.myrobotlab.opencv.OpenCVData;
 import org.myrobotlab.opencv.OpenCVFilter;
@@ -69,6 +71,7 @@ import org.myrobotlab.opencv.OpenCVFilterAffine;
 import org.myrobotlab.opencv.OpenCVFilterFaceDetect;
 import org.myrobotlab.opencv.OpenCVFilterFaceDetect2;
 import org.myrobotlab.opencv.OpenCVFilterPyramidDown;
+import org.myrobotlab.opencv.StageStats;
 import org.myrobotlab.opencv.VideoProcessor;
 import org.myrobotlab.reflection.Reflector;
 import org.myrobotlab.service.data.Point2Df;
@@ -688,6 +691,77 @@ public class OpenCV extends VideoSource {
     videoProcessor.setMinDelay(time);
   }
 
+  /**
+   * run grab, filters and publish on separate threads - filtersPerStage
+   * consecutive filters share a thread
+   * 
+   * @param b
+   * @param filtersPerStage
+   */
+  public void setPipelined(boolean b, int filtersPerStage) {
+    videoProcessor.filtersPerStage = filtersPerStage;
+    videoProcessor.pipelined = b;
+  }
+
+  public void setPipelined(boolean b) {
+    setPipelined(b, videoProcessor.filtersPerStage);
+  }
+
+  /**
+   * latency & fps of each pipeline stage
+   * 
+   * @return
+   */
+  public List<StageStats> getStageStats() {
+    return videoProcessor.getStageStats();
+  }
+
+  /**
+   * quality 0-100 of the jpgs encoded from the frames
+   * 
+   * @param quality
+   */
+  public void setJpgQuality(int quality) {
+    videoProcessor.jpgQuality = quality;
+  }
+
+  /**
+   * published displays wider than maxWidth are scaled down - 0 publishes them
+   * at full size
+   * 
+   * @param maxWidth
+   */
+  public void setDisplayMaxWidth(int maxWidth) {
+    videoProcessor.displayMaxWidth = maxWidth;
+  }
+
+  /**
+   * run an expensive filter (face detect, surf, match template) on every n-th
+   * frame only - on the region around its last detection with a full frame
+   * every fullFrameEvery frames, scaled down by pyramidLevels
+   * 
+   * @param filterName
+   * @param everyN
+   * @param roi
+   * @param fullFrameEvery
+   * @param pyramidLevels
+   */
+  public void setFilterSchedule(String filterName, int everyN, boolean roi, int fullFrameEvery, int pyramidLevels) {
+    setFilterSchedule(filterName, new FilterSchedule(everyN, roi, fullFrameEvery, pyramidLevels));
+  }
+
+  /**
+   * null runs the filter on every full frame again
+   */
+  public void setFilterSchedule(String filterName, FilterSchedule schedule) {
+    OpenCVFilter filter = getFilter(filterName);
+    if (filter == null) {
+      error("setFilterSchedule - could not find %s ", filterName);
+      return;
+    }
+    filter.setSchedule(schedule);
+  }
+
   public String setRecordingSource(String source) {
     videoProcessor.recordingSource = source;
     return source;
@@ -25,9 +25,7 @@
 
 package org.myrobotlab.service;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.net.DatagramPacket;
@@ -47,6 +45,7 @@ import org.atmosphere.wasync.Event;
 import org.atmosphere.wasync.Function;
 import org.atmosphere.wasync.Request;
 import org.atmosphere.wasync.RequestBuilder;
+import org.myrobotlab.codec.CodecBinary;
 import org.myrobotlab.framework.Message;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.ServiceType;
@@ -92,6 +91,7 @@ public class RemoteAdapter extends Service implements Gateway {
 	// udp) || websockets
 	transient TcpServer tcpServer = null;
 	transient UdpServer udpServer = null;
+	transient CodecBinary udpCodec = new CodecBinary(false);
 
 	private Integer udpPort;
 	private Integer tcpPort;
@@ -291,7 +291,7 @@ public class RemoteAdapter extends Service implements Gateway {
 	 * </pre>
 	 */
 	@Override
-	synchronized public void sendRemote(URI uri, Message msg) {
+	public void sendRemote(URI uri, Message msg) {
 		log.info("sendRemote {}", uri);
 		String scheme = uri.getScheme();
 		lastProtocolKey = uri.toString();
@@ -312,14 +312,11 @@ public class RemoteAdapter extends Service implements Gateway {
 	public void sendRemoteUdp(URI uri, Message msg) {
 		try {
 
-			// FIXME - could use some optimization e.g. .reset()
 			DatagramSocket s = new DatagramSocket();
-			ByteArrayOutputStream b_out = new ByteArrayOutputStream();
-			ObjectOutputStream o_out = new ObjectOutputStream(b_out);
-			o_out.writeObject(msg);
-			o_out.flush();
-			b_out.flush();
-			byte[] b = b_out.toByteArray();
+			byte[] b;
+			synchronized (udpCodec) {
+				b = udpCodec.encode(msg);
+			}
 			InetAddress hostAddress = InetAddress.getByName(uri.getHost());
 			DatagramPacket dgram = new DatagramPacket(b, b.length, hostAddress, uri.getPort());
 			s.send(dgram);
@@ -384,6 +381,8 @@ public class RemoteAdapter extends Service implements Gateway {
 	public void stopService() {
 		super.stopService();
 		stopListening();
+		// closes the connections and the event loops
+		tcpServer.shutdown();
 	}
 
 	public void startService() {
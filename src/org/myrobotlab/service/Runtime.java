@@ -31,6 +31,7 @@ import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.myrobotlab.cmdline.CmdLine;
 import org.myrobotlab.codec.CodecUtils;
@@ -42,6 +43,7 @@ import org.myrobotlab.framework.MethodEntry;
 import org.myrobotlab.framework.Platform;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.ServiceEnvironment;
+import org.myrobotlab.framework.ServiceIds;
 import org.myrobotlab.framework.ServiceType;
 import org.myrobotlab.framework.Status;
 import org.myrobotlab.framework.repo.Repo;
@@ -97,9 +99,16 @@ public class Runtime extends Service implements MessageListener, RepoInstallList
 
 	/**
 	 * a registry of all services regardless of which environment they came from
-	 * - each must have a unique name
+	 * - each must have a unique name. Reads are lock free, writes go through
+	 * index/unindex under the Runtime class lock.
 	 */
-	static private final TreeMap<String, ServiceInterface> registry = new TreeMap<String, ServiceInterface>();
+	static private final ConcurrentHashMap<String, ServiceInterface> registry = new ConcurrentHashMap<String, ServiceInterface>();
+
+	/**
+	 * the registry indexed by interned service id (ServiceIds) - lets messages
+	 * which carry a resolved target id skip the name lookup
+	 */
+	static private volatile ServiceInterface[] registryById = new ServiceInterface[64];
 
 	/**
 	 * map to hide methods we are not interested in
@@ -827,7 +836,32 @@ public class Runtime extends Service implements MessageListener, RepoInstallList
 	 * @return
 	 */
 	public static Map<String, ServiceInterface> getRegistry() {
-		return registry;// FIXME should return copy
+		// sorted copy
+		return new TreeMap<String, ServiceInterface>(registry);
+	}
+
+	static private synchronized void index(String name, ServiceInterface s) {
+		registry.put(name, s);
+		int id = ServiceIds.getId(name);
+		if (id <= 0) {
+			// id table full - found by name only
+			return;
+		}
+		ServiceInterface[] byId = registryById;
+		if (id >= byId.length) {
+			byId = Arrays.copyOf(byId, Math.max(id + 1, byId.length * 2));
+		}
+		byId[id] = s;
+		registryById = byId;
+	}
+
+	static private synchronized ServiceInterface unindex(String name) {
+		int id = ServiceIds.findId(name);
+		ServiceInterface[] byId = registryById;
+		if (id > 0 && id < byId.length) {
+			byId[id] = null;
+		}
+		return registry.remove(name);
 	}
 
 	/**
@@ -844,11 +878,17 @@ public class Runtime extends Service implements MessageListener, RepoInstallList
 		if (name == null || name.length() == 0) {
 			return Runtime.getInstance();
 		}
-		if (!registry.containsKey(name)) {
-			return null;
-		} else {
-			return registry.get(name);
-		}
+		return registry.get(name);
+	}
+
+	/**
+	 * @param id
+	 *            interned service id - see ServiceIds
+	 * @return the service or null if it is not registered
+	 */
+	public static ServiceInterface getService(int id) {
+		ServiceInterface[] byId = registryById;
+		return (id > 0 && id < byId.length) ? byId[id] : null;
 	}
 
 	/**
@@ -906,7 +946,7 @@ public class Runtime extends Service implements MessageListener, RepoInstallList
 	}
 
 	public static List<ServiceInterface> getServices() {
-		List<ServiceInterface> list = new ArrayList<ServiceInterface>(registry.values());
+		List<ServiceInterface> list = new ArrayList<ServiceInterface>(getRegistry().values());
 		return list;
 	}
 
@@ -917,15 +957,13 @@ public class Runtime extends Service implements MessageListener, RepoInstallList
 	public static ArrayList<ServiceInterface> getServicesFromInterface(Class<?> interfaze) {
 		ArrayList<ServiceInterface> ret = new ArrayList<ServiceInterface>();
 
-		Iterator<String> it = registry.keySet().iterator();
-		String serviceName;
+		Iterator<ServiceInterface> it = getRegistry().values().iterator();
 		ServiceInterface sw;
 		Class<?> c;
 		Class<?>[] interfaces;
 		Class<?> m;
 		while (it.hasNext()) {
-			serviceName = it.next();
-			sw = registry.get(serviceName);
+			sw = it.next();
 			c = sw.getClass();
 			interfaces = c.getInterfaces();
 			for (int i = 0; i < interfaces.length; ++i) {
@@ -1290,7 +1328,7 @@ public class Runtime extends Service implements MessageListener, RepoInstallList
 
 	public void onState(ServiceInterface updatedService) {
 		log.info("runtime updating registry info for remote service {}", updatedService.getName());
-		registry.put(updatedService.getName(), updatedService);
+		index(updatedService.getName(), updatedService);
 		ServiceEnvironment se = environments.get(updatedService.getInstanceId());
 		if (se != null) {
 			se.serviceDirectory.put(updatedService.getName(), updatedService);
@@ -1367,7 +1405,7 @@ public class Runtime extends Service implements MessageListener, RepoInstallList
 		se.serviceDirectory.put(name, s);
 		// WARNING - SHOULDN'T THIS BE DONE FIRST AVOID DEADLOCK / RACE
 		// CONDITION ????
-		registry.put(name, s); // FIXME FIXME FIXME FIXME !!!!!!
+		index(name, s); // FIXME FIXME FIXME FIXME !!!!!!
 		// pre-pend
 		// URI if not NULL !!!
 		if (runtime != null) {
@@ -1396,11 +1434,11 @@ public class Runtime extends Service implements MessageListener, RepoInstallList
 	public synchronized static boolean release(String name) {
 		log.info("releasing service {}", name);
 		Runtime rt = getInstance();
-		if (!registry.containsKey(name)) {
+		ServiceInterface sw = unindex(name);
+		if (sw == null) {
 			rt.error("release could not find %s", name);
 			return false;
 		}
-		ServiceInterface sw = registry.remove(name);
 		if (sw.isLocal()) {
 			sw.stopService();
 		}
@@ -1509,7 +1547,10 @@ public class Runtime extends Service implements MessageListener, RepoInstallList
 		environments.clear();
 
 		log.info("clearing registry");
-		registry.clear();
+		synchronized (Runtime.class) {
+			registry.clear();
+			registryById = new ServiceInterface[64];
+		}
 
 		// exit () ?
 	}
@@ -38,7 +38,9 @@ import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
 import org.myrobotlab.logging.LoggingFactory;
 import org.myrobotlab.service.data.Pin;
+import org.myrobotlab.service.data.PinWindow;
 import org.myrobotlab.service.data.Trigger;
+import org.myrobotlab.service.interfaces.PinWindowListener;
 import org.slf4j.Logger;
 
 /**
@@ -48,7 +50,7 @@ import org.slf4j.Logger;
  * would be triggered if a sensor goes above or below some threshold.
  *
  */
-public class SensorMonitor extends Service {
+public class SensorMonitor extends Service implements PinWindowListener {
 
   private static final long serialVersionUID = 1L;
 
@@ -182,13 +184,30 @@ public class SensorMonitor extends Service {
    * @param pinData
    */
   public void sensorInput(Pin pinData) {
-    String key = makeKey(pinData);
+    sensorInput(pinData, pinData.value);
+  }
 
-    if (triggers.containsKey(key)) {
-      Trigger trigger = triggers.get(key);
+  /**
+   * aggregated samples from a controller's SampleBuffer - one trigger check
+   * and trace point per pin and window instead of per sample, a trigger fires
+   * on the peak of the window
+   */
+  @Override
+  public void onPinWindows(PinWindow[] windows) {
+    for (int i = 0; i < windows.length; ++i) {
+      PinWindow window = windows[i];
+      sensorInput(new Pin(window.address, 0, window.last, window.source), window.max);
+    }
+  }
+
+  void sensorInput(Pin pinData, int peak) {
+    String key = makeKey(pinData);
 
-      if (trigger.threshold < pinData.value) {
-        trigger.pinData = pinData;
+    Trigger trigger = triggers.get(key);
+    if (trigger != null) {
+      if (trigger.threshold < peak) {
+        // the sample which crossed the threshold - not the last of the window
+        trigger.pinData = (peak == pinData.value) ? pinData : new Pin(pinData.pin, pinData.type, peak, pinData.source);
         invoke("publishPinTrigger", trigger);
         invoke("publishPinTriggerText", trigger);// FIXME - deprecate -
         // silly
@@ -196,12 +215,13 @@ public class SensorMonitor extends Service {
       }
     }
 
-    if (!lastValue.containsKey(key)) {
+    Pin last = lastValue.get(key);
+    if (last == null) {
       lastValue.put(key, pinData);
+    } else {
+      last.value = pinData.value;
     }
 
-    lastValue.get(key).value = pinData.value;
-
     invoke("publishSensorData", pinData);
 
   }
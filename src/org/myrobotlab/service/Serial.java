@@ -7,27 +7,31 @@ import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.myrobotlab.codec.serial.Codec;
 import org.myrobotlab.codec.serial.CodecOutputStream;
 import org.myrobotlab.framework.Platform;
+import org.myrobotlab.framework.QueueStats;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.ServiceType;
+import org.myrobotlab.framework.TimingWheel;
 import org.myrobotlab.io.FileIO;
 import org.myrobotlab.logging.Level;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
 import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.serial.ByteRing;
+import org.myrobotlab.serial.Capture;
 import org.myrobotlab.serial.Port;
 import org.myrobotlab.serial.PortQueue;
+import org.myrobotlab.serial.PortReplay;
 import org.myrobotlab.serial.SerialControl;
 import org.myrobotlab.serial.PortStream;
 import org.myrobotlab.service.interfaces.QueueSource;
@@ -91,9 +95,17 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 	int BUFFER_SIZE = 1024;
 
 	/**
-	 * blocking queue for blocking rx read requests
+	 * rx bytes for blocking read requests - filled under rxLock by whichever
+	 * thread delivers rx data (listeners of the connected ports, a remote
+	 * port's onByte) and drained by the reading threads
 	 */
-	transient BlockingQueue<Integer> blockingRX = new LinkedBlockingQueue<Integer>();
+	transient volatile ByteRing blockingRX = new ByteRing(String.format("%s.rx", getName()), BUFFER_SIZE);
+
+	/**
+	 * the ring takes one producer at a time - serializes the rx threads and
+	 * guards replacing the ring
+	 */
+	final transient Object rxLock = new Object();
 
 	/**
 	 * our set of ports we have access to. This is a shared resource between ALL
@@ -157,6 +169,11 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 	 */
 	transient CodecOutputStream outTX = new CodecOutputStream("tx", this);
 
+	/**
+	 * binary timestamped rx and tx capture - see recordCapture
+	 */
+	transient volatile Capture capture = null;
+
 	/**
 	 * number of tx bytes
 	 */
@@ -195,6 +212,27 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 	 */
 	transient HashMap<String, SerialDataListener> listeners = new HashMap<String, SerialDataListener>();
 
+	/**
+	 * coalescing window of publishRXBytes in ms - received bytes are collected
+	 * and published at most once per window (or when maxRXPublishSize is
+	 * reached). 0 publishes every chunk as it is read.
+	 */
+	int rxPublishWindowMs = 10;
+
+	int maxRXPublishSize = 1024;
+
+	/**
+	 * received bytes waiting to be published - guarded by itself
+	 */
+	transient ByteArrayOutputStream rxPending = new ByteArrayOutputStream();
+
+	transient Runnable rxPublisher = new Runnable() {
+		@Override
+		public void run() {
+			publishPendingRX();
+		}
+	};
+
 	/**
 	 * conversion utility TODO - support endianess
 	 * 
@@ -410,16 +448,31 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 	}
 
 	/**
-	 * FIXME - implement connects to a FilePlayer details of tx/rx and timing
-	 * can be part os a SerialFilePlayer implementation
+	 * replay the rx side of a capture made with recordCapture in real time
 	 * 
 	 * @param name
+	 *          the capture file
 	 */
 	public boolean connectFilePlayer(String name) {
-		//
+		try {
+			connectReplay(name, 1.0);
+			return true;
+		} catch (Exception e) {
+			error(e);
+		}
 		return false;
 	}
 
+	/**
+	 * replay a capture made with recordCapture - speed 1 as recorded, N times
+	 * faster or 0 as fast as the listeners process it
+	 */
+	public Port connectReplay(String filename, double speed) throws IOException {
+		Port replay = new PortReplay(filename, filename, speed);
+		ports.put(filename, replay);
+		return connectPort(replay, null);
+	}
+
 	/**
 	 * FIXME - implement Baddass loopback null/modem cable - auto creates a new
 	 * Serial service and connects to it FIXME - no need for null/modem cable
@@ -523,8 +576,8 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 	}
 
 	public PortQueue createVirtualPort(String name) {
-		BlockingQueue<Integer> rx = new LinkedBlockingQueue<Integer>();
-		BlockingQueue<Integer> tx = new LinkedBlockingQueue<Integer>();
+		ByteRing rx = new ByteRing(String.format("%s.rx", name), PortQueue.RING_SIZE);
+		ByteRing tx = new ByteRing(String.format("%s.tx", name), PortQueue.RING_SIZE);
 		PortQueue portQueue = new PortQueue(name, rx, tx);
 		ports.put(name, portQueue);
 		return portQueue;
@@ -641,9 +694,12 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 		return null;
 	}
 
+	/**
+	 * fill level, high water mark and overruns of the rx buffer
+	 */
 	@Override
-	public BlockingQueue<?> getQueue() {
-		return blockingRX;
+	public QueueStats getQueueStats() {
+		return blockingRX.getStats();
 	}
 
 	public Codec getRXCodec() {
@@ -684,7 +740,7 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 	}
 
 	public boolean isRecording() {
-		boolean ret = (outRX != null && outRX.getOut() != null) || (outTX != null && outTX.getOut() != null);
+		boolean ret = (outRX != null && outRX.getOut() != null) || (outTX != null && outTX.getOut() != null) || capture != null;
 		return ret;
 	}
 
@@ -702,21 +758,113 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 	@Override
 	public final Integer onByte(Integer newByte) throws IOException {
 		newByte = newByte & 0xff;
-		++rxCount;
-
-		// publish the rx byte !
-		invoke("publishRX", newByte);
 
-		if (blockingRX.size() < BUFFER_SIZE) {
-			blockingRX.add(newByte);
+		// publish the rx byte ! - a reflective invoke per byte so only if
+		// someone is listening
+		if (hasSubscribers("publishRX")) {
+			invoke("publishRX", newByte);
 		}
 
 		// FILE I/O
-		outRX.write(newByte);
+		if (outRX.isRecording()) {
+			outRX.write(newByte);
+		}
 
+		Capture c = capture;
+		if (c != null) {
+			c.write(Capture.RX, newByte);
+		}
+		synchronized (rxLock) {
+			++rxCount;
+			blockingRX.offer(newByte);
+		}
+		queueRX(newByte);
 		return newByte;
 	}
 
+	/**
+	 * a chunk from the port - publishRX is only invoked per byte if something
+	 * subscribed to it, subscribers of publishRXBytes get the chunks coalesced
+	 */
+	@Override
+	public void onBytes(byte[] data, int offset, int length) throws IOException {
+		int end = offset + length;
+		if (hasSubscribers("publishRX")) {
+			for (int i = offset; i < end; ++i) {
+				invoke("publishRX", data[i] & 0xff);
+			}
+		}
+		if (outRX.isRecording()) {
+			for (int i = offset; i < end; ++i) {
+				outRX.write(data[i] & 0xff);
+			}
+		}
+		Capture c = capture;
+		if (c != null) {
+			c.write(Capture.RX, data, offset, length);
+		}
+		// what does not fit is overrun and lost
+		synchronized (rxLock) {
+			rxCount += length;
+			blockingRX.offer(data, offset, length);
+		}
+		queueRX(data, offset, length);
+	}
+
+	void queueRX(int newByte) {
+		if (!hasSubscribers("publishRXBytes")) {
+			return;
+		}
+		boolean first;
+		int size;
+		synchronized (rxPending) {
+			first = rxPending.size() == 0;
+			rxPending.write(newByte);
+			size = rxPending.size();
+		}
+		pendingRX(first, size);
+	}
+
+	void queueRX(byte[] data, int offset, int length) {
+		if (!hasSubscribers("publishRXBytes")) {
+			return;
+		}
+		boolean first;
+		int size;
+		synchronized (rxPending) {
+			first = rxPending.size() == 0;
+			rxPending.write(data, offset, length);
+			size = rxPending.size();
+		}
+		pendingRX(first, size);
+	}
+
+	/**
+	 * publish now or once the coalescing window is over
+	 */
+	void pendingRX(boolean first, int size) {
+		if (rxPublishWindowMs <= 0 || size >= maxRXPublishSize) {
+			publishPendingRX();
+		} else if (first) {
+			TimingWheel.getInstance().schedule(String.format("%s.publishRXBytes", getName()), rxPublisher, rxPublishWindowMs);
+		}
+	}
+
+	void publishPendingRX() {
+		// the port and timer threads both publish - keep the chunks in order
+		synchronized (rxPublisher) {
+			byte[] bytes;
+			synchronized (rxPending) {
+				if (rxPending.size() == 0) {
+					return;
+				}
+				bytes = rxPending.toByteArray();
+				rxPending.reset();
+			}
+			invoke("publishRXBytes", (Object) bytes);
+		}
+	}
+
 	@Override
 	public String onConnect(String portName) {
 		info("%s connected to %s", getName(), portName);
@@ -770,6 +918,17 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 		return data;
 	}
 
+	/**
+	 * batched RX publishing point - received bytes coalesced over
+	 * rxPublishWindowMs
+	 * 
+	 * @param data
+	 * @return
+	 */
+	public byte[] publishRXBytes(byte[] data) {
+		return data;
+	}
+
 	/**
 	 * main line TX publishing point
 	 * 
@@ -780,6 +939,16 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 		return data;
 	}
 
+	/**
+	 * frame TX publishing point - everything written in one write call
+	 * 
+	 * @param data
+	 * @return
+	 */
+	public byte[] publishTXBytes(byte[] data) {
+		return data;
+	}
+
 	/**
 	 * FIXME - make like http://pyserial.sourceforge.net/pyserial_api.html with
 	 * blocking & timeout InputStream like interface - but regrettably
@@ -796,26 +965,65 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 	 * @throws IOException
 	 */
 	public int read() throws IOException, InterruptedException {
-
-		if (timeoutMS == null) {
-			return blockingRX.take();
-		}
-
-		Integer newByte = blockingRX.poll(timeoutMS, TimeUnit.MILLISECONDS);
-		if (newByte == null) {
+		int newByte = nextByte();
+		if (newByte < 0) {
 			String error = String.format("%d ms timeout was reached - no data", timeoutMS);
 			error(error);
 			throw new IOException(error);
 		}
-
 		return newByte;
 	}
 
 	public int read(byte[] data) throws IOException, InterruptedException {
-		for (int i = 0; i < data.length; ++i) {
-			data[i] = (byte) read();
+		int count = fill(data, 0, data.length);
+		if (count < data.length) {
+			String error = String.format("%d ms timeout was reached - expecting %d bytes got %d", timeoutMS, data.length, count);
+			error(error);
+			throw new IOException(error);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the next rx byte or -1 if the timeout was reached
+	 */
+	int nextByte() throws InterruptedException {
+		while (true) {
+			ByteRing ring = blockingRX;
+			int newByte;
+			if (timeoutMS == null) {
+				newByte = ring.take();
+			} else {
+				newByte = ring.poll(timeoutMS, TimeUnit.MILLISECONDS);
+			}
+			// a closed ring was replaced by setBufferSize - wait on the new one
+			if (newByte >= 0 || !ring.isClosed()) {
+				return newByte;
+			}
+		}
+	}
+
+	/**
+	 * copies what is buffered in bulk and only waits when the buffer is empty
+	 * 
+	 * @return number of bytes read - less than length if the timeout was
+	 *         reached
+	 */
+	int fill(byte[] data, int offset, int length) throws InterruptedException {
+		int count = 0;
+		while (count < length) {
+			int n = blockingRX.poll(data, offset + count, length - count);
+			if (n == 0) {
+				int newByte = nextByte();
+				if (newByte < 0) {
+					break;
+				}
+				data[offset + count] = (byte) newByte;
+				n = 1;
+			}
+			count += n;
 		}
-		return data.length;
+		return count;
 	}
 
 	/**
@@ -828,40 +1036,24 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 	 * @throws InterruptedException
 	 */
 	public byte[] read(int length) throws InterruptedException {
-		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		int count = 0;
-		Integer newByte = null;
-		while (count < length) {
-			if (timeoutMS == null) {
-				newByte = blockingRX.take();
-			} else {
-				newByte = blockingRX.poll(timeoutMS, TimeUnit.MILLISECONDS);
-			}
-			if (newByte == null) {
-				if (count == 0) {
-					error("got nothing!");
-					return null;
-				} else {
-					error("expecting %d bytes got %d", length, count);
-					break;
-				}
-			}
-			bytes.write(newByte.intValue() & 0xff);
-			++count;
+		byte[] bytes = new byte[length];
+		int count = fill(bytes, 0, length);
+		if (count == length) {
+			return bytes;
 		}
-		return bytes.toByteArray();
+		if (count == 0) {
+			error("got nothing!");
+			return null;
+		}
+		error("expecting %d bytes got %d", length, count);
+		return Arrays.copyOf(bytes, count);
 	}
 
 	public int read(int[] data) throws InterruptedException {
 		int count = 0;
-		Integer newByte = null;
 		while (count < data.length) {
-			if (timeoutMS == null) {
-				newByte = blockingRX.take();
-			} else {
-				newByte = blockingRX.poll(timeoutMS, TimeUnit.MILLISECONDS);
-			}
-			if (newByte == null) {
+			int newByte = nextByte();
+			if (newByte < 0) {
 				error("expecting %d bytes got %d", data.length, count);
 				return count;
 			}
@@ -877,18 +1069,14 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 
 	public byte[] readLine(char deliminater) throws InterruptedException {
 		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-		Integer newByte = null;
-		while (newByte == null || newByte != deliminater) {
-			if (timeoutMS == null) {
-				newByte = blockingRX.take();
-			} else {
-				newByte = blockingRX.poll(timeoutMS, TimeUnit.MILLISECONDS);
-			}
-			if (newByte == null) {
+		int newByte = -1;
+		while (newByte != deliminater) {
+			newByte = nextByte();
+			if (newByte < 0) {
 				info("non blocking got nothing");
 				return bytes.toByteArray();
 			}
-			bytes.write(newByte.intValue() & 0xff);
+			bytes.write(newByte);
 		}
 		return bytes.toByteArray();
 	}
@@ -919,11 +1107,39 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 		return new String(bytes);
 	}
 
-	// FIXME remove blocking public
-	// FIXME overload with timeouts etc - remove exposed blocking
-	// FIXME - implement
-	public byte[] readToDelimiter(String delimeter) {
-		return null;
+	/**
+	 * read until the bytes of delimiter arrive - like readLine the delimiter is
+	 * included, if the timeout is reached what was read so far is returned
+	 * 
+	 * @param delimiter
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public byte[] readToDelimiter(String delimiter) throws InterruptedException {
+		byte[] end = delimiter.getBytes();
+		byte[] bytes = new byte[64];
+		int count = 0;
+		while (count < end.length || !regionMatches(bytes, count - end.length, end, end.length)) {
+			int newByte = nextByte();
+			if (newByte < 0) {
+				info("non blocking got nothing");
+				break;
+			}
+			if (count == bytes.length) {
+				bytes = Arrays.copyOf(bytes, count * 2);
+			}
+			bytes[count++] = (byte) newByte;
+		}
+		return Arrays.copyOf(bytes, count);
+	}
+
+	static boolean regionMatches(byte[] b, int offset, byte[] end, int length) {
+		for (int i = 0; i < length; ++i) {
+			if (b[offset + i] != end[i]) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	public void record() throws FileNotFoundException {
@@ -936,6 +1152,19 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 		recordRX(String.format("%s.rx.%s", filename, outRX.getCodecExt()));
 	}
 
+	/**
+	 * record rx and tx to a binary timestamped capture which connectReplay
+	 * can play back with its original timing
+	 */
+	public void recordCapture(String filename) throws IOException {
+		Capture c = capture;
+		capture = new Capture(filename);
+		if (c != null) {
+			c.close();
+		}
+		broadcastState();
+	}
+
 	public void recordRX(String filename) throws FileNotFoundException {
 		outRX.record(filename);
 	}
@@ -993,8 +1222,31 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 		txCount = 0;
 	}
 
+	/**
+	 * size of the rx buffer for blocking reads - rounded up to a power of 2,
+	 * what is buffered moves to the new buffer as far as it fits
+	 */
 	public void setBufferSize(int size) {
-		BUFFER_SIZE = size;
+		ByteRing ring = new ByteRing(String.format("%s.rx", getName()), size);
+		ByteRing old;
+		synchronized (rxLock) {
+			BUFFER_SIZE = size;
+			old = blockingRX;
+			byte[] buffered = new byte[old.size()];
+			int n = old.poll(buffered, 0, buffered.length);
+			ring.offer(buffered, 0, n);
+			blockingRX = ring;
+		}
+		// readers parked on the old ring wake up and move to the new one
+		old.close();
+	}
+
+	/**
+	 * @param ms
+	 *          coalescing window of publishRXBytes - 0 publishes every chunk
+	 */
+	public void setRXPublishWindow(int ms) {
+		rxPublishWindowMs = ms;
 	}
 
 	/**
@@ -1051,6 +1303,11 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 		try {
 			outRX.close();
 			outTX.close();
+			Capture c = capture;
+			capture = null;
+			if (c != null) {
+				c.close();
+			}
 			broadcastState();
 		} catch (Exception e) {
 			Logging.logError(e);
@@ -1071,9 +1328,38 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 
 	// write(byte[] b) IOException
 	public void write(byte[] data) throws Exception {
-		for (int i = 0; i < data.length; ++i) {
-			write(data[i] & 0xff); // recently removed - & 0xFF
+		write(ByteBuffer.wrap(data));
+	}
+
+	/**
+	 * writes the remaining bytes as one frame - each connected port gets it in
+	 * a single call and it is published once
+	 */
+	public void write(ByteBuffer data) throws Exception {
+		if (connectedPorts.size() == 0) {
+			error("can not write to a closed port!");
+		}
+
+		int position = data.position();
+		for (Port writePort : connectedPorts.values()) {
+			data.position(position);
+			writePort.write(data);
+		}
+		data.position(position);
+
+		byte[] frame;
+		int offset;
+		int length = data.remaining();
+		if (data.hasArray()) {
+			frame = data.array();
+			offset = data.arrayOffset() + position;
+		} else {
+			frame = new byte[length];
+			data.get(frame);
+			offset = 0;
 		}
+		data.position(data.limit());
+		sent(frame, offset, length);
 	}
 
 	// TODO: remove this method use write(int[] b) instead
@@ -1084,33 +1370,61 @@ public class Serial extends Service implements SerialControl, QueueSource, Seria
 			error("can not write to a closed port!");
 		}
 
-		for (String portName : connectedPorts.keySet()) {
-			Port writePort = connectedPorts.get(portName);
+		for (Port writePort : connectedPorts.values()) {
 			writePort.write(b);
 		}
 
-		// main line TX
-		invoke("publishTX", b);
-
-		++txCount;
-		outTX.write(b);
+		sent(new byte[] { (byte) b }, 0, 1);
 	}
 
 	public void write(int[] data) throws Exception {
+		if (connectedPorts.size() == 0) {
+			error("can not write to a closed port!");
+		}
+
 		// If the port is JSSC we can just write the array.
-		for (String portName : connectedPorts.keySet()) {
-			Port writePort = connectedPorts.get(portName);
+		for (Port writePort : connectedPorts.values()) {
 			// take advantage to write the array in one call.
 			writePort.write(data);
-			// still need to publishtx..
-			// TODO: make publishTX publish an int array. not one at a time.
-			for (int i = 0; i < data.length; ++i) {
+		}
+
+		byte[] frame = new byte[data.length];
+		for (int i = 0; i < data.length; ++i) {
+			frame[i] = (byte) data[i];
+		}
+		sent(frame, 0, frame.length);
+	}
+
+	/**
+	 * tx bookkeeping for a frame which has been written to the ports - the
+	 * frame is published once to publishTXBytes subscribers, publishTX is only
+	 * invoked per byte if something subscribed to it
+	 */
+	void sent(byte[] frame, int offset, int length) throws IOException {
+		txCount += length;
+
+		if (hasSubscribers("publishTX")) {
+			for (int i = offset; i < offset + length; ++i) {
 				// main line TX
-				invoke("publishTX", data[i]);
-				++txCount;
-				outTX.write(data[i]);
+				invoke("publishTX", frame[i] & 0xff);
+			}
+		}
+
+		if (hasSubscribers("publishTXBytes")) {
+			invoke("publishTXBytes", (Object) Arrays.copyOfRange(frame, offset, offset + length));
+		}
+
+		// FILE I/O
+		if (outTX.getOut() != null) {
+			for (int i = offset; i < offset + length; ++i) {
+				outTX.write(frame[i] & 0xff);
 			}
 		}
+
+		Capture c = capture;
+		if (c != null) {
+			c.write(Capture.TX, frame, offset, length);
+		}
 	}
 
 	// ============= write methods begin ====================
@@ -30,6 +30,8 @@ import java.util.List;
 
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.ServiceType;
+import org.myrobotlab.framework.TimedTask;
+import org.myrobotlab.framework.TimingWheel;
 import org.myrobotlab.logging.Level;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
@@ -69,7 +71,7 @@ public class Servo extends Service implements ServoControl {
 	 * function
 	 * 
 	 */
-	public class Sweeper extends Thread {
+	public class Sweeper implements Runnable {
 
 		/*
 		 * int min; int max; int delay; // depending on type - this is 2
@@ -77,10 +79,18 @@ public class Servo extends Service implements ServoControl {
 		 * loop count int step; boolean sweepOneWay;
 		 */
 
-		public Sweeper(String name) {
-			super(String.format("%s.sweeper", name));
+		volatile TimedTask task = null;
+
+		void end() {
+			if (task != null) {
+				task.cancel();
+			}
 		}
 
+		/**
+		 * one step of the sweep - runs every sweepDelay ms on the runtime-wide
+		 * TimingWheel until the sweep is stopped
+		 */
 		@Override
 		public void run() {
 
@@ -89,33 +99,32 @@ public class Servo extends Service implements ServoControl {
 			}
 
 			try {
-				while (isSweeping) {
-					// increment position that we should go to.
-					if (targetPos < sweepMax && sweepStep >= 0) {
-						targetPos += sweepStep;
-					} else if (targetPos > sweepMin && sweepStep < 0) {
-						targetPos += sweepStep;
-					}
+				if (!isSweeping) {
+					end();
+					return;
+				}
+				// increment position that we should go to.
+				if (targetPos < sweepMax && sweepStep >= 0) {
+					targetPos += sweepStep;
+				} else if (targetPos > sweepMin && sweepStep < 0) {
+					targetPos += sweepStep;
+				}
 
-					// switch directions or exit if we are sweeping 1 way
-					if ((targetPos <= sweepMin && sweepStep < 0) || (targetPos >= sweepMax && sweepStep > 0)) {
-						if (sweepOneWay) {
-							isSweeping = false;
-							break;
-						}
-						sweepStep = sweepStep * -1;
+				// switch directions or exit if we are sweeping 1 way
+				if ((targetPos <= sweepMin && sweepStep < 0) || (targetPos >= sweepMax && sweepStep > 0)) {
+					if (sweepOneWay) {
+						isSweeping = false;
+						end();
+						return;
 					}
-					moveTo(targetPos.intValue());
-					Thread.sleep(sweepDelay);
+					sweepStep = sweepStep * -1;
 				}
+				moveTo(targetPos.intValue());
 
 			} catch (Exception e) {
 				isSweeping = false;
-				if (e instanceof InterruptedException) {
-					info("shutting down sweeper");
-				} else {
-					logException(e);
-				}
+				end();
+				logException(e);
 			}
 		}
 
@@ -203,7 +212,7 @@ public class Servo extends Service implements ServoControl {
 	// TODO - computer implemented speed control (non-sweep)
 	boolean speedControlOnUC = false;
 
-	transient Thread sweeper = null;
+	transient TimedTask sweeper = null;
 
 	/**
 	 * feedback of both incremental position and stops. would allow blocking
@@ -527,11 +536,19 @@ public class Servo extends Service implements ServoControl {
 	@Override
 	public void stop() {
 		isSweeping = false;
-		sweeper = null;
+		stopSweeper();
 		getController().servoSweepStop(this);
 		broadcastState();
 	}
 
+	void stopSweeper() {
+		TimedTask t = sweeper;
+		if (t != null) {
+			t.cancel();
+		}
+		sweeper = null;
+	}
+
 	public void sweep() {
 		int min = mapper.getMinX().intValue();
 		int max = mapper.getMaxX().intValue();
@@ -566,8 +583,12 @@ public class Servo extends Service implements ServoControl {
 				stop();
 			}
 
-			sweeper = new Sweeper(getName());
-			sweeper.start();
+			isSweeping = true;
+			Sweeper s = new Sweeper();
+			// the sweeper needs its handle before its first step can run
+			s.task = TimingWheel.getInstance().create(String.format("%s.sweeper", getName()), s, sweepDelay, false);
+			sweeper = s.task;
+			s.task.start(sweepDelay);
 		}
 
 		isSweeping = true;
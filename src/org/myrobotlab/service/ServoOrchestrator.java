@@ -20,6 +20,8 @@ import javax.swing.event.DocumentListener;
 import org.myrobotlab.control.ServoOrchestratorGUI_middlemiddle_panel;
 import org.myrobotlab.framework.Service;
 import org.myrobotlab.framework.ServiceType;
+import org.myrobotlab.framework.TimedTask;
+import org.myrobotlab.framework.TimingWheel;
 import org.myrobotlab.logging.Level;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
@@ -33,25 +35,14 @@ import org.slf4j.Logger;
  */
 public class ServoOrchestrator extends Service {
 
-  public class ClockThread implements Runnable {
-    public Thread thread = null;
-
-    ClockThread() {
-      thread = new Thread(this, getName() + "_ticking_thread");
-      thread.start();
-    }
-
+  /**
+   * a tick of the clock - runs at a fixed rate on the runtime-wide
+   * TimingWheel
+   */
+  public class ClockTick implements Runnable {
     @Override
     public void run() {
-      try {
-        while (isClockRunning == true) {
-          play_play_3_1();
-          Thread.sleep(interval);
-        }
-      } catch (InterruptedException e) {
-        Logging.logError(e);
-        isClockRunning = false;
-      }
+      play_play_3_1();
     }
   }
 
@@ -82,7 +73,7 @@ public class ServoOrchestrator extends Service {
 
   public int interval = 1;
 
-  public transient ClockThread myClock = null;
+  public transient TimedTask myClock = null;
 
   int middleright_shownitem;
   boolean click_play = true;
@@ -505,15 +496,14 @@ public class ServoOrchestrator extends Service {
   public void startClock() {
     if (myClock == null) {
       isClockRunning = true;
-      myClock = new ClockThread();
+      myClock = TimingWheel.getInstance().scheduleAtFixedRate(String.format("%s.clock", getName()), new ClockTick(), 0, interval);
     }
   }
 
   public void stopClock() {
     if (myClock != null) {
       isClockRunning = false;
-      myClock.thread.interrupt();
-      myClock.thread = null;
+      myClock.cancel();
       myClock = null;
     }
     isClockRunning = false;
@@ -1,8 +1,8 @@
 package org.myrobotlab.service;
 
 import java.io.IOException;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.myrobotlab.framework.ServiceType;
 import org.myrobotlab.image.SerializableImage;
@@ -74,14 +74,9 @@ public class VideoStreamer extends VideoSink {
      * if (mergeSteams) { si.setSource("output"); }
      */
 
-    if (!server.videoFeeds.containsKey(si.getSource())) {
-      server.videoFeeds.put(si.getSource(), new LinkedBlockingQueue<SerializableImage>());
-    }
-
-    BlockingQueue<SerializableImage> buffer = server.videoFeeds.get(si.getSource());
-    // if its backed up over 10 frames we are dumping it
-    if (buffer.size() < 1) {
-      buffer.add(si);
+    // encoded once per frame - and only if a browser is watching the feed
+    if (server != null) {
+      server.publish(si);
     }
   }
 
@@ -90,6 +85,16 @@ public class VideoStreamer extends VideoSink {
     super.releaseService();
   }
 
+  /**
+   * frames sent & skipped, bytes and fps of each connected client
+   */
+  public List<MjpegServer.ClientStats> getClientStats() {
+    if (server == null) {
+      return new ArrayList<MjpegServer.ClientStats>();
+    }
+    return server.getClientStats();
+  }
+
   /**
    * sets port for mjpeg feed - default is 9090
    * 
@@ -15,6 +15,7 @@ import org.myrobotlab.logging.Level;
 import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
 import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.serial.ByteRing;
 import org.myrobotlab.serial.PortQueue;
 import org.myrobotlab.service.interfaces.SerialDataListener;
 import org.slf4j.Logger;
@@ -131,8 +132,8 @@ public class VirtualDevice extends Service implements SerialDataListener {
       uartPort = String.format("%s_uart", myPort);
     }
 
-    BlockingQueue<Integer> left = new LinkedBlockingQueue<Integer>();
-    BlockingQueue<Integer> right = new LinkedBlockingQueue<Integer>();
+    ByteRing left = new ByteRing(String.format("%s.left", myPort), PortQueue.RING_SIZE);
+    ByteRing right = new ByteRing(String.format("%s.right", myPort), PortQueue.RING_SIZE);
 
     /*
      * if (listener != null) { listeners.put(listener.getName(), listener); }
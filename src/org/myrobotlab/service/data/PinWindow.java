@@ -0,0 +1,34 @@
+package org.myrobotlab.service.data;
+
+import java.io.Serializable;
+
+/**
+ * aggregate of the samples of one pin over a window of time
+ */
+public class PinWindow implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public String source;
+	public int address;
+	public int count;
+	public int min;
+	public int max;
+	public double avg;
+	public int last;
+	public long startTs;
+	public long endTs;
+
+	public PinWindow() {
+	}
+
+	public PinWindow(String source, int address) {
+		this.source = source;
+		this.address = address;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s address=%d count=%d min=%d max=%d avg=%.1f last=%d", source, address, count, min, max, avg, last);
+	}
+
+}
@@ -28,5 +28,8 @@ import org.myrobotlab.service.data.SensorData;
 
 public interface I2CBusController extends DeviceController {
 
-	public void i2cReturnData(SensorData data);
+	/**
+	 * data read from a device on the bus busAddress
+	 */
+	public void i2cReturnData(int busAddress, SensorData data);
 }
@@ -25,6 +25,8 @@
 
 package org.myrobotlab.service.interfaces;
 
+import org.myrobotlab.i2c.I2CBurst;
+
 public interface I2CControl extends DeviceControl {
 
 	public boolean setController(String controllerName, String deviceBus, String deviceAddress);
@@ -35,5 +37,12 @@ public interface I2CControl extends DeviceControl {
 	
 	public void setDeviceBus(String deviceBus);
 	public void setDeviceAddress(String deviceAddress);
+
+	/**
+	 * data of a scheduled burst read - this read's bytes are at read.offset in
+	 * the packed frame, which is reused for the next sample
+	 */
+	default void onI2cData(I2CBurst.Read read, byte[] frame) {
+	}
 	
 }
@@ -1,6 +1,10 @@
 package org.myrobotlab.service.interfaces;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import org.myrobotlab.i2c.I2CBurst;
 import org.myrobotlab.service.interfaces.I2CControl;
 
 /*
@@ -85,5 +89,49 @@ public interface I2CController extends DeviceController {
 	 *           thrown in case byte cannot be read from the i2c device or i2c bus
 	 */
 	int i2cWriteRead(I2CControl control, int busAddress, int deviceAddress, byte[] writeBuffer, int writeSize, byte[] readBuffer, int readSize);
+
+	/**
+	 * Non blocking i2cRead - several reads can be outstanding at once. The
+	 * default completes on the calling thread with the blocking i2cRead.
+	 *
+	 * @return completed with the bytes read, exceptionally if nothing came back
+	 */
+	default CompletableFuture<byte[]> i2cReadAsync(I2CControl control, int busAddress, int deviceAddress, int size) {
+		byte[] buffer = new byte[size];
+		return completed(i2cRead(control, busAddress, deviceAddress, buffer, size), buffer);
+	}
+
+	/**
+	 * Non blocking i2cWriteRead - see i2cReadAsync
+	 */
+	default CompletableFuture<byte[]> i2cWriteReadAsync(I2CControl control, int busAddress, int deviceAddress, byte[] writeBuffer, int writeSize, int readSize) {
+		byte[] buffer = new byte[readSize];
+		return completed(i2cWriteRead(control, busAddress, deviceAddress, writeBuffer, writeSize, buffer, readSize), buffer);
+	}
+
+	/**
+	 * Start sampling the register block reads of burst every periodMs. The
+	 * default issues them pipelined through i2cWriteReadAsync - a controller
+	 * able to run the reads on its own side can override this.
+	 */
+	default void i2cBurstStart(I2CBurst burst, long periodMs) {
+		burst.start(this, periodMs);
+	}
+
+	default void i2cBurstStop(I2CBurst burst) {
+		burst.stop();
+	}
+
+	static CompletableFuture<byte[]> completed(int read, byte[] buffer) {
+		CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+		if (read < 0) {
+			future.completeExceptionally(new IOException("i2c read failed"));
+		} else if (read < buffer.length) {
+			future.complete(Arrays.copyOf(buffer, read));
+		} else {
+			future.complete(buffer);
+		}
+		return future;
+	}
   
 }
\ No newline at end of file
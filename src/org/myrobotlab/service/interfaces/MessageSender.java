@@ -1,5 +1,7 @@
 package org.myrobotlab.service.interfaces;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface MessageSender {
 
   public void send(String name, String method);
@@ -12,4 +14,8 @@ public interface MessageSender {
 
   public Object sendBlocking(String name, Integer timeout, String method, Object... data);
 
+  public CompletableFuture<Object> sendAsync(String name, String method, Object... data);
+
+  public CompletableFuture<Object> sendAsync(String name, Integer timeout, String method, Object... data);
+
 }
@@ -0,0 +1,12 @@
+package org.myrobotlab.service.interfaces;
+
+import org.myrobotlab.service.data.PinWindow;
+
+public interface PinWindowListener extends Listener {
+
+	/**
+	 * aggregated samples of every subscribed pin which had data since the last
+	 * call
+	 */
+	public void onPinWindows(PinWindow[] windows);
+}
@@ -1,9 +1,9 @@
 package org.myrobotlab.service.interfaces;
 
-import java.util.concurrent.BlockingQueue;
+import org.myrobotlab.framework.QueueStats;
 
 public interface QueueSource {
   String getName();
 
-  BlockingQueue<?> getQueue();
+  QueueStats getQueueStats();
 }
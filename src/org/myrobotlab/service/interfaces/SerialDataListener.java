@@ -32,6 +32,18 @@ public interface SerialDataListener extends NameProvider, QueueReporter {
   // FIXME - Integer object because no method cache
   public Integer onByte(Integer b) throws IOException;
 
+  /**
+   * a chunk of bytes read from the port - the port reuses the array after the
+   * call returns, so copy what needs to be kept. The default hands the bytes
+   * one at a time to onByte - listeners which can consume a chunk should
+   * override it.
+   */
+  default void onBytes(byte[] data, int offset, int length) throws IOException {
+    for (int i = offset; i < offset + length; ++i) {
+      onByte(data[i] & 0xff);
+    }
+  }
+
   // FIXME - add isRemote() <-- to determine how to send (abstract code sends
   // remotely?
   // FIXME - add invoke("onByte") <-- need invoke to force remote publish
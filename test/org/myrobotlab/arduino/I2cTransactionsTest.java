@@ -0,0 +1,75 @@
+package org.myrobotlab.arduino;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+public class I2cTransactionsTest {
+
+  static void assertFails(I2cTransactions.Request r, Class<?> cause) throws Exception {
+    try {
+      r.future.get(2, TimeUnit.SECONDS);
+      assertTrue("should have failed", false);
+    } catch (ExecutionException e) {
+      assertTrue(cause.isInstance(e.getCause()));
+    }
+  }
+
+  @Test
+  public void outstandingReads() throws Exception {
+    I2cTransactions transactions = new I2cTransactions("test");
+    I2cTransactions.Request accel = transactions.add(1, 0x68, 6);
+    I2cTransactions.Request adc = transactions.add(1, 0x48, 2);
+    I2cTransactions.Request gyro = transactions.add(2, 0x68, 6);
+    I2cTransactions.Request compass = transactions.add(1, 0x1e, 6);
+    assertEquals(4, transactions.getPending());
+    assertEquals(accel.id + 1, adc.id);
+
+    assertTrue(transactions.complete(1, new int[] { 1, 2, 3, 4, 5, 200 }, 6));
+    assertArrayEquals(new byte[] { 1, 2, 3, 4, 5, (byte) 200 }, accel.future.get(0, TimeUnit.MILLISECONDS));
+
+    // a reply from bus 2 never completes a request of bus 1 - or fails one
+    assertTrue(transactions.complete(2, new int[] { 9, 9, 9, 9, 9, 9 }, 6));
+    assertEquals(9, gyro.future.get(0, TimeUnit.MILLISECONDS)[0]);
+    assertFalse(adc.future.isDone());
+    assertFalse(compass.future.isDone());
+
+    // mismatched replies are rejected and fail nothing - no bus 2 request
+    // left, no 3 byte request on bus 1, an unknown bus
+    assertFalse(transactions.complete(2, new int[] { 1, 2, 3, 4, 5, 6 }, 6));
+    assertFalse(transactions.complete(1, new int[] { 1, 2, 3 }, 3));
+    assertFalse(transactions.complete(7, new int[] { 1, 2 }, 2));
+    assertFalse(adc.future.isDone());
+    assertFalse(compass.future.isDone());
+    assertEquals(2, transactions.getPending());
+
+    // the adc reply was lost - the next 6 byte reply on bus 1 belongs to the
+    // compass
+    assertTrue(transactions.complete(1, new int[] { 6, 5, 4, 3, 2, 1 }, 6));
+    assertFails(adc, IOException.class);
+    assertEquals(6, compass.future.get(0, TimeUnit.MILLISECONDS)[0]);
+    assertEquals(0, transactions.getPending());
+
+    // nothing outstanding
+    assertFalse(transactions.complete(1, new int[] { 1 }, 1));
+    assertTrue(transactions.toString().contains("unmatched 4"));
+  }
+
+  @Test
+  public void timeout() throws Exception {
+    I2cTransactions transactions = new I2cTransactions("test");
+    transactions.setTimeout(50);
+    I2cTransactions.Request r = transactions.add(1, 0x68, 14);
+    assertFails(r, TimeoutException.class);
+    assertEquals(0, transactions.getPending());
+  }
+
+}
@@ -0,0 +1,58 @@
+package org.myrobotlab.arduino;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.myrobotlab.codec.serial.ArduinoMsgCodec;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+public class MrlCommDecoderTest {
+
+  public final static Logger log = LoggerFactory.getLogger(MrlCommDecoderTest.class);
+
+  static void frame(ByteArrayOutputStream out, int function, int... data) {
+    out.write(ArduinoMsgCodec.MAGIC_NUMBER);
+    out.write(1 + data.length);
+    out.write(function);
+    for (int i = 0; i < data.length; ++i) {
+      out.write(data[i]);
+    }
+  }
+
+  @Test
+  public void chunksAndResync() throws Exception {
+    final List<int[]> received = new ArrayList<int[]>();
+    MrlCommDecoder decoder = new MrlCommDecoder("test");
+    decoder.setHandler(ArduinoMsgCodec.PUBLISH_SENSOR_DATA, new MrlCommDecoder.Handler() {
+      @Override
+      public void onMsg(int[] msg, int size) {
+        received.add(Arrays.copyOf(msg, size));
+      }
+    });
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    frame(out, ArduinoMsgCodec.PUBLISH_SENSOR_DATA, 1, 2, 10, 200);
+    out.write(7); // noise
+    frame(out, ArduinoMsgCodec.PUBLISH_SENSOR_DATA, 2, 1, 5);
+    byte[] stream = out.toByteArray();
+
+    // one byte, then the rest split in the middle of a frame
+    decoder.decode(stream[0] & 0xff);
+    decoder.decode(stream, 1, 4);
+    decoder.decode(stream, 5, stream.length - 5);
+
+    assertEquals(2, received.size());
+    // data bytes are signed like the Arduino service always had them
+    assertArrayEquals(new int[] { ArduinoMsgCodec.PUBLISH_SENSOR_DATA, 1, 2, 10, (byte) 200 }, received.get(0));
+    assertArrayEquals(new int[] { ArduinoMsgCodec.PUBLISH_SENSOR_DATA, 2, 1, 5 }, received.get(1));
+    assertEquals(1, decoder.rxErrors);
+  }
+
+}
@@ -0,0 +1,189 @@
+package org.myrobotlab.arduino;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+import org.myrobotlab.codec.serial.ArduinoMsgCodec;
+
+public class SendWindowTest {
+
+  static class Recorder implements SendWindow.Transport {
+    List<int[]> frames = new ArrayList<int[]>();
+
+    @Override
+    public synchronized void write(int[] frame) {
+      frames.add(frame);
+    }
+
+    synchronized int size() {
+      return frames.size();
+    }
+  }
+
+  static int[] frame(int function, int... params) {
+    int[] frame = new int[3 + params.length];
+    frame[0] = ArduinoMsgCodec.MAGIC_NUMBER;
+    frame[1] = 1 + params.length;
+    frame[2] = function;
+    System.arraycopy(params, 0, frame, 3, params.length);
+    return frame;
+  }
+
+  @Test
+  public void windowLimitsBytesInFlight() throws Exception {
+    Recorder recorder = new Recorder();
+    final SendWindow window = new SendWindow("test", recorder);
+    window.setRxBufferSize(20);
+
+    // 5 byte servo writes - 4 fit in the rx buffer
+    List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+    for (int i = 0; i < 4; ++i) {
+      futures.add(window.send(ArduinoMsgCodec.SERVO_WRITE, frame(ArduinoMsgCodec.SERVO_WRITE, 1, i)));
+    }
+    assertEquals(4, window.getInFlight());
+
+    Thread sender = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          window.send(ArduinoMsgCodec.SERVO_WRITE, frame(ArduinoMsgCodec.SERVO_WRITE, 1, 4));
+        } catch (InterruptedException e) {
+        }
+      }
+    });
+    sender.start();
+    Thread.sleep(50);
+    // blocked until an ack frees space
+    assertEquals(4, recorder.size());
+
+    window.ack(ArduinoMsgCodec.SERVO_WRITE);
+    sender.join(1000);
+    assertEquals(5, recorder.size());
+    assertEquals(ArduinoMsgCodec.SERVO_WRITE, (int) futures.get(0).get(0, TimeUnit.MILLISECONDS));
+    assertFalse(futures.get(1).isDone());
+    window.clear();
+  }
+
+  @Test
+  public void skippedMessageIsNotResent() throws Exception {
+    Recorder recorder = new Recorder();
+    SendWindow window = new SendWindow("test", recorder);
+
+    CompletableFuture<Integer> lost = window.send(ArduinoMsgCodec.DIGITAL_WRITE, frame(ArduinoMsgCodec.DIGITAL_WRITE, 13, 1));
+    CompletableFuture<Integer> next = window.send(ArduinoMsgCodec.SERVO_WRITE, frame(ArduinoMsgCodec.SERVO_WRITE, 1, 90));
+
+    // the board dropped the digital write (or its ack) and acked the servo
+    // write - sending it again would run it after the servo write, or twice
+    window.ack(ArduinoMsgCodec.SERVO_WRITE);
+    assertTrue(next.isDone());
+    assertTrue(lost.isCompletedExceptionally());
+    assertEquals(2, recorder.size());
+    assertEquals(0, window.getInFlight());
+  }
+
+  @Test
+  public void goBackN() throws Exception {
+    Recorder recorder = new Recorder();
+    SendWindow window = new SendWindow("test", recorder);
+    window.setAckTimeout(50);
+
+    List<CompletableFuture<Integer>> futures = new ArrayList<CompletableFuture<Integer>>();
+    futures.add(window.send(ArduinoMsgCodec.DIGITAL_WRITE, frame(ArduinoMsgCodec.DIGITAL_WRITE, 13, 1)));
+    futures.add(window.send(ArduinoMsgCodec.SERVO_WRITE, frame(ArduinoMsgCodec.SERVO_WRITE, 1, 90)));
+    futures.add(window.send(ArduinoMsgCodec.DIGITAL_WRITE, frame(ArduinoMsgCodec.DIGITAL_WRITE, 13, 0)));
+
+    // the board lost the first frame and everything after it - no acks
+    long start = System.currentTimeMillis();
+    while (recorder.size() < 6 && System.currentTimeMillis() - start < 2000) {
+      Thread.sleep(5);
+    }
+    // all of it again in the original order
+    assertEquals(6, recorder.size());
+    for (int i = 0; i < 3; ++i) {
+      assertArrayEquals(recorder.frames.get(i), recorder.frames.get(i + 3));
+    }
+
+    window.ack(ArduinoMsgCodec.DIGITAL_WRITE);
+    window.ack(ArduinoMsgCodec.SERVO_WRITE);
+    window.ack(ArduinoMsgCodec.DIGITAL_WRITE);
+    for (int i = 0; i < 3; ++i) {
+      assertFalse(futures.get(i).isCompletedExceptionally());
+      assertTrue(futures.get(i).isDone());
+    }
+    assertEquals(0, window.getInFlight());
+    assertTrue(window.toString().contains("retries 3"));
+  }
+
+  /**
+   * the serial reader delivering acks must not wait for a slow write
+   */
+  @Test
+  public void ackDoesNotWaitForWrite() throws Exception {
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final SendWindow window = new SendWindow("test", new SendWindow.Transport() {
+      @Override
+      public void write(int[] frame) throws Exception {
+        if (frame[2] == ArduinoMsgCodec.SERVO_WRITE) {
+          writing.countDown();
+          release.await();
+        }
+      }
+    });
+    CompletableFuture<Integer> first = window.send(ArduinoMsgCodec.DIGITAL_WRITE, frame(ArduinoMsgCodec.DIGITAL_WRITE, 13, 1));
+    Thread sender = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          window.send(ArduinoMsgCodec.SERVO_WRITE, frame(ArduinoMsgCodec.SERVO_WRITE, 1, 90));
+        } catch (InterruptedException e) {
+        }
+      }
+    });
+    sender.start();
+    assertTrue(writing.await(1, TimeUnit.SECONDS));
+
+    Thread acker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        window.ack(ArduinoMsgCodec.DIGITAL_WRITE);
+      }
+    });
+    acker.start();
+    acker.join(1000);
+    assertFalse(acker.isAlive());
+    assertTrue(first.isDone());
+
+    release.countDown();
+    sender.join(1000);
+    assertEquals(1, window.getInFlight());
+    window.clear();
+  }
+
+  @Test
+  public void timeout() throws Exception {
+    Recorder recorder = new Recorder();
+    SendWindow window = new SendWindow("test", recorder);
+    window.setAckTimeout(50);
+    CompletableFuture<Integer> future = window.send(ArduinoMsgCodec.GET_VERSION, frame(ArduinoMsgCodec.GET_VERSION));
+    try {
+      future.get(2, TimeUnit.SECONDS);
+      assertTrue("should have timed out", false);
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof TimeoutException);
+    }
+    assertEquals(0, window.getInFlight());
+  }
+
+}
@@ -0,0 +1,99 @@
+package org.myrobotlab.arduino;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.myrobotlab.service.interfaces.ServoControl;
+
+public class ServoSchedulerTest {
+
+  static ServoControl servo(final String name) {
+    return (ServoControl) Proxy.newProxyInstance(ServoControl.class.getClassLoader(), new Class<?>[] { ServoControl.class }, new InvocationHandler() {
+      @Override
+      public Object invoke(Object proxy, Method method, Object[] args) {
+        return name;
+      }
+    });
+  }
+
+  @Test
+  public void lastWriterWins() throws Exception {
+    final List<String> sent = new ArrayList<String>();
+    ServoScheduler scheduler = new ServoScheduler("test", new ServoScheduler.Writer() {
+      @Override
+      public void write(ServoControl servo, int output) {
+        synchronized (sent) {
+          sent.add(servo.getName() + ":" + output);
+          sent.notifyAll();
+        }
+      }
+    });
+    ServoControl neck = servo("neck");
+    ServoControl jaw = servo("jaw");
+    // 100 ms control period starting now
+    scheduler.setRate(10);
+    scheduler.flush();
+
+    for (int i = 0; i <= 90; ++i) {
+      scheduler.write(neck, i);
+      if (i % 10 == 0) {
+        scheduler.write(jaw, i);
+      }
+    }
+    synchronized (sent) {
+      long deadline = System.currentTimeMillis() + 2000;
+      while (sent.size() < 2 && System.currentTimeMillis() < deadline) {
+        sent.wait(100);
+      }
+    }
+    assertEquals("neck:90", sent.get(0));
+    assertEquals("jaw:90", sent.get(1));
+    assertEquals(2, sent.size());
+    assertEquals(101 - 2, scheduler.getCoalesced());
+
+    // write through
+    scheduler.setRate(0);
+    scheduler.write(jaw, 10);
+    assertEquals("jaw:10", sent.get(2));
+    assertTrue(scheduler.toString().contains("written 3"));
+  }
+
+  @Test
+  public void pendingWriteGoesFirst() throws Exception {
+    final List<String> sent = new ArrayList<String>();
+    ServoScheduler scheduler = new ServoScheduler("test", new ServoScheduler.Writer() {
+      @Override
+      public void write(ServoControl servo, int output) {
+        synchronized (sent) {
+          sent.add(servo.getName() + ":" + output);
+        }
+      }
+    });
+    ServoControl neck = servo("neck");
+    ServoControl jaw = servo("jaw");
+    scheduler.setRate(1);
+    scheduler.flush();
+
+    scheduler.write(neck, 30);
+    scheduler.write(jaw, 40);
+    // e.g. a detach of the neck - its position is written before
+    scheduler.flush(neck);
+    synchronized (sent) {
+      sent.add("neck:detach");
+    }
+    scheduler.flush();
+    assertEquals("neck:30", sent.get(0));
+    assertEquals("neck:detach", sent.get(1));
+    assertEquals("jaw:40", sent.get(2));
+    assertEquals(3, sent.size());
+    scheduler.clear();
+  }
+
+}
@@ -0,0 +1,188 @@
+package org.myrobotlab.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.myrobotlab.framework.Message;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+public class CodecBinaryTest {
+
+  public final static Logger log = LoggerFactory.getLogger(CodecBinaryTest.class);
+
+  Message createMessage(Object... data) {
+    Message msg = new Message();
+    msg.name = "arduino";
+    msg.sender = "python";
+    msg.sendingMethod = "publishPin";
+    msg.method = "onPin";
+    msg.data = data;
+    msg.addHistory("python");
+    return msg;
+  }
+
+  @Test
+  public void roundTrip() throws Exception {
+    ArrayList<String> list = new ArrayList<String>();
+    list.add("serialized");
+    Message msg = createMessage(7, -3L, 1.5, 2.5f, true, null, "hello", new byte[] { 1, 2, 3 }, new int[] { -1, 300 }, new double[] { 0.5 },
+        new Object[] { 1, "two" }, (byte) -2, (short) 500, list);
+    msg.status = Message.BLOCKING;
+
+    CodecBinary tx = new CodecBinary();
+    CodecBinary rx = new CodecBinary();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    tx.writeMessage(bos, msg);
+    Message ret = rx.readMessage(new ByteArrayInputStream(bos.toByteArray()));
+
+    assertEquals(msg.msgId, ret.msgId);
+    assertEquals("arduino", ret.name);
+    assertEquals("python", ret.sender);
+    assertEquals("publishPin", ret.sendingMethod);
+    assertEquals("onPin", ret.method);
+    assertEquals(Message.BLOCKING, ret.status);
+    assertNull(ret.msgType);
+    assertTrue(ret.hasVisited("python"));
+    assertEquals(7, ret.data[0]);
+    assertEquals(-3L, ret.data[1]);
+    assertEquals(1.5, ret.data[2]);
+    assertEquals(2.5f, ret.data[3]);
+    assertEquals(true, ret.data[4]);
+    assertNull(ret.data[5]);
+    assertEquals("hello", ret.data[6]);
+    assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) ret.data[7]);
+    assertArrayEquals(new int[] { -1, 300 }, (int[]) ret.data[8]);
+    assertEquals(0.5, ((double[]) ret.data[9])[0], 0);
+    assertArrayEquals(new Object[] { 1, "two" }, (Object[]) ret.data[10]);
+    assertEquals((byte) -2, ret.data[11]);
+    assertEquals((short) 500, ret.data[12]);
+    assertEquals(list, ret.data[13]);
+  }
+
+  @Test
+  public void dictionaryShrinksRepeatedMessages() throws Exception {
+    CodecBinary tx = new CodecBinary();
+    CodecBinary rx = new CodecBinary();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+    tx.writeMessage(bos, createMessage(1));
+    int first = bos.size();
+    tx.writeMessage(bos, createMessage(2));
+    int second = bos.size() - first;
+    assertTrue(second < first);
+
+    ByteArrayInputStream bis = new ByteArrayInputStream(bos.toByteArray());
+    assertEquals(1, rx.readMessage(bis).data[0]);
+    Message msg = rx.readMessage(bis);
+    assertEquals("arduino", msg.name);
+    assertEquals(2, msg.data[0]);
+
+    // compared to java serialization
+    ByteArrayOutputStream java = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(java);
+    oos.writeObject(createMessage(2));
+    oos.flush();
+    log.info(String.format("binary %d then %d bytes - java serialization %d bytes", first, second, java.size()));
+    assertTrue(first < java.size());
+    assertEquals(bos.size() / 2.0, tx.getTxBytesPerMessage(), 0.001);
+  }
+
+  @Test
+  public void withoutDictionary() throws Exception {
+    CodecBinary tx = new CodecBinary(false);
+    CodecBinary rx = new CodecBinary(false);
+    byte[] first = tx.encode(createMessage(1));
+    byte[] second = tx.encode(createMessage(2));
+    assertEquals(first.length, second.length);
+    // each datagram decodes on its own
+    assertEquals(2, rx.decode(second, 0, second.length).data[0]);
+    assertEquals(1, rx.decode(first, 0, first.length).data[0]);
+  }
+
+  /**
+   * a peer which predates the binary codec - one java serialization stream,
+   * reset after every message
+   */
+  @Test
+  public void javaSerializationFallback() throws Exception {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bos);
+    for (int i = 0; i < 3; ++i) {
+      oos.writeObject(createMessage(i, "payload"));
+      oos.flush();
+      oos.reset();
+    }
+    byte[] stream = bos.toByteArray();
+
+    ByteBuffer buf = ByteBuffer.allocate(stream.length);
+    CodecSerialized rx = new CodecSerialized();
+    ArrayList<Message> received = new ArrayList<Message>();
+    int type = CodecBinary.STREAM_UNKNOWN;
+    // arrives a few bytes at a time
+    for (int i = 0; i < stream.length; i += 3) {
+      buf.put(stream, i, Math.min(3, stream.length - i));
+      buf.flip();
+      if (type == CodecBinary.STREAM_UNKNOWN) {
+        type = CodecBinary.detectHeader(buf);
+        if (type == CodecBinary.STREAM_UNKNOWN) {
+          buf.compact();
+          continue;
+        }
+        assertEquals(CodecBinary.STREAM_JAVA, type);
+      }
+      Message msg;
+      while ((msg = rx.decodeFrame(buf)) != null) {
+        received.add(msg);
+      }
+      buf.compact();
+    }
+    assertEquals(3, received.size());
+    for (int i = 0; i < 3; ++i) {
+      assertEquals(i, received.get(i).data[0]);
+      assertEquals("arduino", received.get(i).name);
+    }
+
+    // and the other way
+    CodecSerialized tx = new CodecSerialized();
+    ByteBuffer header = tx.encodeHeader();
+    assertEquals(CodecBinary.STREAM_JAVA, CodecBinary.detectHeader(header));
+    ByteBuffer frame = tx.encodeFrame(createMessage(5));
+    assertEquals(5, new CodecSerialized().decodeFrame(frame).data[0]);
+  }
+
+  @Test
+  public void serializedClassesAreFiltered() throws Exception {
+    assertTrue(SafeObjectInputStream.isAllowed("org.myrobotlab.framework.Message"));
+    assertTrue(SafeObjectInputStream.isAllowed("[Ljava.lang.Object;"));
+    assertTrue(SafeObjectInputStream.isAllowed("[I"));
+    assertTrue(SafeObjectInputStream.isAllowed("java.lang.RuntimeException"));
+    assertFalse(SafeObjectInputStream.isAllowed("java.lang.Runtime"));
+    assertFalse(SafeObjectInputStream.isAllowed("java.lang.reflect.Proxy"));
+    assertFalse(SafeObjectInputStream.isAllowed("javax.management.BadAttributeValueExpException"));
+
+    // a payload class which is not on the list
+    CodecBinary tx = new CodecBinary();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    tx.writeMessage(bos, createMessage(new java.text.SimpleDateFormat("yyyy")));
+    try {
+      new CodecBinary().readMessage(new ByteArrayInputStream(bos.toByteArray()));
+      fail("decoded a class which is not allowed");
+    } catch (InvalidClassException e) {
+      log.info(e.getMessage());
+    }
+  }
+
+}
@@ -0,0 +1,75 @@
+package org.myrobotlab.framework;
+
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+import org.myrobotlab.framework.DispatchTableTest.Target;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * timing only - run with the benchmark target, not part of the unit tests
+ */
+public class DispatchTableBenchmark {
+
+  public final static Logger log = LoggerFactory.getLogger(DispatchTableBenchmark.class);
+
+  /**
+   * compares the previous reflective dispatch path (building a Class[] of
+   * parameter types + Class.getMethod + Method.invoke) with the dispatch table
+   */
+  @Test
+  public void dispatch() throws Exception {
+    Target target = new Target();
+    Object[] params = new Object[] { 3, 4 };
+    int iterations = 1000000;
+
+    // warm up both paths
+    reflective(target, "add", params, iterations);
+    dispatched(target, "add", params, iterations);
+
+    long start = System.nanoTime();
+    reflective(target, "add", params, iterations);
+    long reflective = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    dispatched(target, "add", params, iterations);
+    long dispatched = System.nanoTime() - start;
+
+    log.info(String.format("%d invokes - reflective %d ms - dispatch table %d ms", iterations, reflective / 1000000, dispatched / 1000000));
+  }
+
+  static long reflective(Object obj, String method, Object[] params, int iterations) throws Exception {
+    long sum = 0;
+    for (int i = 0; i < iterations; ++i) {
+      Class<?>[] paramTypes = new Class[params.length];
+      for (int j = 0; j < params.length; ++j) {
+        paramTypes[j] = params[j].getClass();
+      }
+      Method m = null;
+      try {
+        m = obj.getClass().getMethod(method, paramTypes);
+      } catch (NoSuchMethodException e) {
+        // this is the common case for primitive signatures
+        for (Method candidate : obj.getClass().getMethods()) {
+          if (candidate.getName().equals(method) && candidate.getParameterTypes().length == params.length) {
+            m = candidate;
+            break;
+          }
+        }
+      }
+      sum += (Integer) m.invoke(obj, params);
+    }
+    return sum;
+  }
+
+  static long dispatched(Object obj, String method, Object[] params, int iterations) throws Exception {
+    long sum = 0;
+    DispatchTable dt = DispatchTable.getInstance(obj.getClass());
+    for (int i = 0; i < iterations; ++i) {
+      sum += (Integer) dt.getEntry(method, params).invoke(obj, params);
+    }
+    return sum;
+  }
+
+}
@@ -0,0 +1,151 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+public class DispatchTableTest {
+
+  public final static Logger log = LoggerFactory.getLogger(DispatchTableTest.class);
+
+  public static class Target {
+    public int count = 0;
+
+    public String echo(String s) {
+      return s;
+    }
+
+    public double twice(double d) {
+      return d * 2;
+    }
+
+    public void increment() {
+      ++count;
+    }
+
+    public int add(int a, int b) {
+      return a + b;
+    }
+
+    public String describe(Object o) {
+      return "object";
+    }
+
+    public String describe(String s) {
+      return "string";
+    }
+
+    public Object identity(Object o) {
+      return o;
+    }
+
+    static public String[] getNames() {
+      return new String[] { "a", "b" };
+    }
+  }
+
+  @Test
+  public void exactMatch() throws Exception {
+    Target target = new Target();
+    DispatchTable dt = DispatchTable.getInstance(Target.class);
+    assertSame(dt, DispatchTable.getInstance(Target.class));
+    assertEquals("hello", dt.getEntry("echo", new Object[] { "hello" }).invoke(target, new Object[] { "hello" }));
+    assertEquals(7, dt.getEntry("add", new Object[] { 3, 4 }).invoke(target, new Object[] { 3, 4 }));
+  }
+
+  @Test
+  public void boxingAndWidening() throws Exception {
+    Target target = new Target();
+    DispatchTable dt = DispatchTable.getInstance(Target.class);
+    Object[] params = new Object[] { 3 };
+    assertEquals(6.0, dt.getEntry("twice", params).invoke(target, params));
+    // Double can not be narrowed to an int
+    assertNull(dt.getEntry("add", new Object[] { 3.0, 4.0 }));
+  }
+
+  @Test
+  public void voidAndNoParams() throws Exception {
+    Target target = new Target();
+    DispatchTable dt = DispatchTable.getInstance(Target.class);
+    assertNull(dt.getEntry("increment", null).invoke(target, null));
+    assertNull(dt.getEntry("increment", new Object[0]).invoke(target, new Object[0]));
+    assertEquals(2, target.count);
+  }
+
+  @Test
+  public void staticMethods() throws Exception {
+    DispatchTable dt = DispatchTable.getInstance(Target.class);
+    String[] names = (String[]) dt.getEntry("getNames", null).invoke(new Target(), null);
+    assertEquals(2, names.length);
+  }
+
+  @Test
+  public void upcastingAndNulls() throws Exception {
+    Target target = new Target();
+    DispatchTable dt = DispatchTable.getInstance(Target.class);
+    assertEquals("string", dt.getEntry("describe", new Object[] { "s" }).invoke(target, new Object[] { "s" }));
+    assertEquals("object", dt.getEntry("describe", new Object[] { 1 }).invoke(target, new Object[] { 1 }));
+    Object[] params = new Object[] { null };
+    assertNotNull(dt.getEntry("identity", params));
+    assertNull(dt.getEntry("identity", params).invoke(target, params));
+    assertNull(dt.getEntry("noSuchMethod", params));
+  }
+
+  public static class Overloads {
+    public String exact(int i) {
+      return "int";
+    }
+
+    public String exact(Integer i) {
+      return "Integer";
+    }
+
+    public String widen(long l) {
+      return "long";
+    }
+
+    public String widen(int i) {
+      return "int";
+    }
+
+    public String specific(Object o) {
+      return "Object";
+    }
+
+    public String specific(CharSequence s) {
+      return "CharSequence";
+    }
+  }
+
+  static Object call(DispatchTable dt, Object target, String method, Object... params) throws Exception {
+    return dt.getEntry(method, params).invoke(target, params);
+  }
+
+  @Test
+  public void mostSpecificOverload() throws Exception {
+    Overloads target = new Overloads();
+    DispatchTable dt = DispatchTable.getInstance(Overloads.class);
+    // arguments are always boxed - Integer is the exact match
+    assertEquals("Integer", call(dt, target, "exact", 3));
+    assertEquals("int", call(dt, target, "widen", 3));
+    assertEquals("long", call(dt, target, "widen", 3L));
+    assertEquals("CharSequence", call(dt, target, "specific", "s"));
+    assertEquals("Object", call(dt, target, "specific", 1));
+  }
+
+  @Test
+  public void resolvedCacheIsBounded() {
+    DispatchTable dt = DispatchTable.getInstance(Target.class);
+    for (int i = 0; i < DispatchTable.MAX_RESOLVED * 4; ++i) {
+      assertNull(dt.getEntry("noSuchMethod" + i, null));
+    }
+    assertTrue(dt.resolved.size() <= DispatchTable.MAX_RESOLVED);
+  }
+
+}
@@ -0,0 +1,98 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.myrobotlab.framework.ExecutionModeTest.Counter;
+import org.myrobotlab.logging.Level;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.Runtime;
+import org.slf4j.Logger;
+
+/**
+ * timing only - run with the benchmark target, not part of the unit tests
+ */
+public class ExecutionModeBenchmark {
+
+  public final static Logger log = LoggerFactory.getLogger(ExecutionModeBenchmark.class);
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    LoggingFactory.init(Level.WARN);
+  }
+
+  /**
+   * startup time, thread count and memory of a large number of services in
+   * each mode
+   */
+  @Test
+  public void startup() throws Exception {
+    int services = 200;
+    for (ExecutionMode mode : ExecutionMode.values()) {
+      System.gc();
+      int threadsBefore = Thread.activeCount();
+      long rssBefore = getRss();
+      long start = System.currentTimeMillis();
+      Counter[] counters = new Counter[services];
+      for (int i = 0; i < services; ++i) {
+        counters[i] = new Counter(String.format("%s_%d", mode, i));
+        counters[i].setExecutionMode(mode);
+        counters[i].startService();
+      }
+      long startup = System.currentTimeMillis() - start;
+
+      // one message round across all of them
+      for (int i = 0; i < services; ++i) {
+        counters[(i + 1) % services].send(counters[i].getName(), "onCount", i);
+      }
+      start = System.currentTimeMillis();
+      for (int i = 0; i < services; ++i) {
+        while (counters[i].counts.size() == 0 && System.currentTimeMillis() - start < 5000) {
+          Thread.sleep(1);
+        }
+      }
+      long round = System.currentTimeMillis() - start;
+
+      int threads = Thread.activeCount() - threadsBefore;
+      long rss = getRss() - rssBefore;
+      log.warn(String.format("%s - %d services started in %d ms, message round %d ms, +%d threads, +%d kB rss", mode, services, startup, round, threads, rss));
+
+      for (int i = 0; i < services; ++i) {
+        assertEquals(1, counters[i].counts.size());
+        Runtime.release(counters[i].getName());
+      }
+    }
+  }
+
+  /**
+   * @return resident set size in kB or 0 if not available
+   */
+  static long getRss() {
+    BufferedReader reader = null;
+    try {
+      reader = new BufferedReader(new FileReader("/proc/self/status"));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith("VmRSS:")) {
+          return Long.parseLong(line.replaceAll("[^0-9]", ""));
+        }
+      }
+    } catch (Exception e) {
+      // not linux
+    } finally {
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (Exception e) {
+        }
+      }
+    }
+    return 0;
+  }
+
+}
@@ -0,0 +1,79 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.myrobotlab.logging.Level;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.Runtime;
+import org.slf4j.Logger;
+
+public class ExecutionModeTest {
+
+  public final static Logger log = LoggerFactory.getLogger(ExecutionModeTest.class);
+
+  public static class Counter extends Service {
+    private static final long serialVersionUID = 1L;
+    transient public List<Integer> counts = new ArrayList<Integer>();
+    transient public List<Thread> threads = new ArrayList<Thread>();
+
+    public Counter(String n) {
+      super(n);
+    }
+
+    public void onCount(Integer count) {
+      counts.add(count);
+      threads.add(Thread.currentThread());
+    }
+
+    @Override
+    public boolean save() {
+      return false;
+    }
+
+    static public ServiceType getMetaData() {
+      return new ServiceType(Counter.class.getCanonicalName());
+    }
+  }
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    LoggingFactory.init(Level.WARN);
+  }
+
+  @Test
+  public void sharedModeKeepsOrder() throws Exception {
+    Counter counter = new Counter("counter");
+    Counter sender = new Counter("sender");
+    counter.setExecutionMode(ExecutionMode.SHARED);
+    // no drops - every message must arrive
+    counter.setOverflowPolicy(OverflowPolicy.BLOCK, OverflowPolicy.BLOCK);
+    sender.setOverflowPolicy(OverflowPolicy.BLOCK, OverflowPolicy.BLOCK);
+    counter.startService();
+    sender.startService();
+
+    int count = 5000;
+    for (int i = 0; i < count; ++i) {
+      sender.send("counter", "onCount", i);
+    }
+
+    long start = System.currentTimeMillis();
+    while (counter.counts.size() < count && System.currentTimeMillis() - start < 5000) {
+      Thread.sleep(10);
+    }
+    assertEquals(count, counter.counts.size());
+    for (int i = 0; i < count; ++i) {
+      assertEquals(i, (int) counter.counts.get(i));
+      assertTrue(counter.threads.get(i).getName().startsWith("shared_"));
+    }
+    Runtime.release("counter");
+    Runtime.release("sender");
+  }
+
+}
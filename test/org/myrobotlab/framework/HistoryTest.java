@@ -0,0 +1,70 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+public class HistoryTest {
+
+  static History history(String... names) {
+    History history = new History();
+    for (String name : names) {
+      history.add(name);
+    }
+    return history;
+  }
+
+  @Test
+  public void foreignNamesAreNotInterned() throws Exception {
+    ServiceIds.getId("historyTestLocal");
+    int before = ServiceIds.size();
+    History history = history("historyTestLocal", "historyTestRemote.1", "historyTestRemote.2");
+    history.add("historyTestRemote.1");
+    assertEquals(before, ServiceIds.size());
+    assertEquals(3, history.size());
+    assertEquals("historyTestLocal", history.get(0));
+    assertEquals("historyTestRemote.2", history.get(2));
+    assertTrue(history.contains("historyTestRemote.1"));
+    assertFalse(history.contains("historyTestRemote.3"));
+
+    // interned after it was added
+    ServiceIds.getId("historyTestRemote.2");
+    assertTrue(history.contains("historyTestRemote.2"));
+  }
+
+  @Test
+  public void json() throws Exception {
+    Gson gson = new GsonBuilder().registerTypeAdapter(History.class, new History.JsonAdapter()).create();
+    Message msg = new Message();
+    msg.name = "catcher";
+    msg.method = "onInt";
+    msg.historyList = history("historyTestLocal", "historyTestRemote.1");
+    String json = gson.toJson(msg, Message.class);
+    assertTrue(json.contains("\"historyList\":[\"historyTestLocal\",\"historyTestRemote.1\"]"));
+    Message copy = gson.fromJson(json, Message.class);
+    assertEquals(msg.historyList.toString(), copy.historyList.toString());
+    assertTrue(copy.hasVisited("historyTestRemote.1"));
+  }
+
+  @Test
+  public void serialization() throws Exception {
+    History history = history("historyTestLocal", "historyTestRemote.1");
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bos);
+    out.writeObject(history);
+    out.close();
+    History copy = (History) new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray())).readObject();
+    assertEquals(history.toString(), copy.toString());
+  }
+
+}
@@ -0,0 +1,214 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.interfaces.CommunicationInterface;
+import org.myrobotlab.service.interfaces.NameProvider;
+import org.slf4j.Logger;
+
+public class OutboxTest {
+
+  public final static Logger log = LoggerFactory.getLogger(OutboxTest.class);
+
+  /**
+   * records deliveries per destination - the "gui" destination is slow
+   */
+  static class SlowComm implements CommunicationInterface {
+    final Map<String, List<Object>> received = Collections.synchronizedMap(new HashMap<String, List<Object>>());
+    final CountDownLatch fastDone;
+    final int expected;
+
+    SlowComm(int expected) {
+      this.expected = expected;
+      fastDone = new CountDownLatch(1);
+    }
+
+    @Override
+    public void addRemote(URI mrlHost, URI protocolKey) {
+    }
+
+    @Override
+    public void send(Message msg) {
+      if ("gui".equals(msg.name)) {
+        Service.sleep(5);
+      }
+      List<Object> list = received.get(msg.name);
+      if (list == null) {
+        list = Collections.synchronizedList(new ArrayList<Object>());
+        received.put(msg.name, list);
+      }
+      list.add(msg.data[0]);
+      if ("servo".equals(msg.name) && list.size() == expected) {
+        fastDone.countDown();
+      }
+    }
+
+    @Override
+    public void send(URI uri, Message msg) {
+    }
+  }
+
+  static class Thrower implements NameProvider, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public String getName() {
+      return "thrower";
+    }
+  }
+
+  static Outbox createOutbox(int threads, CommunicationInterface comm) {
+    Outbox outbox = new Outbox(new Thrower());
+    outbox.setCommunicationManager(comm);
+    outbox.setThreadCount(threads);
+    ArrayList<MRLListener> listeners = new ArrayList<MRLListener>();
+    listeners.add(new MRLListener("publishState", "gui", "onState"));
+    listeners.add(new MRLListener("publishState", "servo", "onState"));
+    outbox.notifyList.put("publishState", listeners);
+    return outbox;
+  }
+
+  static void publish(Outbox outbox, int count) {
+    for (int i = 0; i < count; ++i) {
+      Message msg = new Message();
+      msg.name = null;
+      msg.sender = "thrower";
+      msg.sendingMethod = "publishState";
+      msg.data = new Object[] { i };
+      outbox.add(msg);
+    }
+  }
+
+  @Test
+  public void slowSubscriberDoesNotDelayOthers() throws Exception {
+    int count = 100;
+    SlowComm comm = new SlowComm(count);
+    Outbox outbox = createOutbox(4, comm);
+    outbox.start();
+    publish(outbox, count);
+
+    // 100 x 5 ms for the gui - the servo should be done long before
+    assertTrue(comm.fastDone.await(250, TimeUnit.MILLISECONDS));
+
+    // wait for the slow subscriber and check both were delivered in order
+    long start = System.currentTimeMillis();
+    while ((comm.received.get("gui") == null || comm.received.get("gui").size() < count) && System.currentTimeMillis() - start < 5000) {
+      Thread.sleep(10);
+    }
+    outbox.stop();
+    for (String name : new String[] { "gui", "servo" }) {
+      List<Object> list = comm.received.get(name);
+      assertEquals(count, list.size());
+      for (int i = 0; i < count; ++i) {
+        assertEquals(i, list.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void singleThreadDelivery() throws Exception {
+    int count = 10;
+    SlowComm comm = new SlowComm(count);
+    Outbox outbox = createOutbox(1, comm);
+    outbox.start();
+    publish(outbox, count);
+    assertTrue(comm.fastDone.await(1000, TimeUnit.MILLISECONDS));
+    outbox.stop();
+    assertEquals(count, comm.received.get("servo").size());
+  }
+
+  @Test
+  public void fullOutboxBlocksByDefault() throws Exception {
+    final int count = 1100;
+    SlowComm comm = new SlowComm(count);
+    final Outbox outbox = createOutbox(1, comm);
+    // only the fast subscriber
+    ArrayList<MRLListener> listeners = new ArrayList<MRLListener>();
+    listeners.add(new MRLListener("publishState", "servo", "onState"));
+    outbox.notifyList.put("publishState", listeners);
+    assertTrue(outbox.isBlocking());
+    Thread publisher = new Thread() {
+      @Override
+      public void run() {
+        publish(outbox, count);
+      }
+    };
+    publisher.start();
+    // not started - the publisher fills the queue and waits
+    publisher.join(200);
+    assertTrue(publisher.isAlive());
+    assertEquals(outbox.getMaxQueueSize(), outbox.size());
+
+    outbox.start();
+    publisher.join(5000);
+    assertTrue(comm.fastDone.await(5000, TimeUnit.MILLISECONDS));
+    outbox.stop();
+    // nothing dropped
+    assertEquals(0, outbox.getStats().dropped);
+    assertEquals(count, comm.received.get("servo").size());
+  }
+
+  @Test
+  public void tryAddNeverWaits() throws Exception {
+    Outbox outbox = createOutbox(1, null);
+    Message msg = new Message();
+    msg.sender = "thrower";
+    msg.sendingMethod = "publishState";
+    for (int i = 0; i < outbox.getMaxQueueSize(); ++i) {
+      assertTrue(outbox.tryAdd(msg));
+    }
+    // full - not queued, not dropped, the caller keeps it
+    assertFalse(outbox.tryAdd(msg));
+    assertEquals(outbox.getMaxQueueSize(), outbox.size());
+    assertEquals(0, outbox.getStats().dropped);
+
+    // with a dropping policy it is the same as add - and tells what happened
+    outbox.setOverflowPolicy(OverflowPolicy.DROP_NEWEST);
+    assertFalse(outbox.tryAdd(msg));
+    assertEquals(1, outbox.getStats().dropped);
+    outbox.setOverflowPolicy(OverflowPolicy.DROP_OLDEST);
+    assertTrue(outbox.tryAdd(msg));
+    assertEquals(2, outbox.getStats().dropped);
+  }
+
+  @Test
+  public void deserializedOutboxHasQueue() throws Exception {
+    Outbox outbox = createOutbox(1, null);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bos);
+    out.writeObject(outbox);
+    out.close();
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+    Outbox copy = (Outbox) in.readObject();
+    assertNotNull(copy.getMsgBox());
+    assertTrue(copy.isBlocking());
+    assertEquals(0, copy.size());
+
+    SlowComm comm = new SlowComm(3);
+    copy.setCommunicationManager(comm);
+    copy.start();
+    publish(copy, 3);
+    assertTrue(comm.fastDone.await(1000, TimeUnit.MILLISECONDS));
+    copy.stop();
+  }
+
+}
@@ -0,0 +1,189 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+public class RingBufferQueueTest {
+
+  public final static Logger log = LoggerFactory.getLogger(RingBufferQueueTest.class);
+
+  static Message msg(String method, Object data) {
+    Message msg = new Message();
+    msg.name = "catcher";
+    msg.method = method;
+    msg.data = new Object[] { data };
+    return msg;
+  }
+
+  @Test
+  public void fifo() throws Exception {
+    RingBufferQueue queue = new RingBufferQueue("test", 5);
+    // rounded up to a power of 2
+    assertEquals(8, queue.capacity());
+    for (int i = 0; i < 8; ++i) {
+      assertEquals(OfferResult.QUEUED, queue.offer(msg("onInt", i)));
+    }
+    assertEquals(8, queue.size());
+    for (int i = 0; i < 8; ++i) {
+      assertEquals(i, queue.take().data[0]);
+    }
+    assertNull(queue.poll());
+    assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void dropNewest() throws Exception {
+    RingBufferQueue queue = new RingBufferQueue("test", 2, OverflowPolicy.DROP_NEWEST);
+    queue.offer(msg("onInt", 0));
+    queue.offer(msg("onInt", 1));
+    assertEquals(OfferResult.DROPPED, queue.offer(msg("onInt", 2)));
+    assertEquals(0, queue.take().data[0]);
+    assertEquals(1, queue.take().data[0]);
+    QueueStats stats = queue.getStats();
+    assertEquals(1, stats.dropped);
+    assertEquals(2, stats.highWaterMark);
+    assertEquals(2, stats.dequeued);
+  }
+
+  @Test
+  public void dropOldest() throws Exception {
+    RingBufferQueue queue = new RingBufferQueue("test", 2, OverflowPolicy.DROP_OLDEST);
+    queue.offer(msg("onInt", 0));
+    queue.offer(msg("onInt", 1));
+    // queued all the same - the producer has to signal the consumer
+    assertEquals(OfferResult.QUEUED_DROPPED_OLDEST, queue.offer(msg("onInt", 2)));
+    assertTrue(queue.offer(msg("onInt", 3)).isQueued());
+    assertEquals(2, queue.take().data[0]);
+    assertEquals(3, queue.take().data[0]);
+    assertEquals(2, queue.getStats().dropped);
+  }
+
+  @Test
+  public void coalesce() throws Exception {
+    RingBufferQueue queue = new RingBufferQueue("test", 2, OverflowPolicy.COALESCE);
+    queue.offer(msg("onInt", 0));
+    queue.offer(msg("onString", "a"));
+    assertEquals(OfferResult.COALESCED, queue.offer(msg("onInt", 1)));
+    assertEquals(OfferResult.COALESCED, queue.offer(msg("onString", "b")));
+    // nothing to coalesce with
+    assertEquals(OfferResult.DROPPED, queue.offer(msg("onDouble", 1.0)));
+    assertEquals(1, queue.take().data[0]);
+    assertEquals("b", queue.take().data[0]);
+    QueueStats stats = queue.getStats();
+    assertEquals(2, stats.coalesced);
+    assertEquals(1, stats.dropped);
+  }
+
+  @Test
+  public void block() throws Exception {
+    final RingBufferQueue queue = new RingBufferQueue("test", 2, OverflowPolicy.BLOCK);
+    queue.offer(msg("onInt", 0));
+    queue.offer(msg("onInt", 1));
+    Thread producer = new Thread() {
+      @Override
+      public void run() {
+        queue.offer(msg("onInt", 2));
+      }
+    };
+    producer.start();
+    Thread.sleep(50);
+    assertTrue(producer.isAlive());
+    assertEquals(0, queue.take().data[0]);
+    producer.join(1000);
+    assertFalse(producer.isAlive());
+    assertEquals(1, queue.take().data[0]);
+    assertEquals(2, queue.take().data[0]);
+  }
+
+  @Test
+  public void tryOfferNeverWaits() throws Exception {
+    RingBufferQueue queue = new RingBufferQueue("test", 2, OverflowPolicy.BLOCK);
+    assertTrue(queue.tryOffer(msg("onInt", 0)));
+    assertTrue(queue.tryOffer(msg("onInt", 1)));
+    assertFalse(queue.tryOffer(msg("onInt", 2)));
+    assertEquals(0, queue.getStats().dropped);
+    assertEquals(0, queue.take().data[0]);
+    assertTrue(queue.tryOffer(msg("onInt", 2)));
+    assertEquals(1, queue.take().data[0]);
+    assertEquals(2, queue.take().data[0]);
+  }
+
+  @Test
+  public void blockOnPoolWorker() throws Exception {
+    // a single worker - the consumer only runs if the blocked producer lets
+    // the pool compensate
+    ForkJoinPool pool = new ForkJoinPool(1);
+    try {
+      final RingBufferQueue queue = new RingBufferQueue("test", 2, OverflowPolicy.BLOCK);
+      Future<?> producer = pool.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 4; ++i) {
+            queue.offer(msg("onInt", i));
+          }
+        }
+      });
+      Future<?> consumer = pool.submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 4; ++i) {
+              assertEquals(i, queue.take().data[0]);
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+      producer.get(5, TimeUnit.SECONDS);
+      consumer.get(5, TimeUnit.SECONDS);
+      assertEquals(0, queue.getStats().dropped);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void multipleProducers() throws Exception {
+    final RingBufferQueue queue = new RingBufferQueue("test", 64, OverflowPolicy.BLOCK);
+    final int producers = 4;
+    final int count = 10000;
+    for (int p = 0; p < producers; ++p) {
+      final int id = p;
+      new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < count; ++i) {
+            queue.offer(msg("onInt" + id, i));
+          }
+        }
+      }.start();
+    }
+
+    // per producer order must be kept
+    int[] last = new int[producers];
+    for (int i = 0; i < producers * count; ++i) {
+      Message msg = queue.poll(5, TimeUnit.SECONDS);
+      int id = msg.method.charAt(msg.method.length() - 1) - '0';
+      int value = (Integer) msg.data[0];
+      assertEquals(last[id], value);
+      last[id] = value + 1;
+    }
+    assertNull(queue.poll());
+    QueueStats stats = queue.getStats();
+    assertEquals(producers * count, stats.enqueued);
+    assertEquals(0, stats.dropped);
+    log.info(stats.toString());
+  }
+
+}
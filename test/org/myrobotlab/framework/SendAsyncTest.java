@@ -0,0 +1,143 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.myrobotlab.logging.Level;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.Runtime;
+import org.slf4j.Logger;
+
+public class SendAsyncTest {
+
+  public final static Logger log = LoggerFactory.getLogger(SendAsyncTest.class);
+
+  public static class Echo extends Service {
+    private static final long serialVersionUID = 1L;
+    transient public Object answer = null;
+
+    public Echo(String n) {
+      super(n);
+    }
+
+    public Integer echo(Integer i) {
+      return i;
+    }
+
+    public Integer slow(Integer i) {
+      sleep(200);
+      return i;
+    }
+
+    /**
+     * blocks the inbox thread of this service while waiting
+     */
+    public void ask(String other) {
+      answer = sendBlocking(other, "echo", 7);
+    }
+
+    @Override
+    public boolean save() {
+      return false;
+    }
+
+    static public ServiceType getMetaData() {
+      return new ServiceType(Echo.class.getCanonicalName());
+    }
+  }
+
+  static Echo client;
+  static Echo server;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    LoggingFactory.init(Level.WARN);
+    client = new Echo("client");
+    server = new Echo("server");
+    client.startService();
+    server.startService();
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    Runtime.release("client");
+    Runtime.release("server");
+  }
+
+  @Test
+  public void pipelined() throws Exception {
+    List<CompletableFuture<Object>> futures = new ArrayList<CompletableFuture<Object>>();
+    for (int i = 0; i < 50; ++i) {
+      futures.add(client.sendAsync("server", "echo", i));
+    }
+    for (int i = 0; i < 50; ++i) {
+      assertEquals(i, futures.get(i).get(1, TimeUnit.SECONDS));
+    }
+    assertEquals(0, client.getInbox().blockingList.size());
+  }
+
+  @Test
+  public void blocking() throws Exception {
+    assertEquals(3, client.sendBlocking("server", "echo", 3));
+    // timed out returns null
+    assertNull(client.sendBlocking("server", 50, "slow", 3));
+  }
+
+  @Test
+  public void timeout() throws Exception {
+    CompletableFuture<Object> future = client.sendAsync("server", 50, "slow", 1);
+    try {
+      future.get();
+      assertTrue("should have timed out", false);
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof TimeoutException);
+    }
+    // the late reply is not matched to anything
+    Service.sleep(300);
+    assertEquals(0, client.getInbox().blockingList.size());
+  }
+
+  @Test
+  public void cancelled() throws Exception {
+    // no timeout - the caller gives up
+    CompletableFuture<Object> future = client.sendAsync("server", 0, "slow", 1);
+    assertEquals(1, client.getInbox().blockingList.size());
+    future.cancel(false);
+    assertEquals(0, client.getInbox().blockingList.size());
+    Service.sleep(300);
+    assertTrue(future.isCancelled());
+  }
+
+  @Test
+  public void interruptedBlocking() throws Exception {
+    Thread.currentThread().interrupt();
+    assertNull(client.sendBlocking("server", 0, "slow", 1));
+    // the flag is kept for the caller
+    assertTrue(Thread.interrupted());
+    assertEquals(0, client.getInbox().blockingList.size());
+  }
+
+  @Test
+  public void blockingOnInboxThread() throws Exception {
+    client.answer = null;
+    client.send("client", "ask", "server");
+    long start = System.currentTimeMillis();
+    while (client.answer == null && System.currentTimeMillis() - start < 2000) {
+      Thread.sleep(10);
+    }
+    assertEquals(7, client.answer);
+  }
+
+}
@@ -0,0 +1,160 @@
+package org.myrobotlab.framework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+public class TimingWheelTest {
+
+  public final static Logger log = LoggerFactory.getLogger(TimingWheelTest.class);
+
+  @Test
+  public void oneShot() throws Exception {
+    TimingWheel wheel = new TimingWheel("test", 1, 64, 2);
+    final CountDownLatch latch = new CountDownLatch(1);
+    long start = System.currentTimeMillis();
+    TimedTask task = wheel.schedule("once", new Runnable() {
+      @Override
+      public void run() {
+        latch.countDown();
+      }
+    }, 50);
+    assertTrue(latch.await(1, TimeUnit.SECONDS));
+    // never early
+    assertTrue(System.currentTimeMillis() - start >= 50);
+    Thread.sleep(20);
+    assertTrue(task.isCancelled());
+    assertEquals(1, task.getStats().count);
+    wheel.stop();
+  }
+
+  @Test
+  public void fixedRateDoesNotDrift() throws Exception {
+    TimingWheel wheel = new TimingWheel("test", 1, 64, 2);
+    final AtomicInteger count = new AtomicInteger();
+    // period longer than the wheel (64 ticks) exercises the rounds
+    TimedTask task = wheel.scheduleAtFixedRate("rate", new Runnable() {
+      @Override
+      public void run() {
+        count.incrementAndGet();
+        // work which would make a sleep loop drift
+        Service.sleep(3);
+      }
+    }, 0, 100);
+    Thread.sleep(1050);
+    task.cancel();
+    int runs = count.get();
+    Thread.sleep(150);
+    assertEquals(runs, count.get());
+    // 0, 100 ... 1000
+    assertEquals(11, runs);
+    TaskStats stats = task.getStats();
+    log.info(stats.toString());
+    assertTrue(stats.maxJitterMs < 50);
+    wheel.stop();
+  }
+
+  @Test
+  public void overrunsAreSkipped() throws Exception {
+    TimingWheel wheel = new TimingWheel("test", 1, 64, 2);
+    final AtomicInteger count = new AtomicInteger();
+    TimedTask task = wheel.scheduleAtFixedRate("slow", new Runnable() {
+      @Override
+      public void run() {
+        count.incrementAndGet();
+        Service.sleep(55);
+      }
+    }, 0, 20);
+    Thread.sleep(300);
+    task.cancel();
+    TaskStats stats = task.getStats();
+    log.info(stats.toString());
+    assertTrue(stats.overruns > 0);
+    assertTrue(count.get() < 10);
+    wheel.stop();
+  }
+
+  @Test
+  public void manyTasksFewThreads() throws Exception {
+    TimingWheel wheel = new TimingWheel("test", 1, 512, 4);
+    int threadsBefore = Thread.activeCount();
+    final AtomicInteger count = new AtomicInteger();
+    TimedTask[] tasks = new TimedTask[500];
+    for (int i = 0; i < tasks.length; ++i) {
+      tasks[i] = wheel.scheduleWithFixedDelay("poll" + i, new Runnable() {
+        @Override
+        public void run() {
+          count.incrementAndGet();
+        }
+      }, i % 10, 10);
+    }
+    Thread.sleep(200);
+    assertTrue(Thread.activeCount() - threadsBefore <= 4);
+    for (int i = 0; i < tasks.length; ++i) {
+      tasks[i].cancel();
+    }
+    // ~20 runs each
+    assertTrue(count.get() > tasks.length * 10);
+    assertEquals(0, wheel.getStats().size());
+    wheel.stop();
+  }
+
+  @Test
+  public void taskCancelsItself() throws Exception {
+    TimingWheel wheel = new TimingWheel("test", 1, 64, 2);
+    final AtomicInteger count = new AtomicInteger();
+    final TimedTask[] handle = new TimedTask[1];
+    handle[0] = wheel.create("self", new Runnable() {
+      @Override
+      public void run() {
+        count.incrementAndGet();
+        handle[0].cancel();
+      }
+    }, 1, false);
+    handle[0].start(0);
+    Thread.sleep(100);
+    assertEquals(1, count.get());
+    assertTrue(handle[0].isCancelled());
+    wheel.stop();
+  }
+
+  @Test
+  public void laterRoundsInOneBucket() throws Exception {
+    // 8 buckets - 5, 85 and 245 ms share a bucket
+    TimingWheel wheel = new TimingWheel("test", 1, 8, 2);
+    final long start = System.nanoTime();
+    final long[] ran = new long[3];
+    final CountDownLatch latch = new CountDownLatch(2);
+    TimedTask cancelled = wheel.schedule("cancelled", new Runnable() {
+      @Override
+      public void run() {
+        ran[1] = 1;
+      }
+    }, 5);
+    for (final int i : new int[] { 0, 2 }) {
+      wheel.schedule("round" + i, new Runnable() {
+        @Override
+        public void run() {
+          ran[i] = System.nanoTime() - start;
+          latch.countDown();
+        }
+      }, 5 + 8 * (i + 1) * 10);
+    }
+    cancelled.cancel();
+    assertTrue(latch.await(1, TimeUnit.SECONDS));
+    assertEquals(0, ran[1]);
+    // never early - not in an earlier round of the bucket
+    assertTrue(ran[0] >= TimeUnit.MILLISECONDS.toNanos(85));
+    assertTrue(ran[2] >= TimeUnit.MILLISECONDS.toNanos(245));
+    assertTrue(ran[2] > ran[0]);
+    wheel.stop();
+  }
+
+}
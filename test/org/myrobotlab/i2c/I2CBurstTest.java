@@ -0,0 +1,206 @@
+package org.myrobotlab.i2c;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+import org.myrobotlab.service.interfaces.DeviceControl;
+import org.myrobotlab.service.interfaces.DeviceController;
+import org.myrobotlab.service.interfaces.I2CControl;
+import org.myrobotlab.service.interfaces.I2CController;
+
+public class I2CBurstTest {
+
+  /**
+   * answers each read later with length bytes counting up from the register
+   */
+  static class Controller implements I2CController {
+    List<CompletableFuture<byte[]>> pending = new ArrayList<CompletableFuture<byte[]>>();
+    List<Integer> registers = new ArrayList<Integer>();
+    List<Integer> lengths = new ArrayList<Integer>();
+
+    @Override
+    public CompletableFuture<byte[]> i2cWriteReadAsync(I2CControl control, int busAddress, int deviceAddress, byte[] writeBuffer, int writeSize, int readSize) {
+      CompletableFuture<byte[]> future = new CompletableFuture<byte[]>();
+      pending.add(future);
+      registers.add((int) writeBuffer[0]);
+      lengths.add(readSize);
+      return future;
+    }
+
+    void reply() {
+      for (int i = 0; i < pending.size(); ++i) {
+        byte[] data = new byte[lengths.get(i)];
+        for (int j = 0; j < data.length; ++j) {
+          data[j] = (byte) (registers.get(i) + j);
+        }
+        pending.get(i).complete(data);
+      }
+      pending.clear();
+      registers.clear();
+      lengths.clear();
+    }
+
+    @Override
+    public String getName() {
+      return "controller";
+    }
+
+    @Override
+    public void deviceAttach(DeviceControl device, Object... conf) {
+    }
+
+    @Override
+    public void deviceDetach(DeviceControl device) {
+    }
+
+    @Override
+    public void createI2cDevice(I2CControl control, int busAddress, int deviceAddress) {
+    }
+
+    @Override
+    public void releaseI2cDevice(I2CControl control, int busAddress, int deviceAddress) {
+    }
+
+    @Override
+    public void i2cWrite(I2CControl control, int busAddress, int deviceAddress, byte[] buffer, int size) {
+    }
+
+    @Override
+    public int i2cRead(I2CControl control, int busAddress, int deviceAddress, byte[] buffer, int size) {
+      return -1;
+    }
+
+    @Override
+    public int i2cWriteRead(I2CControl control, int busAddress, int deviceAddress, byte[] writeBuffer, int writeSize, byte[] readBuffer, int readSize) {
+      return -1;
+    }
+  }
+
+  /**
+   * runs the handed off work when the test says so
+   */
+  static class Tasks implements Executor {
+    List<Runnable> queued = new ArrayList<Runnable>();
+
+    @Override
+    public void execute(Runnable task) {
+      queued.add(task);
+    }
+
+    int run() {
+      int count = queued.size();
+      List<Runnable> tasks = queued;
+      queued = new ArrayList<Runnable>();
+      for (Runnable task : tasks) {
+        task.run();
+      }
+      return count;
+    }
+  }
+
+  static class Device implements I2CControl {
+    byte[] last;
+
+    @Override
+    public void onI2cData(I2CBurst.Read read, byte[] frame) {
+      last = Arrays.copyOfRange(frame, read.offset, read.offset + read.length);
+    }
+
+    @Override
+    public String getName() {
+      return "device";
+    }
+
+    @Override
+    public boolean setController(String controllerName, String deviceBus, String deviceAddress) {
+      return false;
+    }
+
+    @Override
+    public boolean setController(String controllerName) {
+      return false;
+    }
+
+    @Override
+    public boolean setController(I2CController controller) {
+      return false;
+    }
+
+    @Override
+    public boolean setController(I2CController controller, String deviceBus, String deviceAddress) {
+      return false;
+    }
+
+    @Override
+    public void unsetController() {
+    }
+
+    @Override
+    public void setDeviceBus(String deviceBus) {
+    }
+
+    @Override
+    public void setDeviceAddress(String deviceAddress) {
+    }
+
+    @Override
+    public void setController(DeviceController controller) {
+    }
+
+    @Override
+    public DeviceController getController() {
+      return null;
+    }
+
+    @Override
+    public boolean isAttached() {
+      return true;
+    }
+  }
+
+  @Test
+  public void packedSample() throws Exception {
+    Controller controller = new Controller();
+    Device imu = new Device();
+    Device adc = new Device();
+    I2CBurst burst = new I2CBurst("test");
+    burst.add(imu, 1, 0x68, 0x3b, 14).add(adc, 1, 0x48, 0x00, 2);
+    assertEquals(14, burst.getReads().get(1).offset);
+    burst.controller = controller;
+    Tasks tasks = new Tasks();
+    burst.executor = tasks;
+
+    // the timer only hands the sample off
+    burst.sample();
+    assertEquals(0, controller.pending.size());
+    assertEquals(1, tasks.run());
+    // both reads are out before any reply
+    assertEquals(2, controller.pending.size());
+    // still outstanding - skipped
+    burst.sample();
+    assertEquals(0, tasks.run());
+    assertEquals(2, controller.pending.size());
+
+    // the replying thread does not dispatch
+    controller.reply();
+    assertNull(imu.last);
+    assertEquals(1, tasks.run());
+    assertEquals(0x3b + 13, imu.last[13]);
+    assertArrayEquals(new byte[] { 0, 1 }, adc.last);
+
+    burst.sample();
+    tasks.run();
+    assertEquals(2, controller.pending.size());
+    assertTrue(burst.toString().contains("samples 1 overruns 1 errors 0"));
+  }
+
+}
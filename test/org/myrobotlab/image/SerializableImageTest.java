@@ -0,0 +1,58 @@
+package org.myrobotlab.image;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SerializableImageTest {
+
+  static BufferedImage noise() {
+    BufferedImage bi = new BufferedImage(160, 120, BufferedImage.TYPE_3BYTE_BGR);
+    Random random = new Random(7);
+    Graphics2D g = bi.createGraphics();
+    for (int i = 0; i < 400; ++i) {
+      g.setColor(new Color(random.nextInt(0xffffff)));
+      g.fillRect(random.nextInt(160), random.nextInt(120), 8, 8);
+    }
+    g.dispose();
+    return bi;
+  }
+
+  @Test
+  public void bytesEncodedOnce() {
+    SerializableImage img = new SerializableImage(noise(), "test", 3);
+    byte[] first = img.getBytes();
+    assertNotNull(first);
+    // every consumer shares the first encoding
+    assertSame(first, img.getBytes());
+    assertEquals(160, img.getWidth());
+  }
+
+  @Test
+  public void jpgQuality() throws Exception {
+    BufferedImage bi = noise();
+    byte[] low = SerializableImage.encodeJpg(bi, 10);
+    byte[] high = SerializableImage.encodeJpg(bi, 95);
+    assertTrue(low.length < high.length);
+
+    SerializableImage img = new SerializableImage(bi, "test", 1);
+    img.setJpgQuality(10);
+    assertEquals(low.length, img.getBytes().length);
+
+    // decoded once from the bytes
+    SerializableImage decoded = new SerializableImage(high, "test", 1);
+    BufferedImage image = decoded.getImage();
+    assertNotNull(image);
+    assertSame(image, decoded.getImage());
+    assertEquals(120, decoded.getHeight());
+  }
+
+}
@@ -0,0 +1,128 @@
+package org.myrobotlab.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.myrobotlab.image.SerializableImage;
+
+public class MjpegServerTest {
+
+  final static int PORT = 16768;
+
+  static MjpegServer server;
+
+  static SerializableImage frame(int index, boolean noise) {
+    BufferedImage bi = new BufferedImage(320, 240, BufferedImage.TYPE_3BYTE_BGR);
+    if (noise) {
+      Random random = new Random(index);
+      for (int y = 0; y < bi.getHeight(); ++y) {
+        for (int x = 0; x < bi.getWidth(); ++x) {
+          bi.setRGB(x, y, random.nextInt());
+        }
+      }
+    }
+    return new SerializableImage(bi, "cam", index);
+  }
+
+  static Socket get(String uri) throws IOException {
+    return get(uri, 0);
+  }
+
+  static Socket get(String uri, int receiveBufferSize) throws IOException {
+    Socket socket = new Socket();
+    if (receiveBufferSize > 0) {
+      socket.setReceiveBufferSize(receiveBufferSize);
+    }
+    socket.connect(new InetSocketAddress("localhost", PORT));
+    socket.getOutputStream().write(String.format("GET %s HTTP/1.1\r\nHost: localhost\r\n\r\n", uri).getBytes());
+    return socket;
+  }
+
+  static String readUntil(InputStream in, String marker) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != -1) {
+      out.write(b);
+      String text = out.toString("ISO-8859-1");
+      if (text.endsWith(marker)) {
+        return text;
+      }
+    }
+    return out.toString("ISO-8859-1");
+  }
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    server = new MjpegServer(PORT);
+    server.start();
+    // the feed exists once its first frame is published
+    server.publish(frame(0, false));
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    server.stop();
+  }
+
+  @Test
+  public void index() throws Exception {
+    Socket socket = get("/");
+    String text = readUntil(socket.getInputStream(), "</html>");
+    assertTrue(text.startsWith("HTTP/1.0 200 OK"));
+    assertTrue(text.contains("<img src=\"cam\" />"));
+    socket.close();
+  }
+
+  @Test
+  public void slowClientSkips() throws Exception {
+    Socket fast = get("/cam?fps=30");
+    Socket slow = get("/cam", 1024);
+    InputStream in = fast.getInputStream();
+    assertTrue(readUntil(in, "boundary=--BoundaryString\r\n\r\n").contains("multipart/x-mixed-replace"));
+    readUntil(slow.getInputStream(), "boundary=--BoundaryString\r\n\r\n");
+
+    int frames = 40;
+    for (int i = 1; i <= frames; ++i) {
+      server.publish(frame(i, true));
+      // the fast client reads every part - the slow one never reads
+      String header = readUntil(in, "\r\n\r\n");
+      assertTrue(header.contains("--BoundaryString"));
+      int length = Integer.parseInt(header.substring(header.indexOf("Content-Length: ") + 16).trim());
+      long skipped = 0;
+      while (skipped < length + 4) {
+        skipped += in.skip(length + 4 - skipped);
+      }
+    }
+
+    Thread.sleep(100);
+    List<MjpegServer.ClientStats> stats = server.getClientStats();
+    assertEquals(2, stats.size());
+    long maxSent = 0;
+    long maxSkipped = 0;
+    for (MjpegServer.ClientStats s : stats) {
+      assertEquals("cam", s.feed);
+      maxSent = Math.max(maxSent, s.framesSent);
+      maxSkipped = Math.max(maxSkipped, s.framesSkipped);
+    }
+    // one shared encoding - the fast client got every frame, the stalled one
+    // skipped instead of holding it up
+    assertTrue(maxSent >= frames);
+    assertTrue(maxSkipped > 0);
+
+    fast.close();
+    slow.close();
+  }
+
+}
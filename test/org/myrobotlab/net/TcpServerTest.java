@@ -0,0 +1,162 @@
+package org.myrobotlab.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.myrobotlab.codec.CodecBinary;
+import org.myrobotlab.framework.Message;
+import org.myrobotlab.framework.Service;
+import org.myrobotlab.framework.ServiceType;
+import org.myrobotlab.logging.Level;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.logging.LoggingFactory;
+import org.myrobotlab.service.RemoteAdapter;
+import org.myrobotlab.service.Runtime;
+import org.slf4j.Logger;
+
+public class TcpServerTest {
+
+  public final static Logger log = LoggerFactory.getLogger(TcpServerTest.class);
+
+  final static int PORT = 16767;
+
+  public static class Sink extends Service {
+    private static final long serialVersionUID = 1L;
+    transient public List<Integer> received = new ArrayList<Integer>();
+    transient public List<Integer> legacy = new ArrayList<Integer>();
+
+    public Sink(String n) {
+      super(n);
+    }
+
+    public void onCount(Integer i) {
+      synchronized (received) {
+        received.add(i);
+      }
+    }
+
+    public void onLegacy(Integer i) {
+      synchronized (legacy) {
+        legacy.add(i);
+      }
+    }
+
+    @Override
+    public boolean save() {
+      return false;
+    }
+
+    static public ServiceType getMetaData() {
+      return new ServiceType(Sink.class.getCanonicalName());
+    }
+  }
+
+  static RemoteAdapter server;
+  static RemoteAdapter client;
+  static Sink sink;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    LoggingFactory.init(Level.WARN);
+    sink = new Sink("sink");
+    sink.startService();
+    server = new RemoteAdapter("server");
+    server.startService();
+    server.startListening(PORT);
+    client = new RemoteAdapter("client");
+    client.startService();
+    Service.sleep(100);
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    Runtime.release("client");
+    Runtime.release("server");
+    Runtime.release("sink");
+  }
+
+  @Test
+  public void messagesArriveInOrder() throws Exception {
+    int count = 2000;
+    for (int i = 0; i < count; ++i) {
+      // the client's prefix is stripped on the way out
+      Message msg = client.createMessage("client.sink", "onCount", new Object[] { i });
+      client.sendRemote(String.format("tcp://127.0.0.1:%d", PORT), msg);
+    }
+    long start = System.currentTimeMillis();
+    while (sink.received.size() < count && System.currentTimeMillis() - start < 5000) {
+      Thread.sleep(10);
+    }
+    synchronized (sink.received) {
+      assertEquals(count, sink.received.size());
+      for (int i = 0; i < count; ++i) {
+        assertEquals(i, sink.received.get(i).intValue());
+      }
+    }
+    for (Connection c : client.connections.values()) {
+      log.info(c.toString());
+    }
+  }
+
+  @Test
+  public void manyClientsFewThreads() throws Exception {
+    int threadsBefore = Thread.activeCount();
+    List<SocketChannel> channels = new ArrayList<SocketChannel>();
+    for (int i = 0; i < 200; ++i) {
+      SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", PORT));
+      channel.write(ByteBuffer.wrap(CodecBinary.HEADER));
+      channels.add(channel);
+    }
+    Service.sleep(200);
+    // accepted without a thread each
+    assertTrue(Thread.activeCount() - threadsBefore <= 4);
+    assertTrue(server.connections.size() >= 200);
+    for (SocketChannel channel : channels) {
+      channel.close();
+    }
+  }
+
+  /**
+   * a client which predates the binary codec - the server answers with a java
+   * serialization header and reads its messages
+   */
+  @Test
+  public void legacyClient() throws Exception {
+    Socket socket = new Socket("127.0.0.1", PORT);
+    ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+    out.flush();
+    for (int i = 0; i < 10; ++i) {
+      out.writeObject(client.createMessage("sink", "onLegacy", new Object[] { i }));
+      out.flush();
+      out.reset();
+    }
+    // throws unless the server answered with a java serialization header
+    socket.setSoTimeout(2000);
+    new ObjectInputStream(socket.getInputStream());
+
+    long start = System.currentTimeMillis();
+    while (sink.legacy.size() < 10 && System.currentTimeMillis() - start < 5000) {
+      Thread.sleep(10);
+    }
+    synchronized (sink.legacy) {
+      assertEquals(10, sink.legacy.size());
+      for (int i = 0; i < 10; ++i) {
+        assertEquals(i, sink.legacy.get(i).intValue());
+      }
+    }
+    socket.close();
+  }
+
+}
@@ -0,0 +1,87 @@
+package org.myrobotlab.opencv;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.myrobotlab.service.data.Rectangle;
+
+public class FilterScheduleTest {
+
+  static ArrayList<Rectangle> boxes(Rectangle... rects) {
+    ArrayList<Rectangle> ret = new ArrayList<Rectangle>();
+    for (Rectangle r : rects) {
+      ret.add(r);
+    }
+    return ret;
+  }
+
+  @Test
+  public void everyN() {
+    FilterSchedule schedule = new FilterSchedule(3, false, 15, 0);
+    int runs = 0;
+    for (int frame = 0; frame < 9; ++frame) {
+      if (schedule.shouldRun(frame)) {
+        schedule.plan(frame, 320, 240);
+        ++runs;
+      }
+    }
+    assertEquals(3, runs);
+    assertEquals(6, schedule.getSkipped());
+  }
+
+  @Test
+  public void roiAroundLastDetection() {
+    FilterSchedule schedule = new FilterSchedule(1, true, 10, 0);
+    schedule.plan(0, 320, 240);
+    assertTrue(schedule.isFullFrame(320, 240));
+
+    // pixel boxes - two targets, the region covers both
+    schedule.detected(boxes(new Rectangle(100, 100, 20, 20), new Rectangle(140, 100, 20, 40)), false, 320, 240);
+    schedule.plan(1, 320, 240);
+    assertFalse(schedule.isFullFrame(320, 240));
+    // union 100,100 60x40 - grown by half its size on every side
+    assertEquals(70, schedule.x);
+    assertEquals(80, schedule.y);
+    assertEquals(120, schedule.width);
+    assertEquals(80, schedule.height);
+    assertEquals(75, schedule.toFrameX(5));
+
+    // clamped to the frame - normalized boxes
+    schedule.detected(boxes(new Rectangle(0.9f, 0.0f, 0.1f, 0.1f)), true, 320, 240);
+    schedule.plan(2, 320, 240);
+    assertEquals(272, schedule.x);
+    assertEquals(0, schedule.y);
+    assertEquals(48, schedule.width);
+    assertEquals(36, schedule.height);
+
+    // full frame fallback every 10 frames
+    schedule.plan(10, 320, 240);
+    assertTrue(schedule.isFullFrame(320, 240));
+    schedule.plan(11, 320, 240);
+    assertFalse(schedule.isFullFrame(320, 240));
+
+    // nothing found - full frame
+    schedule.detected(boxes(), false, 320, 240);
+    assertNull(schedule.lastDetection);
+    schedule.plan(12, 320, 240);
+    assertTrue(schedule.isFullFrame(320, 240));
+    assertEquals(3, schedule.getRoiRuns());
+  }
+
+  @Test
+  public void pyramid() {
+    FilterSchedule schedule = new FilterSchedule(1, false, 15, 3);
+    schedule.plan(0, 640, 480);
+    // 480 -> 240 -> 120 -> 60 would be below minSize
+    assertEquals(2, schedule.levels);
+    assertFalse(schedule.isFullFrame(640, 480));
+    assertEquals(40, schedule.toFrameX(10));
+    assertEquals(20, schedule.toFrameLength(5));
+  }
+
+}
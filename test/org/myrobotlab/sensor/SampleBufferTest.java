@@ -0,0 +1,90 @@
+package org.myrobotlab.sensor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.myrobotlab.service.data.PinWindow;
+import org.myrobotlab.service.interfaces.PinWindowListener;
+
+public class SampleBufferTest {
+
+  @Test
+  public void ringWindows() {
+    SampleRing ring = new SampleRing(5);
+    assertEquals(8, ring.capacity());
+    for (int i = 0; i < 20; ++i) {
+      ring.add(100 + i, (i % 3 == 0) ? 50 : i);
+    }
+    // only the last 8 (ts 112..119) are kept
+    assertEquals(8, ring.size());
+
+    PinWindow window = new PinWindow("test", 1);
+    assertTrue(ring.aggregate(110, 118, window));
+    // ts 112..117 - values 50 13 14 50 16 17
+    assertEquals(6, window.count);
+    assertEquals(13, window.min);
+    assertEquals(50, window.max);
+    assertEquals(17, window.last);
+    assertEquals((50 + 13 + 14 + 50 + 16 + 17) / 6.0, window.avg, 0.001);
+    assertFalse(ring.aggregate(120, 130, window));
+
+    long[] ts = new long[10];
+    int[] values = new int[10];
+    assertEquals(3, ring.copy(117, ts, values));
+    assertEquals(117, ts[0]);
+    assertEquals(19, values[2]);
+  }
+
+  @Test
+  public void subscriberGetsWindows() throws Exception {
+    SampleBuffer buffer = new SampleBuffer("arduino");
+    final List<PinWindow[]> received = new ArrayList<PinWindow[]>();
+    buffer.subscribe("gui", 20, new PinWindowListener() {
+      @Override
+      public void onPinWindows(PinWindow[] windows) {
+        synchronized (received) {
+          received.add(windows);
+          received.notifyAll();
+        }
+      }
+
+      @Override
+      public String getName() {
+        return "gui";
+      }
+
+      @Override
+      public boolean isLocal() {
+        return true;
+      }
+    }, 14);
+
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < 100; ++i) {
+      buffer.add(14, now, i);
+      buffer.add(15, now, i);
+    }
+    synchronized (received) {
+      long deadline = System.currentTimeMillis() + 2000;
+      while (received.isEmpty() && System.currentTimeMillis() < deadline) {
+        received.wait(100);
+      }
+    }
+    buffer.clear();
+
+    PinWindow[] windows = received.get(0);
+    // only the subscribed pin, all 100 samples in one window
+    assertEquals(1, windows.length);
+    assertEquals(14, windows[0].address);
+    assertEquals(100, windows[0].count);
+    assertEquals(0, windows[0].min);
+    assertEquals(99, windows[0].max);
+    assertEquals(99, windows[0].last);
+  }
+
+}
@@ -0,0 +1,79 @@
+package org.myrobotlab.serial;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+/**
+ * timing only - run with the benchmark target, not part of the unit tests
+ */
+public class ByteRingBenchmark {
+
+  public final static Logger log = LoggerFactory.getLogger(ByteRingBenchmark.class);
+
+  /**
+   * the rx path before - an Integer and a node per byte - against the ring
+   * filled and drained in chunks as Serial does
+   */
+  @Test
+  public void rx() throws Exception {
+    final int count = 5000000; // a multiple of the chunk size
+    // warm up
+    linkedQueue(count);
+    ring(count);
+
+    long start = System.nanoTime();
+    linkedQueue(count);
+    long queue = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    ring(count);
+    long ring = System.nanoTime() - start;
+
+    log.info(String.format("%d bytes - LinkedBlockingQueue<Integer> %d ms - ByteRing %d ms", count, queue / 1000000, ring / 1000000));
+  }
+
+  static void linkedQueue(final int count) throws Exception {
+    final BlockingQueue<Integer> queue = new LinkedBlockingQueue<Integer>();
+    Thread producer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < count; ++i) {
+          queue.add(i & 0xff);
+        }
+      }
+    });
+    producer.start();
+    for (int i = 0; i < count; ++i) {
+      queue.take();
+    }
+    producer.join();
+  }
+
+  static void ring(final int count) throws Exception {
+    final ByteRing ring = new ByteRing("bench", 1024);
+    Thread producer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          byte[] chunk = new byte[32];
+          for (int i = 0; i < count; i += chunk.length) {
+            ring.put(chunk, 0, chunk.length);
+          }
+        } catch (InterruptedException e) {
+        }
+      }
+    });
+    producer.start();
+    byte[] b = new byte[256];
+    int read = 0;
+    while (read < count) {
+      read += ring.take(b, 0, b.length);
+    }
+    producer.join();
+  }
+
+}
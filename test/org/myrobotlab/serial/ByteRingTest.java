@@ -0,0 +1,235 @@
+package org.myrobotlab.serial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.Test;
+import org.myrobotlab.framework.QueueStats;
+import org.myrobotlab.logging.LoggerFactory;
+import org.slf4j.Logger;
+
+public class ByteRingTest {
+
+  public final static Logger log = LoggerFactory.getLogger(ByteRingTest.class);
+
+  @Test
+  public void wrapAndOverrun() throws Exception {
+    ByteRing ring = new ByteRing("test", 5);
+    assertEquals(8, ring.capacity());
+    assertEquals(-1, ring.poll());
+
+    // move the indexes so the bulk copies wrap
+    ring.offer(new byte[] { 1, 2, 3, 4, 5, 6 }, 0, 6);
+    assertEquals(1, ring.poll());
+    byte[] b = new byte[4];
+    assertEquals(4, ring.poll(b, 0, 4));
+    assertArrayEquals(new byte[] { 2, 3, 4, 5 }, b);
+
+    assertEquals(7, ring.offer(new byte[] { 7, 8, 9, 10, 11, 12, (byte) 255, 13, 14 }, 0, 9));
+    assertEquals(8, ring.size());
+    assertEquals(false, ring.offer(15));
+
+    assertEquals(6, ring.take());
+    byte[] all = new byte[10];
+    assertEquals(7, ring.take(all, 0, all.length));
+    assertEquals(255, all[6] & 0xff);
+    assertEquals(-1, ring.poll(10, TimeUnit.MILLISECONDS));
+
+    QueueStats stats = ring.getStats();
+    assertEquals(0, stats.currentQueueCount);
+    assertEquals(8, stats.highWaterMark);
+    assertEquals(13, stats.enqueued);
+    assertEquals(3, stats.dropped);
+  }
+
+  @Test
+  public void producerConsumer() throws Exception {
+    final ByteRing ring = new ByteRing("test", 64);
+    final int count = 1000000;
+    Thread producer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          byte[] chunk = new byte[7];
+          int i = 0;
+          while (i < count) {
+            int n = Math.min(chunk.length, count - i);
+            for (int j = 0; j < n; ++j) {
+              chunk[j] = (byte) (i + j);
+            }
+            ring.put(chunk, 0, n);
+            i += n;
+          }
+        } catch (InterruptedException e) {
+        }
+      }
+    });
+    producer.start();
+
+    byte[] b = new byte[13];
+    int expected = 0;
+    while (expected < count) {
+      int n = ring.take(b, 0, b.length);
+      for (int j = 0; j < n; ++j) {
+        assertEquals((byte) expected++, b[j]);
+      }
+    }
+    producer.join();
+    assertEquals(0, ring.getStats().dropped);
+  }
+
+  /**
+   * Serial's read methods are public - several threads may read at once, no
+   * byte is lost or read twice
+   */
+  @Test
+  public void severalConsumers() throws Exception {
+    final ByteRing ring = new ByteRing("test", 64);
+    final int count = 1000000;
+    final AtomicLongArray seen = new AtomicLongArray(256);
+    Thread[] consumers = new Thread[4];
+    for (int c = 0; c < consumers.length; ++c) {
+      final boolean bulk = (c % 2 == 0);
+      consumers[c] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            byte[] b = new byte[5];
+            while (true) {
+              if (bulk) {
+                int n = ring.take(b, 0, b.length);
+                for (int j = 0; j < n; ++j) {
+                  seen.incrementAndGet(b[j] & 0xff);
+                }
+              } else {
+                int v = ring.poll(200, TimeUnit.MILLISECONDS);
+                if (v < 0) {
+                  return;
+                }
+                seen.incrementAndGet(v);
+              }
+            }
+          } catch (InterruptedException e) {
+          }
+        }
+      });
+      consumers[c].start();
+    }
+
+    byte[] chunk = new byte[11];
+    int i = 0;
+    while (i < count) {
+      int n = Math.min(chunk.length, count - i);
+      for (int j = 0; j < n; ++j) {
+        chunk[j] = (byte) (i + j);
+      }
+      ring.put(chunk, 0, n);
+      i += n;
+    }
+
+    long start = System.currentTimeMillis();
+    while (ring.size() > 0 && System.currentTimeMillis() - start < 5000) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(50);
+    for (Thread consumer : consumers) {
+      consumer.interrupt();
+      consumer.join();
+    }
+    long total = 0;
+    for (int v = 0; v < 256; ++v) {
+      assertEquals(count / 256 + ((v < count % 256) ? 1 : 0), seen.get(v));
+      total += seen.get(v);
+    }
+    assertEquals(count, total);
+  }
+
+  /**
+   * Serial.setBufferSize replaces its ring - closing the old one must not
+   * leave readers parked on it
+   */
+  @Test
+  public void closeWakesParkedThreads() throws Exception {
+    final ByteRing ring = new ByteRing("test", 4);
+    final int[] results = new int[] { 0, 0, 0 };
+    Thread taker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          results[0] = ring.take();
+        } catch (InterruptedException e) {
+        }
+      }
+    });
+    Thread poller = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          results[1] = ring.poll(60, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+        }
+      }
+    });
+    taker.start();
+    poller.start();
+    Thread.sleep(50);
+    ring.close();
+    taker.join(1000);
+    poller.join(1000);
+    assertEquals(false, taker.isAlive());
+    assertEquals(false, poller.isAlive());
+    assertEquals(-1, results[0]);
+    assertEquals(-1, results[1]);
+
+    // a closed ring still hands out what was queued, then neither put nor
+    // take waits
+    ByteRing closed = new ByteRing("test", 2);
+    closed.offer(new byte[] { 1, 2 }, 0, 2);
+    closed.close();
+    closed.put(3);
+    assertEquals(1, closed.getStats().dropped);
+    byte[] b = new byte[4];
+    assertEquals(2, closed.take(b, 0, b.length));
+    assertEquals(0, closed.take(b, 0, b.length));
+  }
+
+  /**
+   * a virtual port does not lose writes - the writer waits for the other end
+   */
+  @Test
+  public void virtualPortWritesWait() throws Exception {
+    final ByteRing ring = new ByteRing("test", 16);
+    PortQueue port = new PortQueue("test", new ByteRing("in", 16), ring);
+    final byte[] received = new byte[1000];
+    Thread reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          int count = 0;
+          while (count < received.length) {
+            Thread.sleep(1);
+            count += ring.take(received, count, received.length - count);
+          }
+        } catch (InterruptedException e) {
+        }
+      }
+    });
+    reader.start();
+    byte[] data = new byte[received.length];
+    for (int i = 0; i < data.length; ++i) {
+      data[i] = (byte) i;
+    }
+    port.write(ByteBuffer.wrap(data, 0, 500));
+    for (int i = 500; i < data.length; ++i) {
+      port.write(data[i] & 0xff);
+    }
+    reader.join(5000);
+    assertArrayEquals(data, received);
+    assertEquals(0, ring.getStats().dropped);
+  }
+
+}
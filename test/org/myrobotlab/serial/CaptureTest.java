@@ -0,0 +1,105 @@
+package org.myrobotlab.serial;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.interfaces.SerialDataListener;
+import org.slf4j.Logger;
+
+public class CaptureTest {
+
+  public final static Logger log = LoggerFactory.getLogger(CaptureTest.class);
+
+  static File tempFile() throws Exception {
+    File file = File.createTempFile("serial", ".cap");
+    file.deleteOnExit();
+    return file;
+  }
+
+  @Test
+  public void recordAndRead() throws Exception {
+    File file = tempFile();
+    Capture capture = new Capture(file.getPath());
+    capture.write(Capture.TX, new int[] { 170, 2, 26, 1 });
+    capture.write(Capture.RX, new byte[] { 1, 2, 3, 4, 5 }, 1, 3);
+    // more than a segment so the mapping has to move
+    byte[] big = new byte[60000];
+    for (int i = 0; i < 20; ++i) {
+      big[0] = (byte) i;
+      capture.write(Capture.RX, big, 0, big.length);
+    }
+    capture.write(Capture.RX, 255);
+    capture.close();
+    long size = Capture.HEADER_SIZE + 23 * Capture.RECORD_HEADER_SIZE + 4 + 3 + 20 * big.length + 1;
+    // padded to the end of the segment
+    assertTrue(file.length() > size);
+
+    CaptureReader reader = new CaptureReader(file.getPath());
+    assertEquals(size, reader.getSize());
+    assertTrue(reader.next());
+    assertEquals(Capture.TX, reader.getDirection());
+    byte[] data = new byte[4];
+    reader.read(0, data, 0, 4);
+    assertArrayEquals(new byte[] { (byte) 170, 2, 26, 1 }, data);
+
+    assertTrue(reader.next());
+    assertEquals(Capture.RX, reader.getDirection());
+    assertEquals(3, reader.getLength());
+    long ts = reader.getTimestamp();
+    for (int i = 0; i < 20; ++i) {
+      assertTrue(reader.next());
+      assertEquals(big.length, reader.getLength());
+      reader.read(0, data, 0, 1);
+      assertEquals(i, data[0]);
+      assertTrue(reader.getTimestamp() >= ts);
+    }
+    assertTrue(reader.next());
+    assertFalse(reader.next());
+    reader.close();
+  }
+
+  @Test
+  public void replay() throws Exception {
+    File file = tempFile();
+    Capture capture = new Capture(file.getPath());
+    for (int i = 0; i < 10; ++i) {
+      capture.write(Capture.RX, new byte[] { (byte) i }, 0, 1);
+      capture.write(Capture.TX, i);
+      Thread.sleep(20);
+    }
+    capture.close();
+
+    // real time - the 10 records were 180+ ms apart
+    PortStreamTest.ByteListener listener = new PortStreamTest.ByteListener();
+    HashMap<String, SerialDataListener> listeners = new HashMap<String, SerialDataListener>();
+    listeners.put(listener.getName(), listener);
+    PortReplay port = new PortReplay("replay", file.getPath(), 1.0);
+    port.open();
+    long start = System.currentTimeMillis();
+    port.listen(listeners);
+    port.readingThread.join(5000);
+    long elapsed = System.currentTimeMillis() - start;
+    assertArrayEquals(new byte[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 }, listener.received.toByteArray());
+    assertTrue(elapsed >= 170);
+
+    // as fast as possible
+    listener = new PortStreamTest.ByteListener();
+    listeners.clear();
+    listeners.put(listener.getName(), listener);
+    port = new PortReplay("replay", file.getPath(), 0);
+    port.open();
+    start = System.currentTimeMillis();
+    port.listen(listeners);
+    port.readingThread.join(5000);
+    log.info("real time replay {} ms - max speed {} ms", elapsed, System.currentTimeMillis() - start);
+    assertEquals(10, listener.received.size());
+  }
+
+}
@@ -0,0 +1,121 @@
+package org.myrobotlab.serial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.HashMap;
+
+import org.junit.Test;
+import org.myrobotlab.framework.QueueStats;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.interfaces.SerialDataListener;
+import org.slf4j.Logger;
+
+public class PortStreamTest {
+
+  public final static Logger log = LoggerFactory.getLogger(PortStreamTest.class);
+
+  /**
+   * only implements onByte - gets the default onBytes
+   */
+  static class ByteListener implements SerialDataListener {
+    ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+    @Override
+    public String getName() {
+      return "byteListener";
+    }
+
+    @Override
+    public QueueStats publishStats(QueueStats stats) {
+      return stats;
+    }
+
+    @Override
+    public void updateStats(QueueStats stats) {
+    }
+
+    @Override
+    public synchronized Integer onByte(Integer b) {
+      received.write(b);
+      return b;
+    }
+
+    @Override
+    public String onConnect(String portName) {
+      return portName;
+    }
+
+    @Override
+    public String onDisconnect(String portName) {
+      return portName;
+    }
+  }
+
+  static class ChunkListener extends ByteListener {
+    int chunks = 0;
+
+    @Override
+    public synchronized void onBytes(byte[] data, int offset, int length) {
+      ++chunks;
+      received.write(data, offset, length);
+    }
+  }
+
+  @Test
+  public void chunkedRead() throws Exception {
+    PipedOutputStream device = new PipedOutputStream();
+    PipedInputStream in = new PipedInputStream(device, 8192);
+    PortStream port = new PortStream("stream", in, new ByteArrayOutputStream());
+
+    ByteListener byteListener = new ByteListener();
+    ChunkListener chunkListener = new ChunkListener();
+    HashMap<String, SerialDataListener> listeners = new HashMap<String, SerialDataListener>();
+    listeners.put("bytes", byteListener);
+    listeners.put("chunks", chunkListener);
+
+    byte[] data = new byte[4000];
+    for (int i = 0; i < data.length; ++i) {
+      data[i] = (byte) i;
+    }
+    // written before listening so it is read in a few chunks
+    device.write(data);
+    device.flush();
+    port.listen(listeners);
+
+    long start = System.currentTimeMillis();
+    while (chunkListener.received.size() < data.length && System.currentTimeMillis() - start < 2000) {
+      Thread.sleep(10);
+    }
+    port.close();
+
+    synchronized (chunkListener) {
+      assertEquals(data.length, chunkListener.received.size());
+      assertTrue(chunkListener.chunks < 10);
+    }
+    synchronized (byteListener) {
+      byte[] bytes = byteListener.received.toByteArray();
+      assertEquals(data.length, bytes.length);
+      for (int i = 0; i < data.length; ++i) {
+        assertEquals(data[i], bytes[i]);
+      }
+    }
+  }
+
+  @Test
+  public void readReturnsWhatIsAvailable() throws IOException {
+    PipedOutputStream device = new PipedOutputStream();
+    PipedInputStream in = new PipedInputStream(device);
+    PortStream port = new PortStream("stream", in, new ByteArrayOutputStream());
+    device.write(new byte[] { 1, 2, 3 });
+    byte[] buffer = new byte[64];
+    // does not block waiting to fill the buffer
+    assertEquals(3, port.read(buffer));
+    assertEquals(3, buffer[2]);
+  }
+
+}
@@ -1,11 +1,14 @@
 package org.myrobotlab.service;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.After;
@@ -26,7 +29,12 @@ import org.myrobotlab.logging.LoggerFactory;
 import org.myrobotlab.logging.Logging;
 import org.myrobotlab.logging.LoggingFactory;
 import org.myrobotlab.service.Arduino.Sketch;
+import org.myrobotlab.service.data.DeviceMapping;
+import org.myrobotlab.service.data.SensorData;
+import org.myrobotlab.service.interfaces.DeviceControl;
+import org.myrobotlab.service.interfaces.DeviceController;
 import org.myrobotlab.service.interfaces.PinDefinition;
+import org.myrobotlab.service.interfaces.SensorDataListener;
 import org.slf4j.Logger;
 
 /**
@@ -673,6 +681,85 @@ public class ArduinoTest {
 		// fail("Not yet implemented");
 	}
 
+	/**
+	 * a local sensor - gets the event PUBLISH_SENSOR_DATA is decoded into
+	 */
+	public static class SensorRecorder implements DeviceControl, SensorDataListener {
+		List<SensorData> events = new ArrayList<SensorData>();
+		List<int[]> data = new ArrayList<int[]>();
+
+		@Override
+		public String getName() {
+			return "sensorRecorder";
+		}
+
+		@Override
+		public void setController(DeviceController controller) {
+		}
+
+		@Override
+		public DeviceController getController() {
+			return null;
+		}
+
+		@Override
+		public boolean isAttached() {
+			return true;
+		}
+
+		@Override
+		public void onSensorData(SensorData event) {
+			events.add(event);
+			// the event is reused - keep a copy
+			data.add(((int[]) event.getData()).clone());
+		}
+
+		@Override
+		public boolean isLocal() {
+			return true;
+		}
+	}
+
+	@Test
+	public void testSensorDataMsg() {
+		SensorRecorder sensor = new SensorRecorder();
+		DeviceMapping mapping = new DeviceMapping(sensor);
+		arduino.deviceList.put(sensor.getName(), mapping);
+		// above 127 - the id is a signed byte on the way in
+		int id = 200;
+		try {
+			int M = ArduinoMsgCodec.MAGIC_NUMBER;
+
+			// MRLComm binds the device to its id
+			byte[] name = sensor.getName().getBytes();
+			byte[] attached = new byte[5 + name.length];
+			attached[0] = (byte) M;
+			attached[1] = (byte) (3 + name.length);
+			attached[2] = (byte) ArduinoMsgCodec.PUBLISH_ATTACHED_DEVICE;
+			attached[3] = (byte) id;
+			attached[4] = (byte) name.length;
+			System.arraycopy(name, 0, attached, 5, name.length);
+			arduino.onBytes(attached, 0, attached.length);
+			assertSame(mapping, arduino.deviceIndex.get(id));
+
+			int F = ArduinoMsgCodec.PUBLISH_SENSOR_DATA;
+			byte[] stream = new byte[] { (byte) M, 5, (byte) F, (byte) id, 2, 10, 20, (byte) M, 5, (byte) F, (byte) id, 2, 11, 21,
+					// a size larger than the message is rejected
+					(byte) M, 5, (byte) F, (byte) id, 9, 12, 22 };
+			// through the decoder and its handler - as bytes arrive from serial
+			arduino.onBytes(stream, 0, stream.length);
+
+			assertEquals(2, sensor.events.size());
+			assertArrayEquals(new int[] { 10, 20 }, sensor.data.get(0));
+			assertArrayEquals(new int[] { 11, 21 }, sensor.data.get(1));
+			// one event per device - refilled for the next message
+			assertSame(sensor.events.get(0), sensor.events.get(1));
+		} finally {
+			arduino.deviceIndex.remove(id);
+			arduino.deviceList.remove(sensor.getName());
+		}
+	}
+
 	public static class JUnitListener extends RunListener {
 
 		public void testAssumptionFailure(Failure failure) {
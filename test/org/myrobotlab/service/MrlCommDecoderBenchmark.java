@@ -0,0 +1,153 @@
+package org.myrobotlab.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.myrobotlab.codec.serial.ArduinoMsgCodec;
+import org.myrobotlab.logging.LoggerFactory;
+import org.myrobotlab.service.ArduinoTest.SensorRecorder;
+import org.myrobotlab.service.data.DeviceMapping;
+import org.myrobotlab.service.data.SensorData;
+import org.slf4j.Logger;
+
+/**
+ * timing only - run with the benchmark target, not part of the unit tests
+ */
+public class MrlCommDecoderBenchmark {
+
+  public final static Logger log = LoggerFactory.getLogger(MrlCommDecoderBenchmark.class);
+
+  static void frame(ByteArrayOutputStream out, int function, int... data) {
+    out.write(ArduinoMsgCodec.MAGIC_NUMBER);
+    out.write(1 + data.length);
+    out.write(function);
+    for (int i = 0; i < data.length; ++i) {
+      out.write(data[i]);
+    }
+  }
+
+  /**
+   * replays a capture in the format Serial.record() writes with its default
+   * decimal codec through Arduino.onBytes - pass -Dmrlcomm.capture=file to
+   * replay a recording of a real board, otherwise a sensor heavy stream is
+   * generated. Sensor data goes to a local sensor attached as device 1.
+   */
+  @Test
+  public void decode() throws Exception {
+    String capture = System.getProperty("mrlcomm.capture");
+    File file;
+    if (capture != null) {
+      file = new File(capture);
+    } else {
+      file = File.createTempFile("mrlcomm", ".rx.dec");
+      file.deleteOnExit();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      for (int i = 0; i < 4000; ++i) {
+        frame(out, ArduinoMsgCodec.PUBLISH_SENSOR_DATA, 1, 2, (i >> 8) & 0x7f, i & 0x7f);
+      }
+      FileOutputStream fos = new FileOutputStream(file);
+      byte[] b = out.toByteArray();
+      for (int i = 0; i < b.length; ++i) {
+        fos.write(String.format("%03d ", b[i] & 0xff).getBytes());
+      }
+      fos.close();
+    }
+    byte[] stream = loadCapture(file);
+
+    Arduino arduino = new Arduino("decoderBenchmark");
+    SensorRecorder sensor = new SensorRecorder();
+    arduino.deviceIndex.put(1, new DeviceMapping(sensor));
+    Legacy legacy = new Legacy();
+
+    int rounds = 200;
+    for (int r = 0; r < rounds; ++r) {
+      legacy.replay(stream);
+      arduino.onBytes(stream, 0, stream.length);
+    }
+
+    long start = System.nanoTime();
+    for (int r = 0; r < rounds; ++r) {
+      legacy.replay(stream);
+    }
+    long before = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    for (int r = 0; r < rounds; ++r) {
+      arduino.onBytes(stream, 0, stream.length);
+    }
+    long after = System.nanoTime() - start;
+
+    log.info(String.format("%d x %d bytes - per byte boxed decode %d ms - Arduino.onBytes %d ms", rounds, stream.length, before / 1000000, after / 1000000));
+    assertEquals(legacy.count, arduino.decoder.rxCount);
+  }
+
+  /**
+   * the bytes of a recorded decimal capture - "170 004 ..."
+   */
+  static byte[] loadCapture(File file) throws Exception {
+    String text = new String(Files.readAllBytes(file.toPath()));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (String token : text.trim().split("\\s+")) {
+      out.write(Integer.parseInt(token));
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * the previous Arduino.onByte path - a boxed Integer per byte, the buffer
+   * cleared after every message and a new copy for each sensor event
+   */
+  static class Legacy {
+    int byteCount;
+    int msgSize;
+    int[] msg = new int[ArduinoMsgCodec.MAX_MSG_SIZE];
+    long count;
+    long sum;
+
+    void replay(byte[] stream) {
+      for (int i = 0; i < stream.length; ++i) {
+        onByte(Integer.valueOf(stream[i] & 0xff));
+      }
+    }
+
+    Integer onByte(Integer newByte) {
+      ++byteCount;
+      if (byteCount == 1) {
+        if (newByte != ArduinoMsgCodec.MAGIC_NUMBER) {
+          byteCount = 0;
+          msgSize = 0;
+          Arrays.fill(msg, ArduinoMsgCodec.MAGIC_NUMBER);
+        }
+        return newByte;
+      } else if (byteCount == 2) {
+        msgSize = (byte) newByte.intValue();
+      } else {
+        msg[byteCount - 3] = (byte) newByte.intValue();
+      }
+      if (byteCount == 2 + msgSize) {
+        ++count;
+        if (msg[0] == ArduinoMsgCodec.PUBLISH_SENSOR_DATA) {
+          int[] rawData = new int[msg[2]];
+          for (int i = 0; i < rawData.length; ++i) {
+            rawData[i] = msg[i + 3];
+          }
+          SensorData event = new SensorData(rawData);
+          sum += ((int[]) event.getData())[rawData.length - 1];
+        } else {
+          sum += msg[1];
+        }
+        msgSize = 0;
+        byteCount = 0;
+        Arrays.fill(msg, 0);
+      }
+      return newByte;
+    }
+  }
+
+}